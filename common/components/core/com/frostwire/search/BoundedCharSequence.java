@@ -0,0 +1,91 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+/**
+ * Private class, only public to be able to share with other
+ * search packages.
+ * 
+ * Guards a regex match over a page against runaway backtracking. Each read
+ * only decrements a countdown, the step budget and the deadline are checked
+ * once every {@link #CHECK_INTERVAL} reads.
+ * 
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class BoundedCharSequence implements CharSequence {
+
+    private static final int CHECK_INTERVAL = 1 << 16;
+
+    private final String inner;
+    private final long deadline;
+
+    private long steps;
+    private int countdown;
+
+    public BoundedCharSequence(String inner, long maxSteps, long maxMillis) {
+        this.inner = inner;
+        this.deadline = System.nanoTime() + maxMillis * 1000000;
+        this.steps = maxSteps;
+        this.countdown = CHECK_INTERVAL;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--countdown < 0) {
+            check();
+        }
+        return inner.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return inner.length();
+    }
+
+    /**
+     * Not bounded, only used by the matcher to extract groups.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return inner.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return inner;
+    }
+
+    private void check() {
+        steps -= CHECK_INTERVAL;
+        if (steps < 0 || System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException();
+        }
+        countdown = CHECK_INTERVAL;
+    }
+
+    public static final class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = -2434591012263349815L;
+
+        public BudgetExceededException() {
+            super("Regex budget over the page exhausted");
+        }
+    }
+}
@@ -39,6 +39,20 @@ public abstract class CrawlRegexSearchPerformer<T extends CrawlableSearchResult>
 
     @Override
     protected final List<? extends SearchResult> searchPage(String page) {
-        return PerformersHelper.searchPageHelper(this, page, regexMaxResults);
+        return PerformersHelper.searchPageHelper(this, page, regexMaxResults, getResultsStartMarker(), getResultsEndMarker());
+    }
+
+    /**
+     * Where the results begin in the search page, null to match from the top.
+     */
+    protected String getResultsStartMarker() {
+        return null;
+    }
+
+    /**
+     * Where the results end in the search page, null to match to the bottom.
+     */
+    protected String getResultsEndMarker() {
+        return null;
     }
 }
@@ -17,17 +17,19 @@
 
 package com.frostwire.search;
 
-import java.io.ByteArrayInputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import com.frostwire.logging.Logger;
+import com.frostwire.search.BoundedCharSequence.BudgetExceededException;
 import com.frostwire.search.torrent.TorrentCrawlableSearchResult;
 import com.frostwire.search.torrent.TorrentCrawledSearchResult;
-import com.frostwire.torrent.TOTorrent;
 import com.frostwire.torrent.TOTorrentException;
-import com.frostwire.torrent.TOTorrentFile;
-import com.frostwire.torrent.TorrentUtils;
+import com.frostwire.torrent.TorrentScanner;
 
 /**
  * 
@@ -37,24 +39,50 @@ import com.frostwire.torrent.TorrentUtils;
  */
 public final class PerformersHelper {
 
+    private static final Logger LOG = Logger.getLogger(PerformersHelper.class);
+
+    /**
+     * Character reads allowed per character of the matched region, enough for the
+     * lazy .*? chains of the performers and linear in the page size.
+     */
+    private static final int REGEX_STEPS_PER_CHAR = 32;
+    private static final int REGEX_MAX_MILLIS = 3000;
+
+    private static final ConcurrentMap<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
+
     private PerformersHelper() {
     }
 
     public static List<? extends SearchResult> searchPageHelper(RegexSearchPerformer<?> performer, String page, int regexMaxResults) {
+        return searchPageHelper(performer, page, regexMaxResults, null, null);
+    }
+
+    /**
+     * Same as {@link #searchPageHelper(RegexSearchPerformer, String, int)}, but the regex only
+     * runs between the first startMarker and the endMarker that follows it. A null marker,
+     * or one not present in the page, leaves that side of the page unbounded.
+     * 
+     * If the regex runs out of budget, the results found until then are returned.
+     */
+    public static List<? extends SearchResult> searchPageHelper(RegexSearchPerformer<?> performer, String page, int regexMaxResults, String startMarker, String endMarker) {
         List<SearchResult> result = new LinkedList<SearchResult>();
 
-        Matcher matcher = performer.getPattern().matcher(new MaxIterCharSequence(page, 2 * page.length()));
+        Matcher matcher = boundedMatcher(performer.getPattern(), page, startMarker, endMarker);
 
         int max = regexMaxResults;
 
         int i = 0;
 
-        while (matcher.find() && i < max && !performer.isStopped()) {
-            SearchResult sr = performer.fromMatcher(new SearchMatcher(matcher));
-            if (sr != null) {
-                result.add(sr);
-                i++;
+        try {
+            while (matcher.find() && i < max && !performer.isStopped()) {
+                SearchResult sr = performer.fromMatcher(new SearchMatcher(matcher));
+                if (sr != null) {
+                    result.add(sr);
+                    i++;
+                }
             }
+        } catch (BudgetExceededException e) {
+            LOG.warn("Regex budget exhausted for " + performer.getClass().getSimpleName() + " with " + result.size() + " results");
         }
 
         return result;
@@ -62,19 +90,76 @@ public final class PerformersHelper {
 
     /**
      * This method is only public allow reuse inside the package search, consider it a private API
+     * 
+     * A matcher over the page region delimited by the markers (see
+     * {@link #searchPageHelper(RegexSearchPerformer, String, int, String, String)}), bounded
+     * in steps and time. Once exhausted, the matcher throws {@link BudgetExceededException}.
+     */
+    public static Matcher boundedMatcher(Pattern pattern, String page, String startMarker, String endMarker) {
+        int start = 0;
+        int end = page.length();
+
+        if (startMarker != null) {
+            int n = page.indexOf(startMarker);
+            if (n != -1) {
+                start = n;
+            }
+        }
+
+        if (endMarker != null) {
+            int n = page.indexOf(endMarker, start);
+            if (n != -1) {
+                end = n + endMarker.length();
+            }
+        }
+
+        long steps = (long) REGEX_STEPS_PER_CHAR * (end - start);
+
+        Matcher matcher = pattern.matcher(new BoundedCharSequence(page, steps, REGEX_MAX_MILLIS));
+
+        if (start != 0 || end != page.length()) {
+            matcher.region(start, end);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+        }
+
+        return matcher;
+    }
+
+    /**
+     * This method is only public allow reuse inside the package search, consider it a private API
+     * 
+     * Patterns are the same for every search of a performer class, compile them once.
+     */
+    public static Pattern compilePattern(String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            Pattern prev = PATTERNS.putIfAbsent(regex, pattern);
+            if (prev != null) {
+                pattern = prev;
+            }
+        }
+
+        return pattern;
+    }
+
+    /**
+     * This method is only public allow reuse inside the package search, consider it a private API
+     * 
+     * Only the file listing is needed here, so the data is scanned with {@link TorrentScanner}
+     * instead of being fully decoded into a TOTorrent.
      */
     public static List<? extends SearchResult> crawlTorrent(SearchPerformer performer, TorrentCrawlableSearchResult sr, byte[] data) throws TOTorrentException {
         List<TorrentCrawledSearchResult> list = new LinkedList<TorrentCrawledSearchResult>();
 
-        TOTorrent torrent = TorrentUtils.readFromBEncodedInputStream(new ByteArrayInputStream(data));
+        TorrentScanner torrent = TorrentScanner.scan(data);
 
-        if (torrent != null) {
-            TOTorrentFile[] files = torrent.getFiles();
+        int numFiles = torrent.getNumFiles();
 
-            for (int i = 0; !performer.isStopped() && i < files.length; i++) {
-                TOTorrentFile file = files[i];
-                list.add(new TorrentCrawledSearchResult(sr, file));
-            }
+        for (int i = 0; !performer.isStopped() && i < numFiles; i++) {
+            list.add(new TorrentCrawledSearchResult(sr, torrent.getRelativePath(i), torrent.getLength(i)));
         }
 
         return list;
@@ -33,7 +33,12 @@ public class SearchMatcher {
         this.matcher = matcher;
     }
 
+    /**
+     * The group in a string of its own size, so a result keeping it does not keep
+     * the page alive on runtimes where a substring shares the page's characters.
+     * Where substrings are already copied it is not copied again.
+     */
     public String group(int group) {
-        return new String(matcher.group(group).toCharArray());
+        return new String(matcher.group(group));
     }
 }
@@ -51,8 +51,16 @@ public final class YouTubeExtractor {
 
     private static final Map<Integer, Format> FORMATS = buildFormats();
 
-    // using the signature decoding per running session
-    private static YouTubeSig YT_SIG;
+    // signature deciphers by html5player url, YouTube rolls players out gradually so a few can be in use at once
+    private static final int YT_SIG_CACHE_SIZE = 4;
+    private static final Map<String, YouTubeSig> YT_SIGS = new LinkedHashMap<String, YouTubeSig>(YT_SIG_CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, YouTubeSig> eldest) {
+            return size() > YT_SIG_CACHE_SIZE;
+        }
+    };
+    // one fetch per player, however many videos are being extracted at the same time
+    private static final Map<String, Object> YT_SIG_LOCKS = new HashMap<String, Object>();
 
     public List<LinkInfo> extract(String videoUrl, boolean testConnection) {
         try {
@@ -507,18 +515,46 @@ public final class YouTubeExtractor {
     }
 
     private YouTubeSig getYouTubeSig(String html5player) {
-        // concurrency issues are not important in this point
-        if (YT_SIG == null) {
+        Object lock;
+        synchronized (YT_SIGS) {
+            YouTubeSig sig = YT_SIGS.get(html5player);
+            if (sig != null) {
+                return sig;
+            }
+            lock = YT_SIG_LOCKS.get(html5player);
+            if (lock == null) {
+                lock = new Object();
+                YT_SIG_LOCKS.put(html5player, lock);
+            }
+        }
+
+        synchronized (lock) {
+            synchronized (YT_SIGS) {
+                YouTubeSig sig = YT_SIGS.get(html5player);
+                if (sig != null) {
+                    return sig;
+                }
+            }
+
+            YouTubeSig sig = null;
             try {
                 HttpClient httpClient = HttpClientFactory.newInstance();
                 String jscode = httpClient.get(html5player.replace("\\", ""));
-                YT_SIG = new YouTubeSig(jscode);
+                sig = new YouTubeSig(jscode);
             } catch (Throwable t) {
                 LOG.error("Could not getYouTubeSig", t);
             }
-        }
 
-        return YT_SIG;
+            synchronized (YT_SIGS) {
+                if (sig != null) {
+                    YT_SIGS.put(html5player, sig);
+                }
+                // a failed fetch is tried again by the next video
+                YT_SIG_LOCKS.remove(html5player);
+            }
+
+            return sig;
+        }
     }
 
     private ThumbnailLinks createThumbnailLink(String videoId) {
@@ -18,10 +18,7 @@
 
 package com.frostwire.search.extractors.js;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 
 /**
  * @author gubatron
@@ -72,7 +69,7 @@ final class JavaFunctions {
     }
 
     public static String join(Object[] arr) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(arr.length);
 
         for (Object obj : arr) {
             sb.append(obj.toString());
@@ -97,10 +94,12 @@ final class JavaFunctions {
     public static Object reverse(Object obj) {
 
         if (obj instanceof Object[]) {
-            List<Object> list = new ArrayList<Object>();
-            list.addAll(Arrays.asList((Object[]) obj));
-            Collections.reverse(list);
-            return list.toArray();
+            Object[] arr = (Object[]) obj;
+            Object[] r = new Object[arr.length];
+            for (int i = 0; i < arr.length; i++) {
+                r[i] = arr[arr.length - 1 - i];
+            }
+            return r;
         }
 
         if (obj instanceof String) {
@@ -113,7 +112,7 @@ final class JavaFunctions {
     public static Object splice(Object obj, int fromIndex) {
 
         if (obj instanceof Object[]) {
-            return Arrays.asList((Object[]) obj).subList(fromIndex, ((Object[]) obj).length).toArray();
+            return Arrays.copyOfRange((Object[]) obj, fromIndex, ((Object[]) obj).length);
         }
 
         if (obj instanceof String) {
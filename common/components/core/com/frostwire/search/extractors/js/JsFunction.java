@@ -26,44 +26,52 @@ import static com.frostwire.search.extractors.js.JavaFunctions.list;
 import static com.frostwire.search.extractors.js.JavaFunctions.reverse;
 import static com.frostwire.search.extractors.js.JavaFunctions.splice;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import com.google.code.regexp.Matcher;
 import com.google.code.regexp.Pattern;
 
 /**
+ * A function of the small JS subset used by the YouTube player, compiled once into a
+ * tree of lambdas. Local variables are resolved to slots in a frame at compile time, so
+ * eval does no parsing and no map lookups, and it's safe to call from several threads.
+ *
  * @author gubatron
  * @author aldenml
  *
  */
 public final class JsFunction<T> {
 
-    private final JsContext ctx;
+    private static final Pattern ASSIGN_PATTERN = Pattern.compile("^(?<out>[a-z]+)(\\[(?<index>.+?)\\])?=(?<expr>.*)$");
+    private static final Pattern MEMBER_PATTERN = Pattern.compile("^(?<in>[a-z]+)\\.(?<member>.*)$");
+    private static final Pattern SLICE_PATTERN = Pattern.compile("slice\\((?<idx>.*)\\)");
+    private static final Pattern INDEX_PATTERN = Pattern.compile("^(?<in>[a-z]+)\\[(?<idx>.+)\\]$");
+    private static final Pattern MOD_PATTERN = Pattern.compile("^(?<a>.+?)(?<op>[%])(?<b>.+?)$");
+    private static final Pattern CALL_PATTERN = Pattern.compile("^(?<func>[a-zA-Z]+)\\((?<args>[a-z0-9,]+)\\)$");
+
     private final LambdaN initial_function;
 
     public JsFunction(String jscode, String funcname) {
-        this.ctx = new JsContext(jscode);
-        this.initial_function = extract_function(ctx, funcname);
-    }
-
-    @SuppressWarnings("unchecked")
-    public T eval(Object[] args) {
+        JsContext ctx = new JsContext(jscode);
         try {
-            return (T) initial_function.eval(args);
+            this.initial_function = extract_function(ctx, funcname);
         } finally {
-            // at this point we know that jscode is no longer necessary
+            // everything reachable is compiled, jscode is no longer necessary
             ctx.free();
         }
     }
 
+    @SuppressWarnings("unchecked")
+    public T eval(Object[] args) {
+        return (T) initial_function.eval(args);
+    }
+
     public T eval(Object s) {
         return eval(new Object[] { s });
     }
 
-    private static Object interpret_statement(final JsContext ctx, String stmt, final Map<String, Object> local_vars, final int allow_recursion) {
+    private static LambdaN compile_statement(final JsContext ctx, String stmt, final Map<String, Integer> local_vars, final int allow_recursion) {
         if (allow_recursion < 0) {
             throw new JsError("Recursion limit reached");
         }
@@ -72,148 +80,224 @@ public final class JsFunction<T> {
             stmt = stmt.substring("var ".length());
         }
 
-        final Matcher ass_m = Pattern.compile("^(?<out>[a-z]+)(\\[(?<index>.+?)\\])?=(?<expr>.*)$").matcher(stmt);
-        Lambda1 assign;
-        String expr;
+        final Matcher ass_m = ASSIGN_PATTERN.matcher(stmt);
         if (ass_m.find()) {
-            if (ass_m.group("index") != null) {
+            final int out = slot(local_vars, ass_m.group("out"));
+            final LambdaN expr = compile_expression(ctx, ass_m.group("expr"), local_vars, allow_recursion);
 
-                final Object lvar = local_vars.get(ass_m.group("out"));
-                final Object idx = interpret_expression(ctx, ass_m.group("index"), local_vars, allow_recursion);
-                assert idx instanceof Integer;
+            if (ass_m.group("index") != null) {
+                final LambdaN index = compile_expression(ctx, ass_m.group("index"), local_vars, allow_recursion);
 
-                assign = new Lambda1() {
+                return new LambdaN() {
                     @Override
-                    public Object eval(Object val) {
-                        ((Object[]) lvar)[(Integer) idx] = val;
+                    public Object eval(Object[] vars) {
+                        Object[] lvar = (Object[]) vars[out];
+                        Integer idx = (Integer) index.eval(vars);
+                        Object val = expr.eval(vars);
+                        lvar[idx] = val;
                         return val;
                     }
                 };
-                expr = ass_m.group("expr");
             } else {
-
-                final String var = ass_m.group("out");
-
-                assign = new Lambda1() {
+                return new LambdaN() {
                     @Override
-                    public Object eval(Object val) {
-                        local_vars.put(var, val);
+                    public Object eval(Object[] vars) {
+                        Object val = expr.eval(vars);
+                        vars[out] = val;
                         return val;
                     }
                 };
-                expr = ass_m.group("expr");
             }
         } else if (stmt.startsWith("return ")) {
-            assign = new Lambda1() {
-                @Override
-                public Object eval(Object v) {
-                    return v;
-                }
-            };
-            expr = stmt.substring("return ".length());
+            return compile_expression(ctx, stmt.substring("return ".length()), local_vars, allow_recursion);
         } else {
             throw new JsError(String.format("Cannot determine left side of statement in %s", stmt));
         }
-
-        Object v = interpret_expression(ctx, expr, local_vars, allow_recursion);
-        return assign.eval(v);
     }
 
-    private static Object interpret_expression(final JsContext ctx, String expr, Map<String, Object> local_vars, int allow_recursion) {
+    private static LambdaN compile_expression(final JsContext ctx, String expr, Map<String, Integer> local_vars, int allow_recursion) {
         if (isdigit(expr)) {
-            return Integer.valueOf(expr);
+            final Integer value = Integer.valueOf(expr);
+            return new LambdaN() {
+                @Override
+                public Object eval(Object[] vars) {
+                    return value;
+                }
+            };
         }
 
         if (isalpha(expr)) {
-            return local_vars.get(expr);
+            final int var = slot(local_vars, expr);
+            return new LambdaN() {
+                @Override
+                public Object eval(Object[] vars) {
+                    return vars[var];
+                }
+            };
         }
 
-        Matcher m = Pattern.compile("^(?<in>[a-z]+)\\.(?<member>.*)$").matcher(expr);
+        Matcher m = MEMBER_PATTERN.matcher(expr);
         if (m.find()) {
             String member = m.group("member");
-            Object val = local_vars.get(m.group("in"));
+            final int in = slot(local_vars, m.group("in"));
             if (member.equals("split(\"\")")) {
-                return list((String) val);
+                return new LambdaN() {
+                    @Override
+                    public Object eval(Object[] vars) {
+                        return list((String) vars[in]);
+                    }
+                };
             }
             if (member.equals("join(\"\")")) {
-                return join((Object[]) val);
+                return new LambdaN() {
+                    @Override
+                    public Object eval(Object[] vars) {
+                        return join((Object[]) vars[in]);
+                    }
+                };
             }
             if (member.equals("length")) {
-                return len(val);
+                return new LambdaN() {
+                    @Override
+                    public Object eval(Object[] vars) {
+                        return len(vars[in]);
+                    }
+                };
             }
             if (member.equals("reverse()")) {
-                return reverse(val);
+                return new LambdaN() {
+                    @Override
+                    public Object eval(Object[] vars) {
+                        return reverse(vars[in]);
+                    }
+                };
             }
-            Matcher slice_m = Pattern.compile("slice\\((?<idx>.*)\\)").matcher(member);
+            Matcher slice_m = SLICE_PATTERN.matcher(member);
             if (slice_m.find()) {
-                Object idx = interpret_expression(ctx, slice_m.group("idx"), local_vars, allow_recursion - 1);
-                return splice(val, (Integer) idx);
+                final LambdaN idx = compile_expression(ctx, slice_m.group("idx"), local_vars, allow_recursion - 1);
+                return new LambdaN() {
+                    @Override
+                    public Object eval(Object[] vars) {
+                        return splice(vars[in], (Integer) idx.eval(vars));
+                    }
+                };
             }
         }
 
-        m = Pattern.compile("^(?<in>[a-z]+)\\[(?<idx>.+)\\]$").matcher(expr);
+        m = INDEX_PATTERN.matcher(expr);
         if (m.find()) {
-            Object val = local_vars.get(m.group("in"));
-            Object idx = interpret_expression(ctx, m.group("idx"), local_vars, allow_recursion - 1);
-            return ((Object[]) val)[(Integer) idx];
+            final int in = slot(local_vars, m.group("in"));
+            final LambdaN idx = compile_expression(ctx, m.group("idx"), local_vars, allow_recursion - 1);
+            return new LambdaN() {
+                @Override
+                public Object eval(Object[] vars) {
+                    return ((Object[]) vars[in])[(Integer) idx.eval(vars)];
+                }
+            };
         }
 
-        m = Pattern.compile("^(?<a>.+?)(?<op>[%])(?<b>.+?)$").matcher(expr);
+        m = MOD_PATTERN.matcher(expr);
         if (m.find()) {
-            Object a = interpret_expression(ctx, m.group("a"), local_vars, allow_recursion);
-            Object b = interpret_expression(ctx, m.group("b"), local_vars, allow_recursion);
-            return (Integer) a % (Integer) b;
+            final LambdaN a = compile_expression(ctx, m.group("a"), local_vars, allow_recursion);
+            final LambdaN b = compile_expression(ctx, m.group("b"), local_vars, allow_recursion);
+            return new LambdaN() {
+                @Override
+                public Object eval(Object[] vars) {
+                    return (Integer) a.eval(vars) % (Integer) b.eval(vars);
+                }
+            };
         }
 
-        m = Pattern.compile("^(?<func>[a-zA-Z]+)\\((?<args>[a-z0-9,]+)\\)$").matcher(expr);
+        m = CALL_PATTERN.matcher(expr);
         if (m.find()) {
             String fname = m.group("func");
-            if (!ctx.functions.containsKey(fname) && ctx.jscode.length() > 0) {
-                ctx.functions.put(fname, extract_function(ctx, fname));
+            LambdaN f = ctx.functions.get(fname);
+            if (f == null) {
+                f = extract_function(ctx, fname);
             }
-            List<Object> argvals = new ArrayList<Object>();
-            for (String v : m.group("args").split(",")) {
+            final LambdaN func = f;
+
+            String[] argexprs = m.group("args").split(",");
+            final int[] argslots = new int[argexprs.length];
+            final Object[] argconsts = new Object[argexprs.length];
+            for (int i = 0; i < argexprs.length; i++) {
+                String v = argexprs[i];
                 if (isdigit(v)) {
-                    argvals.add(Integer.valueOf(v));
+                    argslots[i] = -1;
+                    argconsts[i] = Integer.valueOf(v);
                 } else {
-                    argvals.add(local_vars.get(v));
+                    argslots[i] = slot(local_vars, v);
                 }
             }
-            return ctx.functions.get(fname).eval(argvals.toArray());
+
+            return new LambdaN() {
+                @Override
+                public Object eval(Object[] vars) {
+                    Object[] argvals = new Object[argslots.length];
+                    for (int i = 0; i < argslots.length; i++) {
+                        argvals[i] = argslots[i] < 0 ? argconsts[i] : vars[argslots[i]];
+                    }
+                    return func.eval(argvals);
+                }
+            };
         }
         throw new JsError(String.format("Unsupported JS expression %s", expr));
     }
 
     private static LambdaN extract_function(final JsContext ctx, String funcname) {
         final Matcher func_m = Pattern.compile("function " + java.util.regex.Pattern.quote(funcname) + "\\((?<args>[a-z,]+)\\)\\{(?<code>[^\\}]+)\\}").matcher(ctx.jscode);
-        func_m.find();
+        if (!func_m.find()) {
+            throw new JsError(String.format("Could not find JS function %s", funcname));
+        }
 
-        final String[] argnames = mscpy(func_m.group("args").split(","));
-        final String[] stmts = mscpy(func_m.group("code").split(";"));
+        String[] argnames = func_m.group("args").split(",");
+        String[] stmts = func_m.group("code").split(";");
 
-        return new LambdaN() {
-            @Override
-            public Object eval(Object[] args) {
-                Map<String, Object> local_vars = new HashMap<String, Object>();
-                for (int i = 0; i < argnames.length; i++) {
-                    local_vars.put(argnames[i], args[i]);
-                }
-                Object res = null;
-                for (String stmt : stmts) {
-                    res = interpret_statement(ctx, stmt, local_vars, 20);
-                }
-                return res;
-            }
-        };
+        // registered before its body is compiled, in case it calls itself
+        CompiledFunction f = new CompiledFunction(argnames.length, stmts.length);
+        ctx.functions.put(funcname, f);
+
+        Map<String, Integer> local_vars = new HashMap<String, Integer>();
+        for (String argname : argnames) {
+            slot(local_vars, argname);
+        }
+        for (int i = 0; i < stmts.length; i++) {
+            f.stmts[i] = compile_statement(ctx, stmts[i], local_vars, 20);
+        }
+        f.frame_size = local_vars.size();
+
+        return f;
+    }
+
+    private static int slot(Map<String, Integer> local_vars, String name) {
+        Integer slot = local_vars.get(name);
+        if (slot == null) {
+            slot = local_vars.size();
+            local_vars.put(name, slot);
+        }
+        return slot;
     }
 
-    private static String[] mscpy(String[] arr) {
-        String[] r = new String[arr.length];
+    private static final class CompiledFunction implements LambdaN {
+
+        private final int argc;
+        private final LambdaN[] stmts;
+        private int frame_size;
 
-        for (int i = 0; i < arr.length; i++) {
-            r[i] = new String(arr[i].toCharArray());
+        public CompiledFunction(int argc, int stmtc) {
+            this.argc = argc;
+            this.stmts = new LambdaN[stmtc];
         }
 
-        return r;
+        @Override
+        public Object eval(Object[] args) {
+            Object[] vars = new Object[frame_size];
+            System.arraycopy(args, 0, vars, 0, argc);
+            Object res = null;
+            for (LambdaN stmt : stmts) {
+                res = stmt.eval(vars);
+            }
+            return res;
+        }
     }
 }
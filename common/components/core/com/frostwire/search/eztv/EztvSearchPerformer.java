@@ -56,6 +56,11 @@ public class EztvSearchPerformer extends TorrentRegexSearchPerformer<EztvSearchR
         return "http://"+getDomainNameToUse()+"/search/";
     }
 
+    @Override
+    protected String getDetailsStartMarker() {
+        return "<td class=\"section_post_header\" colspan=\"2\">";
+    }
+
     @Override
     public CrawlableSearchResult fromMatcher(SearchMatcher matcher) {
         String itemId = matcher.group(1);
@@ -58,6 +58,11 @@ public class TPBSearchPerformer extends CrawlRegexSearchPerformer<TPBSearchResul
         return candidate;
     }
 
+    @Override
+    protected String getResultsStartMarker() {
+        return "<table id=\"searchResult\">";
+    }
+
     @Override
     protected String getUrl(int page, String encodedKeywords) {
         return "http://"+getDomainNameToUse()+"/search/" + encodedKeywords + "/0/7/0";
@@ -23,8 +23,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.frostwire.search.CrawlRegexSearchPerformer;
+import com.frostwire.search.BoundedCharSequence.BudgetExceededException;
 import com.frostwire.search.CrawlableSearchResult;
-import com.frostwire.search.MaxIterCharSequence;
 import com.frostwire.search.PerformersHelper;
 import com.frostwire.search.SearchMatcher;
 import com.frostwire.search.SearchResult;
@@ -43,8 +43,8 @@ public abstract class TorrentRegexSearchPerformer<T extends CrawlableSearchResul
 
     public TorrentRegexSearchPerformer(DomainAliasManager domainAliasManager, long token, String keywords, int timeout, int pages, int numCrawls, int regexMaxResults, String regex, String htmlRegex) {
         super(domainAliasManager, token, keywords, timeout, pages, numCrawls, regexMaxResults);
-        this.pattern = Pattern.compile(regex);
-        this.htmlPattern = Pattern.compile(htmlRegex);
+        this.pattern = PerformersHelper.compilePattern(regex);
+        this.htmlPattern = PerformersHelper.compilePattern(htmlRegex);
     }
 
     @Override
@@ -74,7 +74,7 @@ public abstract class TorrentRegexSearchPerformer<T extends CrawlableSearchResul
         } else {
             String html = new String(data, "UTF-8");
 
-            Matcher matcher = htmlPattern.matcher(new MaxIterCharSequence(html, 2 * html.length()));
+            Matcher matcher = PerformersHelper.boundedMatcher(htmlPattern, html, getDetailsStartMarker(), getDetailsEndMarker());
 
             try {
                 if (matcher.find()) {
@@ -83,6 +83,8 @@ public abstract class TorrentRegexSearchPerformer<T extends CrawlableSearchResul
                         list.add(searchResult);
                     }
                 }
+            } catch (BudgetExceededException e) {
+                throw new Exception("URL:" + sr.getDetailsUrl() + ", regex budget exhausted", e);
             } catch (Exception e) {
                 throw new Exception("URL:" + sr.getDetailsUrl(), e);
             }
@@ -91,5 +93,19 @@ public abstract class TorrentRegexSearchPerformer<T extends CrawlableSearchResul
         return list;
     }
 
+    /**
+     * Where the torrent details begin in the details page, null to match from the top.
+     */
+    protected String getDetailsStartMarker() {
+        return null;
+    }
+
+    /**
+     * Where the torrent details end in the details page, null to match to the bottom.
+     */
+    protected String getDetailsEndMarker() {
+        return null;
+    }
+
     protected abstract T fromHtmlMatcher(CrawlableSearchResult sr, SearchMatcher matcher);
 }
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -34,6 +35,10 @@ import java.util.Vector;
 
 final class TOTorrentDeserialiseImpl extends TOTorrentImpl {
 
+    // the files list bencoded until loadFiles, a lot smaller than the file objects
+    private byte[] lazy_files;
+    private boolean lazy_files_utf8;
+
     public TOTorrentDeserialiseImpl(InputStream is) throws TOTorrentException {
         construct(is);
     }
@@ -375,10 +380,8 @@ final class TOTorrentDeserialiseImpl extends TOTorrentImpl {
 
                 List<Object> meta_files = (List<Object>) info.get(TK_FILES);
 
-                TOTorrentFileImpl[] files = new TOTorrentFileImpl[meta_files.size()];
-
                 if (hasUTF8Keys) {
-                    for (int i = 0; i < files.length; i++) {
+                    for (int i = 0; i < meta_files.size(); i++) {
                         Map<String, Object> file_map = (Map<String, Object>) meta_files.get(i);
 
                         hasUTF8Keys &= file_map.containsKey(TK_PATH_UTF8);
@@ -393,62 +396,30 @@ final class TOTorrentDeserialiseImpl extends TOTorrentImpl {
                     }
                 }
 
-                for (int i = 0; i < files.length; i++) {
-
-                    Map<String, Object> file_map = (Map<String, Object>) meta_files.get(i);
-
-                    long len = ((Long) file_map.get(TK_LENGTH)).longValue();
+                // check the files as building them would, but leave that to the first getFiles
 
-                    List<byte[]> paths = (List<byte[]>) file_map.get(TK_PATH);
-                    List<byte[]> paths8 = (List<byte[]>) file_map.get(TK_PATH_UTF8);
+                for (int i = 0; i < meta_files.size(); i++) {
 
-                    byte[][] path_comps = null;
-                    if (paths != null) {
-                        path_comps = new byte[paths.size()][];
+                    Map<String, Object> file_map = (Map<String, Object>) meta_files.get(i);
 
-                        for (int j = 0; j < paths.size(); j++) {
+                    total_length += ((Long) file_map.get(TK_LENGTH)).longValue();
 
-                            path_comps[j] = (byte[]) paths.get(j);
-                        }
-                    }
-
-                    TOTorrentFileImpl file;
+                    checkPath((List<byte[]>) file_map.get(TK_PATH));
 
                     if (hasUTF8Keys) {
-                        byte[][] path_comps8 = new byte[paths8.size()][];
-
-                        for (int j = 0; j < paths8.size(); j++) {
 
-                            path_comps8[j] = (byte[]) paths8.get(j);
-                        }
-
-                        file = files[i] = new TOTorrentFileImpl(this, total_length, len, path_comps, path_comps8);
-                    } else {
-                        file = files[i] = new TOTorrentFileImpl(this, total_length, len, path_comps);
+                        checkPath((List<byte[]>) file_map.get(TK_PATH_UTF8));
                     }
+                }
 
-                    total_length += len;
-
-                    // preserve any non-standard attributes
-
-                    Iterator<String> file_it = file_map.keySet().iterator();
-
-                    while (file_it.hasNext()) {
-
-                        String key = (String) file_it.next();
+                Map<String, Object> files_map = new HashMap<String, Object>();
 
-                        if (key.equals(TK_LENGTH) || key.equals(TK_PATH)) {
+                files_map.put(TK_FILES, meta_files);
 
-                            // standard
-                            // we don't skip TK_PATH_UTF8 because some code might assume getAdditionalProperty can get it
-                        } else {
+                lazy_files = BEncoder.encode(files_map);
+                lazy_files_utf8 = hasUTF8Keys;
 
-                            file.setAdditionalProperty(key, file_map.get(key));
-                        }
-                    }
-                }
-
-                setFiles(files);
+                setLazyFiles(meta_files.size(), total_length);
             }
 
             byte[] flat_pieces = (byte[]) info.get(TK_PIECES);
@@ -469,14 +440,16 @@ final class TOTorrentDeserialiseImpl extends TOTorrentImpl {
                 Debug.out("Torrent '" + new String(getName()) + "' has too many pieces (required=" + pieces_required + ",supplied=" + pieces_supplied + ") - ignoring excess");
             }
 
-            byte[][] pieces = new byte[pieces_supplied][20];
+            if (flat_pieces.length != pieces_supplied * 20) {
 
-            for (int i = 0; i < pieces.length; i++) {
+                byte[] whole_pieces = new byte[pieces_supplied * 20];
 
-                System.arraycopy(flat_pieces, i * 20, pieces[i], 0, 20);
+                System.arraycopy(flat_pieces, 0, whole_pieces, 0, whole_pieces.length);
+
+                flat_pieces = whole_pieces;
             }
 
-            setPieces(pieces);
+            setFlatPieces(flat_pieces);
 
             // extract and additional info elements
 
@@ -538,6 +511,95 @@ final class TOTorrentDeserialiseImpl extends TOTorrentImpl {
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected TOTorrentFileImpl[] loadFiles() {
+        try {
+            List<Object> meta_files = (List<Object>) BDecoder.decode(lazy_files).get(TK_FILES);
+
+            TOTorrentFileImpl[] files = new TOTorrentFileImpl[meta_files.size()];
+
+            long total_length = 0;
+
+            for (int i = 0; i < files.length; i++) {
+
+                Map<String, Object> file_map = (Map<String, Object>) meta_files.get(i);
+
+                long len = ((Long) file_map.get(TK_LENGTH)).longValue();
+
+                List<byte[]> paths = (List<byte[]>) file_map.get(TK_PATH);
+                List<byte[]> paths8 = (List<byte[]>) file_map.get(TK_PATH_UTF8);
+
+                byte[][] path_comps = null;
+                if (paths != null) {
+                    path_comps = new byte[paths.size()][];
+
+                    for (int j = 0; j < paths.size(); j++) {
+
+                        path_comps[j] = (byte[]) paths.get(j);
+                    }
+                }
+
+                TOTorrentFileImpl file;
+
+                if (lazy_files_utf8) {
+                    byte[][] path_comps8 = new byte[paths8.size()][];
+
+                    for (int j = 0; j < paths8.size(); j++) {
+
+                        path_comps8[j] = (byte[]) paths8.get(j);
+                    }
+
+                    file = files[i] = new TOTorrentFileImpl(this, total_length, len, path_comps, path_comps8);
+                } else {
+                    file = files[i] = new TOTorrentFileImpl(this, total_length, len, path_comps);
+                }
+
+                total_length += len;
+
+                // preserve any non-standard attributes
+
+                Iterator<String> file_it = file_map.keySet().iterator();
+
+                while (file_it.hasNext()) {
+
+                    String key = (String) file_it.next();
+
+                    if (key.equals(TK_LENGTH) || key.equals(TK_PATH)) {
+
+                        // standard
+                        // we don't skip TK_PATH_UTF8 because some code might assume getAdditionalProperty can get it
+                    } else {
+
+                        file.setAdditionalProperty(key, file_map.get(key));
+                    }
+                }
+            }
+
+            lazy_files = null;
+
+            return (files);
+
+        } catch (Throwable e) {
+
+            // the files were checked when decoding the torrent, this is not expected
+
+            Debug.printStackTrace(e);
+
+            return (new TOTorrentFileImpl[0]);
+        }
+    }
+
+    private static void checkPath(List<byte[]> path) throws TOTorrentException {
+        if (path != null) {
+
+            for (int i = 0; i < path.size(); i++) {
+
+                TOTorrentFileImpl.checkComponent((byte[]) path.get(i));
+            }
+        }
+    }
+
     public void printMap() {
         try {
 
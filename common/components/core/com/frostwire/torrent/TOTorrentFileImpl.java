@@ -137,9 +137,7 @@ final class TOTorrentFileImpl implements TOTorrentFile {
 
             for (int i = 0; i < pc.length; i++) {
 
-                byte[] comp = pc[i];
-                if (comp.length == 2 && comp[0] == (byte) '.' && comp[1] == (byte) '.')
-                    throw (new TOTorrentException("Torrent file contains illegal '..' component", TOTorrentException.RT_DECODE_FAILS));
+                checkComponent(pc[i]);
 
                 // intern directories as they're likely to repeat
                 //				if(i < (pc.length - 1)){
@@ -149,6 +147,13 @@ final class TOTorrentFileImpl implements TOTorrentFile {
         }
     }
 
+    protected static void checkComponent(byte[] comp)
+
+    throws TOTorrentException {
+        if (comp.length == 2 && comp[0] == (byte) '.' && comp[1] == (byte) '.')
+            throw (new TOTorrentException("Torrent file contains illegal '..' component", TOTorrentException.RT_DECODE_FAILS));
+    }
+
     public TOTorrent getTorrent() {
         return (torrent);
     }
@@ -327,7 +332,7 @@ final class TOTorrentFileImpl implements TOTorrentFile {
         return file_map;
     }
 
-    private static String convertOSSpecificChars(String file_name_in, boolean is_folder) {
+    static String convertOSSpecificChars(String file_name_in, boolean is_folder) {
         // this rule originally from DiskManager
 
         char[] chars = file_name_in.toCharArray();
@@ -77,7 +77,9 @@ class TOTorrentImpl implements TOTorrent {
     private TOTorrentAnnounceURLGroupImpl announce_group = new TOTorrentAnnounceURLGroupImpl(this);
 
     private long piece_length;
-    private byte[][] pieces;
+    private volatile byte[][] pieces;
+    // the pieces as decoded, only split up when asked for
+    private byte[] flat_pieces;
     private int number_of_pieces;
 
     private byte[] torrent_hash_override;
@@ -86,7 +88,11 @@ class TOTorrentImpl implements TOTorrent {
     private HashWrapper torrent_hash_wrapper;
 
     private boolean simple_torrent;
-    private TOTorrentFileImpl[] files;
+    private volatile TOTorrentFileImpl[] files;
+    // files left to loadFiles by the deserialiser
+    private boolean lazy_files;
+    private int lazy_file_count;
+    private long lazy_size;
 
     private long creation_date;
     private byte[] created_by;
@@ -322,16 +328,11 @@ class TOTorrentImpl implements TOTorrent {
 
         info.put(TK_PIECE_LENGTH, Long.valueOf(piece_length));
 
-        if (pieces == null) {
+        byte[] flat_pieces = getFlatPieces();
 
-            throw (new TOTorrentException("Pieces is null", TOTorrentException.RT_WRITE_FAILS));
-        }
+        if (flat_pieces == null) {
 
-        byte[] flat_pieces = new byte[pieces.length * 20];
-
-        for (int i = 0; i < pieces.length; i++) {
-
-            System.arraycopy(pieces[i], 0, flat_pieces, i * 20, 20);
+            throw (new TOTorrentException("Pieces is null", TOTorrentException.RT_WRITE_FAILS));
         }
 
         info.put(TK_PIECES, flat_pieces);
@@ -348,6 +349,8 @@ class TOTorrentImpl implements TOTorrent {
             info.put(TK_HASH_OVERRIDE, torrent_hash_override);
         }
 
+        TOTorrentFileImpl[] files = getFileImpls();
+
         if (simple_torrent) {
 
             TOTorrentFile file = files[0];
@@ -628,6 +631,13 @@ class TOTorrentImpl implements TOTorrent {
     }
 
     public long getSize() {
+        TOTorrentFileImpl[] files = this.files;
+
+        if (files == null) {
+
+            return (lazy_size);
+        }
+
         long res = 0;
 
         for (int i = 0; i < files.length; i++) {
@@ -661,23 +671,117 @@ class TOTorrentImpl implements TOTorrent {
     }
 
     public byte[][] getPieces() {
-        return (pieces);
+        byte[][] result = pieces;
+
+        if (result == null) {
+
+            synchronized (this) {
+
+                if (pieces == null && flat_pieces != null) {
+
+                    byte[][] split = new byte[flat_pieces.length / 20][20];
+
+                    for (int i = 0; i < split.length; i++) {
+
+                        System.arraycopy(flat_pieces, i * 20, split[i], 0, 20);
+                    }
+
+                    pieces = split;
+
+                    flat_pieces = null;
+                }
+
+                result = pieces;
+            }
+        }
+
+        return (result);
     }
 
-    public void setPieces(byte[][] _pieces) {
+    public synchronized void setPieces(byte[][] _pieces) {
         pieces = _pieces;
+        flat_pieces = null;
+    }
+
+    /**
+     * Sets the pieces as the 20 byte hashes back to back, the way they are encoded, they are
+     * only split up if {@link #getPieces()} is called.
+     */
+    protected synchronized void setFlatPieces(byte[] _flat_pieces) {
+        pieces = null;
+        flat_pieces = _flat_pieces;
+    }
+
+    private synchronized byte[] getFlatPieces() {
+        if (flat_pieces != null) {
+
+            return (flat_pieces);
+        }
+
+        if (pieces == null) {
+
+            return (null);
+        }
+
+        byte[] result = new byte[pieces.length * 20];
+
+        for (int i = 0; i < pieces.length; i++) {
+
+            System.arraycopy(pieces[i], 0, result, i * 20, 20);
+        }
+
+        return (result);
     }
 
     public int getFileCount() {
-        return (files.length);
+        TOTorrentFileImpl[] files = this.files;
+
+        return (files == null ? lazy_file_count : files.length);
     }
 
     public TOTorrentFile[] getFiles() {
-        return (files);
+        return (getFileImpls());
     }
 
-    protected void setFiles(TOTorrentFileImpl[] _files) {
+    protected TOTorrentFileImpl[] getFileImpls() {
+        TOTorrentFileImpl[] result = files;
+
+        if (result == null) {
+
+            synchronized (this) {
+
+                if (files == null && lazy_files) {
+
+                    files = loadFiles();
+
+                    lazy_files = false;
+                }
+
+                result = files;
+            }
+        }
+
+        return (result);
+    }
+
+    protected synchronized void setFiles(TOTorrentFileImpl[] _files) {
         files = _files;
+        lazy_files = false;
+    }
+
+    /**
+     * Leaves the files to be built by {@link #loadFiles()} the first time they are asked for,
+     * their count and total length have to be known up front.
+     */
+    protected synchronized void setLazyFiles(int count, long size) {
+        files = null;
+        lazy_files = true;
+        lazy_file_count = count;
+        lazy_size = size;
+    }
+
+    protected TOTorrentFileImpl[] loadFiles() {
+        return (new TOTorrentFileImpl[0]);
     }
 
     protected boolean getSimpleTorrent() {
@@ -954,6 +1058,10 @@ class TOTorrentImpl implements TOTorrent {
                 }
             }
 
+            byte[][] pieces = getPieces();
+
+            TOTorrentFileImpl[] files = getFileImpls();
+
             if (pieces == null) {
 
                 System.out.println("\tpieces = null");
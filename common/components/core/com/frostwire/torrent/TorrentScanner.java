@@ -0,0 +1,483 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.torrent;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Single pass bencode scanner that extracts only the file listing of a .torrent
+ * (info.name, info.files[].path/length) without building a {@link TOTorrent}.
+ *
+ * Values are kept as offsets into the source buffer, the 'pieces' blob and any other
+ * key not needed for the listing is skipped without copying, and the info-hash is
+ * computed on demand from the raw 'info' span.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class TorrentScanner {
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] K_INFO = ascii(TOTorrentImpl.TK_INFO);
+    private static final byte[] K_NAME = ascii(TOTorrentImpl.TK_NAME);
+    private static final byte[] K_NAME_UTF8 = ascii(TOTorrentImpl.TK_NAME_UTF8);
+    private static final byte[] K_LENGTH = ascii(TOTorrentImpl.TK_LENGTH);
+    private static final byte[] K_FILES = ascii(TOTorrentImpl.TK_FILES);
+    private static final byte[] K_PATH = ascii(TOTorrentImpl.TK_PATH);
+    private static final byte[] K_PATH_UTF8 = ascii(TOTorrentImpl.TK_PATH_UTF8);
+    private static final byte[] K_ENCODING = ascii("encoding");
+
+    private final ByteBuffer data;
+
+    private int pos;
+
+    private int infoStart = -1;
+    private int infoEnd = -1;
+
+    // spans are stored as pairs of (offset, length) into data
+    private int[] name;
+    private int[] nameUTF8;
+    private int[] encoding;
+
+    private long simpleLength = -1;
+
+    private int numFiles;
+    private long[] lengths;
+    private int[][] paths;
+    private int[][] pathsUTF8;
+
+    private String[] relativePaths;
+    private byte[] infoHash;
+
+    private TorrentScanner(ByteBuffer data) {
+        this.data = data;
+        this.pos = data.position();
+    }
+
+    public static TorrentScanner scan(byte[] data) throws TOTorrentException {
+        return scan(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * The buffer is read between its position and limit, neither is modified.
+     */
+    public static TorrentScanner scan(ByteBuffer data) throws TOTorrentException {
+        TorrentScanner scanner = new TorrentScanner(data);
+
+        try {
+            scanner.scanRoot();
+        } catch (TOTorrentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // IndexOutOfBounds and friends on truncated or garbage input
+            throw new TOTorrentException("Decode fails, malformed torrent data: " + e, TOTorrentException.RT_DECODE_FAILS);
+        }
+
+        return scanner;
+    }
+
+    public String getName() {
+        return decodeName();
+    }
+
+    public int getNumFiles() {
+        return numFiles;
+    }
+
+    /**
+     * Same form as {@link TOTorrentFile#getRelativePath()}.
+     */
+    public String getRelativePath(int index) {
+        if (relativePaths == null) {
+            relativePaths = decodePaths();
+        }
+        return relativePaths[index];
+    }
+
+    public long getLength(int index) {
+        return lengths[index];
+    }
+
+    public long getTotalLength() {
+        long total = 0;
+        for (int i = 0; i < numFiles; i++) {
+            total += lengths[i];
+        }
+        return total;
+    }
+
+    public boolean isSimpleTorrent() {
+        return simpleLength >= 0;
+    }
+
+    /**
+     * SHA-1 of the raw bencoded 'info' dictionary.
+     */
+    public byte[] getInfoHash() {
+        if (infoHash == null) {
+            ByteBuffer span = data.duplicate();
+            span.limit(infoEnd);
+            span.position(infoStart);
+            infoHash = new SHA1Hasher().calculateHash(span);
+        }
+        return infoHash;
+    }
+
+    private void scanRoot() throws TOTorrentException {
+        expect('d');
+
+        while (peek() != 'e') {
+            int keyOff = readStringSpan();
+            int keyLen = lastLength;
+
+            if (keyEquals(keyOff, keyLen, K_INFO)) {
+                infoStart = pos;
+                scanInfo();
+                infoEnd = pos;
+            } else if (keyEquals(keyOff, keyLen, K_ENCODING) && peek() != 'd' && peek() != 'l' && peek() != 'i') {
+                encoding = span(readStringSpan());
+            } else {
+                skipValue(0);
+            }
+        }
+
+        if (infoStart < 0) {
+            throw new TOTorrentException("Decode fails, 'info' element not found'", TOTorrentException.RT_DECODE_FAILS);
+        }
+
+        if (name == null) {
+            throw new TOTorrentException("Decode fails, 'name' element not found'", TOTorrentException.RT_DECODE_FAILS);
+        }
+
+        if (simpleLength >= 0) {
+            numFiles = 1;
+            lengths = new long[] { simpleLength };
+        } else if (lengths == null) {
+            throw new TOTorrentException("Decode fails, 'files' element not found'", TOTorrentException.RT_DECODE_FAILS);
+        }
+    }
+
+    private void scanInfo() throws TOTorrentException {
+        expect('d');
+
+        while (peek() != 'e') {
+            int keyOff = readStringSpan();
+            int keyLen = lastLength;
+
+            if (keyEquals(keyOff, keyLen, K_NAME)) {
+                name = span(readStringSpan());
+            } else if (keyEquals(keyOff, keyLen, K_NAME_UTF8)) {
+                nameUTF8 = span(readStringSpan());
+            } else if (keyEquals(keyOff, keyLen, K_LENGTH)) {
+                simpleLength = readLong();
+            } else if (keyEquals(keyOff, keyLen, K_FILES)) {
+                scanFiles();
+            } else {
+                // 'pieces' goes through here, only its length prefix is parsed
+                skipValue(1);
+            }
+        }
+
+        pos++;
+    }
+
+    private void scanFiles() throws TOTorrentException {
+        expect('l');
+
+        int capacity = 16;
+        lengths = new long[capacity];
+        paths = new int[capacity][];
+        pathsUTF8 = new int[capacity][];
+
+        while (peek() != 'e') {
+            if (numFiles == capacity) {
+                capacity *= 2;
+                lengths = copyOf(lengths, capacity);
+                paths = copyOf(paths, capacity);
+                pathsUTF8 = copyOf(pathsUTF8, capacity);
+            }
+
+            expect('d');
+
+            long length = -1;
+
+            while (peek() != 'e') {
+                int keyOff = readStringSpan();
+                int keyLen = lastLength;
+
+                if (keyEquals(keyOff, keyLen, K_LENGTH)) {
+                    length = readLong();
+                } else if (keyEquals(keyOff, keyLen, K_PATH)) {
+                    paths[numFiles] = readStringList();
+                } else if (keyEquals(keyOff, keyLen, K_PATH_UTF8)) {
+                    pathsUTF8[numFiles] = readStringList();
+                } else {
+                    skipValue(3);
+                }
+            }
+
+            pos++;
+
+            if (length < 0) {
+                throw new TOTorrentException("Decode fails, file entry without 'length'", TOTorrentException.RT_DECODE_FAILS);
+            }
+
+            lengths[numFiles] = length;
+            numFiles++;
+        }
+
+        pos++;
+    }
+
+    private int[] readStringList() throws TOTorrentException {
+        expect('l');
+
+        int[] spans = new int[8];
+        int n = 0;
+
+        while (peek() != 'e') {
+            if (n == spans.length) {
+                spans = copyOf(spans, n * 2);
+            }
+            spans[n] = readStringSpan();
+            spans[n + 1] = lastLength;
+            n += 2;
+        }
+
+        pos++;
+
+        return copyOf(spans, n);
+    }
+
+    private void skipValue(int depth) throws TOTorrentException {
+        if (depth > MAX_DEPTH) {
+            throw new TOTorrentException("Decode fails, nesting too deep", TOTorrentException.RT_DECODE_FAILS);
+        }
+
+        byte b = peek();
+
+        if (b == 'i') {
+            readLong();
+        } else if (b == 'l' || b == 'd') {
+            pos++;
+            while (peek() != 'e') {
+                skipValue(depth + 1);
+            }
+            pos++;
+        } else {
+            readStringSpan();
+        }
+    }
+
+    // length of the last string span read, avoids allocating a pair per string
+    private int lastLength;
+
+    private int readStringSpan() throws TOTorrentException {
+        int length = 0;
+        byte b;
+
+        while ((b = data.get(pos++)) != ':') {
+            if (b < '0' || b > '9' || length > (Integer.MAX_VALUE - 9) / 10) {
+                throw new TOTorrentException("Decode fails, invalid string length", TOTorrentException.RT_DECODE_FAILS);
+            }
+            length = length * 10 + (b - '0');
+        }
+
+        int offset = pos;
+
+        if (length > data.limit() - offset) {
+            throw new TOTorrentException("Decode fails, string exceeds data", TOTorrentException.RT_DECODE_FAILS);
+        }
+
+        pos += length;
+        lastLength = length;
+
+        return offset;
+    }
+
+    private long readLong() throws TOTorrentException {
+        expect('i');
+
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long value = 0;
+        byte b;
+
+        while ((b = data.get(pos++)) != 'e') {
+            if (b < '0' || b > '9') {
+                throw new TOTorrentException("Decode fails, invalid integer", TOTorrentException.RT_DECODE_FAILS);
+            }
+            value = value * 10 + (b - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    private byte peek() {
+        return data.get(pos);
+    }
+
+    private void expect(char c) throws TOTorrentException {
+        if (data.get(pos) != c) {
+            throw new TOTorrentException("Decode fails, expected '" + c + "' at " + pos, TOTorrentException.RT_DECODE_FAILS);
+        }
+        pos++;
+    }
+
+    private int[] span(int offset) {
+        return new int[] { offset, lastLength };
+    }
+
+    private boolean keyEquals(int offset, int length, byte[] key) {
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] bytes(int offset, int length) {
+        byte[] arr = new byte[length];
+        if (data.hasArray()) {
+            System.arraycopy(data.array(), data.arrayOffset() + offset, arr, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                arr[i] = data.get(offset + i);
+            }
+        }
+        return arr;
+    }
+
+    private boolean useUTF8Keys() {
+        if (nameUTF8 == null) {
+            return false;
+        }
+        if (encoding != null && !TOTorrent.ENCODING_ACTUALLY_UTF8_KEYS.equals(new String(bytes(encoding[0], encoding[1]), UTF8))) {
+            return false;
+        }
+        return isSimpleTorrent() || allFilesHaveUTF8Paths();
+    }
+
+    private String decodeName() {
+        if (useUTF8Keys()) {
+            return new String(bytes(nameUTF8[0], nameUTF8[1]), UTF8);
+        }
+        return decode(bytes(name[0], name[1]));
+    }
+
+    private String[] decodePaths() {
+        String[] result = new String[numFiles];
+
+        if (isSimpleTorrent()) {
+            result[0] = TOTorrentFileImpl.convertOSSpecificChars(decodeName(), false);
+            return result;
+        }
+
+        boolean utf8 = useUTF8Keys();
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < numFiles; i++) {
+            int[] spans = utf8 ? pathsUTF8[i] : paths[i];
+
+            sb.setLength(0);
+
+            if (spans != null) {
+                int n = spans.length / 2;
+                for (int j = 0; j < n; j++) {
+                    byte[] comp = bytes(spans[2 * j], spans[2 * j + 1]);
+                    String s = utf8 ? new String(comp, UTF8) : decode(comp);
+
+                    if (j > 0) {
+                        sb.append(File.separator);
+                    }
+                    sb.append(TOTorrentFileImpl.convertOSSpecificChars(s, j != n - 1));
+                }
+            }
+
+            result[i] = sb.toString();
+        }
+
+        return result;
+    }
+
+    private boolean allFilesHaveUTF8Paths() {
+        if (pathsUTF8 == null) {
+            return false;
+        }
+        for (int i = 0; i < numFiles; i++) {
+            if (pathsUTF8[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(byte[] bytes) {
+        if (encoding != null) {
+            try {
+                return new String(bytes, new String(bytes(encoding[0], encoding[1]), UTF8));
+            } catch (Throwable e) {
+                // fall through to the system decoder
+            }
+        }
+
+        try {
+            return LocaleUtil.getSingleton().getSystemDecoder().decodeString(bytes);
+        } catch (Throwable e) {
+            return new String(bytes);
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(Charset.forName("ISO-8859-1"));
+    }
+
+    private static long[] copyOf(long[] arr, int length) {
+        long[] r = new long[length];
+        System.arraycopy(arr, 0, r, 0, Math.min(arr.length, length));
+        return r;
+    }
+
+    private static int[] copyOf(int[] arr, int length) {
+        int[] r = new int[length];
+        System.arraycopy(arr, 0, r, 0, Math.min(arr.length, length));
+        return r;
+    }
+
+    private static int[][] copyOf(int[][] arr, int length) {
+        int[][] r = new int[length][];
+        System.arraycopy(arr, 0, r, 0, Math.min(arr.length, length));
+        return r;
+    }
+}
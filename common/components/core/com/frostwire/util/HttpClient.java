@@ -19,6 +19,7 @@ package com.frostwire.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -47,6 +48,12 @@ public interface HttpClient {
 
     public String get(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders) throws IOException;
 
+    /**
+     * Writes the response body to the stream as it arrives, for bodies too big to be held as a string.
+     * The stream is closed at the end, read errors go to the listener.
+     */
+    public void get(String url, OutputStream out, int timeout, String userAgent, Map<String, String> customHeaders) throws IOException;
+
     public byte[] getBytes(String url, int timeout, String userAgent, String referrer);
 
     public byte[] getBytes(String url);
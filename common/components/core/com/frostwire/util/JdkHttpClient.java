@@ -105,6 +105,11 @@ final class JdkHttpClient implements HttpClient {
         return result;
     }
 
+    @Override
+    public void get(String url, OutputStream out, int timeout, String userAgent, Map<String, String> customHeaders) throws IOException {
+        get(url, out, timeout, userAgent, null, null, -1, -1, customHeaders);
+    }
+
     public byte[] getBytes(String url, int timeout, String userAgent, String referrer) {
         byte[] result = null;
 
@@ -21,6 +21,8 @@
 
 package com.aelitis.azureus.core.diskmanager.access;
 
+import java.util.Map;
+
 public interface 
 DiskAccessControllerStats 
 {
@@ -29,4 +31,14 @@ DiskAccessControllerStats
 	
 	public long
 	getTotalReadBytes();
+	
+		/**
+		 * @return per volume: requests served, total queue wait and total service time in millis
+		 */
+	
+	public Map<String,long[]>
+	getReadVolumeStats();
+	
+	public Map<String,long[]>
+	getWriteVolumeStats();
 }
@@ -269,6 +269,9 @@ DiskAccessControllerImpl
 				long	read_total_req 		= read_dispatcher.getTotalRequests();
 				long	read_total_bytes 	= read_dispatcher.getTotalBytes();
 				
+				Map<String,long[]>	read_volumes 	= read_dispatcher.getVolumeStats();
+				Map<String,long[]>	write_volumes 	= write_dispatcher.getVolumeStats();
+				
 				public long 
 				getTotalReadRequests() 
 				{
@@ -280,6 +283,18 @@ DiskAccessControllerImpl
 				{
 					return( read_total_bytes );
 				}
+				
+				public Map<String,long[]>
+				getReadVolumeStats()
+				{
+					return( read_volumes );
+				}
+				
+				public Map<String,long[]>
+				getWriteVolumeStats()
+				{
+					return( write_volumes );
+				}
 			});
 	}
 	
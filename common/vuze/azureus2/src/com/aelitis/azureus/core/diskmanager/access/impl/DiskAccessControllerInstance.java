@@ -22,15 +22,17 @@
 
 package com.aelitis.azureus.core.diskmanager.access.impl;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.gudy.azureus2.core3.config.COConfigurationManager;
-import org.gudy.azureus2.core3.torrent.TOTorrent;
 import org.gudy.azureus2.core3.util.AESemaphore;
 import org.gudy.azureus2.core3.util.AEThread2;
 import org.gudy.azureus2.core3.util.Debug;
@@ -38,18 +40,22 @@ import org.gudy.azureus2.core3.util.DisplayFormatters;
 import org.gudy.azureus2.core3.util.RandomUtils;
 import org.gudy.azureus2.core3.util.SystemTime;
 
-import com.aelitis.azureus.core.diskmanager.cache.CacheFile;
-
 public class 
 DiskAccessControllerInstance 
 {
+	private static final Object	DEFAULT_VOLUME	= "default";
+	
 	private final int aggregation_request_limit;
 	private final int aggregation_byte_limit;
 	
 	private String		name;
 	private boolean		enable_aggregation;
 	
-	private boolean		invert_threads	= !COConfigurationManager.getBooleanParameter( "diskmanager.perf.queue.torrent.bias" );
+		// requests are queued per volume (file store), each volume having its own
+		// threads and serving its requests in an elevator sweep
+	
+	private int			volume_threads	= COConfigurationManager.getIntParameter( "diskmanager.perf.queue.volume.threads" );
+	private long		latency_window	= COConfigurationManager.getIntParameter( "diskmanager.perf.queue.latency.window" );
 	
 	private int	max_threads;
 	private int	max_mb_queued;
@@ -67,14 +73,16 @@ DiskAccessControllerInstance
 	private long			total_single_bytes;
 	private long			total_aggregated_bytes;
 	
-	private long			io_time;
-	private long			io_count;
-
-	private requestDispatcher[]	dispatchers;
+		// updated by every dispatcher thread
 	
+	private final AtomicLong	io_time		= new AtomicLong();
+	private final AtomicLong	io_count	= new AtomicLong();
+
 	private long		last_check		= 0;	
 	
-	private Map			torrent_dispatcher_map	= new HashMap();	
+	private Map<Object,requestDispatcher>	volume_dispatcher_map	= new LinkedHashMap<Object,requestDispatcher>();
+	
+	private Map<File,Object>				volume_cache			= new HashMap<File,Object>();
 	
 	private static final int REQUEST_NUM_LOG_CHUNK 		= 100;
 	private static final int REQUEST_BYTE_LOG_CHUNK 	= 1024*1024;
@@ -112,11 +120,7 @@ DiskAccessControllerInstance
 		max_mb_sem 			= new groupSemaphore( max_mb_queued );
 		max_threads			= _max_threads;
 		
-		dispatchers	= new requestDispatcher[invert_threads?1:max_threads];
-		
-		for (int i=0;i<dispatchers.length;i++){
-			dispatchers[i]	= new requestDispatcher(i);
-		}
+		volume_threads		= Math.max( 1, Math.min( volume_threads, max_threads ));
 	}
 	
 	protected String
@@ -182,97 +186,112 @@ DiskAccessControllerInstance
 	public long
 	getIOTime()
 	{
-		return( io_time );
+		return( io_time.get());
 	}
 	
 	public long
 	getIOCount()
 	{
-		return( io_count );
+		return( io_count.get());
+	}
+	
+		/**
+		 * @return per volume: requests served, total queue wait and total service time in millis
+		 */
+	
+	protected Map<String,long[]>
+	getVolumeStats()
+	{
+		Map<String,long[]>	result = new LinkedHashMap<String,long[]>();
+		
+		synchronized( volume_dispatcher_map ){
+			
+			for ( requestDispatcher dispatcher: volume_dispatcher_map.values()){
+				
+				result.put( dispatcher.getName(), dispatcher.getStats());
+			}
+		}
+		
+		return( result );
 	}
 	
 	protected void
 	queueRequest(
 		DiskAccessRequestImpl	request )
 	{
+		File	file = request.getFile().getLinkedFile();
+		
 		requestDispatcher	dispatcher;
 		
-		if ( dispatchers.length == 1 ){
+		synchronized( volume_dispatcher_map ){
 
-			dispatcher = dispatchers[0];
+			long	now = SystemTime.getMonotonousTime();
 			
-		}else{
+			if ( now - last_check > 60000 ){
 			
-			synchronized( torrent_dispatcher_map ){
+					// files get moved about, forget the volumes seen so far
 				
-				long	now = System.currentTimeMillis();
+				last_check	= now;
 				
-				boolean	check = false;
+				volume_cache.clear();
+			}
 				
-				if ( now - last_check > 60000 || now < last_check ){
+			Object	volume = getVolume( file );
 					
-					check		= true;
-					last_check	= now;
-				}
+			dispatcher = volume_dispatcher_map.get( volume );
 				
-				if ( check ){
+			if ( dispatcher == null ){
 					
-					Iterator	it = torrent_dispatcher_map.values().iterator();
+				dispatcher = new requestDispatcher( String.valueOf( volume ), volume_dispatcher_map.size());
 					
-					while( it.hasNext()){
-						
-						requestDispatcher	d = (requestDispatcher)it.next();
-						
-						long	last_active = d.getLastRequestTime();
-						
-						if ( now - last_active > 60000 ){
-													
-							it.remove();
-							
-						}else if ( now < last_active ){
-							
-							d.setLastRequestTime( now );
-						}
-					}
-				}
-				
-				TOTorrent	torrent = request.getFile().getTorrentFile().getTorrent();
-						
-				dispatcher = (requestDispatcher)torrent_dispatcher_map.get(torrent);			
+				volume_dispatcher_map.put( volume, dispatcher );
+			}
+		}
+		
+		dispatcher.queue( request, file==null?"":file.getPath());
+	}
 	
-				if ( dispatcher == null ){
-					
-					int	min_index 	= 0;
-					int	min_size	= Integer.MAX_VALUE;
-					
-					for (int i=0;i<dispatchers.length;i++){
-						
-						int	size = dispatchers[i].size();
-						
-						if ( size == 0 ){
-							
-							min_index = i;
-							
-							break;
-						}
-						
-						if ( size < min_size ){
-							
-							min_size 	= size;
-							min_index	= i;
-						}
-					}
-					
-					dispatcher = dispatchers[min_index];
-					
-					torrent_dispatcher_map.put( torrent, dispatcher );
-				}
+	private Object
+	getVolume(
+		File		file )
+	{
+			// volume_dispatcher_map monitor held
+		
+		File	dir = file==null?null:file.getParentFile();
+		
+		if ( dir == null ){
+			
+			return( DEFAULT_VOLUME );
+		}
+		
+		Object	volume = volume_cache.get( dir );
+		
+		if ( volume == null ){
+			
+			volume = DEFAULT_VOLUME;
+				
+				// file may not have been created yet
+			
+			File	existing = dir;
+			
+			while( existing != null && !existing.exists()){
+				
+				existing = existing.getParentFile();
+			}
+			
+			if ( existing != null ){
+				
+				try{
+					volume = Files.getFileStore( existing.toPath());
 				
-				dispatcher.setLastRequestTime( now );
+				}catch( Throwable e ){
+				}
 			}
+			
+			volume_cache.put( dir, volume );
 		}
 		
-		dispatcher.queue( request );
+		return( volume );
 	}
 	
 	protected void
@@ -281,7 +300,7 @@ DiskAccessControllerInstance
 	{
 		int	mb_diff;
 				
-		synchronized( torrent_dispatcher_map ){
+		synchronized( volume_dispatcher_map ){
 			
 			int	old_mb = (int)(request_bytes_queued/(1024*1024));
 			
@@ -330,7 +349,7 @@ DiskAccessControllerInstance
 	{
 		int	mb_diff;
 		
-		synchronized( torrent_dispatcher_map ){
+		synchronized( volume_dispatcher_map ){
 			
 			int	old_mb = (int)(request_bytes_queued/(1024*1024));
 			
@@ -352,46 +371,65 @@ DiskAccessControllerInstance
 	protected String
 	getString()
 	{
+		String	volumes = "";
+		
+		synchronized( volume_dispatcher_map ){
+			
+			for ( requestDispatcher dispatcher: volume_dispatcher_map.values()){
+				
+				volumes += (volumes.length()==0?"":";") + dispatcher.getString();
+			}
+		}
+		
 		return( 
 			name + 
 			",agg=" + enable_aggregation +
 			",max_t=" + max_threads +
+			",vol_t=" + volume_threads +
 			",max_mb=" + max_mb_queued +
 			",q_byte=" + DisplayFormatters.formatByteCountToKiBEtc( request_bytes_queued ) +
 			",q_req=" + requests_queued +
 			",t_req=" + total_requests +
 			",t_byte=" + DisplayFormatters.formatByteCountToKiBEtc( total_bytes ) +
-			",io=" + io_count );
+			",io=" + io_count.get() +
+			",vol=[" + volumes + "]" );
 	}
 	
 	protected class
 	requestDispatcher
 	{
+		private String		volume;
 		private int			index;
-		private AEThread2[]	threads		= new AEThread2[invert_threads?max_threads:1];
+		private AEThread2[]	threads		= new AEThread2[volume_threads];
 		private int			active_threads;
 		
-		private LinkedList	requests 	= new LinkedList();
-		
-		private Map			request_map	= new HashMap();
-		private long		last_request_map_tidy;
+		private DiskAccessRequestQueue	requests 	= new DiskAccessRequestQueue( latency_window );
 		
 		private AESemaphore	request_sem		= new AESemaphore("DiskAccessControllerInstance:requestDispatcher:request" );
 		private AESemaphore	schedule_sem	= new AESemaphore("DiskAccessControllerInstance:requestDispatcher:schedule", 1 );
 		
-		
-		private long	last_request_time;
+		private long	wait_time;
+		private final AtomicLong	service_time	= new AtomicLong();	// updated by the volume's threads outside the lock
 				
 		protected
 		requestDispatcher(
-			int	_index )
+			String	_volume,
+			int		_index )
 		{
+			volume	= _volume;
 			index	= _index;
 		}
 		
+		protected String
+		getName()
+		{
+			return( volume );
+		}
+		
 		protected void
 		queue(
-			DiskAccessRequestImpl			request )
+			DiskAccessRequestImpl			request,
+			String							path )
 		{
 			if ( tls.get() != null ){
 				
@@ -424,7 +462,7 @@ DiskAccessControllerInstance
 					
 						// io_time += ( io_end - io_start );
 
-					io_count++;
+					io_count.incrementAndGet();
 
 					Debug.printStackTrace(e);
 				}
@@ -439,74 +477,7 @@ DiskAccessControllerInstance
 					
 					total_bytes	+= request.getSize();
 					
-					boolean	added = false;
-					
-					int	priority = request.getPriority();
-										
-					if ( priority >= 0 ){
-						
-						int	pos = 0;
-						
-						for (Iterator it = requests.iterator();it.hasNext();){
-							
-							DiskAccessRequestImpl	r = (DiskAccessRequestImpl)it.next();
-						
-							if ( r.getPriority() < priority ){
-								
-								requests.add( pos, request );
-								
-								added = true;
-								
-								break;
-							}
-							
-							pos++;
-						}
-					}
-					
-					if ( !added ){
-						
-						requests.add( request );
-					}
-					
-					if ( enable_aggregation ){
-						
-						Map	m = (Map)request_map.get( request.getFile());
-						
-						if ( m == null ){
-							
-							m = new HashMap();
-							
-							request_map.put( request.getFile(), m ); 
-						}
-						
-						m.put( new Long( request.getOffset()), request );
-						
-						long now = SystemTime.getCurrentTime();
-						
-						if ( now < last_request_map_tidy || now - last_request_map_tidy > 30000 ){
-							
-								// check for and discard manky old files from stopped/removed
-								// downloads
-							
-							last_request_map_tidy = now;
-							
-							Iterator	it = request_map.entrySet().iterator();
-							
-							while( it.hasNext()){
-								
-								Map.Entry	entry = (Map.Entry)it.next();
-								
-								if (((HashMap)entry.getValue()).size() == 0 ){
-									
-									if (!((CacheFile)entry.getKey()).isOpen()){
-																				
-										it.remove();
-									}
-								}
-							}
-						}
-					}
+					requests.add( request, path, SystemTime.getMonotonousTime());
 					
 					// System.out.println( "request queue: req = " + requests.size() + ", bytes = " + request_bytes_queued );
 					
@@ -517,23 +488,39 @@ DiskAccessControllerInstance
 			}
 		}
 	
-		protected long
-		getLastRequestTime()
+		protected int
+		size()
 		{
-			return( last_request_time );
+			synchronized( requests ){
+				
+				return( requests.size());
+			}
 		}
 		
-		protected void
-		setLastRequestTime(
-			long	l )
+		protected long[]
+		getStats()
 		{
-			last_request_time	= l;
+			synchronized( requests ){
+				
+				return( new long[]{ requests.getTotalServed(), wait_time, service_time.get()/1000000 });
+			}
 		}
 		
-		protected int
-		size()
+		protected String
+		getString()
 		{
-			return( requests.size());
+			synchronized( requests ){
+				
+				long	served = requests.getTotalServed();
+				
+				return(
+					volume +
+					":q=" + requests.size() +
+					",served=" + served +
+					",expired=" + requests.getTotalExpired() +
+					",wait=" + ( served==0?0:wait_time/served ) + "ms" +
+					",service=" + ( served==0?0:service_time.get()/served/1000 ) + "us" );
+			}
 		}
 		
 		protected void
@@ -565,34 +552,29 @@ DiskAccessControllerInstance
 										List					aggregated 	= null;
 										
 										try{
-											if ( invert_threads ){
+												// one thread at a time picks the next requests so the ones
+												// taken for aggregation are accounted for in the semaphore
 												
-												schedule_sem.reserve();
-											}
+											schedule_sem.reserve();
 										
 											if ( request_sem.reserve( 30000 )){
 												
 												synchronized( requests ){
 			
-													request = (DiskAccessRequestImpl)requests.remove(0);
+													long	now = SystemTime.getMonotonousTime();
 													
-													if ( enable_aggregation ){
-														
-														CacheFile	file = request.getFile();
+													request = requests.next( now );
+													
+													if ( request == null ){
 														
-														Map	file_map = (Map)request_map.get( file );
-															
-															// it is possible for the file_map to be null here due to
-															// the fact that the entries can be zero sized even though 
-															// requests for the file are outstanding (as we key on non-unique
-															// request.offset)
+														Debug.out( "request queue empty" );
 														
-														if ( file_map == null ){
-															
-															file_map = new HashMap();
-														}
+													}else{
 														
-														file_map.remove( new Long( request.getOffset()));
+														wait_time += now - request.getQueueTime();
+													}
+													
+													if ( request != null && enable_aggregation ){
 																							
 														if ( request.getPriority() < 0 && !request.isCancelled()){
 																
@@ -605,11 +587,7 @@ DiskAccessControllerInstance
 																	
 																	int	current_size = current.getSize();
 																	
-																	long	end = current.getOffset() + current_size;
-																					
-																		// doesn't matter if we remove from this and don't end up using it
-																	
-																	DiskAccessRequestImpl next = (DiskAccessRequestImpl)file_map.remove( new Long( end ));
+																	DiskAccessRequestImpl next = requests.getContiguous( current );
 																	
 																	if ( 	next == null || next.isCancelled() ||
 																			!next.canBeAggregatedWith( request )){
@@ -619,6 +597,8 @@ DiskAccessControllerInstance
 																	
 																	requests.remove( next );
 																	
+																	wait_time += now - next.getQueueTime();
+																	
 																	if ( !request_sem.reserve( 30000 )){
 																		
 																			// semaphore should already be > 0 as we've removed an element...
@@ -657,8 +637,7 @@ DiskAccessControllerInstance
 																	System.out.println( 
 																			"aggregated read: requests=" + aggregated.size() + 
 																			", size=" + aggregated_bytes + 
-																			", a_reqs=" + requests.size() + 
-																			", f_reqs=" + file_map.size());
+																			", a_reqs=" + requests.size());
 																	*/
 			
 																}else{
@@ -672,10 +651,7 @@ DiskAccessControllerInstance
 											}
 										}finally{
 											
-											if ( invert_threads ){
-												
-												schedule_sem.release();
-											}
+											schedule_sem.release();
 										}
 										
 										try{
@@ -694,9 +670,11 @@ DiskAccessControllerInstance
 													
 													long	io_end = SystemTime.getHighPrecisionCounter();
 	
-													io_time += ( io_end - io_start );
+													io_time.addAndGet( io_end - io_start );
 													
-													io_count++;
+													service_time.addAndGet( io_end - io_start );
+													
+													io_count.incrementAndGet();
 													
 													for (int i=0;i<requests.length;i++){
 														
@@ -716,9 +694,11 @@ DiskAccessControllerInstance
 													
 													long	io_end = SystemTime.getHighPrecisionCounter();
 	
-													io_time += ( io_end - io_start );
+													io_time.addAndGet( io_end - io_start );
+													
+													service_time.addAndGet( io_end - io_start );
 	
-													io_count++;
+													io_count.incrementAndGet();
 													
 													total_single_bytes += request.getSize();
 													
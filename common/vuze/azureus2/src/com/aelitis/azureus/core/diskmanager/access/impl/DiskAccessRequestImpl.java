@@ -51,6 +51,12 @@ DiskAccessRequestImpl
 	
 	private volatile boolean	cancelled;
 	
+		// set by the dispatcher when queued
+	
+	private String		queue_path;
+	private long		queue_time;
+	private long		queue_seq;
+	
 	protected
 	DiskAccessRequestImpl(
 		CacheFile					_file,
@@ -264,4 +270,33 @@ DiskAccessRequestImpl
 	{
 		return( listener );
 	}
+	
+	protected void
+	setQueued(
+		String	path,
+		long	time,
+		long	seq )
+	{
+		queue_path	= path;
+		queue_time	= time;
+		queue_seq	= seq;
+	}
+	
+	protected String
+	getQueuePath()
+	{
+		return( queue_path );
+	}
+	
+	protected long
+	getQueueTime()
+	{
+		return( queue_time );
+	}
+	
+	protected long
+	getQueueSequence()
+	{
+		return( queue_seq );
+	}
 }
@@ -0,0 +1,241 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.diskmanager.access.impl;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.TreeSet;
+
+/**
+ * Request queue of one volume. Requests with a priority go first, in priority
+ * order, the rest are served in an elevator sweep by (file, offset) so that the
+ * disk head moves one way across the files. The oldest request, once it has waited
+ * longer than the latency window, is served regardless of its position, but only
+ * one pick in {@link #EXPIRED_PICK_INTERVAL}, and the sweep then carries on from
+ * where it was. Under a sustained backlog everything is past the window, serving it
+ * oldest first would turn the sweep into random seeks.
+ *
+ * Not thread safe, the dispatcher holds its lock.
+ */
+
+public class
+DiskAccessRequestQueue
+{
+	private static final Comparator<DiskAccessRequestImpl>	position_comparator =
+		new Comparator<DiskAccessRequestImpl>()
+		{
+			public int
+			compare(
+				DiskAccessRequestImpl	r1,
+				DiskAccessRequestImpl	r2 )
+			{
+				int	res = r1.getQueuePath().compareTo( r2.getQueuePath());
+
+				if ( res == 0 ){
+
+					long	l = r1.getOffset() - r2.getOffset();
+
+					if ( l == 0 ){
+
+						l = r1.getQueueSequence() - r2.getQueueSequence();
+					}
+
+					res = l<0?-1:(l>0?1:0);
+				}
+
+				return( res );
+			}
+		};
+
+	protected static final int	EXPIRED_PICK_INTERVAL	= 8;
+
+	private final long	latency_window;
+
+	private final LinkedList<DiskAccessRequestImpl>		priority_requests 	= new LinkedList<DiskAccessRequestImpl>();
+	private final TreeSet<DiskAccessRequestImpl>		sweep_requests		= new TreeSet<DiskAccessRequestImpl>( position_comparator );
+	private final LinkedHashSet<DiskAccessRequestImpl>	age_requests		= new LinkedHashSet<DiskAccessRequestImpl>();
+
+	private DiskAccessRequestImpl	last_served;
+
+	private long	next_seq;
+
+	private int		picks_since_expired	= EXPIRED_PICK_INTERVAL;
+	private boolean	expired_pick;
+
+	private long	total_served;
+	private long	total_expired;
+
+	protected
+	DiskAccessRequestQueue(
+		long		_latency_window )
+	{
+		latency_window	= _latency_window;
+	}
+
+	protected void
+	add(
+		DiskAccessRequestImpl	request,
+		String					path,
+		long					now )
+	{
+		request.setQueued( path, now, next_seq++ );
+
+		int	priority = request.getPriority();
+
+		if ( priority >= 0 ){
+
+			ListIterator<DiskAccessRequestImpl>	it = priority_requests.listIterator();
+
+			while( it.hasNext()){
+
+				if ( it.next().getPriority() < priority ){
+
+					it.previous();
+
+					break;
+				}
+			}
+
+			it.add( request );
+
+		}else{
+
+			sweep_requests.add( request );
+
+			age_requests.add( request );
+		}
+	}
+
+	protected DiskAccessRequestImpl
+	next(
+		long		now )
+	{
+		expired_pick = false;
+
+		if ( !priority_requests.isEmpty()){
+
+			total_served++;
+
+			return( priority_requests.removeFirst());
+		}
+
+		if ( sweep_requests.isEmpty()){
+
+			return( null );
+		}
+
+		DiskAccessRequestImpl	request = null;
+
+		Iterator<DiskAccessRequestImpl>	it = age_requests.iterator();
+
+		DiskAccessRequestImpl	oldest = it.next();
+
+		if ( 	picks_since_expired >= EXPIRED_PICK_INTERVAL &&
+				now - oldest.getQueueTime() > latency_window ){
+
+			picks_since_expired = 0;
+
+			total_expired++;
+
+				// out of the sweep, it and anything aggregated with it leave the sweep
+				// position alone
+
+			expired_pick = true;
+
+			request = oldest;
+
+		}else{
+
+			picks_since_expired++;
+
+			if ( last_served != null ){
+
+				request = sweep_requests.higher( last_served );
+			}
+
+			if ( request == null ){
+
+					// end of the sweep, start again from the first file
+
+				request = sweep_requests.first();
+			}
+		}
+
+		remove( request );
+
+		return( request );
+	}
+
+		/**
+		 * @return the queued request following the given one on disk if it starts
+		 * right where the given one ends, still queued until taken with {@link #remove}
+		 */
+
+	protected DiskAccessRequestImpl
+	getContiguous(
+		DiskAccessRequestImpl	current )
+	{
+		DiskAccessRequestImpl	next = sweep_requests.higher( current );
+
+		if ( 	next == null ||
+				!next.getQueuePath().equals( current.getQueuePath()) ||
+				next.getOffset() != current.getOffset() + current.getSize()){
+
+			return( null );
+		}
+
+		return( next );
+	}
+
+	protected void
+	remove(
+		DiskAccessRequestImpl	request )
+	{
+		sweep_requests.remove( request );
+
+		age_requests.remove( request );
+
+		if ( !expired_pick ){
+
+			last_served = request;
+		}
+
+		total_served++;
+	}
+
+	protected int
+	size()
+	{
+		return( priority_requests.size() + sweep_requests.size());
+	}
+
+	protected long
+	getTotalServed()
+	{
+		return( total_served );
+	}
+
+	protected long
+	getTotalExpired()
+	{
+		return( total_expired );
+	}
+}
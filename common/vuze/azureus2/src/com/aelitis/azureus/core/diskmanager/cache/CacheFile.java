@@ -49,6 +49,13 @@ CacheFile
 	public TOTorrentFile
 	getTorrentFile();
 	
+		/**
+		 * @return the file actually accessed on disk, after any linking
+		 */
+	
+	public File
+	getLinkedFile();
+	
 	public boolean
 	exists();
 		
@@ -74,6 +74,27 @@ CacheFileManagerStats
 	public long
 	getFileWriteCount();
 	
+		// reads that couldn't be satisfied from the cache, getCacheReadCount being the hits
+	
+	public long
+	getCacheMissCount();
+	
+		// times the cache was full and had to flush to make space
+	
+	public long
+	getCacheEvictionCount();
+	
+	public long
+	getFlushCount();
+	
+		// micro seconds
+	
+	public long
+	getAverageFlushTime();
+	
+	public long
+	getMaxFlushTime();
+	
 		// returns the number of bytes in the requested range that are in cache
 	
 	public boolean[] getBytesInCache(TOTorrent torrent, long[] absoluteOffsets, long[] lengths);
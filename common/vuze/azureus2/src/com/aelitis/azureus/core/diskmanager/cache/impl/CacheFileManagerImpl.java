@@ -29,6 +29,7 @@ package com.aelitis.azureus.core.diskmanager.cache.impl;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.gudy.azureus2.core3.config.COConfigurationManager;
 import org.gudy.azureus2.core3.logging.LogEvent;
@@ -114,7 +115,7 @@ CacheFileManagerImpl
 	protected long		cache_files_not_smaller_than;
 	
 	protected long		cache_minimum_free_size;
-	protected long		cache_space_free;
+	protected AtomicLong	cache_space_free	= new AtomicLong();
 
 	private long	cache_file_id_next	= 0;
 	
@@ -125,24 +126,35 @@ CacheFileManagerImpl
 	protected WeakHashMap		cache_files			= new WeakHashMap();
 	protected WeakHashMap		updated_cache_files	= null;
 	
-		// access order
+		// entries are spread over segments by file and offset, each with its own monitor
+		// so that allocations, hits and flushes of different torrents don't contend
 	
-	protected LinkedHashMap		cache_entries = new LinkedHashMap(1024, 0.75f, true );
+	protected int				cache_segment_count		= COConfigurationManager.getIntParameter( "diskmanager.perf.cache.segments" );
+	protected int				cache_protected_percent	= COConfigurationManager.getIntParameter( "diskmanager.perf.cache.protected.percent" );
+	
+	protected CacheSegment[]	segments;
 	
 	protected CacheFileManagerStatsImpl	stats;
 	
 
 	protected Map	torrent_to_cache_file_map	= new LightHashMap();
 	
-	protected long				cache_bytes_written;
-	protected long				cache_bytes_read;
-	protected long				file_bytes_written;
-	protected long				file_bytes_read;
+	protected final AtomicLong	cache_bytes_written	= new AtomicLong();
+	protected final AtomicLong	cache_bytes_read	= new AtomicLong();
+	protected final AtomicLong	file_bytes_written	= new AtomicLong();
+	protected final AtomicLong	file_bytes_read		= new AtomicLong();
+	
+	protected final AtomicLong	cache_read_count	= new AtomicLong();
+	protected final AtomicLong	cache_read_misses	= new AtomicLong();
+	protected final AtomicLong	cache_write_count	= new AtomicLong();
+	protected final AtomicLong	file_read_count		= new AtomicLong();
+	protected final AtomicLong	file_write_count	= new AtomicLong();
 	
-	protected long				cache_read_count;
-	protected long				cache_write_count;
-	protected long				file_read_count;
-	protected long				file_write_count;
+	protected final AtomicLong	cache_evictions		= new AtomicLong();
+	
+	protected final AtomicLong	flush_count			= new AtomicLong();
+	protected final AtomicLong	flush_time			= new AtomicLong();
+	protected final AtomicLong	flush_time_max		= new AtomicLong();
 	
 	protected AEMonitor			this_mon	= new AEMonitor( "CacheFileManager" );
 	
@@ -201,7 +213,18 @@ CacheFileManagerImpl
 		
 		cache_minimum_free_size	= cache_size/4;
 		
-		cache_space_free		= cache_size;
+		cache_space_free.set( cache_size );
+		
+		int	segment_count = Math.max( 1, cache_segment_count );
+		
+		long	max_protected_size = cache_size * Math.max( 0, Math.min( 100, cache_protected_percent )) / 100 / segment_count;
+		
+		segments = new CacheSegment[ segment_count ];
+		
+		for (int i=0;i<segments.length;i++){
+			
+			segments[i] = new CacheSegment( max_protected_size );
+		}
 		
 		stats = new CacheFileManagerStatsImpl( this );
 		
@@ -371,27 +394,31 @@ CacheFileManagerImpl
 			
 			CacheEntry	oldest_entry	= null;
 			
-			try{
-				this_mon.enter();
+			long	free = cache_space_free.get();
 			
-				if ( length < cache_space_free || cache_space_free == cache_size ){
+			if ( length < free || free == cache_size ){
 				
-					ok	= true;
+				ok	= true;
+				
+			}else{
+				
+				oldest_entry = getVictim();
+				
+				if ( oldest_entry == null ){
 					
-				}else{
+						// everything released in the meantime
 					
-					oldest_entry = (CacheEntry)cache_entries.keySet().iterator().next();
+					ok	= true;
 				}
-			}finally{
-				
-				this_mon.exit();
 			}
 			
 			if ( !ok ){
 				
 				log	= true;
 				
-				long	old_free	= cache_space_free;
+				cache_evictions.incrementAndGet();
+				
+				long	old_free	= cache_space_free.get();
 			
 				CacheFileWithCache	oldest_file = oldest_entry.getFile();
 				
@@ -415,7 +442,7 @@ CacheFileManagerImpl
 					}
 				}
 				
-				long	flushed = cache_space_free - old_free;
+				long	flushed = cache_space_free.get() - old_free;
 				
 				if (Logger.isEnabled()) {
 					TOTorrentFile tf = file.getTorrentFile();
@@ -425,23 +452,12 @@ CacheFileManagerImpl
 									+ oldest_file.getName()));
 				}
 				
-				if ( flushed == 0 ){
-				
-					try{
-						this_mon.enter();
-						
-						if (	cache_entries.size() > 0 &&
-								(CacheEntry)cache_entries.keySet().iterator().next() == oldest_entry ){
-							
-								// hmm, something wrong with cache as the flush should have got rid
-								// of at least the oldest entry
+				if ( flushed == 0 && getSegment( oldest_entry ).contains( oldest_entry )){
 							
-							throw( new CacheFileManagerException( null, "Cache inconsistent: 0 flushed"));
-						}
-					}finally{
-						
-						this_mon.exit();
-					}
+						// hmm, something wrong with cache as the flush should have got rid
+						// of at least the oldest entry
+					
+					throw( new CacheFileManagerException( null, "Cache inconsistent: 0 flushed"));
 				}
 			}
 		}
@@ -460,6 +476,51 @@ CacheFileManagerImpl
 		return( entry );
 	}
 	
+	protected CacheSegment
+	getSegment(
+		CacheEntry		entry )
+	{
+		int	hash = System.identityHashCode( entry.getFile()) ^ (int)( entry.getFilePosition() >>> 20 );
+		
+		return( segments[ ( hash & 0x7fffffff ) % segments.length ]);
+	}
+	
+		/**
+		 * Picks the least recently used entry on probation across the segments, or of
+		 * the protected ones if none is on probation
+		 */
+	
+	protected CacheEntry
+	getVictim()
+	{
+		CacheEntry	victim 				= null;
+		boolean		victim_protected	= true;
+		
+		for (int i=0;i<segments.length;i++){
+			
+			CacheSegment	segment = segments[i];
+			
+			CacheEntry	entry = segment.getVictim();
+			
+			if ( entry == null ){
+				
+				continue;
+			}
+			
+			boolean	is_protected = segment.isProtected( entry );
+			
+			if ( 	victim == null ||
+					( victim_protected && !is_protected ) ||
+					( victim_protected == is_protected && entry.getLastUsed() < victim.getLastUsed())){
+				
+				victim				= entry;
+				victim_protected	= is_protected;
+			}
+		}
+		
+		return( victim );
+	}
+	
 	protected void
 	cacheStatsAndCleaner()
 	{		
@@ -487,7 +548,9 @@ CacheFileManagerImpl
 
 						cleaner_ticks	= CACHE_CLEANER_TICKS;
 
-						final Set	dirty_files	= new HashSet();
+							// flush in path order so the files of a torrent are written in disk order
+						
+						final Map	dirty_files	= new TreeMap();
 
 						final long	oldest	=SystemTime.getCurrentTime() - DIRTY_CACHE_WRITE_MAX_AGE;
 
@@ -501,31 +564,33 @@ CacheFileManagerImpl
 								updated_cache_files	= null;
 							}
 
-							if ( cache_entries.size() > 0 ){
+							// System.out.println( "cache file = " + cache_files.size() + ", torrent map = " + torrent_to_cache_file_map.size());
 
-								Iterator it = cache_entries.keySet().iterator();
+						}finally{
 
-								while( it.hasNext()){
+							this_mon.exit();
+						}
 
-									CacheEntry	entry = (CacheEntry)it.next();
+						for (int i=0;i<segments.length;i++){
 
-									// System.out.println( "oldest entry = " + ( now - entry.getLastUsed()));
+							Iterator it = segments[i].getEntries().iterator();
 
-									if ( entry.isDirty()){
+							while( it.hasNext()){
 
-										dirty_files.add( entry.getFile());
-									}
-								}
-							}
+								CacheEntry	entry = (CacheEntry)it.next();
 
-							// System.out.println( "cache file = " + cache_files.size() + ", torrent map = " + torrent_to_cache_file_map.size());
+								// System.out.println( "oldest entry = " + ( now - entry.getLastUsed()));
 
-						}finally{
+								if ( entry.isDirty()){
 
-							this_mon.exit();
+									CacheFileWithCache	file = entry.getFile();
+
+									dirty_files.put( file.getLinkedFile().getPath() + "/" + System.identityHashCode( file ), file );
+								}
+							}
 						}
 
-						Iterator	it = dirty_files.iterator();
+						Iterator	it = dirty_files.values().iterator();
 
 						while( it.hasNext()){
 
@@ -576,34 +641,37 @@ CacheFileManagerImpl
 	
 		throws CacheFileManagerException
 	{
-		try{
-			this_mon.enter();
-			
-			cache_space_free	-= new_entry.getLength();
-			
-				// 	System.out.println( "Total cache space = " + cache_space_free );
+		cache_space_free.addAndGet( -new_entry.getLength());
+		
+			// 	System.out.println( "Total cache space = " + cache_space_free );
+	
+		getSegment( new_entry ).add( new_entry );
 		
-			cache_entries.put( new_entry, new_entry );
+		if ( DEBUG ){
+			
+			try{
+				this_mon.enter();
 			
-			if ( DEBUG ){
-				
 				CacheFileWithCache	file	= new_entry.getFile();
 								
 				long	total_cache_size	= 0;
 				
 				int		my_count = 0;
 
-				Iterator it = cache_entries.keySet().iterator();
-				
-				while( it.hasNext()){
-					
-					CacheEntry	entry = (CacheEntry)it.next();
+				for (int i=0;i<segments.length;i++){
 					
-					total_cache_size	+= entry.getLength();
-					
-					if ( entry.getFile() == file ){
+					Iterator it = segments[i].getEntries().iterator();
+				
+					while( it.hasNext()){
+						
+						CacheEntry	entry = (CacheEntry)it.next();
 						
-						my_count++;
+						total_cache_size	+= entry.getLength();
+						
+						if ( entry.getFile() == file ){
+							
+							my_count++;
+						}
 					}
 				}
 			
@@ -618,7 +686,7 @@ CacheFileManagerImpl
 					//System.out.println( "Cache: file_count = " + my_count );
 				}
 				
-				if ( total_cache_size != cache_size - cache_space_free ){
+				if ( total_cache_size != cache_size - cache_space_free.get()){
 					
 					Debug.out( "Cache inconsistency: used_size = " + total_cache_size + ", free = " + cache_space_free + ", size = " + cache_size );
 					
@@ -628,10 +696,10 @@ CacheFileManagerImpl
 					
 					//System.out.println( "Cache: usage = " + total_cache_size );
 				}
+			}finally{
+				
+				this_mon.exit();
 			}
-		}finally{
-			
-			this_mon.exit();
 		}
 	}
 	
@@ -641,24 +709,11 @@ CacheFileManagerImpl
 	
 		throws CacheFileManagerException
 	{
-		try{
-			this_mon.enter();
-		
-				// note that the "get" operation update the MRU in cache_entries
+		if ( !getSegment( entry ).used( entry )){
 			
-			if ( cache_entries.get( entry ) == null ){
-				
-				Debug.out( "Cache inconsistency: entry missing on usage" );
-				
-				throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on usage"));
-				
-			}else{
-				
-				entry.used();
-			}
-		}finally{
+			Debug.out( "Cache inconsistency: entry missing on usage" );
 			
-			this_mon.exit();
+			throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on usage"));
 		}
 	}
 	
@@ -670,37 +725,30 @@ CacheFileManagerImpl
 	{
 		entry.getBuffer().returnToPool();
 		
-		try{
-			this_mon.enter();
-			
-			cache_space_free	+= entry.getLength();
+		cache_space_free.addAndGet( entry.getLength());
+		
+		if ( !getSegment( entry ).remove( entry )){
 			
-			if ( cache_entries.remove( entry ) == null ){
-				
-				Debug.out( "Cache inconsistency: entry missing on removal" );
+			Debug.out( "Cache inconsistency: entry missing on removal" );
 
-				throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on removal"));
-			}
+			throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on removal"));
+		}
 
-			/*
-			if ( 	entry.getType() == CacheEntry.CT_READ_AHEAD ){
-				
-				if ( entry.getUsageCount() < 2 ){
-				
-					System.out.println( "ra: not used" );
-				
-				}else{
-				
-					System.out.println( "ra: used" );
-				}
-			}
-			*/
+		/*
+		if ( 	entry.getType() == CacheEntry.CT_READ_AHEAD ){
 			
-			// System.out.println( "Total cache space = " + cache_space_free );
-		}finally{
+			if ( entry.getUsageCount() < 2 ){
 			
-			this_mon.exit();
+				System.out.println( "ra: not used" );
+			
+			}else{
+			
+				System.out.println( "ra: used" );
+			}
 		}
+		*/
+		
+		// System.out.println( "Total cache space = " + cache_space_free );
 	}
 	
 	protected long
@@ -712,7 +760,7 @@ CacheFileManagerImpl
 	protected long
 	getCacheUsed()
 	{
-		long free = cache_space_free;
+		long free = cache_space_free.get();
 		
 		if ( free < 0 ){
 			
@@ -726,115 +774,139 @@ CacheFileManagerImpl
 	cacheBytesWritten(
 		long		num )
 	{
-		try{
-			this_mon.enter();
-			
-			cache_bytes_written	+= num;
-			
-			cache_write_count++;
-			
-		}finally{
-			
-			this_mon.exit();
-		}
+		cache_bytes_written.addAndGet( num );
+		
+		cache_write_count.incrementAndGet();
 	}
 	
 	protected void
 	cacheBytesRead(
 		int		num )
 	{
-		try{
-			this_mon.enter();
-			
-			cache_bytes_read	+= num;
-			
-			cache_read_count++;
-			
-		}finally{
-			
-			this_mon.exit();
-		}
+		cache_bytes_read.addAndGet( num );
+		
+		cache_read_count.incrementAndGet();
+	}
+	
+	protected void
+	cacheReadMissed()
+	{
+		cache_read_misses.incrementAndGet();
 	}
 	
 	protected void
 	fileBytesWritten(
 		long	num )
 	{
-		try{
-			this_mon.enter();
-			
-			file_bytes_written	+= num;
-			
-			file_write_count++;
-			
-		}finally{
-			
-			this_mon.exit();
-		}
+		file_bytes_written.addAndGet( num );
+		
+		file_write_count.incrementAndGet();
 	}
 	
 	protected void
 	fileBytesRead(
 		int		num )
 	{
-		try{
-			this_mon.enter();
-			
-			file_bytes_read	+= num;
+		file_bytes_read.addAndGet( num );
+		
+		file_read_count.incrementAndGet();
+	}
+	
+	protected void
+	cacheFlushed(
+		long	nanos )
+	{
+		flush_count.incrementAndGet();
+		
+		flush_time.addAndGet( nanos );
+		
+		while( true ){
 			
-			file_read_count++;
-		}finally{
+			long	max = flush_time_max.get();
 			
-			this_mon.exit();
+			if ( nanos <= max || flush_time_max.compareAndSet( max, nanos )){
+				
+				break;
+			}
 		}
 	}
 	
 	protected long
 	getBytesWrittenToCache()
 	{
-		return( cache_bytes_written );
+		return( cache_bytes_written.get());
 	}
 	
 	protected long
 	getBytesWrittenToFile()
 	{
-		return( file_bytes_written );
+		return( file_bytes_written.get());
 	}
 	
 	protected long
 	getBytesReadFromCache()
 	{
-		return( cache_bytes_read );
+		return( cache_bytes_read.get());
 	}
 	
 	protected long
 	getBytesReadFromFile()
 	{
-		return( file_bytes_read );
+		return( file_bytes_read.get());
 	}
 	
 	public long
 	getCacheReadCount()
 	{
-		return( cache_read_count );
+		return( cache_read_count.get());
+	}
+	
+	public long
+	getCacheMissCount()
+	{
+		return( cache_read_misses.get());
 	}
 	
 	public long
 	getCacheWriteCount()
 	{
-		return( cache_write_count );
+		return( cache_write_count.get());
 	}
 	
 	public long
 	getFileReadCount()
 	{
-		return( file_read_count );
+		return( file_read_count.get());
 	}
 	
 	public long
 	getFileWriteCount()
 	{
-		return( file_write_count );
+		return( file_write_count.get());
+	}
+	
+	public long
+	getCacheEvictionCount()
+	{
+		return( cache_evictions.get());
+	}
+	
+	public long
+	getFlushCount()
+	{
+		return( flush_count.get());
+	}
+	
+	public long
+	getFlushTime()
+	{
+		return( flush_time.get());
+	}
+	
+	public long
+	getMaxFlushTime()
+	{
+		return( flush_time_max.get());
 	}
 	
 	protected void
@@ -966,22 +1038,19 @@ CacheFileManagerImpl
 		try{
 			writer.indent();
 			
-			Iterator it;
-			
 				// grab a copy to avoid potential deadlock as we never take the manager monitor
 				// and then the file's own monitor, always the other way around
 			
-			try{
-				this_mon.enter();
-
-				it = new ArrayList( cache_entries.keySet()).iterator();
-
-			}finally{
+			List	entries = new ArrayList();
+			
+			for (int i=0;i<segments.length;i++){
 				
-				this_mon.exit();
+				entries.addAll( segments[i].getEntries());
 			}
 			
-			writer.println( "Entries = " + cache_entries.size());
+			Iterator it = entries.iterator();
+			
+			writer.println( "Entries = " + entries.size() + ", segments = " + segments.length );
 							
 			Set	files = new HashSet();
 			
@@ -195,6 +195,38 @@ CacheFileManagerStatsImpl
 		return( manager.getFileWriteCount());
 	}
 	
+	public long
+	getCacheMissCount()
+	{
+		return( manager.getCacheMissCount());
+	}
+	
+	public long
+	getCacheEvictionCount()
+	{
+		return( manager.getCacheEvictionCount());
+	}
+	
+	public long
+	getFlushCount()
+	{
+		return( manager.getFlushCount());
+	}
+	
+	public long
+	getAverageFlushTime()
+	{
+		long	count = manager.getFlushCount();
+		
+		return( count==0?0:manager.getFlushTime()/count/1000 );
+	}
+	
+	public long
+	getMaxFlushTime()
+	{
+		return( manager.getMaxFlushTime()/1000 );
+	}
+	
 	public boolean[] getBytesInCache(TOTorrent torrent, long[] absoluteOffsets, long[] lengths)
 	{
 		return manager.getBytesInCache( torrent, absoluteOffsets, lengths);
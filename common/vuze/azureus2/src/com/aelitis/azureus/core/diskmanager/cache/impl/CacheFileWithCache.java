@@ -184,6 +184,12 @@ CacheFileWithCache
 		return( torrent_file );
 	}
 	
+	public File
+	getLinkedFile()
+	{
+		return( file.getLinkedFile());
+	}
+	
 	protected void
 	updateStats()
 	{
@@ -408,6 +414,11 @@ CacheFileWithCache
 								"cacheRead: cache use ok [entries = " + used_entries + "]"));
 										
 				}else{
+					
+					if ( !recursive ){
+						
+						manager.cacheReadMissed();
+					}
 						
 					if (TRACE)
 						Logger.log(new LogEvent(torrent, LOGID,
@@ -1101,7 +1112,11 @@ CacheFileWithCache
 				
 			}
 			
+			long	write_start = SystemTime.getHighPrecisionCounter();
+			
 			getFMFile().write( buffers, multi_block_start );
+			
+			manager.cacheFlushed( SystemTime.getHighPrecisionCounter() - write_start );
 									
 			manager.fileBytesWritten( expected_overall_write );
 			
@@ -65,6 +65,12 @@ CacheFileWithoutCache
 		return( torrent_file );
 	}
 	
+	public File
+	getLinkedFile()
+	{
+		return( file.getLinkedFile());
+	}
+	
 	public boolean
 	exists()
 	{
@@ -73,6 +73,12 @@ CacheFileWithoutCacheMT
 		return( torrent_file );
 	}
 	
+	public File
+	getLinkedFile()
+	{
+		return( base_file.getLinkedFile());
+	}
+	
 	public boolean
 	exists()
 	{
@@ -0,0 +1,254 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.diskmanager.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.gudy.azureus2.core3.util.AEMonitor;
+
+/**
+ * One segment of the manager's cache entries. New entries go on probation and
+ * are only moved to the protected part when used again, so a sweep of read-ahead
+ * or written blocks that nobody reads back evicts itself rather than the blocks
+ * being served from the cache. When the protected part is over its share its
+ * least recently used entries go back on probation.
+ */
+
+public class
+CacheSegment
+{
+	private final long		max_protected_size;
+
+		// insertion order
+
+	private final LinkedHashMap<CacheEntry,CacheEntry>	probation_entries	= new LinkedHashMap<CacheEntry,CacheEntry>( 64 );
+
+		// access order
+
+	private final LinkedHashMap<CacheEntry,CacheEntry>	protected_entries	= new LinkedHashMap<CacheEntry,CacheEntry>( 64, 0.75f, true );
+
+	private long		protected_size;
+
+	private final AEMonitor	this_mon	= new AEMonitor( "CacheSegment" );
+
+	protected
+	CacheSegment(
+		long		_max_protected_size )
+	{
+		max_protected_size	= _max_protected_size;
+	}
+
+	protected void
+	add(
+		CacheEntry		entry )
+	{
+		try{
+			this_mon.enter();
+
+			probation_entries.put( entry, entry );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	protected boolean
+	used(
+		CacheEntry		entry )
+	{
+		try{
+			this_mon.enter();
+
+				// note that the "get" operation updates the MRU in protected_entries
+
+			if ( protected_entries.get( entry ) != null ){
+
+				entry.used();
+
+				return( true );
+			}
+
+			if ( !probation_entries.containsKey( entry )){
+
+				return( false );
+			}
+
+			entry.used();
+
+				// a read-ahead entry is used once by the read that caused it
+
+			int	promote_at = entry.getType() == CacheEntry.CT_READ_AHEAD?2:1;
+
+			if ( entry.getUsageCount() >= promote_at ){
+
+				probation_entries.remove( entry );
+
+				protected_entries.put( entry, entry );
+
+				protected_size += entry.getLength();
+
+				Iterator<CacheEntry>	it = protected_entries.keySet().iterator();
+
+				while( protected_size > max_protected_size && it.hasNext()){
+
+					CacheEntry	demoted = it.next();
+
+					if ( demoted == entry ){
+
+						break;
+					}
+
+					it.remove();
+
+					protected_size -= demoted.getLength();
+
+					probation_entries.put( demoted, demoted );
+				}
+			}
+
+			return( true );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	protected boolean
+	remove(
+		CacheEntry		entry )
+	{
+		try{
+			this_mon.enter();
+
+			if ( probation_entries.remove( entry ) != null ){
+
+				return( true );
+			}
+
+			if ( protected_entries.remove( entry ) != null ){
+
+				protected_size -= entry.getLength();
+
+				return( true );
+			}
+
+			return( false );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+		/**
+		 * @return the entry to evict from this segment, null if empty
+		 */
+
+	protected CacheEntry
+	getVictim()
+	{
+		try{
+			this_mon.enter();
+
+			if ( probation_entries.size() > 0 ){
+
+				return( probation_entries.keySet().iterator().next());
+			}
+
+			if ( protected_entries.size() > 0 ){
+
+				return( protected_entries.keySet().iterator().next());
+			}
+
+			return( null );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	protected boolean
+	isProtected(
+		CacheEntry		entry )
+	{
+		try{
+			this_mon.enter();
+
+			return( protected_entries.containsKey( entry ));
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	protected boolean
+	contains(
+		CacheEntry		entry )
+	{
+		try{
+			this_mon.enter();
+
+			return( probation_entries.containsKey( entry ) || protected_entries.containsKey( entry ));
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	protected int
+	size()
+	{
+		try{
+			this_mon.enter();
+
+			return( probation_entries.size() + protected_entries.size());
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	protected List<CacheEntry>
+	getEntries()
+	{
+		try{
+			this_mon.enter();
+
+			List<CacheEntry>	result = new ArrayList<CacheEntry>( probation_entries.size() + protected_entries.size());
+
+			result.addAll( probation_entries.keySet());
+
+			result.addAll( protected_entries.keySet());
+
+			return( result );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+}
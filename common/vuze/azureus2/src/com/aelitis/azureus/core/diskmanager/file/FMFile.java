@@ -51,6 +51,9 @@ FMFile
 	public FMFileOwner
 	getOwner();
 	
+	public File
+	getLinkedFile();
+	
 	public void
 	moveFile(
 		File		new_file )
@@ -272,7 +272,7 @@ FMFileImpl
 		access_mode	= mode;
 	}
 	
-	protected File
+	public File
 	getLinkedFile()
 	{
 		return( linked_file );
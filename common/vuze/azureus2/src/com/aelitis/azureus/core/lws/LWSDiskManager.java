@@ -134,6 +134,12 @@ LWSDiskManager
 				
 		return( reader.getStats());
 	}
+
+	public long[]
+	getUploadBlockCacheStats()
+	{
+		return( new long[]{ 0, 0, 0 });
+	}
 	
 	public void
 	start()
@@ -327,6 +333,21 @@ LWSDiskManager
 	{
 		throw( new RuntimeException( "hasOutstandingReadRequestForPiece not implemented" ));
 	}
+
+	public DirectByteBuffer
+	getCachedUploadBlock(
+		DiskManagerReadRequest		request )
+	{
+		return( null );
+	}
+
+	public DirectByteBuffer
+	cacheUploadBlock(
+		DiskManagerReadRequest		request,
+		DirectByteBuffer			data )
+	{
+		return( data );
+	}
 	
 	public boolean
 	hasOutstandingCheckRequestForPiece(
@@ -27,6 +27,10 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.gudy.azureus2.core3.util.*;
 
@@ -40,25 +44,39 @@ import com.aelitis.azureus.core.peermanager.messaging.*;
 
 /**
  * Priority-based outbound peer message queue.
+ * <p>
+ * Adding a message takes no lock, it is handed over through a concurrent queue and only moved
+ * into the queue proper by whoever next delivers or removes, so peers queueing haves and
+ * requests are never held up by a write in progress. The queue proper is a fifo per priority
+ * plus one for the message part way through being sent, which always goes out first.
  */
 public class 
 OutgoingMessageQueueImpl
 	implements OutgoingMessageQueue
 {
-  private final LinkedList 		queue		= new LinkedList();
+  private static final int SENDING = RawMessage.PRIORITY_HIGH + 1;  //queue index of the part sent message
+  
+  private final ConcurrentLinkedQueue	added	= new ConcurrentLinkedQueue();
+  
+  private final ArrayDeque[]	queue		= new ArrayDeque[ SENDING + 1 ];
+  private int					queue_size	= 0;
   private final AEMonitor	queue_mon	= new AEMonitor( "OutgoingMessageQueue:queue" );
 
-  private final ArrayList delayed_notifications = new ArrayList();
-  private final AEMonitor delayed_notifications_mon = new AEMonitor( "OutgoingMessageQueue:DN" );
+  	// number of messages added and not yet sent or removed, by id, so that removals can tell
+  	// without the lock that there's nothing to remove - which is nearly always the case
+  
+  private final ConcurrentHashMap	queued_ids	= new ConcurrentHashMap();
+  
+  private final ConcurrentLinkedQueue delayed_notifications = new ConcurrentLinkedQueue();
 
   private volatile ArrayList listeners 		= new ArrayList();  //copied-on-write
   private final AEMonitor listeners_mon		= new AEMonitor( "OutgoingMessageQueue:L");
   
-  private int total_size = 0;
-  private int total_data_size = 0;
+  private final AtomicInteger total_size = new AtomicInteger();
+  private final AtomicInteger total_data_size = new AtomicInteger();
   private boolean	priority_boost = false;
-  private RawMessage urgent_message = null;
-  private boolean destroyed = false;
+  private final AtomicReference urgent_message = new AtomicReference();
+  private volatile boolean destroyed = false;
   
   private MessageStreamEncoder stream_encoder;
   private Transport transport;
@@ -77,6 +95,10 @@ OutgoingMessageQueueImpl
    */
   public OutgoingMessageQueueImpl( MessageStreamEncoder stream_encoder ) {
     this.stream_encoder = stream_encoder;
+    
+    for( int i=0; i < queue.length; i++ ) {
+      queue[i] = new ArrayDeque( 4 );
+    }
   }
   
   public void
@@ -123,18 +145,24 @@ OutgoingMessageQueueImpl
     try{
       queue_mon.enter();
     
-      while( !queue.isEmpty() ) {
-      	((RawMessage)queue.remove( 0 )).destroy();
+      destroyAdded();
+      
+      for( int i=0; i < queue.length; i++ ) {
+        while( !queue[i].isEmpty() ) {
+          ((RawMessage)queue[i].removeFirst()).destroy();
+        }
       }
+      queue_size = 0;
     }finally{
       queue_mon.exit();
     }
-    total_size = 0;
-    total_data_size = 0;
+    queued_ids.clear();
+    total_size.set( 0 );
+    total_data_size.set( 0 );
     prev_sent.clear();
     listeners = new ArrayList();
     percent_complete = -1;
-    urgent_message = null;
+    urgent_message.set( null );
   }
   
   
@@ -142,18 +170,18 @@ OutgoingMessageQueueImpl
    * Get the total number of bytes ready to be transported.
    * @return total bytes remaining
    */
-  public int getTotalSize() {  return total_size;  }
+  public int getTotalSize() {  return total_size.get();  }
   
   public int
   getDataQueuedBytes()
   {
-	 return( total_data_size );
+	 return( total_data_size.get() );
   }
   
   public int
   getProtocolQueuedBytes()
   {
-	  return( total_size - total_data_size );
+	  return( total_size.get() - total_data_size.get() );
   }
   
   public boolean 
@@ -182,7 +210,7 @@ OutgoingMessageQueueImpl
    * Whether or not an urgent message (one that needs an immediate send, i.e. a no-delay message) is queued.
    * @return true if there's a message tagged for immediate write
    */
-  public boolean hasUrgentMessage() {  return urgent_message == null ? false : true;  }
+  public boolean hasUrgentMessage() {  return urgent_message.get() == null ? false : true;  }
   
   
   /**
@@ -227,47 +255,28 @@ OutgoingMessageQueueImpl
     	
 	    removeMessagesOfType( rmesg.messagesToRemove(), manual_listener_notify );
 	    
-	    try{
-	      queue_mon.enter();
+	    DirectByteBuffer[] payload = rmesg.getRawData();
+	    int	remaining = 0;
+	    for( int j=0; j < payload.length; j++ ) {
+	  	  remaining += payload[j].remaining(DirectByteBuffer.SS_NET);
+	    }
+	    total_size.addAndGet( remaining );
+	    if ( rmesg.getType() == Message.TYPE_DATA_PAYLOAD ){
+	  	  total_data_size.addAndGet( remaining );
+	    }
 	    
-	      int pos = 0;
-	      for( Iterator it = queue.iterator(); it.hasNext(); ) {
-	        RawMessage msg = (RawMessage)it.next();
-	        if( rmesg.getPriority() > msg.getPriority() 
-	          && msg.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ) {  //but don't insert in front of a half-sent message
-	          break;
-	        }
-	        pos++;
-	      }
-	      if( rmesg.isNoDelay() ) {
-	        urgent_message = rmesg;
-	      }
-	      queue.add( pos, rmesg );
-	      
-	      DirectByteBuffer[] payload = rmesg.getRawData();
-	      int	remaining = 0;
-	      for( int j=0; j < payload.length; j++ ) {
-	    	  remaining += payload[j].remaining(DirectByteBuffer.SS_NET);
-	      }
-	      total_size += remaining;
-	      if ( rmesg.getType() == Message.TYPE_DATA_PAYLOAD ){
-	    	  total_data_size += remaining;
-	      }
-	    }finally{
-	      queue_mon.exit();
+	    messageAdded( rmesg.getID() );
+	    
+	    if( rmesg.isNoDelay() ) {  //before it can be sent, as sending clears it only if it is still this message
+	      urgent_message.set( rmesg );
 	    }
 	    
+	    added.add( rmesg );  //slotted in by priority when next taken in under the queue lock
+	    
 	    if( manual_listener_notify ) {  //register listener event for later, manual notification
 	      NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_ADDED );
 	      item.message = rmesg;
-	      try {
-	        delayed_notifications_mon.enter();
-	        
-	        delayed_notifications.add( item );
-	      }
-	      finally {
-	        delayed_notifications_mon.exit();
-	      }
+	      delayed_notifications.add( item );
 	    }
 	    else { //do listener notification now
 	      ArrayList listeners_ref = listeners;
@@ -278,6 +287,81 @@ OutgoingMessageQueueImpl
 	      }
 	    }
     }
+    
+    if( destroyed ) {  //destroyed while adding, the queue has already been emptied
+      destroyAdded();
+    }
+  }
+  
+  
+  /**
+   * Move the messages added since the last call into the queue, by priority.
+   * Must be called holding queue_mon.
+   */
+  private void takeAdded() {
+    RawMessage msg;
+    
+    while(( msg = (RawMessage)added.poll()) != null ) {
+      int priority = msg.getPriority();
+      
+      if( priority < RawMessage.PRIORITY_LOW ) {
+        priority = RawMessage.PRIORITY_LOW;
+      }
+      else if( priority > RawMessage.PRIORITY_HIGH ) {
+        priority = RawMessage.PRIORITY_HIGH;
+      }
+      
+      queue[ priority ].addLast( msg );
+      queue_size++;
+    }
+  }
+  
+  
+  private void destroyAdded() {
+    RawMessage msg;
+    
+    while(( msg = (RawMessage)added.poll()) != null ) {
+      msg.destroy();
+    }
+  }
+  
+  
+  private void messageAdded( String id ) {
+    if( id == null )  id = "";
+    
+    AtomicInteger count = (AtomicInteger)queued_ids.get( id );
+    
+    if( count == null ) {
+      count = new AtomicInteger();
+      
+      AtomicInteger existing = (AtomicInteger)queued_ids.putIfAbsent( id, count );
+      
+      if( existing != null ) {
+        count = existing;
+      }
+    }
+    
+    count.incrementAndGet();
+  }
+  
+  
+  private void messageGone( RawMessage msg ) {
+    String id = msg.getID();
+    
+    AtomicInteger count = (AtomicInteger)queued_ids.get( id==null?"":id );
+    
+    if( count != null ) {
+      count.decrementAndGet();
+    }
+    
+    queue_size--;
+  }
+  
+  
+  private boolean isQueued( String id ) {
+    AtomicInteger count = (AtomicInteger)queued_ids.get( id==null?"":id );
+    
+    return count != null && count.get() > 0;
   }
   
 
@@ -295,54 +379,60 @@ OutgoingMessageQueueImpl
   public void removeMessagesOfType( Message[] message_types, boolean manual_listener_notify ) {
     if( message_types == null ) return;
     
+    boolean queued = false;
+    
+    for( int t=0; t < message_types.length && !queued; t++ ) {
+      queued = isQueued( message_types[t].getID() );
+    }
+    
+    if( !queued ) return;  //none added, so none to remove
+    
     ArrayList messages_removed = null;
     
     try{
       queue_mon.enter();
     
-      for( Iterator i = queue.iterator(); i.hasNext(); ) {
-        RawMessage msg = (RawMessage)i.next();
+      takeAdded();
+      
+      for( int p=SENDING-1; p >= 0; p-- ) {  //the part sent message never goes
+        for( Iterator i = queue[p].iterator(); i.hasNext(); ) {
+          RawMessage msg = (RawMessage)i.next();
         
-        for( int t=0; t < message_types.length; t++ ) {
-          boolean same_type = message_types[t].getID().equals( msg.getID() );
+          for( int t=0; t < message_types.length; t++ ) {
+            boolean same_type = message_types[t].getID().equals( msg.getID() );
           
-          if( same_type && msg.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ) {   //dont remove a half-sent message
-            if( msg == urgent_message ) urgent_message = null;
+            if( same_type && msg.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ) {   //dont remove a half-sent message
+              urgent_message.compareAndSet( msg, null );
             
-            DirectByteBuffer[] payload = msg.getRawData();
-            int remaining = 0;
-            for( int x=0; x < payload.length; x++ ) {
-            	remaining += payload[x].remaining(DirectByteBuffer.SS_NET);
-            }
-            total_size -= remaining;
-            if ( msg.getType() == Message.TYPE_DATA_PAYLOAD ){
-            	total_data_size -= remaining;
-            }
-            if( manual_listener_notify ) {
-              NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_REMOVED );
-              item.message = msg;
-              try {
-                delayed_notifications_mon.enter();
-                
-                delayed_notifications.add( item );
+              DirectByteBuffer[] payload = msg.getRawData();
+              int remaining = 0;
+              for( int x=0; x < payload.length; x++ ) {
+              	remaining += payload[x].remaining(DirectByteBuffer.SS_NET);
               }
-              finally {
-                delayed_notifications_mon.exit();
+              total_size.addAndGet( -remaining );
+              if ( msg.getType() == Message.TYPE_DATA_PAYLOAD ){
+              	total_data_size.addAndGet( -remaining );
               }
-            }
-            else {
-              if ( messages_removed == null ){
-              	messages_removed = new ArrayList();
+              if( manual_listener_notify ) {
+                NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_REMOVED );
+                item.message = msg;
+                delayed_notifications.add( item );
               }
-              messages_removed.add( msg );
-            }
-        		i.remove();
-            break;
-        	}
+              else {
+                if ( messages_removed == null ){
+                	messages_removed = new ArrayList();
+                }
+                messages_removed.add( msg );
+              }
+          		i.remove();
+          		messageGone( msg );
+              break;
+          	}
+          }
         }
       }
       
-      if ( queue.isEmpty()){
+      if ( queue_size == 0 ){
     	  percent_complete = -1;
       }
     }finally{
@@ -384,36 +474,46 @@ OutgoingMessageQueueImpl
    * @return true if the message was removed, false otherwise
    */
   public boolean removeMessage( Message message, boolean manual_listener_notify ) {
+    if( !isQueued( message.getID() ) ) {  //none of its type added
+      return false;
+    }
+    
     RawMessage msg_removed = null;
     
     try{
       queue_mon.enter();
 
-      for( Iterator it = queue.iterator(); it.hasNext(); ) {
-        RawMessage raw = (RawMessage)it.next();
-        
-        if( message.equals( raw.getBaseMessage() ) ) {
-          if( raw.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ) {  //dont remove a half-sent message
-            if( raw == urgent_message ) urgent_message = null;  
-            
-            DirectByteBuffer[] payload = raw.getRawData();
-            int remaining = 0;
-            for( int x=0; x < payload.length; x++ ) {
-            	remaining += payload[x].remaining(DirectByteBuffer.SS_NET);
-            }
-            total_size -= remaining;
-            if ( raw.getType() == Message.TYPE_DATA_PAYLOAD ){
-            	total_data_size -= remaining;
+      takeAdded();
+      
+search:
+      for( int p=queue.length-1; p >= 0; p-- ) {
+        for( Iterator it = queue[p].iterator(); it.hasNext(); ) {
+          RawMessage raw = (RawMessage)it.next();
+          
+          if( message.equals( raw.getBaseMessage() ) ) {
+            if( p != SENDING && raw.getRawData()[0].position(DirectByteBuffer.SS_NET) == 0 ) {  //dont remove a half-sent message
+              urgent_message.compareAndSet( raw, null );  
+              
+              DirectByteBuffer[] payload = raw.getRawData();
+              int remaining = 0;
+              for( int x=0; x < payload.length; x++ ) {
+              	remaining += payload[x].remaining(DirectByteBuffer.SS_NET);
+              }
+              total_size.addAndGet( -remaining );
+              if ( raw.getType() == Message.TYPE_DATA_PAYLOAD ){
+              	total_data_size.addAndGet( -remaining );
+              }
+              it.remove();
+              messageGone( raw );
+              msg_removed = raw;
             }
-            queue.remove( raw );
-            msg_removed = raw;
+            
+            break search;
           }
-          
-          break;
         }
       }
       
-      if ( queue.isEmpty()){
+      if ( queue_size == 0 ){
     	  percent_complete = -1;
       }
     }finally{
@@ -425,14 +525,7 @@ OutgoingMessageQueueImpl
       if( manual_listener_notify ) { //delayed manual notification
         NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_REMOVED );
         item.message = msg_removed;
-        try {
-          delayed_notifications_mon.enter();
-          
-          delayed_notifications.add( item );
-        }
-        finally {
-          delayed_notifications_mon.exit();
-        }
+        delayed_notifications.add( item );
       }
       else {   //do listener notification now
         ArrayList listeners_ref = listeners;
@@ -484,7 +577,9 @@ OutgoingMessageQueueImpl
 	  try{
 		  queue_mon.enter();
 
-		  if( !queue.isEmpty() ){
+		  takeAdded();
+		  
+		  if( queue_size > 0 ){
 			  
 			  int buffer_limit 		= 64;
 			  
@@ -515,42 +610,46 @@ OutgoingMessageQueueImpl
 			  
 			  int total_sofar = 0;
 
+				// one gathering write of as many messages as fit, in the order they're to go out
+			  
 outer:
-			  for( Iterator i = queue.iterator(); i.hasNext(); ){
+			  for( int p=queue.length-1; p >= 0; p-- ){
+				  for( Iterator i = queue[p].iterator(); i.hasNext(); ){
 				  
-				  DirectByteBuffer[] payloads = ((RawMessage)i.next()).getRawData();
+					  DirectByteBuffer[] payloads = ((RawMessage)i.next()).getRawData();
 
-				  for( int x=0; x < payloads.length; x++ ){
+					  for( int x=0; x < payloads.length; x++ ){
 					  
-					  ByteBuffer buff = payloads[x].getBuffer( DirectByteBuffer.SS_NET );
+						  ByteBuffer buff = payloads[x].getBuffer( DirectByteBuffer.SS_NET );
 					  
-					  raw_buffers[buffer_count] = buff;
+						  raw_buffers[buffer_count] = buff;
 					  
-					  orig_positions[buffer_count] = buff.position();
+						  orig_positions[buffer_count] = buff.position();
 					  
-					  total_sofar += buff.remaining();
+						  total_sofar += buff.remaining();
 
-					  buffer_count++;
+						  buffer_count++;
 					  
-					  if ( total_sofar >= max_bytes ){
+						  if ( total_sofar >= max_bytes ){
 						
-						  break outer;
-					  }
+							  break outer;
+						  }
 					  
-					  if ( buffer_count == buffer_limit ) {
+						  if ( buffer_count == buffer_limit ) {
 							
-						  int	new_buffer_limit	= buffer_limit * 2;
+							  int	new_buffer_limit	= buffer_limit * 2;
 						  
-						  ByteBuffer[] 	new_raw_buffers 	= new ByteBuffer[new_buffer_limit];
-						  int[]		 	new_orig_positions	= new int[new_buffer_limit];
+							  ByteBuffer[] 	new_raw_buffers 	= new ByteBuffer[new_buffer_limit];
+							  int[]		 	new_orig_positions	= new int[new_buffer_limit];
 						  
-						  System.arraycopy( raw_buffers, 0, new_raw_buffers, 0, buffer_limit );
-						  System.arraycopy( orig_positions, 0, new_orig_positions, 0, buffer_limit );
+							  System.arraycopy( raw_buffers, 0, new_raw_buffers, 0, buffer_limit );
+							  System.arraycopy( orig_positions, 0, new_orig_positions, 0, buffer_limit );
 						  
-						  raw_buffers 		= new_raw_buffers;
-						  orig_positions	= new_orig_positions;
+							  raw_buffers 		= new_raw_buffers;
+							  orig_positions	= new_orig_positions;
 						  
-						  buffer_limit 		= new_buffer_limit;
+							  buffer_limit 		= new_buffer_limit;
+						  }
 					  }
 				  }
 			  }
@@ -571,18 +670,30 @@ outer:
 			  int pos = 0;
 			  boolean stop = false;
 
-			  while( !queue.isEmpty() && !stop ) {
-				  RawMessage msg = (RawMessage)queue.get( 0 );
+			  while( queue_size > 0 && !stop ) {
+				  ArrayDeque head = null;
+				  for( int p=queue.length-1; head == null; p-- ){
+					  if( !queue[p].isEmpty() ){
+						  head = queue[p];
+					  }
+				  }
+				  RawMessage msg = (RawMessage)head.getFirst();
 				  DirectByteBuffer[] payloads = msg.getRawData();
+				  boolean started = false;
+				  boolean complete = false;
 
 				  for( int x=0; x < payloads.length; x++ ) {
 					  ByteBuffer bb = payloads[x].getBuffer( DirectByteBuffer.SS_NET );
 
 					  int bytes_written = (bb.limit() - bb.remaining()) - orig_positions[ pos ];
-					  total_size -= bytes_written;
+					  total_size.addAndGet( -bytes_written );
 
 					  if ( msg.getType() == Message.TYPE_DATA_PAYLOAD ){
-						  total_data_size -= bytes_written;
+						  total_data_size.addAndGet( -bytes_written );
+					  }
+					  
+					  if( bytes_written > 0 ) {
+						  started = true;
 					  }
 					  
 					  if( x > 0 && msg.getType() == Message.TYPE_DATA_PAYLOAD ) {  //assumes the first buffer is message header
@@ -616,9 +727,11 @@ outer:
 						  break;
 					  }
 					  else if( x == payloads.length - 1 ) {  //last payload buffer of message is empty
-						  if( msg == urgent_message ) urgent_message = null;
+						  urgent_message.compareAndSet( msg, null );
 
-						  queue.remove( 0 );
+						  head.removeFirst();
+						  messageGone( msg );
+						  complete = true;
 
 
 						  if( TRACE_HISTORY ) {
@@ -632,9 +745,7 @@ outer:
 						  if( manual_listener_notify ) {
 							  NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_SENT );
 							  item.message = msg;
-							  try {  delayed_notifications_mon.enter();
 							  delayed_notifications.add( item );
-							  } finally {  delayed_notifications_mon.exit();  }
 						  }
 						  else {
 							  if( messages_sent == null ) {
@@ -650,6 +761,11 @@ outer:
 						  break;
 					  }
 				  }
+
+				  if( started && !complete && head != queue[SENDING] ) {  //part sent, nothing can go in front of it now
+					  head.removeFirst();
+					  queue[SENDING].addLast( msg );
+				  }
 			  }
 		  }
 	  }finally{
@@ -662,7 +778,7 @@ outer:
 	  if( data_written + protocol_written > 0 || messages_sent != null ) {
 
 		  if ( trace ){
-			  TimeFormatter.milliTrace( "omq:deliver: " + (data_written + protocol_written) + ", q=" + queue.size() + "/" + total_size );
+			  TimeFormatter.milliTrace( "omq:deliver: " + (data_written + protocol_written) + ", q=" + queue_size + "/" + total_size.get() );
 		  }
 
 		  if( manual_listener_notify ) {
@@ -670,27 +786,13 @@ outer:
 			  if( data_written > 0 ) {  //data bytes notify
 				  NotificationItem item = new NotificationItem( NotificationItem.DATA_BYTES_SENT );
 				  item.byte_count = data_written;
-				  try {
-					  delayed_notifications_mon.enter();
-
-					  delayed_notifications.add( item );
-				  }
-				  finally {
-					  delayed_notifications_mon.exit();
-				  }
+				  delayed_notifications.add( item );
 			  }
 
 			  if( protocol_written > 0 ) {  //protocol bytes notify
 				  NotificationItem item = new NotificationItem( NotificationItem.PROTOCOL_BYTES_SENT );
 				  item.byte_count = protocol_written;
-				  try {
-					  delayed_notifications_mon.enter();
-
-					  delayed_notifications.add( item );
-				  }
-				  finally {
-					  delayed_notifications_mon.exit();
-				  }
+				  delayed_notifications.add( item );
 			  }
 		  }
 		  else {  //do listener notification now
@@ -719,7 +821,7 @@ outer:
 		  }
 	  }else{
 		  if ( trace ){
-			  TimeFormatter.milliTrace( "omq:deliver: 0, q=" + queue.size() + "/" + total_size );
+			  TimeFormatter.milliTrace( "omq:deliver: 0, q=" + queue_size + "/" + total_size.get() );
 		  }
 	  }
 
@@ -732,20 +834,29 @@ outer:
 	  try{
 		  queue_mon.enter();
 
-		  if ( queue.isEmpty()){
+		  takeAdded();
+		  
+		  if ( queue_size == 0 ){
 			  
 			  return;
 		  }
 		  
-		  for (int i=0;i<queue.size();i++){
-			  
-			  RawMessage	msg = (RawMessage)queue.get(i);
-			  
-			  msg.setNoDelay();
+		  boolean	first = true;
+		  
+		  for (int p=queue.length-1;p>=0;p--){
 			  
-			  if ( i == 0 ){
+			  for ( Iterator it = queue[p].iterator(); it.hasNext(); ){
+				  
+				  RawMessage	msg = (RawMessage)it.next();
 				  
-				  urgent_message = msg;
+				  msg.setNoDelay();
+				  
+				  if ( first ){
+					  
+					  urgent_message.set( msg );
+					  
+					  first = false;
+				  }
 			  }
 		  }
 	  }finally{
@@ -770,22 +881,13 @@ outer:
    * Manually send any unsent listener notifications.
    */
   public void doListenerNotifications() {
-    ArrayList notifications_copy;
-    try {
-      delayed_notifications_mon.enter();
-      
-      if( delayed_notifications.size() == 0 )  return;
-      notifications_copy = new ArrayList( delayed_notifications );
-      delayed_notifications.clear();
-    }
-    finally {
-      delayed_notifications_mon.exit();
-    }
+    NotificationItem item = (NotificationItem)delayed_notifications.poll();
+    
+    if( item == null )  return;
     
     ArrayList listeners_ref = listeners;
     
-    for( int j=0; j < notifications_copy.size(); j++ ) {  //for each notification
-      NotificationItem item = (NotificationItem)notifications_copy.get( j );
+    for( ; item != null; item = (NotificationItem)delayed_notifications.poll() ) {  //for each notification
 
       switch( item.type ) {
         case NotificationItem.MESSAGE_ADDED:
@@ -865,28 +967,32 @@ outer:
       
       
 
-      int position = queue.size() - 1;
+      takeAdded();
+      
+      int position = queue_size - 1;
 
-      for( Iterator it = queue.iterator(); it.hasNext(); ) {
-        RawMessage raw = (RawMessage)it.next();
+      for( int p=queue.length-1; p >= 0; p-- ) {
+        for( Iterator it = queue[p].iterator(); it.hasNext(); ) {
+          RawMessage raw = (RawMessage)it.next();
         
-        int pos = raw.getRawData()[0].position(DirectByteBuffer.SS_NET);
-        int length = raw.getRawData()[0].limit( DirectByteBuffer.SS_NET );
+          int pos = raw.getRawData()[0].position(DirectByteBuffer.SS_NET);
+          int length = raw.getRawData()[0].limit( DirectByteBuffer.SS_NET );
         
-        trace.append( "[#")
-             .append(position)
-             .append(" ")
-             .append(pos)
-             .append(":")
-             .append(length)
-             .append("]: ")
-             .append(raw.getID())
-             .append(" [")
-             .append(raw.getDescription())
-             .append("]")
-             .append("\n" );
+          trace.append( "[#")
+               .append(position)
+               .append(" ")
+               .append(pos)
+               .append(":")
+               .append(length)
+               .append("]: ")
+               .append(raw.getID())
+               .append(" [")
+               .append(raw.getDescription())
+               .append("]")
+               .append("\n" );
         
-        position--;
+          position--;
+        }
       }
     }
   	finally{
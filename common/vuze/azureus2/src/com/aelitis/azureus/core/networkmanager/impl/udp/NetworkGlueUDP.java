@@ -196,6 +196,12 @@ NetworkGlueUDP
 		return( false );
 	}
 	
+	public boolean
+	copiesData()
+	{
+		return( false );
+	}
+	
 	public int
 	send(
 		int					local_port,
@@ -33,7 +33,11 @@ import com.aelitis.azureus.core.peermanager.messaging.*;
 
 
 /**
- *
+ * Small messages are read a batch at a time into a read-ahead buffer and the fixed size ones
+ * among them (have, request and the like) are decoded straight out of it, others get a buffer
+ * of their own which larger payloads are read directly into. Until the first message, normally
+ * the handshake, has been decoded only the bytes of the current message are read, so that any
+ * that follow are still on the transport for the decoder that may take over after it.
  */
 public class BTMessageDecoder implements MessageStreamDecoder {
   private static final int MIN_MESSAGE_LENGTH = 1;  //for type id
@@ -41,26 +45,48 @@ public class BTMessageDecoder implements MessageStreamDecoder {
   private static final int MAX_MESSAGE_LENGTH = 128*1024;	// 17/5/2013: parg: got a huge torrent with so many pieces the bitfield exceeds the above limit...
   private static final int HANDSHAKE_FAKE_LENGTH = 323119476;  //(byte)19 + "Bit" readInt() value of header
 
+  private static final int READ_AHEAD_SIZE = 4096;
+  private static final int SMALL_MESSAGE_MAX_LENGTH = 13;  //request, cancel and reject
+  
+  	// fixed size messages whose deserialisers only read their fields and then let the buffer go,
+  	// so they can be decoded from a buffer that is reused
+  
+  private static final boolean[] SMALL_MESSAGE_IDS = new boolean[32];
+  
+  static{
+	  byte[] ids = { 0, 1, 2, 3, 4, 6, 8, 9, 13, 14, 15, 16, 17 };  //choke ... dht port, suggest ... allowed fast
+	  
+	  for( int i=0; i < ids.length; i++ ) {
+		  SMALL_MESSAGE_IDS[ ids[i] ] = true;
+	  }
+  }
+  
   private static final byte SS = DirectByteBuffer.SS_MSG;
   
   private DirectByteBuffer payload_buffer = null;
-  private final DirectByteBuffer length_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, 4 );
-  private final ByteBuffer[] decode_array = new ByteBuffer[] { null, length_buffer.getBuffer( SS ) };
+  private DirectByteBuffer read_buffer = null;	// unconsumed bytes between position and limit, only kept while it has some
+  private final ByteBuffer[] decode_array = new ByteBuffer[ 2 ];
   
+  private final ByteBuffer small_buffer = ByteBuffer.allocate( SMALL_MESSAGE_MAX_LENGTH );
+  private final DirectByteBuffer small_message = new DirectByteBuffer( small_buffer );
 
-  private boolean reading_length_mode = true;
+  private boolean read_ahead = false;
   private boolean reading_handshake_message = false;
   
   private int message_length;
-  private int pre_read_start_buffer;
-  private int pre_read_start_position;
+  private int message_type = -1;
+  private int pre_read_payload_position;
+  private int pre_read_buffer_position;
+  private int pending_protocol_bytes;
+  private int pending_data_bytes;
   
   private boolean last_received_was_keepalive = false;
 
   private volatile boolean destroyed = false;
   private volatile boolean is_paused = false;
   
-  private ArrayList messages_last_read = new ArrayList();
+  private Message[] messages_last_read = new Message[ 8 ];
+  private int messages_last_read_count = 0;
   private int protocol_bytes_last_read = 0;
   private int data_bytes_last_read = 0; 
   private int percent_complete = -1;
@@ -77,6 +103,18 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	    protocol_bytes_last_read = 0;
 	    data_bytes_last_read = 0;
 	    
+	    	// anything read ahead of a pause first
+	    
+	    if( read_buffer != null && !destroyed && !is_paused ) {
+	    	decodeReadBuffer();
+	    	
+	    	protocol_bytes_last_read += pending_protocol_bytes;
+	    	data_bytes_last_read += pending_data_bytes;
+	    	
+	    	pending_protocol_bytes = 0;
+	    	pending_data_bytes = 0;
+	    }
+	    
 	    int bytes_remaining = max_bytes;
 	    
 	    while( bytes_remaining > 0 ) {  
@@ -100,11 +138,11 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	        break;
 	      }
 	
-	      if( reading_length_mode ) {
-	        transport.read( decode_array, 1, 1 );  //only read into length buffer
+	      if( payload_buffer == null ) {
+	        transport.read( decode_array, 1, 1 );  //only read into the read buffer
 	      }
 	      else {
-	        transport.read( decode_array, 0, 2 );  //read into payload buffer, and possibly next message length
+	        transport.read( decode_array, 0, 2 );  //read into payload buffer, and possibly following messages
 	      }
 	      
 	      int bytes_read = postReadProcess();
@@ -115,13 +153,20 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 	        break;
 	      }
 	      
-	      if( reading_length_mode && last_received_was_keepalive ) {
+	      if( payload_buffer == null && last_received_was_keepalive ) {
 	        //hack to stop a 0-byte-read after receiving a keep-alive message
 	        //otherwise we won't realize there's nothing left on the line until trying to read again
 	        last_received_was_keepalive = false;
 	        break;
 	      }
 	    }
+	    
+	    DirectByteBuffer rb = read_buffer;
+	    
+	    if( rb != null && !rb.hasRemaining( SS ) && !destroyed ) {
+	    	read_buffer = null;
+	    	rb.returnToPool();
+	    }
 	            
 	    return max_bytes - bytes_remaining;
 	    
@@ -141,11 +186,14 @@ public class BTMessageDecoder implements MessageStreamDecoder {
   
   
   public Message[] removeDecodedMessages() {
-    if( messages_last_read.isEmpty() )  return null;
+    if( messages_last_read_count == 0 )  return null;
+    
+    Message[] msgs = new Message[ messages_last_read_count ];
     
-    Message[] msgs = (Message[])messages_last_read.toArray( new Message[messages_last_read.size()] );
+    System.arraycopy( messages_last_read, 0, msgs, 0, messages_last_read_count );
+    Arrays.fill( messages_last_read, 0, messages_last_read_count, null );
     
-    messages_last_read.clear();
+    messages_last_read_count = 0;
     
     return msgs;
   }
@@ -170,107 +218,113 @@ public class BTMessageDecoder implements MessageStreamDecoder {
     	// have the energy to look into it properly atm so just try to ensure that it doesn't bork too badly (parg: 29/04/2012)
     	// only occasional but does have potential to generate direct buffer mem leak ;(
     
-    int lbuff_read = 0;
-    int pbuff_read = 0;
-    length_buffer.limit( SS, 4 );
+    	// what has been read of the current message, with its length, and then whatever was read after it
     
     DirectByteBuffer plb = payload_buffer;
+    DirectByteBuffer rb = read_buffer;
     
-    if( reading_length_mode ) {
-      lbuff_read = length_buffer.position( SS );
-    }
-    else { //reading payload
-      length_buffer.position( SS, 4 );
-      lbuff_read = 4;
-      pbuff_read = plb == null ? 0 : plb.position( SS );
-    }
-    
-    ByteBuffer unused = ByteBuffer.allocate( lbuff_read + pbuff_read );   //TODO convert to direct?
+    int pbuff_read = plb == null ? 0 : 4 + plb.position( SS );
+    int rbuff_read = rb == null ? 0 : rb.remaining( SS );
     
-    length_buffer.flip( SS );
-    unused.put( length_buffer.getBuffer( SS ) );
+    ByteBuffer unused = ByteBuffer.allocate( pbuff_read + rbuff_read );   //TODO convert to direct?
     
     try{
 	    if ( plb != null ) {
+	    	unused.putInt( reading_handshake_message ? HANDSHAKE_FAKE_LENGTH : message_length );
 	    	plb.flip( SS );
 	    	unused.put( plb.getBuffer( SS ) ); // Got a buffer overflow exception here in the past - related to PEX?
 	    }
+	    
+	    if ( rb != null ) {
+	    	unused.put( rb.getBuffer( SS ) );
+	    }
     }catch( RuntimeException e ){
     	Debug.out( "hit known threading issue" );
     }
     
     unused.flip();
 
-    length_buffer.returnToPool();
-    
     if( plb != null ) {
     	plb.returnToPool();
     	payload_buffer = null;
     }
+    
+    if( rb != null ) {
+    	rb.returnToPool();
+    	read_buffer = null;
+    }
  
     try{
-	    for( int i=0; i < messages_last_read.size(); i++ ) {
-	      Message msg = (Message)messages_last_read.get( i );
+	    for( int i=0; i < messages_last_read_count; i++ ) {
+	      Message msg = messages_last_read[ i ];
 	      msg.destroy();
 	    }
     }catch( RuntimeException e ){
     	// happens if messages modified by alt thread...
     	Debug.out( "hit known threading issue" );
     }
-    messages_last_read.clear();
+    Arrays.fill( messages_last_read, null );
+    messages_last_read_count = 0;
     
     return unused;
   }
   
   
-
+  	/**
+  	 * Sets up the decode array for the next read: the rest of the current payload if there is
+  	 * one, then the read buffer, which once we're reading ahead takes whatever is allowed and
+  	 * fits, before that just the next message length
+  	 */
+  
   private int preReadProcess( int allowed ) {
     if( allowed < 1 ) {
       Debug.out( "allowed < 1" );
     }
     
-    decode_array[ 0 ] = payload_buffer == null ? null : payload_buffer.getBuffer( SS );  //ensure the decode array has the latest payload pointer
+    if( read_buffer == null ) {
+    	read_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, READ_AHEAD_SIZE );
+    	read_buffer.limit( SS, 0 );
+    }
+    
+    ByteBuffer pb = payload_buffer == null ? null : payload_buffer.getBuffer( SS );
+    ByteBuffer rb = read_buffer.getBuffer( SS );
+    
+    decode_array[ 0 ] = pb;
+    decode_array[ 1 ] = rb;
     
     int bytes_available = 0;
-    boolean shrink_remaining_buffers = false;
-    int start_buff = reading_length_mode ? 1 : 0;
-    boolean marked = false;    
     
-    for( int i = start_buff; i < 2; i++ ) {  //set buffer limits according to bytes allowed
-      ByteBuffer bb = decode_array[ i ];
+    if( pb != null ) {
+      pre_read_payload_position = pb.position();
       
-      if( bb == null ) {
-        Debug.out( "preReadProcess:: bb["+i+"] == null, decoder destroyed=" +destroyed );
-        
-        throw( new RuntimeException( "decoder destroyed" ));
-      }
+      int remaining = pb.remaining();
       
-      if( shrink_remaining_buffers ) {
-        bb.limit( 0 );  //ensure no read into this next buffer is possible
-      }
-      else {
-        int remaining = bb.remaining();
-        
-        if( remaining < 1 )  continue;  //skip full buffer
-
-        if( !marked ) {
-          pre_read_start_buffer = i;
-          pre_read_start_position = bb.position();
-          marked = true;
-        }
-
-        if( remaining > allowed ) {  //read only part of this buffer
-          bb.limit( bb.position() + allowed );  //limit current buffer
-          bytes_available += bb.remaining();
-          shrink_remaining_buffers = true;  //shrink any tail buffers
-        }
-        else {  //full buffer is allowed to be read
-          bytes_available += remaining;
-          allowed -= remaining;  //count this buffer toward allowed and move on to the next
-        }
+      if( remaining > allowed ) {
+        pb.limit( pb.position() + allowed );
+        remaining = allowed;
       }
+      
+      bytes_available += remaining;
+      allowed -= remaining;
+    }
+    
+    	// the read buffer holds no more than part of a message length or of a small message here, move it
+    	// to the front and append
+    
+    rb.compact();
+    
+    pre_read_buffer_position = rb.position();
+    
+    int space = read_ahead ? rb.remaining() : Math.max( 0, 4 - rb.position());
+    
+    if( space > allowed ) {
+      space = allowed;
     }
     
+    rb.limit( rb.position() + space );
+    
+    bytes_available += space;
+    
     return bytes_available;
   }
   
@@ -278,124 +332,244 @@ public class BTMessageDecoder implements MessageStreamDecoder {
 
   
   private int postReadProcess() throws IOException {
-    int prot_bytes_read = 0;
-    int data_bytes_read = 0;
+    int bytes_read = 0;
     
-    if( !reading_length_mode && !destroyed ) {  //reading payload data mode
-      //ensure-restore proper buffer limits
+    if( payload_buffer != null && !destroyed ) {  //reading payload data mode
+      //ensure-restore proper buffer limit
       payload_buffer.limit( SS, message_length );
-      length_buffer.limit( SS, 4 );
       
-      int read = payload_buffer.position( SS ) - pre_read_start_position;
+      int read = payload_buffer.position( SS ) - pre_read_payload_position;
+      
+      accountPayload( read );
+      
+      bytes_read += read;
       
-      if( payload_buffer.position( SS ) > 0 ) {  //need to have read the message id first byte
-      	if( BTMessageFactory.getMessageType( payload_buffer) == Message.TYPE_DATA_PAYLOAD ) {
-      		data_bytes_read += read;
-      	}
-      	else {
-      		prot_bytes_read += read;
-      	}
+      if( !payload_buffer.hasRemaining( SS ) && !is_paused ) {  //full message received!
+        decodePayload();
       }
-
-      if( !payload_buffer.hasRemaining( SS ) && !is_paused ) {  //full message received!        
-        payload_buffer.position( SS, 0 );
+    }
+    
+    ByteBuffer rb = decode_array[ 1 ];
+    
+    bytes_read += rb.position() - pre_read_buffer_position;
+    
+    rb.flip();
+    
+    if( !destroyed && !is_paused ) {
+      decodeReadBuffer();
+    }
+    
+    protocol_bytes_last_read += pending_protocol_bytes;
+    data_bytes_last_read += pending_data_bytes;
+    
+    pending_protocol_bytes = 0;
+    pending_data_bytes = 0;
+    
+    return bytes_read;
+  }
+  
+  
+  	/**
+  	 * Decodes what it can of the read buffer, which is left holding at most part of a message length or
+  	 * of a small message, everything else having been decoded or moved into the current payload
+  	 */
+  
+  private void decodeReadBuffer() throws IOException {
+    ByteBuffer rb = read_buffer.getBuffer( SS );
+    
+    while( !destroyed && !is_paused ) {
+      if( payload_buffer != null ) {
+        ByteBuffer pb = payload_buffer.getBuffer( SS );
+        
+        int chunk = Math.min( pb.remaining(), rb.remaining() );
+        
+        if( chunk == 0 ) {
+          break;
+        }
+        
+        int limit = rb.limit();
+        rb.limit( rb.position() + chunk );
+        pb.put( rb );
+        rb.limit( limit );
+        
+        accountPayload( chunk );
+        
+        if( pb.hasRemaining() ) {
+          break;
+        }
         
-        DirectByteBuffer ref_buff = payload_buffer;
-        payload_buffer = null;
+        decodePayload();
         
-        if( reading_handshake_message ) {  //decode handshake
-          reading_handshake_message = false;
+        continue;
+      }
+      
+      if( rb.remaining() < 4 ) {
+        break;
+      }
+      
+      int length = rb.getInt( rb.position() );
+      
+      if( read_ahead && length >= MIN_MESSAGE_LENGTH && length <= SMALL_MESSAGE_MAX_LENGTH ) {
+        if( rb.remaining() < 5 ) {  //wait for the message id
+          break;
+        }
+        
+        int id = rb.get( rb.position() + 4 );
+        
+        if( id >= 0 && id < SMALL_MESSAGE_IDS.length && SMALL_MESSAGE_IDS[ id ] ) {
+          if( rb.remaining() < 4 + length ) {  //the rest of it will be along with the next read
+            break;
+          }
           
-          DirectByteBuffer handshake_data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, 68 );
-          handshake_data.putInt( SS, HANDSHAKE_FAKE_LENGTH );
-          handshake_data.put( SS, ref_buff );
-          handshake_data.flip( SS );
+          rb.position( rb.position() + 4 );
           
-          ref_buff.returnToPool();
+          pending_protocol_bytes += 4 + length;
           
-          try {
-            Message handshake = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_HANDSHAKE_BYTES, handshake_data, (byte)1 );
-            messages_last_read.add( handshake );
-          }
-          catch( MessageException me ) {
-            handshake_data.returnToPool();
-            throw new IOException( "BT message decode failed: " + me.getMessage() );
-          }
+          decodeSmallMessage( rb, length );
           
-          //we need to auto-pause decoding until we're told to start again externally,
-          //as we don't want to accidentally read the next message on the stream if it's an AZ-format handshake
-          pauseDecoding();
-        }
-        else {  //decode normal message
-          try {
-            messages_last_read.add(createMessage(ref_buff));
-          }
-          catch( Throwable e ) {
-            ref_buff.returnToPoolIfNotFree();
-            
-        	// maintain unexpected errors as such so they get logged later
-            
-            if ( e instanceof RuntimeException ){
-          	  
-          	  throw((RuntimeException)e );
-            }
-            
-            throw new IOException( "BT message decode failed: " +e.getMessage() );
-          }
+          continue;
         }
-     
-        reading_length_mode = true;  //see if we've already read the next message's length
-        percent_complete = -1;  //reset receive percentage
       }
-      else {  //only partial received so far
-        percent_complete = (payload_buffer.position( SS ) * 100) / message_length;  //compute receive percentage
+      
+      startMessage( rb );
+    }
+    
+    percent_complete = payload_buffer == null ? -1 : (payload_buffer.position( SS ) * 100) / message_length;  //compute receive percentage
+  }
+  
+  
+  private void startMessage( ByteBuffer rb ) throws IOException {
+    message_length = rb.getInt();
+    message_type = -1;
+    
+    pending_protocol_bytes += 4;
+    
+    if( message_length == HANDSHAKE_FAKE_LENGTH ) {  //handshake message
+      reading_handshake_message = true;
+      message_length = 64;  //restore 'real' length
+      payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, message_length );
+    }
+    else if( message_length == 0 ) {  //keep-alive message         
+      last_received_was_keepalive = true;
+      read_ahead = true;
+      
+      try{
+        Message keep_alive = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_KEEP_ALIVE_BYTES, null, (byte)1 );
+        addMessage( keep_alive );
+      }
+      catch( MessageException me ) {
+        throw new IOException( "BT message decode failed: " + me.getMessage() );
+      }
+    }
+    else if( message_length < MIN_MESSAGE_LENGTH || message_length > MAX_MESSAGE_LENGTH ) {
+      throw new IOException( "Invalid message length given for BT message decode: " + message_length );
+    }
+    else {  //normal message
+      payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_PAYLOAD, message_length );
+    }
+  }
+  
+  
+  private void accountPayload( int read ) {
+    if( read > 0 ) {
+      if( message_type == -1 ) {  //need to have read the message id first byte
+        message_type = reading_handshake_message ? Message.TYPE_PROTOCOL_PAYLOAD : BTMessageFactory.getMessageType( payload_buffer );
+      }
+      
+      if( message_type == Message.TYPE_DATA_PAYLOAD ) {
+        pending_data_bytes += read;
+      }
+      else {
+        pending_protocol_bytes += read;
       }
     }
+  }
+  
+  
+  private void decodeSmallMessage( ByteBuffer rb, int length ) throws IOException {
+    small_buffer.clear();
+    
+    int limit = rb.limit();
+    rb.limit( rb.position() + length );
+    small_buffer.put( rb );
+    rb.limit( limit );
+    
+    small_buffer.flip();
+    
+    try {
+      addMessage( createMessage( small_message ));
+    }
+    catch( Throwable e ) {
+      
+      	// maintain unexpected errors as such so they get logged later
+      
+      if ( e instanceof RuntimeException ){
+    	  
+    	  throw((RuntimeException)e );
+      }
+      
+      throw new IOException( "BT message decode failed: " +e.getMessage() );
+    }
+  }
+  
+  
+  private void decodePayload() throws IOException {
+    payload_buffer.position( SS, 0 );
+    
+    DirectByteBuffer ref_buff = payload_buffer;
+    payload_buffer = null;
     
+    read_ahead = true;
     
-    if( reading_length_mode && !destroyed ) {
-      length_buffer.limit( SS, 4 );  //ensure proper buffer limit
+    if( reading_handshake_message ) {  //decode handshake
+      reading_handshake_message = false;
       
-      prot_bytes_read += (pre_read_start_buffer == 1) ? length_buffer.position( SS ) - pre_read_start_position : length_buffer.position( SS );
+      DirectByteBuffer handshake_data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, 68 );
+      handshake_data.putInt( SS, HANDSHAKE_FAKE_LENGTH );
+      handshake_data.put( SS, ref_buff );
+      handshake_data.flip( SS );
       
-      if( !length_buffer.hasRemaining( SS ) ) {  //done reading the length
-        reading_length_mode = false;
+      ref_buff.returnToPool();
+      
+      try {
+        Message handshake = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_HANDSHAKE_BYTES, handshake_data, (byte)1 );
+        addMessage( handshake );
+      }
+      catch( MessageException me ) {
+        handshake_data.returnToPool();
+        throw new IOException( "BT message decode failed: " + me.getMessage() );
+      }
+      
+      //we need to auto-pause decoding until we're told to start again externally,
+      //as we don't want to accidentally read the next message on the stream if it's an AZ-format handshake
+      pauseDecoding();
+    }
+    else {  //decode normal message
+      try {
+        addMessage( createMessage( ref_buff ));
+      }
+      catch( Throwable e ) {
+        ref_buff.returnToPoolIfNotFree();
         
-        length_buffer.position( SS, 0 );
-        message_length = length_buffer.getInt( SS );
+    	// maintain unexpected errors as such so they get logged later
         
-        length_buffer.position( SS, 0 );  //reset it for next length read       
-
-        if( message_length == HANDSHAKE_FAKE_LENGTH ) {  //handshake message
-          reading_handshake_message = true;
-          message_length = 64;  //restore 'real' length
-          payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HAND, message_length );
-        }
-        else if( message_length == 0 ) {  //keep-alive message         
-          reading_length_mode = true;
-          last_received_was_keepalive = true;
-          
-          try{
-            Message keep_alive = MessageManager.getSingleton().createMessage( BTMessage.ID_BT_KEEP_ALIVE_BYTES, null, (byte)1 );
-            messages_last_read.add( keep_alive );
-          }
-          catch( MessageException me ) {
-            throw new IOException( "BT message decode failed: " + me.getMessage() );
-          }
-        }
-        else if( message_length < MIN_MESSAGE_LENGTH || message_length > MAX_MESSAGE_LENGTH ) {
-          throw new IOException( "Invalid message length given for BT message decode: " + message_length );
-        }
-        else {  //normal message
-          payload_buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_PAYLOAD, message_length );
+        if ( e instanceof RuntimeException ){
+      	  
+      	  throw((RuntimeException)e );
         }
+        
+        throw new IOException( "BT message decode failed: " +e.getMessage() );
       }
     }
+  }
+  
+  
+  private void addMessage( Message message ) {
+    if( messages_last_read_count == messages_last_read.length ) {
+      messages_last_read = Arrays.copyOf( messages_last_read, messages_last_read_count * 2 );
+    }
     
-    protocol_bytes_last_read += prot_bytes_read;
-    data_bytes_last_read += data_bytes_read;
-    
-    return prot_bytes_read + data_bytes_read;
+    messages_last_read[ messages_last_read_count++ ] = message;
   }
   
   
@@ -43,6 +43,10 @@ import com.aelitis.azureus.core.peermanager.messaging.bittorrent.*;
  * does, before passing the messages onto the outgoing message queue for transmission.
  */
 public class OutgoingBTPieceMessageHandler {
+  private static final int	MIN_READ_AHEAD		= 2;
+  private static final int	MAX_READ_AHEAD		= 256;
+  private static final long	READ_AHEAD_MILLIS	= 4000;
+  
   private final PEPeer					peer;
   private final OutgoingMessageQueue 	outgoing_message_queue;
   private 		byte					piece_version;
@@ -53,7 +57,7 @@ public class OutgoingBTPieceMessageHandler {
   
   private final AEMonitor	lock_mon	= new AEMonitor( "OutgoingBTPieceMessageHandler:lock");
   private boolean destroyed = false;
-  private int request_read_ahead = 2;
+  private int request_read_ahead = MIN_READ_AHEAD;
 
   private OutgoingBTPieceMessageHandlerAdapter	adapter;
 
@@ -99,6 +103,10 @@ public class OutgoingBTPieceMessageHandler {
       	}
       	loading_messages.remove( request );
 
+      	  // completed pieces are shared with the other peers asking for the same block
+      	
+      	data = peer.getManager().getDiskManager().cacheUploadBlock( request, data );
+
         BTPiece msg = new BTPiece( request.getPieceNumber(), request.getOffset(), data, piece_version );
         queued_messages.put( msg, request );
 
@@ -333,6 +341,18 @@ public class OutgoingBTPieceMessageHandler {
   }
   
   
+  /**
+   * Number of blocks to have read ahead to keep a peer sending at the given rate
+   * for READ_AHEAD_MILLIS without waiting on the disk.
+   * @param send_rate bytes per second
+   */
+  public static int getReadAheadForRate( long send_rate ) {
+    long blocks = ( send_rate * READ_AHEAD_MILLIS / 1000 + DiskManager.BLOCK_SIZE - 1 ) / DiskManager.BLOCK_SIZE;
+    
+    return( (int)Math.max( MIN_READ_AHEAD, Math.min( MAX_READ_AHEAD, blocks )));
+  }
+  
+  
   
   public void destroy() {
     try{
@@ -376,8 +396,23 @@ public class OutgoingBTPieceMessageHandler {
 	*/
     
     if ( to_submit != null ){
+    	DiskManager disk_manager = peer.getManager().getDiskManager();
+    	
     	for (int i=0;i<to_submit.size();i++){
-    		peer.getManager().getAdapter().enqueueReadRequest( peer, (DiskManagerReadRequest)to_submit.get(i), read_req_listener );
+    		DiskManagerReadRequest dmr = (DiskManagerReadRequest)to_submit.get(i);
+    		
+    		DirectByteBuffer cached = disk_manager.getCachedUploadBlock( dmr );
+    		
+    		if ( cached != null ){
+    			
+    				// another peer just had it read, no need to go to disk
+    			
+    			read_req_listener.readCompleted( dmr, cached );
+    			
+    		}else{
+    			
+    			peer.getManager().getAdapter().enqueueReadRequest( peer, dmr, read_req_listener );
+    		}
     	}
     }
   }
@@ -119,6 +119,14 @@ PRUDPPacketHandler
 	
 		throws PRUDPPacketHandlerException;
 	
+	public void
+	primordialSend(
+		byte[]				data,
+		int					length,
+		InetSocketAddress	target )
+	
+		throws PRUDPPacketHandlerException;
+	
 	public boolean
 	hasPrimordialHandler();
 	
@@ -30,4 +30,12 @@ PRUDPPrimordialHandler
 	public boolean
 	packetReceived(
 		DatagramPacket	packet );
+	
+		/**
+		 * @return true if the handler is done with the packet's buffer once packetReceived returns
+		 * so the receiver can reuse it for the next packet
+		 */
+	
+	public boolean
+	copiesData();
 }
@@ -650,14 +650,21 @@ PRUDPPacketHandlerImpl
 						
 						failed_accepts = 0;
 						
+						boolean	handled = false;
+						
 						for ( PRUDPPrimordialHandler prim_hand: primordial_handlers ){
 													
 							if ( prim_hand.packetReceived( packet )){
 						
+								handled = true;
+						
 									// primordial handlers get their own buffer as we can't guarantee
-									// that they don't need to hang onto the data
+									// that they don't need to hang onto the data, unless they say so
 								
-								buffer	= null;
+								if ( !prim_hand.copiesData()){
+								
+									buffer	= null;
+								}
 								
 								stats.primordialPacketReceived( packet.getLength());
 								
@@ -665,7 +672,7 @@ PRUDPPacketHandlerImpl
 							}
 						}
 						
-						if ( buffer != null ){
+						if ( !handled ){
 							
 							process( packet, receive_time );
 						}
@@ -1630,6 +1637,17 @@ PRUDPPacketHandlerImpl
 		byte[]				buffer,
 		InetSocketAddress	target )
 	
+		throws PRUDPPacketHandlerException
+	{
+		primordialSend( buffer, buffer.length, target );
+	}
+	
+	public void
+	primordialSend(
+		byte[]				buffer,
+		int					length,
+		InetSocketAddress	target )
+	
 		throws PRUDPPacketHandlerException
 	{
 		if ( socket == null || socket.isClosed()){
@@ -1649,24 +1667,24 @@ PRUDPPacketHandlerImpl
 		if ( 	delegate != null && 
 				target.getAddress().getClass().isInstance(delegate.explicit_bind_ip)){
 		
-			delegate.primordialSend(buffer, target);
+			delegate.primordialSend(buffer, length, target);
 			
 			return;
 		}
 		
 		try{	
-			DatagramPacket dg_packet = new DatagramPacket(buffer, buffer.length, target );
+			DatagramPacket dg_packet = new DatagramPacket(buffer, length, target );
 			
 			// System.out.println( "Outgoing to " + dg_packet.getAddress());	
 			
 			if ( TRACE_REQUESTS ){
 				Logger.log(new LogEvent(LOGID,
-						"PRUDPPacketHandler: reply packet sent: " + buffer.length + " to " + target ));
+						"PRUDPPacketHandler: reply packet sent: " + length + " to " + target ));
 			}
 			
 			sendToSocket( dg_packet );
 			
-			stats.primordialPacketSent( buffer.length );
+			stats.primordialPacketSent( length );
 			
 		}catch( Throwable e ){
 			
@@ -531,6 +531,17 @@ PRUDPPacketHandlerSocks
 		throw( new PRUDPPacketHandlerException( "not imp" ));
 	}
 	
+	public void
+	primordialSend(
+		byte[]				data,
+		int					length,
+		InetSocketAddress	target )
+	
+		throws PRUDPPacketHandlerException
+	{
+		throw( new PRUDPPacketHandlerException( "not imp" ));
+	}
+	
 	public boolean
 	hasPrimordialHandler()
 	{
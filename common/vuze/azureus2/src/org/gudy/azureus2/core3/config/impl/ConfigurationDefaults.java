@@ -503,6 +503,8 @@ public class ConfigurationDefaults {
     def.put( "diskmanager.perf.cache.enable.write", TRUE);
     def.put( "diskmanager.perf.cache.size", new Long(4));		// 4 MB
     def.put( "diskmanager.perf.cache.notsmallerthan", new Long(1024));	// 1024 K
+    def.put( "diskmanager.perf.cache.segments", new Long(16));
+    def.put( "diskmanager.perf.cache.protected.percent", new Long(75));
     def.put( "diskmanager.perf.read.maxthreads", new Long(32));
     def.put( "diskmanager.perf.read.maxmb", new Long(5));
     def.put( "diskmanager.perf.write.maxthreads", new Long(32));
@@ -517,7 +519,9 @@ public class ConfigurationDefaults {
     def.put( "diskmanager.perf.write.aggregate.byte.limit", ZERO );
     def.put( "diskmanager.perf.checking.read.priority", FALSE );
     def.put( "diskmanager.perf.checking.fully.async", FALSE );
-    def.put( "diskmanager.perf.queue.torrent.bias", TRUE );
+    def.put( "diskmanager.perf.checking.sequential", TRUE );
+    def.put( "diskmanager.perf.queue.volume.threads", new Long(2));
+    def.put( "diskmanager.perf.queue.latency.window", new Long(500));	// ms
     
     	// Peer control
     
@@ -594,6 +598,11 @@ public class ConfigurationDefaults {
     // Memory settings
     
     def.put( "memory.slice.limit.multiplier", new Long(1));
+    def.put( "memory.pool.free.max.kb", new Long(10*1024));
+    def.put( "memory.pool.free.min.kb", new Long(1024));
+    def.put( "memory.pool.thread.cache.size", new Long(8));	// buffers of each size kept by a thread, 0 to disable
+    def.put( "memory.pool.thread.cache.max.buffer", new Long(64*1024));
+    def.put( "memory.pool.thread.cache.max.kb", new Long(256));	// all sizes together, per thread
     
     // Move on completion settings.
     def.put( "Move Completed When Done", FALSE );
@@ -128,6 +128,25 @@ DiskManager
 	public boolean
 	hasOutstandingReadRequestForPiece(
 		int		piece_number );
+
+		/**
+		 * Looks up a block recently read for another upload
+		 * @return a duplicate of the shared block, returned to the pool as any read buffer, or null
+		 */
+
+	public DirectByteBuffer
+	getCachedUploadBlock(
+		DiskManagerReadRequest		request );
+
+		/**
+		 * Offers a block just read for an upload to the shared upload block cache
+		 * @return the buffer to send in place of data
+		 */
+
+	public DirectByteBuffer
+	cacheUploadBlock(
+		DiskManagerReadRequest		request,
+		DirectByteBuffer			data );
 	
 		/**
 		 * Create a request to check a particular piece
@@ -333,6 +352,13 @@ DiskManager
 	
 	public long[]
 	getReadStats();
+
+		/**
+		 * @return shared upload block cache lookups, hits and bytes served without a disk read
+		 */
+
+	public long[]
+	getUploadBlockCacheStats();
 	
 	public void
 	generateEvidence(
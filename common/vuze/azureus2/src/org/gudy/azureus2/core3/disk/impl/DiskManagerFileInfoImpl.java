@@ -53,7 +53,7 @@ DiskManagerFileInfoImpl
 	implements DiskManagerFileInfo, CacheFileOwner
 {
   private String				root_dir;
-  private final File			relative_file;
+  private final FileUtil.InternedFile	relative_file;	// shares the directories with the torrent's other files
   
   private int			file_index;
   private CacheFile		cache_file;
@@ -85,7 +85,7 @@ DiskManagerFileInfoImpl
     torrent_file	= _torrent_file;
   	
     root_dir		= _root_dir.endsWith(File.separator)?_root_dir:(_root_dir + File.separator);
-    relative_file	= _relative_file;
+    relative_file	= FileUtil.internFileComponents( _relative_file );
     
     file_index		= _file_index;
     
@@ -172,6 +172,7 @@ DiskManagerImpl
 
 
     private DMReader                reader;
+    private final DiskManagerUploadBlockCache.Stats upload_cache_stats = new DiskManagerUploadBlockCache.Stats();
     private DMChecker               checker;
     private DMWriter                writer;
 
@@ -613,6 +614,8 @@ DiskManagerImpl
 
         started_sem.reserve();
 
+        DiskManagerUploadBlockCache.getSingleton().removeBlocks( this );
+
         checker.stop();
 
         writer.stop();
@@ -1380,6 +1383,26 @@ DiskManagerImpl
 	{
 		return( reader.hasOutstandingReadRequestForPiece( piece_number ));
 	}
+
+	public DirectByteBuffer
+	getCachedUploadBlock(
+		DiskManagerReadRequest		request )
+	{
+		return( DiskManagerUploadBlockCache.getSingleton().getBlock( this, request, upload_cache_stats ));
+	}
+
+	public DirectByteBuffer
+	cacheUploadBlock(
+		DiskManagerReadRequest		request,
+		DirectByteBuffer			data )
+	{
+		if ( !started || !isDone( request.getPieceNumber())){
+
+			return( data );
+		}
+
+		return( DiskManagerUploadBlockCache.getSingleton().addBlock( this, request, data ));
+	}
 	
     public int
     getNbPieces()
@@ -1843,6 +1866,12 @@ DiskManagerImpl
 				
 		return( reader.getStats());
 	}
+
+	public long[]
+	getUploadBlockCacheStats()
+	{
+		return( upload_cache_stats.get());
+	}
 	
 	public DMPieceMap  
 	getPieceMap()
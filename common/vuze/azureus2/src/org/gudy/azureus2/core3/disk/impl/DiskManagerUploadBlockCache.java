@@ -0,0 +1,294 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.disk.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gudy.azureus2.core3.disk.DiskManager;
+import org.gudy.azureus2.core3.disk.DiskManagerReadRequest;
+import org.gudy.azureus2.core3.util.DirectByteBuffer;
+import org.gudy.azureus2.core3.util.ReferenceCountedDirectByteBuffer;
+import org.gudy.azureus2.core3.util.SystemTime;
+
+/**
+ * Read-only cache of the blocks recently read for uploads, shared by all the
+ * peers of all the torrents. When a block is requested by many peers (a fresh
+ * release being seeded) every BTPiece gets a duplicate of the same reference
+ * counted buffer instead of its own disk read and copy. The pooled buffer goes
+ * back to the pool once evicted and sent to every peer.
+ */
+
+public class
+DiskManagerUploadBlockCache
+{
+	private static final long	MAX_BYTES		= 16*1024*1024;
+	private static final long	MAX_AGE_MILLIS	= 30*1000;
+
+	private static final DiskManagerUploadBlockCache	singleton = new DiskManagerUploadBlockCache();
+
+	public static DiskManagerUploadBlockCache
+	getSingleton()
+	{
+		return( singleton );
+	}
+
+	private final LinkedHashMap<BlockKey,CachedBlock>	blocks = new LinkedHashMap<BlockKey,CachedBlock>( 256, 0.75f, true );
+
+	private long	size;
+
+	private
+	DiskManagerUploadBlockCache()
+	{
+	}
+
+		/**
+		 * @return a duplicate of the cached block, to be returned to the pool by the
+		 * caller as any other read buffer, or null if not cached
+		 */
+
+	public DirectByteBuffer
+	getBlock(
+		DiskManager					disk_manager,
+		DiskManagerReadRequest		request,
+		Stats						stats )
+	{
+		BlockKey	key = new BlockKey( disk_manager, request );
+
+		synchronized( this ){
+
+			stats.lookups++;
+
+			CachedBlock	block = blocks.get( key );
+
+			if ( block == null ){
+
+				return( null );
+			}
+
+			if ( SystemTime.getMonotonousTime() - block.time > MAX_AGE_MILLIS ){
+
+				remove( key, block );
+
+				return( null );
+			}
+
+			stats.hits++;
+
+			stats.bytes_saved += request.getLength();
+
+			return( block.buffer.duplicate( 0, request.getLength()));
+		}
+	}
+
+		/**
+		 * Takes over a buffer just read for an upload
+		 * @return the buffer to send, a duplicate of the cached one if it was added
+		 */
+
+	public DirectByteBuffer
+	addBlock(
+		DiskManager					disk_manager,
+		DiskManagerReadRequest		request,
+		DirectByteBuffer			data )
+	{
+		int	length = request.getLength();
+
+		if ( 	data.getFlag( DirectByteBuffer.FL_CONTAINS_TRANSIENT_DATA ) ||
+				data.remaining( DirectByteBuffer.SS_DR ) != length ||
+				length > MAX_BYTES / 64 ){
+
+			return( data );
+		}
+
+		BlockKey	key = new BlockKey( disk_manager, request );
+
+		synchronized( this ){
+
+			if ( blocks.containsKey( key )){
+
+					// another peer got it in the meantime, keep ours as is
+
+				return( data );
+			}
+
+			ReferenceCountedDirectByteBuffer	buffer = data.getReferenceCountedBuffer();
+
+			blocks.put( key, new CachedBlock( buffer ));
+
+			size += length;
+
+			trim( SystemTime.getMonotonousTime());
+
+			return( buffer.duplicate( 0, length ));
+		}
+	}
+
+		/**
+		 * Drops the blocks of a disk manager, its files are about to be closed or moved
+		 */
+
+	public void
+	removeBlocks(
+		DiskManager		disk_manager )
+	{
+		synchronized( this ){
+
+			Iterator<Map.Entry<BlockKey,CachedBlock>>	it = blocks.entrySet().iterator();
+
+			while( it.hasNext()){
+
+				Map.Entry<BlockKey,CachedBlock>	entry = it.next();
+
+				if ( entry.getKey().disk_manager == disk_manager ){
+
+					it.remove();
+
+					release( entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	private void
+	trim(
+		long	now )
+	{
+		Iterator<Map.Entry<BlockKey,CachedBlock>>	it = blocks.entrySet().iterator();
+
+		while( it.hasNext()){
+
+			Map.Entry<BlockKey,CachedBlock>	entry = it.next();
+
+			CachedBlock	block = entry.getValue();
+
+			if ( size > MAX_BYTES || now - block.time > MAX_AGE_MILLIS ){
+
+				it.remove();
+
+				release( entry.getKey(), block );
+
+			}else{
+
+				break;
+			}
+		}
+	}
+
+	private void
+	remove(
+		BlockKey		key,
+		CachedBlock		block )
+	{
+		blocks.remove( key );
+
+		release( key, block );
+	}
+
+	private void
+	release(
+		BlockKey		key,
+		CachedBlock		block )
+	{
+		size -= key.length;
+
+			// the pooled buffer is returned once the peers sending it are done too
+
+		block.buffer.decrementReferenceCount();
+	}
+
+	public static class
+	Stats
+	{
+		private long	lookups;
+		private long	hits;
+		private long	bytes_saved;
+
+			/**
+			 * @return lookups, hits, bytes served from the cache
+			 */
+
+		public long[]
+		get()
+		{
+			synchronized( singleton ){
+
+				return( new long[]{ lookups, hits, bytes_saved });
+			}
+		}
+	}
+
+	private static class
+	BlockKey
+	{
+		private final DiskManager	disk_manager;
+		private final int			piece_number;
+		private final int			offset;
+		private final int			length;
+		private final int			hash;
+
+		private
+		BlockKey(
+			DiskManager					_disk_manager,
+			DiskManagerReadRequest		request )
+		{
+			disk_manager	= _disk_manager;
+			piece_number	= request.getPieceNumber();
+			offset			= request.getOffset();
+			length			= request.getLength();
+
+			hash = System.identityHashCode( disk_manager ) + 31*( piece_number*16381 + offset ) + length;
+		}
+
+		public int
+		hashCode()
+		{
+			return( hash );
+		}
+
+		public boolean
+		equals(
+			Object	other )
+		{
+			if ( !( other instanceof BlockKey )){
+
+				return( false );
+			}
+
+			BlockKey	o = (BlockKey)other;
+
+			return( disk_manager == o.disk_manager && piece_number == o.piece_number && offset == o.offset && length == o.length );
+		}
+	}
+
+	private static class
+	CachedBlock
+	{
+		private final ReferenceCountedDirectByteBuffer	buffer;
+		private final long								time;
+
+		private
+		CachedBlock(
+			ReferenceCountedDirectByteBuffer	_buffer )
+		{
+			buffer	= _buffer;
+			time	= SystemTime.getMonotonousTime();
+		}
+	}
+}
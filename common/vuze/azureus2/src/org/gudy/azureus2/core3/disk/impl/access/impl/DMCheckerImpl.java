@@ -51,6 +51,7 @@ DMCheckerImpl
     
 	private static boolean	flush_pieces;
 	private static boolean	checking_read_priority;
+	private static boolean	sequential_recheck;
 	
 	private static AEMonitor		class_mon	= new AEMonitor( "DMChecker:class" );
 	private static List				async_check_queue		= new ArrayList();
@@ -108,13 +109,15 @@ DMCheckerImpl
     	    {
     	   	    flush_pieces				= COConfigurationManager.getBooleanParameter( "diskmanager.perf.cache.flushpieces" );
        	   	  	checking_read_priority		= COConfigurationManager.getBooleanParameter( "diskmanager.perf.checking.read.priority" );
+       	   	  	sequential_recheck			= COConfigurationManager.getBooleanParameter( "diskmanager.perf.checking.sequential" );
      	    }
     	 };
 
  		COConfigurationManager.addAndFireParameterListeners( 
  			new String[]{
  				"diskmanager.perf.cache.flushpieces",
- 				"diskmanager.perf.checking.read.priority" },
+ 				"diskmanager.perf.checking.read.priority",
+ 				"diskmanager.perf.checking.sequential" },
  				param_listener );
     }
    
@@ -302,12 +305,20 @@ DMCheckerImpl
 		  		{
 		  			DiskManagerRecheckInstance	recheck_inst = disk_manager.getRecheckScheduler().register( disk_manager, true );
 		  			
+		  				// the sequential reader reads on this thread so keep enough pieces in flight for
+		  				// all the hashers
+		  			
+		  			DMCheckerSequentialReader	sequential_reader = sequential_recheck?new DMCheckerSequentialReader():null;
+		  			
+		  			long	start_time		= SystemTime.getMonotonousTime();
+		  			long	bytes_submitted	= 0;
+		  			
 		  			try{	  					
 		  				final AESemaphore	sem = new AESemaphore( "DMChecker::completeRecheck" );
 		  				
 		  				int	checks_submitted	= 0;
 		  				           
-			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", 2 );
+			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", sequential_reader==null?2:Runtime.getRuntime().availableProcessors() + 1 );
 			            
 			            int nbPieces = disk_manager.getNbPieces();
 			            
@@ -403,9 +414,12 @@ DMCheckerImpl
 			  	       						sem.release();
 				  	       				}
 									},
-									false );
+									false,
+									sequential_reader );
 			  					
 			  					checks_submitted++;
+			  					
+			  					bytes_submitted += disk_manager.getPieceLength( i );
 		  					}
 		  				}
 		  					  					
@@ -420,6 +434,25 @@ DMCheckerImpl
 		  	       		complete_recheck_in_progress	= false;
 		  	       		
 		  	       		recheck_inst.unregister();
+		  	       		
+		  	       		long	elapsed = Math.max( 1, SystemTime.getMonotonousTime() - start_time );
+		  	       		
+		  	       		String	mode = "";
+		  	       		
+		  	       		if ( sequential_reader != null ){
+		  	       			
+		  	       			mode = ", sequential=" + DisplayFormatters.formatByteCountToKiBEtc( sequential_reader.getBytesRead()) + 
+		  	       					" in " + sequential_reader.getWindowsLoaded() + " windows";
+		  	       			
+		  	       			sequential_reader.close();
+		  	       		}
+		  	       		
+		  	       		if ( Logger.isEnabled()){
+		  	       			
+		  	       			Logger.log(new LogEvent(disk_manager, LOGID, 
+		  	       					"Recheck of " + DisplayFormatters.formatByteCountToKiBEtc( bytes_submitted ) + " took " + elapsed + "ms, " +
+		  	       					DisplayFormatters.formatByteCountToKiBEtcPerSec( bytes_submitted*1000/elapsed ) + mode ));
+		  	       		}
 		  	       }
 		        }     			
 		 	}.start();
@@ -490,11 +523,21 @@ DMCheckerImpl
 		return( false );
 	}
 	
+	protected void 
+	enqueueCheckRequest(
+		DiskManagerCheckRequest				request,
+		DiskManagerCheckRequestListener 	listener,
+		boolean								read_flush ) 
+	{
+		enqueueCheckRequest( request, listener, read_flush, null );
+	}
+	
 	protected void 
 	enqueueCheckRequest(
 		final DiskManagerCheckRequest			request,
 		final DiskManagerCheckRequestListener 	listener,
-		boolean									read_flush ) 
+		boolean									read_flush,
+		DMCheckerSequentialReader				sequential_reader ) 
 	{  	
 			// everything comes through here - the interceptor listener maintains the piece state and
 			// does logging
@@ -587,7 +630,7 @@ DMCheckerImpl
 							}
 						}
 					}
-				}, read_flush );
+				}, read_flush, sequential_reader );
 	}  
 	  
 	
@@ -595,7 +638,8 @@ DMCheckerImpl
 	enqueueCheckRequestSupport(
 		final DiskManagerCheckRequest			request,
 		final DiskManagerCheckRequestListener	listener,
-		boolean									read_flush )
+		boolean									read_flush,
+		DMCheckerSequentialReader				sequential_reader )
 	{
 		if ( !checking_enabled ){
 			
@@ -699,8 +743,7 @@ DMCheckerImpl
 		   	
 		   	read_request.setUseCache( !request.isAdHoc());
 		   	
-			disk_manager.enqueueReadRequest( 
-				read_request,
+		   	DiskManagerReadRequestListener	read_listener =
 				new DiskManagerReadRequestListener()
 				{
 					public void 
@@ -906,8 +949,21 @@ DMCheckerImpl
 							this_mon.exit();
 						}
 					}
-				});
+				};
+				
+				// a complete recheck reads the piece from the files itself, bypassing the cache
+				// and the disk access queues, unless the piece isn't stored linearly
+			
+			DirectByteBuffer	sequential_data = sequential_reader==null?null:sequential_reader.readPiece( pieceList, this_piece_length );
+			
+			if ( sequential_data != null ){
+				
+				read_listener.readCompleted( read_request, sequential_data );
 				
+			}else{
+				
+				disk_manager.enqueueReadRequest( read_request, read_listener );
+			}
 		}catch( Throwable e ){
 			
 			disk_manager.setFailed( "Piece check error - " + Debug.getNestedExceptionMessage(e));
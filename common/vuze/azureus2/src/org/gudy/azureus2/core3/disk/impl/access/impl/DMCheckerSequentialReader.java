@@ -0,0 +1,316 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.disk.impl.access.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.gudy.azureus2.core3.disk.impl.DiskManagerFileInfoImpl;
+import org.gudy.azureus2.core3.disk.impl.piecemapper.DMPieceList;
+import org.gudy.azureus2.core3.disk.impl.piecemapper.DMPieceMapEntry;
+import org.gudy.azureus2.core3.util.Debug;
+import org.gudy.azureus2.core3.util.DirectByteBuffer;
+import org.gudy.azureus2.core3.util.DirectByteBufferPool;
+
+import com.aelitis.azureus.core.diskmanager.cache.CacheFile;
+
+/**
+ * Reads the pieces of a complete recheck straight from the files, in piece order, rather than
+ * a disk manager read request per piece. Small pieces are copied out of a window of the current
+ * file that is filled by one positional read and reused for the whole recheck, whatever doesn't
+ * fit in it is read straight into the piece. Nothing is memory mapped, a mapping is only released
+ * when it is garbage collected and keeps the file locked on Windows until then.
+ *
+ * Only pieces entirely in linear files can be read this way, the caller falls back to the
+ * normal read path for the others.
+ *
+ * The recheck thread is the only one that reads, each piece is returned in a buffer of its own
+ * for the hashers. The methods are synchronized all the same so that a close can't pull the file
+ * or the window from under a read.
+ */
+
+public class
+DMCheckerSequentialReader
+{
+	private static final int		WINDOW_SIZE	= 1024*1024;
+
+	private final Set<DiskManagerFileInfoImpl>	flushed_files = new HashSet<DiskManagerFileInfoImpl>();
+
+	private File				current_file;
+	private RandomAccessFile	current_raf;
+	private long				current_length;
+
+	private ByteBuffer			window;
+	private long				window_start;
+
+	private long				bytes_read;
+	private long				windows_loaded;
+
+		/**
+		 * @return the piece data, null if the piece has to go through the normal read path
+		 */
+
+	protected synchronized DirectByteBuffer
+	readPiece(
+		DMPieceList		piece_list,
+		int				piece_length )
+	{
+		if ( piece_list.size() == 0 ){
+
+			return( null );
+		}
+
+		for (int i=0;i<piece_list.size();i++){
+
+			DMPieceMapEntry	entry = piece_list.get(i);
+
+			DiskManagerFileInfoImpl	file_info = entry.getFile();
+
+			CacheFile	cache_file = file_info.getCacheFile();
+
+			if ( cache_file.getStorageType() != CacheFile.CT_LINEAR ){
+
+				return( null );
+			}
+
+			if ( !flushed_files.contains( file_info )){
+
+					// anything written but still in the cache has to be on disk before we
+					// read around it
+
+				try{
+					cache_file.flushCache();
+
+				}catch( Throwable e ){
+
+					return( null );
+				}
+
+				flushed_files.add( file_info );
+			}
+		}
+
+		DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_CHECK, piece_length );
+
+		try{
+			ByteBuffer	bb = buffer.getBuffer( DirectByteBuffer.SS_DR );
+
+			for (int i=0;i<piece_list.size();i++){
+
+				DMPieceMapEntry	entry = piece_list.get(i);
+
+				if ( !read( entry.getFile().getCacheFile().getLinkedFile(), entry.getOffset(), entry.getLength(), bb )){
+
+					buffer.returnToPool();
+
+					return( null );
+				}
+			}
+
+			if ( bb.position() != piece_length ){
+
+				buffer.returnToPool();
+
+				return( null );
+			}
+
+			bb.flip();
+
+			bytes_read += piece_length;
+
+			return( buffer );
+
+		}catch( Throwable e ){
+
+			Debug.printStackTrace( e );
+
+			buffer.returnToPool();
+
+			closeFile();
+
+			return( null );
+		}
+	}
+
+	protected synchronized boolean
+	read(
+		File			file,
+		long			offset,
+		int				length,
+		ByteBuffer		target )
+
+		throws IOException
+	{
+		if ( file == null ){
+
+			return( false );
+		}
+
+		if ( !file.equals( current_file )){
+
+			closeFile();
+
+			if ( !file.exists()){
+
+				return( false );
+			}
+
+			current_raf		= new RandomAccessFile( file, "r" );
+			current_file	= file;
+			current_length	= current_raf.length();
+		}
+
+		if ( offset + length > current_length ){
+
+			return( false );
+		}
+
+		while( length > 0 ){
+
+			if ( window == null || offset < window_start || offset >= window_start + window.limit()){
+
+				if ( length >= WINDOW_SIZE ){
+
+						// nothing to gain from going through the window
+
+					int	limit = target.limit();
+
+					target.limit( target.position() + length );
+
+					try{
+						readFully( offset, target );
+
+					}finally{
+
+						target.limit( limit );
+					}
+
+					return( true );
+				}
+
+				loadWindow( offset );
+			}
+
+			int	window_offset	= (int)( offset - window_start );
+			int	chunk			= Math.min( length, window.limit() - window_offset );
+
+			ByteBuffer	slice = window.duplicate();
+
+			slice.limit( window_offset + chunk );
+			slice.position( window_offset );
+
+			target.put( slice );
+
+			offset	+= chunk;
+			length	-= chunk;
+		}
+
+		return( true );
+	}
+
+	private void
+	loadWindow(
+		long		offset )
+
+		throws IOException
+	{
+		if ( window == null ){
+
+			window = ByteBuffer.allocateDirect( WINDOW_SIZE );
+		}
+
+		window.clear();
+
+			// nothing is in the window until the read completes
+
+		window_start = -WINDOW_SIZE;
+
+		window.limit((int)Math.min( WINDOW_SIZE, current_length - offset ));
+
+		readFully( offset, window );
+
+		window.flip();
+
+		window_start = offset;
+
+		windows_loaded++;
+	}
+
+	private void
+	readFully(
+		long		offset,
+		ByteBuffer	target )
+
+		throws IOException
+	{
+		FileChannel	channel = current_raf.getChannel();
+
+		int	start = target.position();
+
+		while( target.hasRemaining()){
+
+			if ( channel.read( target, offset + target.position() - start ) < 0 ){
+
+				throw( new IOException( "Unexpected end of file: " + current_file ));
+			}
+		}
+	}
+
+	private void
+	closeFile()
+	{
+		window_start	= -WINDOW_SIZE;
+		current_file	= null;
+
+		if ( current_raf != null ){
+
+			try{
+				current_raf.close();
+
+			}catch( Throwable e ){
+			}
+
+			current_raf = null;
+		}
+	}
+
+	protected synchronized void
+	close()
+	{
+		closeFile();
+
+		window = null;
+	}
+
+	protected synchronized long
+	getBytesRead()
+	{
+		return( bytes_read );
+	}
+
+	protected synchronized long
+	getWindowsLoaded()
+	{
+		return( windows_loaded );
+	}
+}
@@ -212,6 +212,7 @@ DiskManagerCheckRequestListener, IPFilterListener
 	//  private int _maxUploads;
 	private int		stats_tick_count;
 	private int		_seeds, _peers,_remotesTCPNoLan, _remotesUDPNoLan, _remotesUTPNoLan;
+	private int		_relativeSeeds;
 	private int 	_tcpPendingConnections, _tcpConnectingConnections;
 	private long last_remote_time;
 	private long	_timeStarted;
@@ -237,6 +238,12 @@ DiskManagerCheckRequestListener, IPFilterListener
 	private final List<Object[]>	piece_check_result_list     	= new ArrayList<Object[]>();
 	private final AEMonitor	piece_check_result_list_mon  	= new AEMonitor( "PEPeerControl:PCRL");
 
+		// pieces that have had their last block written since the last look for pieces to check. anything
+		// written other than by us is picked up by the full scan that is still done once a minute
+	
+	private final List<Integer>	pieces_written_list			= new ArrayList<Integer>();
+	private final AEMonitor		pieces_written_list_mon		= new AEMonitor( "PEPeerControl:PWL");
+
 	private boolean 			superSeedMode;
 	private int 				superSeedModeCurrentPiece;
 	private int 				superSeedModeNumberOfAnnounces;
@@ -1130,23 +1137,55 @@ DiskManagerCheckRequestListener, IPFilterListener
 		if ((mainloop_loop_count %MAINLOOP_ONE_SECOND_INTERVAL) !=0)
 			return;
 
-		//for every piece
-		for (int i = 0; i <_nbPieces; i++) {
-			final DiskManagerPiece dmPiece =dm_pieces[i];
-			//if piece is completly written, not already checking, and not Done
-			if (dmPiece.isNeedsCheck())
-			{
-				//check the piece from the disk
-				dmPiece.setChecking();
+		final List<Integer> written;
 
-				DiskManagerCheckRequest req = 
-					disk_mgr.createCheckRequest(
-							i, new Integer(CHECK_REASON_DOWNLOADED));
+		try{
+			pieces_written_list_mon.enter();
+
+			if ( pieces_written_list.isEmpty()){
+
+				written = null;
+
+			}else{
+
+				written = new ArrayList<Integer>( pieces_written_list );
 
-				req.setAdHoc( false );
+				pieces_written_list.clear();
+			}
+		}finally{
+
+			pieces_written_list_mon.exit();
+		}
+
+		if ( mainloop_loop_count % MAINLOOP_SIXTY_SECOND_INTERVAL == 0 ){
 
-				disk_mgr.enqueueCheckRequest(  req, this );
+			//for every piece
+			for (int i = 0; i <_nbPieces; i++) {
+				checkCompletedPiece( i );
 			}
+		}else if ( written != null ){
+
+			for (int i = 0; i <written.size(); i++) {
+				checkCompletedPiece( written.get(i).intValue());
+			}
+		}
+	}
+
+	private void checkCompletedPiece(final int pieceNumber) {
+		final DiskManagerPiece dmPiece =dm_pieces[pieceNumber];
+		//if piece is completly written, not already checking, and not Done
+		if (dmPiece.isNeedsCheck())
+		{
+			//check the piece from the disk
+			dmPiece.setChecking();
+
+			DiskManagerCheckRequest req = 
+				disk_mgr.createCheckRequest(
+						pieceNumber, new Integer(CHECK_REASON_DOWNLOADED));
+
+			req.setAdHoc( false );
+
+			disk_mgr.enqueueCheckRequest(  req, this );
 		}
 	}
 
@@ -1195,13 +1234,16 @@ DiskManagerCheckRequestListener, IPFilterListener
 		//for every piece
 		for (int i =0; i <nbPieces; i++)
 		{
-			// placed before null-check in case it really removes a piece
+			// these checks are only against pieces being downloaded
+			// yet needing requests still/again
+			if (pieces[i] ==null)
+				continue;
+
+			// placed before taking the piece in case it really removes it
 			checkEmptyPiece(i);
 
 
 			final PEPieceImpl pePiece =pieces[i];
-			// these checks are only against pieces being downloaded
-			// yet needing requests still/again
 			if (pePiece !=null)
 			{
 				final long timeSinceActivity =pePiece.getTimeSinceLastActivity()/1000;				
@@ -2069,6 +2111,12 @@ DiskManagerCheckRequestListener, IPFilterListener
 			return;
 		}
 
+			// counted by updateStats earlier in this tick, nothing to do unless it saw one
+		
+		if (( _seeds == 0 || !isSeeding()) && _relativeSeeds == 0 ){
+			return;
+		}
+
 		ArrayList to_close = null;
 
 		final ArrayList peer_transports = peer_transports_cow;
@@ -2106,6 +2154,7 @@ DiskManagerCheckRequestListener, IPFilterListener
 		int new_connecting_tcp_connections	= 0;
 		
 		int	new_seeds = 0;
+		int	new_relative_seeds = 0;
 		int new_peers = 0;
 		int new_tcp_incoming 	= 0;
 		int new_udp_incoming  	= 0;
@@ -2153,6 +2202,9 @@ DiskManagerCheckRequestListener, IPFilterListener
 				else
 					new_peers++;
 
+				if (pc.isRelativeSeed())
+					new_relative_seeds++;
+
 				if ( pc.isIncoming() && !pc.isLANLocal()){
 										
 					if ( pc.isTCP() ) {
@@ -2191,6 +2243,7 @@ DiskManagerCheckRequestListener, IPFilterListener
 		}
 
 		_seeds = new_seeds;
+		_relativeSeeds = new_relative_seeds;
 		_peers = new_peers;
 		_remotesTCPNoLan = new_tcp_incoming;
 		_remotesUDPNoLan = new_udp_incoming;
@@ -2342,6 +2395,19 @@ DiskManagerCheckRequestListener, IPFilterListener
 
 				dm_piece.setWritten( request.getOffset() /DiskManager.BLOCK_SIZE );
 			}
+
+			if ( dm_piece.isNeedsCheck()){
+
+				try{
+					pieces_written_list_mon.enter();
+
+					pieces_written_list.add( new Integer( pieceNumber ));
+
+				}finally{
+
+					pieces_written_list_mon.exit();
+				}
+			}
 		}
 	}
 
@@ -2219,33 +2219,17 @@ implements PEPeerTransport
 			//send speed -based tuning
 			final long send_rate = peer_stats.getDataSendRate() + peer_stats.getProtocolSendRate();
 
-			if( send_rate >= 3125000 ) {  // 25 Mbit/s
+			if( send_rate >= 1250000 ) {  // 10 Mbit/s
 				transport.setTransportMode( Transport.TRANSPORT_MODE_TURBO );
-				outgoing_piece_message_handler.setRequestReadAhead( 256 );
-			}
-			else if( send_rate >= 1250000 ) {  // 10 Mbit/s
-				transport.setTransportMode( Transport.TRANSPORT_MODE_TURBO );
-				outgoing_piece_message_handler.setRequestReadAhead( 128 );
 			}
 			else if( send_rate >= 125000 ) {  // 1 Mbit/s
 				if( transport.getTransportMode() < Transport.TRANSPORT_MODE_FAST ) {
 					transport.setTransportMode( Transport.TRANSPORT_MODE_FAST );
 				}
-				outgoing_piece_message_handler.setRequestReadAhead( 32 );
-			}
-			else if( send_rate >= 62500 ) {  // 500 Kbit/s
-				outgoing_piece_message_handler.setRequestReadAhead( 16 );
-			}
-			else if( send_rate >= 31250 ) {  // 250 Kbit/s
-				outgoing_piece_message_handler.setRequestReadAhead( 8 );
-			}
-			else if( send_rate >= 12500 ) {  // 100 Kbit/s
-				outgoing_piece_message_handler.setRequestReadAhead( 4 );
-			}
-			else {
-				outgoing_piece_message_handler.setRequestReadAhead( 2 );
 			}
 
+			outgoing_piece_message_handler.setRequestReadAhead( OutgoingBTPieceMessageHandler.getReadAheadForRate( send_rate ));
+
 
 			//receive speed -based tuning
 			final long receive_rate = peer_stats.getDataReceiveRate() + peer_stats.getProtocolReceiveRate();
@@ -374,6 +374,9 @@ public class TrackerChecker implements AEDiagnosticsEvidenceGenerator, SystemTim
 						// scrapes are scheduled.  If other scrapes are sceduled,
 						// we would have got them from checkForNextScrape()
 						delay = 2000;
+					} else if (nextResponseScraping.getTrackerStatus().getScrapeDelay() > 0) {
+						// space out scrapes of the same tracker
+						delay = nextResponseScraping.getTrackerStatus().getScrapeDelay();
 					} else {
 
 						try {
@@ -433,7 +436,7 @@ public class TrackerChecker implements AEDiagnosticsEvidenceGenerator, SystemTim
 					continue;
 				}
 
-				boolean hasActiveScrapes = ts.getNumActiveScrapes() > 0;
+				boolean hasActiveScrapes = ts.getNumActiveScrapes() > 0 || ts.getScrapeDelay() > 0;
 
 				Map hashmap = ts.getHashes();
 
@@ -86,6 +86,29 @@ public class TrackerStatus {
 	private final static int		GROUP_SCRAPES_MS				= 60 * 15 * 1000;
 	private final static int		GROUP_SCRAPES_LIMIT				= 20;
 	
+		/**
+		 * HTTP group scrapes start at GROUP_SCRAPES_LIMIT hashes and double while the tracker
+		 * answers every hash asked for, up to this (around 4.5K of URL). UDP scrapes are only
+		 * bound by the packet size
+		 */
+	
+	private final static int		GROUP_SCRAPES_LIMIT_MAX			= 64;
+	
+		// 28 + 16 + 70*20 -> IPv4/udp packet size of 1444 , that should go through most lines unfragmented
+	
+	private final static int		UDP_SCRAPES_LIMIT				= 70;
+	
+		/**
+		 * Gap left after a scrape of a tracker before the checker runs the next one for it, so that
+		 * a tracker with hundreds of hashes due at once (e.g. at startup) doesn't get them in a burst
+		 */
+	
+	private final static int		SCRAPE_GAP_MS					= 2 * 1000;
+	
+		// BEP 15 connection ids can be used for a minute after the connect reply, keep a margin
+	
+	private final static int		UDP_CONNECTION_ID_MS			= 50 * 1000;
+	
 	private static boolean tcpScrapeEnabled; 
 	private static boolean udpScrapeEnabled; 
 	private static boolean udpProbeEnabled; 
@@ -130,6 +153,14 @@ public class TrackerStatus {
   private final TrackerChecker checker;
   
   private final AtomicInteger numActiveScrapes = new AtomicInteger(0);
+  
+  private int			groupScrapesLimit		= GROUP_SCRAPES_LIMIT;
+  private int			groupScrapesLimitMax	= GROUP_SCRAPES_LIMIT_MAX;
+  
+  private volatile long	nextScrapeAllowedMono;
+  
+  private long			udpConnectionId;
+  private long			udpConnectionIdMono		= -1;
 
   public 
   TrackerStatus(
@@ -286,9 +317,13 @@ public class TrackerStatus {
 			      
 			      	// if we hit trackers with excessive scrapes they respond in varying fashions - from no reply
 			      	// to returning 414 to whatever. Rather than hit trackers with large payloads that they then
-			      	// reject we limit to MULTI_SCRAPE_LIMIT in one go
+			      	// reject we limit to what the tracker has shown it takes in one go
+			      
+			      int	limit = getGroupScrapesLimit();
 			      
-			      while( iterHashes.hasNext() && responsesToUpdate.size() < GROUP_SCRAPES_LIMIT ){
+			      List	candidates = new ArrayList();
+			      
+			      while( iterHashes.hasNext()){
 			      	
 			        TRTrackerScraperResponseImpl r = (TRTrackerScraperResponseImpl)iterHashes.next();
 			        
@@ -298,17 +333,45 @@ public class TrackerStatus {
 			          
 			          if (lTimeDiff <= GROUP_SCRAPES_MS && r.getStatus() != TRTrackerScraperResponse.ST_SCRAPING) {
 			          	
-			    	    	r.setStatus(TRTrackerScraperResponse.ST_SCRAPING,
-			    						MessageText.getString(SS + "scraping.queued"));
-			      			if (Logger.isEnabled()) {
-			    					Logger.log(new LogEvent(TorrentUtils.getDownloadManager(r.getHash()), LOGID,
-			    						"TrackerStatus: setting to scraping via group scrape"));
-			      			}
-			            
-			            responsesToUpdate.add(r);
+			            candidates.add(r);
 			          }
 			        }
 			      }
+			      
+			      	// more than fit, take the ones due soonest so the rest can fill the next request
+			      
+			      if ( candidates.size() >= limit ){
+			      	
+			    	  Collections.sort(
+			    		candidates,
+			    		new Comparator()
+			    		{
+			    			public int
+			    			compare(
+			    				Object	o1,
+			    				Object	o2 )
+			    			{
+			    				long	t1 = ((TRTrackerScraperResponseImpl)o1).getNextScrapeStartTime();
+			    				long	t2 = ((TRTrackerScraperResponseImpl)o2).getNextScrapeStartTime();
+			    				
+			    				return( t1<t2?-1:(t1==t2?0:1));
+			    			}
+			    		});
+			      }
+			      
+			      for (int i=0;i<candidates.size() && responsesToUpdate.size() < limit;i++){
+			    	  
+			    	  TRTrackerScraperResponseImpl r = (TRTrackerScraperResponseImpl)candidates.get(i);
+			    	  
+			    	  r.setStatus(TRTrackerScraperResponse.ST_SCRAPING,
+			    			  MessageText.getString(SS + "scraping.queued"));
+			    	  if (Logger.isEnabled()) {
+			    		  Logger.log(new LogEvent(TorrentUtils.getDownloadManager(r.getHash()), LOGID,
+			    		  		"TrackerStatus: setting to scraping via group scrape"));
+			    	  }
+			    	  
+			    	  responsesToUpdate.add(r);
+			      }
 		      }finally{
 		      	
 		      	hashes_mon.exit();
@@ -323,6 +386,17 @@ public class TrackerStatus {
   		}
   	}
 	
+  	private int
+  	getGroupScrapesLimit()
+  	{
+  		if ( scrapeURL.toLowerCase().startsWith( "udp:" )){
+  			
+  			return( UDP_SCRAPES_LIMIT );
+  		}
+  		
+  		return( groupScrapesLimit );
+  	}
+  	
   	protected void
   	runScrapes(
   		final ArrayList 	responses, 
@@ -392,6 +466,8 @@ public class TrackerStatus {
 				
 				List hashesForUDP = new ArrayList();
 				
+				List hashesRequested = new ArrayList();
+				
 				for (int i = 0; i < responses.size(); i++) {
 					TRTrackerScraperResponseImpl response = (TRTrackerScraperResponseImpl) responses.get(i);
 
@@ -463,8 +539,9 @@ public class TrackerStatus {
 						one_of_the_responses = response;
 						one_of_the_hashes = hash;
 						
-						// 28 + 16 + 70*20 -> IPv4/udp packet size of 1444 , that should go through most lines unfragmented
-						if(hashesForUDP.size() < 70)
+						hashesRequested.add(hash);
+						
+						if(hashesForUDP.size() < UDP_SCRAPES_LIMIT)
 							hashesForUDP.add(hash);
 					}
 				} // for responses
@@ -709,6 +786,54 @@ public class TrackerStatus {
 								+ " hash scrape(s), but we asked for " + responses.size()));
 				}
 
+					// a full group answered up to its last hash over HTTP, try a bigger one next time.
+					// If a group bigger than the usual one stops short, everything after some hash missing,
+					// the tracker has a limit of its own and we keep below it from now on. Hashes missing
+					// here and there are ones the tracker doesn't know and get the usual nohash treatment
+				
+				int		answered	= 0;
+				boolean	truncated	= false;
+				
+				boolean	last_answered = 
+					hashesRequested.size() > 0 && 
+					mapFiles.containsKey( new String(((HashWrapper)hashesRequested.get( hashesRequested.size() - 1 )).getBytes(), Constants.BYTE_ENCODING ));
+				
+				if ( responses.size() > GROUP_SCRAPES_LIMIT && mapFiles.size() > 1 && mapFiles.size() < hashesRequested.size()){
+					
+					while( answered < hashesRequested.size() && mapFiles.containsKey( new String(((HashWrapper)hashesRequested.get( answered )).getBytes(), Constants.BYTE_ENCODING ))){
+						
+						answered++;
+					}
+					
+					truncated = answered > 1;
+					
+					for (int i=answered+1;i<hashesRequested.size() && truncated;i++){
+						
+						if ( mapFiles.containsKey( new String(((HashWrapper)hashesRequested.get( i )).getBytes(), Constants.BYTE_ENCODING ))){
+							
+							truncated = false;
+						}
+					}
+				}
+				
+				if ( udpScrapeURL == null && !bSingleHashScrapes ){
+					
+					if ( truncated ){
+						
+						groupScrapesLimitMax	= Math.max( GROUP_SCRAPES_LIMIT, answered );
+						groupScrapesLimit 		= Math.min( groupScrapesLimit, groupScrapesLimitMax );
+						
+						if (Logger.isEnabled())
+							Logger.log(new LogEvent(LOGID, LogEvent.LT_WARNING, scrapeURL
+									+ " only returned " + mapFiles.size()
+									+ " hash scrape(s), but we asked for " + responses.size()));
+						
+					}else if ( responses.size() >= groupScrapesLimit && mapFiles.size() > 1 && last_answered ){
+						
+						groupScrapesLimit = Math.min( groupScrapesLimit*2, groupScrapesLimitMax );
+					}
+				}
+				
 				for (int i = 0; i < responses.size(); i++) {
 					TRTrackerScraperResponseImpl response = (TRTrackerScraperResponseImpl) responses
 							.get(i);
@@ -721,8 +846,24 @@ public class TrackerStatus {
 							Constants.BYTE_ENCODING));
 
 					if (scrapeMap == null) {
+						if ( truncated ){
+							
+								// the tracker stopped short of a group bigger than it takes, these
+								// will go again in a smaller group
+							
+							response.revertStatus();
+							
+							if (response.getStatus() == TRTrackerScraperResponse.ST_SCRAPING) {
+								
+								response.setStatus(TRTrackerScraperResponse.ST_ERROR,
+										MessageText.getString(SS + "error")
+												+ MessageText.getString(SSErr + "invalid"));
+							}
+							
+							scraper.scrapeReceived(response);
+							
 						// some trackers that return only 1 hash return a random one!
-						if (responses.size() == 1 || mapFiles.size() != 1) {
+						} else if (responses.size() == 1 || mapFiles.size() != 1) {
 
 							response.setNextScrapeStartTime(SystemTime.getCurrentTime()
 									+ NOHASH_RETRY_INTERVAL);
@@ -934,7 +1075,13 @@ public class TrackerStatus {
 
   				if (error_message.indexOf("414") != -1
   						&& !bSingleHashScrapes) {
-  					bSingleHashScrapes = true;
+  					if ( responses.size() > GROUP_SCRAPES_LIMIT ){
+  							// grown too far, drop back to the usual size and stay there
+  						groupScrapesLimit 		= GROUP_SCRAPES_LIMIT;
+  						groupScrapesLimitMax	= GROUP_SCRAPES_LIMIT;
+  					}else{
+  						bSingleHashScrapes = true;
+  					}
   					// Skip the setuing up the response.  We want to scrape again
   					return;
   				}
@@ -982,6 +1129,8 @@ public class TrackerStatus {
 		} catch (Throwable t) {
 			Debug.out("runScrapesSupport failed", t);
 		} finally {
+			nextScrapeAllowedMono = SystemTime.getMonotonousTime() + SCRAPE_GAP_MS;
+			
 			numActiveScrapes.decrementAndGet();
 		}
 	}
@@ -1347,16 +1496,34 @@ public class TrackerStatus {
 			
 			for (int retry_loop=0;retry_loop<PRUDPPacketTracker.DEFAULT_RETRY_COUNT;retry_loop++){
 			
+				Long	cached_connection = getUDPConnectionId();
+				
 				try{
-					PRUDPPacket connect_request = new PRUDPPacketRequestConnect();
+					PRUDPPacket reply = null;
 					
-					PRUDPPacket reply = handler.sendAndReceive( auth, connect_request, destination );
+					if ( cached_connection == null ){
+						
+						PRUDPPacket connect_request = new PRUDPPacketRequestConnect();
 					
-					if ( reply.getAction() == PRUDPPacketTracker.ACT_REPLY_CONNECT ){
+						reply = handler.sendAndReceive( auth, connect_request, destination );
+					}
+					
+					if ( reply == null || reply.getAction() == PRUDPPacketTracker.ACT_REPLY_CONNECT ){
 						
-						PRUDPPacketReplyConnect connect_reply = (PRUDPPacketReplyConnect)reply;
+						long	my_connection;
 						
-						long	my_connection = connect_reply.getConnectionId();
+						if ( reply == null ){
+							
+							my_connection = cached_connection.longValue();
+							
+						}else{
+							
+							PRUDPPacketReplyConnect connect_reply = (PRUDPPacketReplyConnect)reply;
+						
+							my_connection = connect_reply.getConnectionId();
+							
+							setUDPConnectionId( my_connection );
+						}
 						
 						PRUDPPacketRequestScrape scrape_request = new PRUDPPacketRequestScrape( my_connection, hashes );
 										
@@ -1442,6 +1609,18 @@ public class TrackerStatus {
 							}
 						}else{
 							
+							resetUDPConnectionId();
+							
+							if ( cached_connection != null ){
+								
+									// the tracker may have let the connection go before we did, connect
+									// again without counting it as a retry
+								
+								retry_loop--;
+								
+								continue;
+							}
+							
 							failure_reason = ((PRUDPPacketReplyError)reply).getMessage();
 							
 							if (Logger.isEnabled())
@@ -1463,11 +1642,22 @@ public class TrackerStatus {
 		
 				}catch( PRUDPPacketHandlerException e ){
 					
+					resetUDPConnectionId();
+					
 					if ( e.getMessage() == null || e.getMessage().indexOf("timed out") == -1 ){
 						
 						throw( e );
 					}
 					
+					if ( cached_connection != null ){
+						
+							// some trackers drop requests with a connection id they no longer know
+						
+						retry_loop--;
+						
+						continue;
+					}
+					
 					failure_reason	= "Timeout";
 				}
 			}
@@ -1602,4 +1792,42 @@ public class TrackerStatus {
 	public int getNumActiveScrapes() {
 		return numActiveScrapes.get();
 	}
+	
+		/**
+		 * @return ms to wait before the checker runs another scrape for this tracker, 0 if it can go now
+		 */
+	
+	public long
+	getScrapeDelay()
+	{
+		long	delay = nextScrapeAllowedMono - SystemTime.getMonotonousTime();
+		
+		return( delay<0?0:delay );
+	}
+	
+	private synchronized Long
+	getUDPConnectionId()
+	{
+		if ( 	udpConnectionIdMono == -1 || 
+				SystemTime.getMonotonousTime() - udpConnectionIdMono > UDP_CONNECTION_ID_MS ){
+			
+			return( null );
+		}
+		
+		return( udpConnectionId );
+	}
+	
+	private synchronized void
+	setUDPConnectionId(
+		long		id )
+	{
+		udpConnectionId		= id;
+		udpConnectionIdMono	= SystemTime.getMonotonousTime();
+	}
+	
+	private synchronized void
+	resetUDPConnectionId()
+	{
+		udpConnectionIdMono	= -1;
+	}
 }
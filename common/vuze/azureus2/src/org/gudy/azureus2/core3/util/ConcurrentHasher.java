@@ -33,22 +33,31 @@ import java.nio.ByteBuffer;
 import org.gudy.azureus2.core3.config.COConfigurationManager;
 import org.gudy.azureus2.core3.config.ParameterListener;
 
+	/**
+	 * Requests are queued in two lanes, foreground checks (pieces just downloaded, synchronous
+	 * requests) and low priority ones (rechecks). A fixed set of workers always serves the foreground
+	 * lane first so a recheck can't hold up the completion of downloaded pieces. With friendly hashing
+	 * only one worker takes low priority work and it pauses for as long as its last batch took to hash,
+	 * so rechecks get half of one processor whatever the piece size and processor speed are.
+	 */
+
 public class 
 ConcurrentHasher 
 {
+	private static final int	MAX_BATCH				= 4;
 	
-	protected static ConcurrentHasher		singleton	= new ConcurrentHasher();
+		// percentage of one worker's time given to low priority requests with friendly hashing
 	
-	protected int			processor_num;
+	private static final int	FRIENDLY_DUTY_PERCENT	= 50;
 	
-	protected List<ConcurrentHasherRequest>				requests		= new LinkedList<ConcurrentHasherRequest>();
+	protected static ConcurrentHasher		singleton	= new ConcurrentHasher();
 	
-	protected List<SHA1Hasher>	hashers			= new ArrayList<SHA1Hasher>();
+	protected int			processor_num;
 	
-	protected AESemaphore		request_sem		= new AESemaphore("ConcHashReqQ");
-	protected AESemaphore		scheduler_sem	= new AESemaphore("ConcHashSched");
+	private final hashLane	foreground_lane;
+	private final hashLane	low_priority_lane;
 		
-	protected AEMonitor			requests_mon	= new AEMonitor( "ConcurrentHasher:R" );
+	protected final Object		requests_lock	= new Object();
 
 	private static boolean friendly_hashing;
 
@@ -90,106 +99,105 @@ ConcurrentHasher
 			
 			processor_num	= 1;
 		}
-			
-			// one more that proc num seems to improve performance ;)
 		
-		for (int i=0;i<processor_num + 1;i++){
-			
-			scheduler_sem.release();
-		}
-	
-		final ThreadPool pool	= new ThreadPool( "ConcurrentHasher", 64 );
+			// one more queued than proc num per lane keeps the workers busy while
+			// the callers are blocked on admission
 		
-		new AEThread2("ConcurrentHasher:scheduler", true )
-		{
-			public void
-			run()
+		foreground_lane		= new hashLane( "Foreground", processor_num + 1 );
+		low_priority_lane	= new hashLane( "LowPriority", processor_num + 1 );
+		
+		for (int i=0;i<processor_num;i++){
+			
+			final int	worker_index = i;
+			
+			new AEThread2("ConcurrentHasher:worker" + i, true )
 			{
-				while(true){
-					
-						// get a request to run
-					
-					request_sem.reserve();
+				public void
+				run()
+				{
+					SHA1Hasher	hasher = new SHA1Hasher();
 					
-						// now extract the request
+					long	low_priority_resume_time	= 0;
 					
-					final ConcurrentHasherRequest	req;
-					final SHA1Hasher				hasher;
+					List<ConcurrentHasherRequest>	batch = new ArrayList<ConcurrentHasherRequest>( MAX_BATCH );
 					
-					try{
-						requests_mon.enter();
+					while( true ){
 						
-						req	= requests.remove(0);
+						hashLane	lane = getWork( worker_index, low_priority_resume_time, batch );
 						
-						if ( hashers.size() == 0 ){
+						long	start = SystemTime.getHighPrecisionCounter();
+						
+						for ( ConcurrentHasherRequest req: batch ){
 							
-							hasher = new SHA1Hasher();
+							try{
+								req.run( hasher );
+								
+							}catch( Throwable e ){
+								
+								Debug.printStackTrace( e );
+								
+							}finally{
+								
+								lane.admission_sem.release();
+							}
+						}
+						
+						long	elapsed = SystemTime.getHighPrecisionCounter() - start;
+						
+						lane.hashed( batch, elapsed );
+						
+						if ( lane == low_priority_lane && friendly_hashing ){
 							
-						}else{
+							long	pause = ( elapsed / 1000000 ) * ( 100 - FRIENDLY_DUTY_PERCENT ) / FRIENDLY_DUTY_PERCENT;
 							
-							hasher	= hashers.remove( hashers.size()-1 );
+							low_priority_resume_time = SystemTime.getMonotonousTime() + pause;
 						}
-					}finally{
 						
-						requests_mon.exit();
+						batch.clear();
 					}
+				}
+			}.start();
+		}
+	}
+	
+	private hashLane
+	getWork(
+		int								worker_index,
+		long							low_priority_resume_time,
+		List<ConcurrentHasherRequest>	batch )
+	{
+		synchronized( requests_lock ){
+			
+			while( true ){
+				
+				if ( foreground_lane.take( batch )){
 					
-					pool.run( 
-							new AERunnable()
-							{
-								public void
-								runSupport()
-								{
-									try{											
-										req.run( hasher );
-										
-									}finally{
-										try{
-											requests_mon.enter();
-
-											hashers.add( hasher );
-										
-										}finally{
-											
-											requests_mon.exit();
-										}
-
-										if ( friendly_hashing && req.isLowPriority()){
+					return( foreground_lane );
+				}
 				
-											try{  
-												int	size = req.getSize();
-												
-													// pieces can be several MB so delay based on size
-												
-												final int max = 250;
-												final int min = 50;
-												
-												size = size/1024;	// in K
-												
-												size = size/8;
-												
-													// 4MB -> 500
-													// 1MB -> 125
-												
-												size = Math.min( size, max );
-												size = Math.max( size, min );
-												
-												Thread.sleep( size );
+				boolean	low_priority_worker = worker_index == 0 || !friendly_hashing;
+				
+				long	wait = 0;
+				
+				if ( low_priority_worker && low_priority_lane.requests.size() > 0 ){
 					
-											}catch( Throwable e ){ 
+					wait = low_priority_resume_time - SystemTime.getMonotonousTime();
 					
-												Debug.printStackTrace( e ); 
-											}
-										}
-									       		
-										scheduler_sem.release();
-									}
-								}
-							});
-												
+					if ( wait <= 0 ){
+						
+						low_priority_lane.take( batch );
+						
+						return( low_priority_lane );
+					}
+				}
+				
+				try{
+					requests_lock.wait( wait );
+					
+				}catch( InterruptedException e ){
 				}
 			}
-		}.start();
+		}
 	}
 	
 		/**
@@ -221,28 +229,152 @@ ConcurrentHasher
 	{
 		final ConcurrentHasherRequest	req = new ConcurrentHasherRequest( this, buffer, listener, low_priorty );
 			
-			// get permission to run a request
+		hashLane	lane = low_priorty?low_priority_lane:foreground_lane;
+		
+			// get permission to queue a request in the lane, a full low priority
+			// lane doesn't hold up foreground requests
 		
-
 		// test code to force synchronous checking
 		//SHA1Hasher	hasher = new SHA1Hasher();
 		//req.run( hasher );
 		
-		scheduler_sem.reserve();
+		lane.admission_sem.reserve();
+		
+		req.setQueueTime( SystemTime.getMonotonousTime());
 		
-		try{
-			requests_mon.enter();
+		synchronized( requests_lock ){
+			
+			lane.requests.add( req );
 			
-			requests.add( req );
+				// not all workers serve the low priority lane so wake them all
+			
+			requests_lock.notifyAll();
+		}
 		
-		}finally{
+		return( req );
+	}
+	
+		/**
+		 * @return bytes/sec hashed over the last 10 seconds for the lane
+		 */
+	
+	public long
+	getHashRate(
+		boolean		low_priority )
+	{
+		return(( low_priority?low_priority_lane:foreground_lane ).rate.getAverage());
+	}
+	
+		/**
+		 * @return for the lane: requests hashed, bytes hashed, average queue wait in ms,
+		 * average hash time per request in microseconds, requests queued
+		 */
+	
+	public long[]
+	getLaneStats(
+		boolean		low_priority )
+	{
+		hashLane	lane = low_priority?low_priority_lane:foreground_lane;
+		
+		synchronized( requests_lock ){
+		
+			long	count = lane.total_requests;
 			
-			requests_mon.exit();
+			return( new long[]{
+						count,
+						lane.total_bytes,
+						count==0?0:lane.total_wait_millis/count,
+						count==0?0:lane.total_hash_nanos/count/1000,
+						lane.requests.size() });
 		}
+	}
+	
+	public String
+	getString()
+	{
+		long[]	fg = getLaneStats( false );
+		long[]	lp = getLaneStats( true );
 		
-		request_sem.release();
+		return( "workers=" + processor_num + 
+				",fg=[" + DisplayFormatters.formatByteCountToKiBEtcPerSec( getHashRate( false )) + ",req=" + fg[0] + ",wait=" + fg[2] + "ms,q=" + fg[4] + "]" +
+				",lp=[" + DisplayFormatters.formatByteCountToKiBEtcPerSec( getHashRate( true )) + ",req=" + lp[0] + ",wait=" + lp[2] + "ms,q=" + lp[4] + "]" );
+	}
+	
+	private class
+	hashLane
+	{
+		private final LinkedList<ConcurrentHasherRequest>	requests = new LinkedList<ConcurrentHasherRequest>();
 		
-		return( req );
+		private final AESemaphore	admission_sem;
+		
+		private final Average		rate = Average.getInstance( 1000, 10 );
+		
+		private long	total_requests;
+		private long	total_bytes;
+		private long	total_wait_millis;
+		private long	total_hash_nanos;
+		
+		private
+		hashLane(
+			String		name,
+			int			max_queued )
+		{
+			admission_sem = new AESemaphore( "ConcHashSched:" + name, max_queued );
+		}
+		
+			/**
+			 * takes the next requests, more than one when there are more queued than workers
+			 * to save waking a worker per request. caller holds requests_lock
+			 */
+		
+		private boolean
+		take(
+			List<ConcurrentHasherRequest>	batch )
+		{
+			int	queued = requests.size();
+			
+			if ( queued == 0 ){
+				
+				return( false );
+			}
+			
+			int	num = Math.max( 1, Math.min( MAX_BATCH, queued / processor_num ));
+			
+			long	now = SystemTime.getMonotonousTime();
+			
+			for (int i=0;i<num;i++){
+				
+				ConcurrentHasherRequest	req = requests.removeFirst();
+				
+				total_wait_millis += now - req.getQueueTime();
+				
+				batch.add( req );
+			}
+			
+			return( true );
+		}
+		
+		private void
+		hashed(
+			List<ConcurrentHasherRequest>	batch,
+			long							elapsed_nanos )
+		{
+			long	bytes = 0;
+			
+			for ( ConcurrentHasherRequest req: batch ){
+				
+				bytes += req.getSize();
+			}
+			
+			rate.addValue( bytes );
+			
+			synchronized( requests_lock ){
+				
+				total_requests		+= batch.size();
+				total_bytes			+= bytes;
+				total_hash_nanos	+= elapsed_nanos;
+			}
+		}
 	}
 	
 	public static void
@@ -42,6 +42,7 @@ ConcurrentHasherRequest
 	private byte[]								result;
 	private boolean								cancelled;
 	private boolean								low_priority;
+	private long								queue_time;
 	
 	private AESemaphore	sem = new AESemaphore("ConcHashRequest");
 	
@@ -126,6 +127,19 @@ ConcurrentHasherRequest
 		return( low_priority );
 	}
 	
+	protected void
+	setQueueTime(
+		long		time )
+	{
+		queue_time	= time;
+	}
+	
+	protected long
+	getQueueTime()
+	{
+		return( queue_time );
+	}
+	
 	protected void
 	run(
 		SHA1Hasher	hasher )
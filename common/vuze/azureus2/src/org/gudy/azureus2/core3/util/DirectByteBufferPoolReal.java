@@ -21,6 +21,7 @@
 
 package org.gudy.azureus2.core3.util;
 
+import java.lang.ref.WeakReference;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -29,11 +30,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.gudy.azureus2.core3.config.COConfigurationManager;
 import org.gudy.azureus2.core3.disk.DiskManager;
@@ -44,6 +47,18 @@ import com.aelitis.azureus.core.diskmanager.cache.CacheFileManager;
 import com.aelitis.azureus.core.diskmanager.cache.CacheFileManagerFactory;
 import com.aelitis.azureus.core.diskmanager.cache.CacheFileManagerStats;
 
+/**
+ * Buffers of up to {@link #MAX_SIZE} are handed out from pools of power of two (plus a few extra)
+ * sizes, buffers of up to 2K as slices of 4K chunks. Freed buffers go first to a small cache
+ * belonging to the freeing thread, from which that thread's next requests of the same size
+ * are served without touching the shared pools, and when that is full to the shared free lists,
+ * which are lock free. A thread cache holds at most memory.pool.thread.cache.max.kb and all of
+ * them together a quarter of the free limit, and what they hold counts as free memory. When a
+ * size runs out in the shared pools the thread caches holding it give theirs back before
+ * anything new is allocated. The thread caches are flushed back to the shared pools on each
+ * compaction, which is also when those of threads that have died are dropped.
+ */
+
 public class 
 DirectByteBufferPoolReal 
 	extends DirectByteBufferPool
@@ -89,10 +104,8 @@ DirectByteBufferPoolReal
   
 	public static final int MAX_SIZE = BigInteger.valueOf(2).pow(END_POWER).intValue();
   
-	private static final DirectByteBufferPoolReal pool = new DirectByteBufferPoolReal();
-  
 
-	private final Map buffersMap = new LinkedHashMap(END_POWER - START_POWER + 1);
+	private final bufferPool[]	buffer_pools;
   
 	private final Object poolsLock = new Object();
 
@@ -104,8 +117,12 @@ DirectByteBufferPoolReal
 	private static final short[]		SLICE_ALLOC_MAXS		= { 256, 256, 128, 64, 64,  64,  64,  64,   64 };
 	
 	private static final short[]		SLICE_ENTRY_ALLOC_SIZES = new short[SLICE_ENTRY_SIZES.length];
-	private static final List[]			slice_entries 			= new List[SLICE_ENTRY_SIZES.length];
-	private static final boolean[][]	slice_allocs 			= new boolean[SLICE_ENTRY_SIZES.length][];
+	
+		// free slices, taken from and returned to the front. slice_allocs is a bitmap of the chunks
+		// allocated for each size, and its lock is held while chunks are allocated or freed
+	
+	private static final ConcurrentLinkedDeque<sliceBuffer>[]	slice_entries	= new ConcurrentLinkedDeque[SLICE_ENTRY_SIZES.length];
+	private static final long[][]		slice_allocs 			= new long[SLICE_ENTRY_SIZES.length][];
 	private static final boolean[]		slice_alloc_fails		= new boolean[SLICE_ENTRY_SIZES.length];
 	
 	static{
@@ -124,22 +141,56 @@ DirectByteBufferPoolReal
 			
 			SLICE_ENTRY_ALLOC_SIZES[i] = (short)(SLICE_ALLOC_CHUNK_SIZE/SLICE_ENTRY_SIZES[i]);
 					
-			slice_allocs[i] = new boolean[SLICE_ALLOC_MAXS[i]];
+			slice_allocs[i] = new long[( SLICE_ALLOC_MAXS[i] + 63 ) / 64];
 			
-			slice_entries[i] = new LinkedList();
+			slice_entries[i] = new ConcurrentLinkedDeque<sliceBuffer>();
 		}
 	}
 	
-	private static final long[]			slice_use_count 	= new long[SLICE_ENTRY_SIZES.length];
+	private static final AtomicLongArray	slice_use_count 	= new AtomicLongArray( SLICE_ENTRY_SIZES.length );
+	
+		// after the slice statics, which the constructor uses
+	
+	private static final DirectByteBufferPoolReal pool = new DirectByteBufferPoolReal();
   
 	private final Map handed_out	= new IdentityHashMap();	// for debugging (ByteBuffer has .equals defined on contents, hence IdentityHashMap)
 	
 	private final Map	size_counts	= new TreeMap();
  
 	private static final long COMPACTION_CHECK_PERIOD = 2*60*1000; //2 min
-	private static final long MAX_FREE_BYTES = 10*1024*1024; //10 MB
-	private static final long MIN_FREE_BYTES = 1*1024*1024; // 1 MB
+	
+	private final long	max_free_bytes;		// 10 MB by default
+	private final long	min_free_bytes;		// 1 MB by default
   
+		// thread caches are indexed by slice index and then by SLICE_ENTRY_SIZES.length + pool index
+	
+	private final int			thread_cache_size;
+	private final boolean[]		thread_cacheable;
+	private final int[]			thread_cache_entry_sizes;
+	private final long			thread_cache_max_bytes;
+	private final long			thread_caches_max_bytes;
+	
+	private final AtomicLong	thread_cached_bytes = new AtomicLong();
+	
+	private final List<threadCache>	thread_caches = new ArrayList<threadCache>();
+	
+	private final ThreadLocal<threadCache>	thread_cache =
+		new ThreadLocal<threadCache>()
+		{
+			protected threadCache
+			initialValue()
+			{
+				threadCache	cache = new threadCache();
+				
+				synchronized( thread_caches ){
+					
+					thread_caches.add( cache );
+				}
+				
+				return( cache );
+			}
+		};
+		
 	private long bytesIn = 0;
 	private long bytesOut = 0;
   
@@ -147,6 +198,16 @@ DirectByteBufferPoolReal
 	protected 
 	DirectByteBufferPoolReal() 
 	{
+		max_free_bytes	= COConfigurationManager.getIntParameter( "memory.pool.free.max.kb" ) * 1024L;
+		min_free_bytes	= COConfigurationManager.getIntParameter( "memory.pool.free.min.kb" ) * 1024L;
+		
+		thread_cache_size = Math.max( 0, COConfigurationManager.getIntParameter( "memory.pool.thread.cache.size" ));
+		
+		int	thread_cache_max_buffer = COConfigurationManager.getIntParameter( "memory.pool.thread.cache.max.buffer" );
+		
+		thread_cache_max_bytes	= COConfigurationManager.getIntParameter( "memory.pool.thread.cache.max.kb" ) * 1024L;
+		thread_caches_max_bytes	= max_free_bytes / 4;
+		
 	    //create the buffer pool for each buffer size
 	  	
 	  	ArrayList	list = new ArrayList();
@@ -165,11 +226,25 @@ DirectByteBufferPoolReal
 	    list.toArray( sizes );
 	    Arrays.sort( sizes);
 	    
+	    buffer_pools = new bufferPool[ sizes.length ];
+	    
+	    thread_cacheable 			= new boolean[ SLICE_ENTRY_SIZES.length + sizes.length ];
+	    thread_cache_entry_sizes	= new int[ thread_cacheable.length ];
+	    
+	    Arrays.fill( thread_cacheable, 0, SLICE_ENTRY_SIZES.length, thread_cache_size > 0 );
+	    
+	    for (int i=0;i<SLICE_ENTRY_SIZES.length;i++){
+	    	
+	    	thread_cache_entry_sizes[i] = SLICE_ENTRY_SIZES[i];
+	    }
+	    
 	    for (int i=0;i<sizes.length;i++){
 	    	
-	    	ArrayList bufferPool = new ArrayList();
+	    	buffer_pools[i] = new bufferPool( sizes[i].intValue());
 	    	
-	    	buffersMap.put(sizes[i], bufferPool);
+	    	thread_cacheable[SLICE_ENTRY_SIZES.length+i] = thread_cache_size > 0 && sizes[i].intValue() <= thread_cache_max_buffer;
+	    	
+	    	thread_cache_entry_sizes[SLICE_ENTRY_SIZES.length+i] = sizes[i].intValue();
 	    }
 	    
 	    //initiate periodic timer to check free memory usage
@@ -276,61 +351,39 @@ DirectByteBufferPoolReal
 				
 			ByteBuffer	buff = null;
 			
-			Integer reqVal = new Integer(_length);
-	    
-				//loop through the buffer pools to find a buffer big enough
+			int	pool_index = getPoolIndex( _length );
 	    
-			Iterator it = buffersMap.keySet().iterator();
-	    
-			while (it.hasNext()) {
-	    	
-				Integer keyVal = (Integer)it.next();
-	
-					//	check if the buffers in this pool are big enough
-	      
-				if ( reqVal.compareTo(keyVal) <= 0 ){
-	      	
-					ArrayList bufferPool = (ArrayList)buffersMap.get(keyVal);
-	        
-					while( true ){
-						
-						synchronized ( poolsLock ) { 
-		        
-							// make sure we don't remove a buffer when running compaction
-							// if there are no free buffers in the pool, create a new one.
-							// otherwise use one from the pool
-		        	
-							if ( bufferPool.isEmpty()){
-		          	
-								buff = allocateNewBuffer(keyVal.intValue());
+			if ( pool_index != -1 ){
+				
+				bufferPool	bufferPool = buffer_pools[pool_index];
+
+				threadCache	cache = getThreadCache();
+				
+				if ( cache != null ){
+					
+					buff = (ByteBuffer)cache.get( SLICE_ENTRY_SIZES.length + pool_index );
+				}
+				
+				if ( buff == null ){
+					
+					buff = bufferPool.poll();
+				}
+				
+				if ( buff == null && cache != null && flushThreadCaches( SLICE_ENTRY_SIZES.length + pool_index )){
+					
+					buff = bufferPool.poll();
+				}
+				
+					// if there are no free buffers in the pool, create a new one
+				
+				if ( buff == null ){
+					
+					buff = allocateNewBuffer( bufferPool.size );
 		            
-								if ( buff == null ){
-									
-									Debug.out( "allocateNewBuffer for " + _length + " returned null" );
-								}
-								
-								break;
-								
-							}else{
-		          	
-								synchronized ( bufferPool ) {
-		            	
-									buff = (ByteBuffer)bufferPool.remove(bufferPool.size() - 1);
-								}
-								
-								if ( buff == null ){
-									
-									Debug.out( "buffer pool for " + _length + " contained null entry" ); 
-									
-								}else{
-									
-									break;
-								}
-							}
-						}
+					if ( buff == null ){
+						
+						Debug.out( "allocateNewBuffer for " + _length + " returned null" );
 					}
-					
-					break;
 				}
 			}
 		
@@ -446,18 +499,18 @@ DirectByteBufferPoolReal
 			freeSliceBuffer( ddb );
 			
 		}else{
-		    Integer buffSize = new Integer(capacity);
-		    
-		    ArrayList bufferPool = (ArrayList)buffersMap.get(buffSize);
-		    
-		    if (bufferPool != null) {
-				
-				//no need to sync around 'poolsLock', as adding during compaction is ok
+			int	pool_index = getPoolIndex( capacity );
+			
+		    if ( pool_index != -1 && buffer_pools[pool_index].size == capacity ){
 				
-		      synchronized ( bufferPool ){
+		    	threadCache	cache = getThreadCache();
+		    	
+		    	if ( cache == null || !cache.put( SLICE_ENTRY_SIZES.length + pool_index, buff )){
+		    		
+		    			//no need to sync around 'poolsLock', as adding during compaction is ok
 				  
-		        bufferPool.add(buff);
-		      }
+		    		buffer_pools[pool_index].add( buff );
+		    	}
 		    }else{
 				
 		      Debug.out("Invalid buffer given; could not find proper buffer pool");
@@ -465,16 +518,114 @@ DirectByteBufferPoolReal
 		}
 	}
   
+	private int
+	getPoolIndex(
+		int		_length )
+	{
+		for (int i=0;i<buffer_pools.length;i++){
+			
+			if ( _length <= buffer_pools[i].size ){
+				
+				return( i );
+			}
+		}
+		
+		return( -1 );
+	}
+	
+	private threadCache
+	getThreadCache()
+	{
+		if ( thread_cache_size == 0 ){
+			
+			return( null );
+		}
+		
+		return( thread_cache.get());
+	}
+	
+		/**
+		 * Returns the contents of every thread's cache to the shared pools and forgets the caches
+		 * of threads that have gone
+		 */
+	
+	private void
+	flushThreadCaches()
+	{
+		if ( thread_cache_size == 0 ){
+			
+			return;
+		}
+		
+		List<threadCache>	caches;
+		
+		synchronized( thread_caches ){
+			
+			caches = new ArrayList<threadCache>( thread_caches );
+		}
+		
+		for ( threadCache cache: caches ){
+			
+			cache.flush();
+			
+			if ( cache.isDead()){
+				
+				synchronized( thread_caches ){
+					
+					thread_caches.remove( cache );
+				}
+				
+					// anything freed on the thread after it was seen dead
+				
+				cache.flush();
+			}
+		}
+	}
+	
+		/**
+		 * Returns the entries of one size held in thread caches to the shared pools, used when
+		 * that size has run out there
+		 * @return whether any were returned
+		 */
+	
+	private boolean
+	flushThreadCaches(
+		int		index )
+	{
+		if ( thread_cached_bytes.get() == 0 ){
+			
+			return( false );
+		}
+		
+		threadCache[]	caches;
+		
+		synchronized( thread_caches ){
+			
+			caches = thread_caches.toArray( new threadCache[ thread_caches.size()]);
+		}
+		
+		boolean	flushed = false;
+		
+		for ( threadCache cache: caches ){
+			
+			if ( cache.flush( index )){
+				
+				flushed = true;
+			}
+		}
+		
+		return( flushed );
+	}
+  
   
   /**
    * Clears the free buffer pools so that currently
    * unused buffers can be garbage collected.
    */
   private void clearBufferPools() {
-    Iterator it = buffersMap.values().iterator();
-    while (it.hasNext()) {
-        ArrayList bufferPool = (ArrayList)it.next();
-        bufferPool.clear();
+    flushThreadCaches();
+    for (int i=0;i<buffer_pools.length;i++) {
+        buffer_pools[i].clear();
     }
   }
   
@@ -499,30 +650,30 @@ DirectByteBufferPoolReal
    */
   private void compactBuffers() {
 	  
+	  flushThreadCaches();
+	  
 	  nonsliecd: synchronized (poolsLock)
 		{
 			long freeSize = bytesFree();
 			
-			if (freeSize < MIN_FREE_BYTES)
+			if (freeSize < min_free_bytes)
 				break nonsliecd;
 			
 			// apply cleanup pressure based on filling degree
 			float remainingFactor;
-			if (freeSize > MAX_FREE_BYTES) // downsize to 50% of the limit (not the current capacity!) if we're overlimit 
-				remainingFactor = 0.5f * MAX_FREE_BYTES / (float) freeSize;
+			if (freeSize > max_free_bytes) // downsize to 50% of the limit (not the current capacity!) if we're overlimit 
+				remainingFactor = 0.5f * max_free_bytes / (float) freeSize;
 			else // reduce to something between 50% (full: maximum reduction) and 100% (empty: no reduction)  
-				remainingFactor = 1.0f - 0.5f * freeSize / (float) MAX_FREE_BYTES;
+				remainingFactor = 1.0f - 0.5f * freeSize / (float) max_free_bytes;
 			
 			if (DEBUG_PRINT_MEM)
 				System.out.println("Performing cleanup, reducing to " + remainingFactor * 100 + "%");
 			
-			ArrayList pools = new ArrayList(buffersMap.values());
-			for (int i = pools.size() - 1; i >= 0; i--)
+			for (int i = buffer_pools.length - 1; i >= 0; i--)
 			{
-				ArrayList pool = (ArrayList) pools.get(i);
-				int limit = (int) (pool.size() * remainingFactor); // floor(), this way we can reach 0 at some point
-				for (int j = pool.size() - 1; j >= limit; j--)
-					pool.remove(j);
+				bufferPool pool = buffer_pools[i];
+				int limit = (int) (pool.getFreeCount() * remainingFactor); // floor(), this way we can reach 0 at some point
+				pool.trim(limit);
 			}
 			
 			runGarbageCollection();
@@ -543,15 +694,13 @@ DirectByteBufferPoolReal
     long bytesUsed = 0;
     synchronized( poolsLock ) {
       //count up total bytes used by free buffers
-      Iterator it = buffersMap.keySet().iterator();
-      while (it.hasNext()) {
-        Integer keyVal = (Integer)it.next();
-        ArrayList bufferPool = (ArrayList)buffersMap.get(keyVal);
+      for (int i=0;i<buffer_pools.length;i++) {
+        bufferPool bufferPool = buffer_pools[i];
       
-        bytesUsed += keyVal.intValue() * bufferPool.size();
+        bytesUsed += (long)bufferPool.size * bufferPool.getFreeCount();
       }
     }
-    return bytesUsed;
+    return bytesUsed + thread_cached_bytes.get();
   }
   
   
@@ -734,14 +883,14 @@ DirectByteBufferPoolReal
 				
 				for (int i=0;i<slice_entries.length;i++){
 				
-					boolean[]	allocs = slice_allocs[i];
+					long[]	allocs = slice_allocs[i];
 					int	alloc_count = 0;
-					for (int j=0;j<allocs.length;j++){
-						if( allocs[j]){
-							alloc_count++;
+					synchronized( allocs ){
+						for (int j=0;j<allocs.length;j++){
+							alloc_count += Long.bitCount( allocs[j] );
 						}
 					}
-					str += (i==0?"":",") + "["+SLICE_ENTRY_SIZES[i]+"]f=" +slice_entries[i].size()+",a=" + (alloc_count*SLICE_ENTRY_ALLOC_SIZES[i]) + ",u=" +slice_use_count[i];
+					str += (i==0?"":",") + "["+SLICE_ENTRY_SIZES[i]+"]f=" +slice_entries[i].size()+",a=" + (alloc_count*SLICE_ENTRY_ALLOC_SIZES[i]) + ",u=" +slice_use_count.get(i);
 				}
 				
 				System.out.println( "slices: " + str );
@@ -754,14 +903,12 @@ DirectByteBufferPoolReal
 	  			
 	  			synchronized (poolsLock)
 				{
-					Iterator it = buffersMap.keySet().iterator();
-					while (it.hasNext())
+					for (int i=0;i<buffer_pools.length;i++)
 					{
-						Integer keyVal = (Integer) it.next();
-						ArrayList bufferPool = (ArrayList) buffersMap.get(keyVal);
+						bufferPool bufferPool = buffer_pools[i];
 						
-						int blocksize = keyVal.intValue();
-						int blockfootprint = keyVal.intValue() * bufferPool.size();
+						int blocksize = bufferPool.size;
+						int blockfootprint = bufferPool.size * bufferPool.getFreeCount();
 						if(blockfootprint == 0)
 							continue;
 						String blocksuffix = ""; 
@@ -797,85 +944,125 @@ DirectByteBufferPoolReal
 	{
 		int	slice_index = getSliceIndex( _length );
 		
-		List		my_slice_entries 	= slice_entries[slice_index];
+		sliceBuffer	sb = null;
 
-		synchronized( my_slice_entries ){
-	
-			boolean[]	my_allocs			= slice_allocs[slice_index];
+		threadCache	cache = getThreadCache();
+		
+		if ( cache != null ){
 			
-			sliceBuffer	sb = null;
+			sb = (sliceBuffer)cache.get( slice_index );
+		}
+		
+		if ( sb == null ){
 			
-			if ( my_slice_entries.size() > 0 ){
-				
-				sb = (sliceBuffer)my_slice_entries.remove(0);
-				
-				slice_use_count[slice_index]++;
-				
-			}else{
-				
-					// find a free slot
-				
-				short	slot = -1;
+			ConcurrentLinkedDeque<sliceBuffer>	my_slice_entries 	= slice_entries[slice_index];
+
+			sb = my_slice_entries.pollFirst();
+		
+			if ( sb == null ){
 				
-				for (short i=0;i<my_allocs.length;i++){
-					
-					if( !my_allocs[i]){
-						
-						slot	= i;
-			
-						break;
-					}
-				}
+				long[]	my_allocs = slice_allocs[slice_index];
 				
-				if ( slot != -1 ){
+				synchronized( my_allocs ){
 					
-					short	slice_entry_size 	= SLICE_ENTRY_SIZES[slice_index];
-					short	slice_entry_count	= SLICE_ENTRY_ALLOC_SIZES[slice_index];
+						// another thread may have allocated a chunk while we were waiting
 					
-					ByteBuffer	chunk = ByteBuffer.allocateDirect(  slice_entry_size*slice_entry_count  );
+					sb = my_slice_entries.pollFirst();
 					
-					my_allocs[slot] = true;
-					
-					for (short i=0;i<slice_entry_count;i++){
-						
-						chunk.limit((i+1)*slice_entry_size);
-						chunk.position(i*slice_entry_size);
+					if ( sb == null ){
 						
-						ByteBuffer	slice = chunk.slice();
+							// the slices may be sitting in thread caches, some of threads that
+							// have gone
 						
-						sliceBuffer new_buffer = new sliceBuffer( slice, slot, i );
-						
-						if ( i == 0 ){
+						if ( cache != null && flushThreadCaches( slice_index )){
 							
-							sb = new_buffer;
+							sb = my_slice_entries.pollFirst();
+						}
+						
+						if ( sb == null ){
 							
-							slice_use_count[slice_index]++;
+								// find a free slot
 							
-						}else{
+							short	slot = (short)findFreeSlot( my_allocs, SLICE_ALLOC_MAXS[slice_index] );
 							
-							my_slice_entries.add( new_buffer );
+							if ( slot != -1 ){
+								
+								short	slice_entry_size 	= SLICE_ENTRY_SIZES[slice_index];
+								short	slice_entry_count	= SLICE_ENTRY_ALLOC_SIZES[slice_index];
+								
+								ByteBuffer	chunk = ByteBuffer.allocateDirect(  slice_entry_size*slice_entry_count  );
+								
+								my_allocs[slot>>6] |= 1L << ( slot & 63 );
+								
+								for (short i=0;i<slice_entry_count;i++){
+									
+									chunk.limit((i+1)*slice_entry_size);
+									chunk.position(i*slice_entry_size);
+									
+									ByteBuffer	slice = chunk.slice();
+									
+									sliceBuffer new_buffer = new sliceBuffer( slice, slot, i );
+									
+									if ( i == 0 ){
+										
+										sb = new_buffer;
+										
+									}else{
+										
+										my_slice_entries.addLast( new_buffer );
+									}
+								}
+							}else{
+								
+								if ( !slice_alloc_fails[slice_index] ){
+									
+									slice_alloc_fails[slice_index]	= true;
+									
+									Debug.out( "Run out of slice space for '" + SLICE_ENTRY_SIZES[slice_index] + ", reverting to normal allocation" );
+								}
+								
+								ByteBuffer buff = ByteBuffer.allocate( _length );
+								
+							    return( new DirectByteBuffer( _allocator, buff, this ));
+							}
 						}
 					}
-				}else{
-					
-					if ( !slice_alloc_fails[slice_index] ){
-						
-						slice_alloc_fails[slice_index]	= true;
-						
-						Debug.out( "Run out of slice space for '" + SLICE_ENTRY_SIZES[slice_index] + ", reverting to normal allocation" );
-					}
-					
-					ByteBuffer buff = ByteBuffer.allocate( _length );
-					
-				    return( new DirectByteBuffer( _allocator, buff, this ));
-
 				}
 			}
+		}
+		
+		if ( DEBUG_PRINT_MEM ){
 			
-			sliceDBB dbb = new sliceDBB( _allocator, sb );
+			slice_use_count.incrementAndGet( slice_index );
+		}
+		
+		sliceDBB dbb = new sliceDBB( _allocator, sb );
 
-			return( dbb );
+		return( dbb );
+	}
+	
+		/**
+		 * @return the lowest clear bit below max, which the caller sets if it uses it, or -1
+		 */
+	
+	private static int
+	findFreeSlot(
+		long[]		allocs,
+		int			max )
+	{
+		for (int i=0;i<allocs.length;i++){
+			
+			long	free = ~allocs[i];
+			
+			if ( free != 0 ){
+				
+				int	slot = ( i << 6 ) + Long.numberOfTrailingZeros( free );
+				
+				return( slot < max?slot:-1 );
+			}
 		}
+		
+		return( -1 );
 	}
 	
   	private void
@@ -886,11 +1073,13 @@ DirectByteBufferPoolReal
 			
 			int	slice_index = getSliceIndex( ddb.getBufferInternal().capacity());
 
-			List		my_slice_entries 	= slice_entries[slice_index];
-
-			synchronized( my_slice_entries ){
+			sliceBuffer	sb = ((sliceDBB)ddb).getSliceBuffer();
+			
+			threadCache	cache = getThreadCache();
 			
-				my_slice_entries.add( 0, ((sliceDBB)ddb).getSliceBuffer());
+			if ( cache == null || !cache.put( slice_index, sb )){
+			
+				slice_entries[slice_index].addFirst( sb );
 			}
 		}
 	}
@@ -911,25 +1100,36 @@ DirectByteBufferPoolReal
 			
 			int			entries_per_alloc 	= SLICE_ENTRY_ALLOC_SIZES[i];
 	
-			List	l = slice_entries[i];
+			ConcurrentLinkedDeque<sliceBuffer>	entries = slice_entries[i];
 	
 				// no point in trying gc if not enough entries
 			
-			if ( l.size() >= entries_per_alloc ){
+			if ( entries.size() >= entries_per_alloc ){
 			
-				synchronized( l ){
+				long[]	allocs = slice_allocs[i];
+				
+				synchronized( allocs ){
+					
+						// take the free list over while we sort it, anyone wanting a slice in the
+						// meantime waits on the allocs lock and then finds the entries put back
+					
+					List<sliceBuffer>	l = new ArrayList<sliceBuffer>( entries.size());
+					
+					sliceBuffer	entry;
+					
+					while(( entry = entries.pollFirst()) != null ){
+						
+						l.add( entry );
+					}
 					
 					Collections.sort( l,
-						new Comparator()
+						new Comparator<sliceBuffer>()
 						{
 							public int
 							compare(
-								Object	o1,
-								Object	o2 )
+								sliceBuffer	sb1,
+								sliceBuffer	sb2 )
 							{
-								sliceBuffer	sb1 = (sliceBuffer)o1;
-								sliceBuffer	sb2 = (sliceBuffer)o2;
-								
 								int	res = sb1.getAllocID() - sb2.getAllocID();
 								
 								if ( res == 0 ){
@@ -941,9 +1141,7 @@ DirectByteBufferPoolReal
 							}
 						});
 			
-					boolean[]	allocs				= slice_allocs[i];
-			
-					Iterator	it = l.iterator();
+					Iterator<sliceBuffer>	it = l.iterator();
 					
 					int	current_alloc 	= -1;
 					int entry_count		= 0;
@@ -952,7 +1150,7 @@ DirectByteBufferPoolReal
 					
 					while( it.hasNext()){
 						
-						sliceBuffer	sb = (sliceBuffer)it.next();
+						sliceBuffer	sb = it.next();
 						
 						int	aid = sb.getAllocID();
 						
@@ -960,11 +1158,11 @@ DirectByteBufferPoolReal
 							
 							if ( entry_count == entries_per_alloc ){
 								
-								// System.out.println( "CompactSlices[" + SLICE_ENTRY_SIZES[i]+"] freeing " + aid );
+								// System.out.println( "CompactSlices[" + SLICE_ENTRY_SIZES[i]+"] freeing " + current_alloc );
 								
 								freed_one	= true;
 								
-								allocs[aid]	= false;					
+								allocs[current_alloc>>6] &= ~( 1L << ( current_alloc & 63 ));
 							}
 							
 							current_alloc	= aid;
@@ -983,21 +1181,16 @@ DirectByteBufferPoolReal
 						
 						freed_one	= true;
 						
-						allocs[current_alloc]	= false;					
+						allocs[current_alloc>>6] &= ~( 1L << ( current_alloc & 63 ));
 					}
 					
-					if ( freed_one ){
+					for ( sliceBuffer sb: l ){
 						
-						it = l.iterator();
+						int	aid = sb.getAllocID();
 						
-						while( it.hasNext()){
-							
-							sliceBuffer	sb = (sliceBuffer)it.next();
+						if ( !freed_one || ( allocs[aid>>6] & ( 1L << ( aid & 63 ))) != 0 ){
 							
-							if ( !allocs[ sb.getAllocID()]){
-								
-								it.remove();
-							}
+							entries.addLast( sb );
 						}
 					}
 				}
@@ -1082,6 +1275,221 @@ DirectByteBufferPoolReal
 		}
 	}
 	
+  	
+  	private static class
+  	bufferPool
+  	{
+  		private final int	size;
+  		
+  			// most recently freed first, compaction drops from the back
+  		
+  		private final ConcurrentLinkedDeque<ByteBuffer>	free		= new ConcurrentLinkedDeque<ByteBuffer>();
+  		private final AtomicInteger						free_count	= new AtomicInteger();
+  		
+  		protected
+  		bufferPool(
+  			int		_size )
+  		{
+  			size	= _size;
+  		}
+  		
+  		protected ByteBuffer
+  		poll()
+  		{
+  			ByteBuffer	buffer = free.pollFirst();
+  			
+  			if ( buffer != null ){
+  				
+  				free_count.decrementAndGet();
+  			}
+  			
+  			return( buffer );
+  		}
+  		
+  		protected void
+  		add(
+  			ByteBuffer	buffer )
+  		{
+  			free.addFirst( buffer );
+  			
+  			free_count.incrementAndGet();
+  		}
+  		
+  		protected int
+  		getFreeCount()
+  		{
+  			return( free_count.get());
+  		}
+  		
+  		protected void
+  		trim(
+  			int		limit )
+  		{
+  			while( free_count.get() > limit && free.pollLast() != null ){
+  				
+  				free_count.decrementAndGet();
+  			}
+  		}
+  		
+  		protected void
+  		clear()
+  		{
+  			trim( 0 );
+  		}
+  	}
+  	
+  		/**
+  		 * Recently freed buffers and slices of one thread. Only the owning thread uses it apart
+  		 * from the flushes at compaction and when a size runs out, so its lock is uncontended
+  		 */
+  	
+  	private class
+  	threadCache
+  	{
+  		private final WeakReference<Thread>	thread = new WeakReference<Thread>( Thread.currentThread());
+  		
+  		private final Object[][]	entries	= new Object[thread_cacheable.length][];
+  		private final int[]			counts	= new int[thread_cacheable.length];
+  		
+  		private long	bytes;
+  		
+  		protected synchronized Object
+  		get(
+  			int		index )
+  		{
+  			int	count = counts[index];
+  			
+  			if ( count == 0 ){
+  				
+  				return( null );
+  			}
+  			
+  			Object[]	my_entries = entries[index];
+  			
+  			Object	res = my_entries[--count];
+  			
+  			my_entries[count]	= null;
+  			counts[index]		= count;
+  			
+  			removed( index );
+  			
+  			return( res );
+  		}
+  		
+  		protected synchronized boolean
+  		put(
+  			int		index,
+  			Object	entry )
+  		{
+  			Object[]	my_entries = entries[index];
+  			
+  			if ( my_entries == null ){
+  				
+  				if ( !thread_cacheable[index] ){
+  					
+  					return( false );
+  				}
+  				
+  				my_entries = entries[index] = new Object[thread_cache_size];
+  			}
+  			
+  			int	count = counts[index];
+  			
+  			if ( count == my_entries.length ){
+  				
+  				return( false );
+  			}
+  			
+  			int	size = thread_cache_entry_sizes[index];
+  			
+  			if ( bytes + size > thread_cache_max_bytes ){
+  				
+  				return( false );
+  			}
+  			
+  			if ( thread_cached_bytes.addAndGet( size ) > thread_caches_max_bytes ){
+  				
+  				thread_cached_bytes.addAndGet( -size );
+  				
+  				return( false );
+  			}
+  			
+  			bytes += size;
+  			
+  			my_entries[count]	= entry;
+  			counts[index]		= count + 1;
+  			
+  			return( true );
+  		}
+  		
+  		protected synchronized void
+  		flush()
+  		{
+  			for (int i=0;i<entries.length;i++){
+  				
+  				flush( i );
+  			}
+  		}
+  		
+  		protected boolean
+  		flush(
+  			int		index )
+  		{
+  				// unlocked look first, most caches won't have any
+  			
+  			if ( counts[index] == 0 ){
+  				
+  				return( false );
+  			}
+  			
+  			synchronized( this ){
+  				
+	  			Object[]	my_entries = entries[index];
+	  			
+	  			int	count = counts[index];
+	  			
+	  			for (int j=0;j<count;j++){
+	  				
+	  				if ( index < SLICE_ENTRY_SIZES.length ){
+	  					
+	  					slice_entries[index].addFirst((sliceBuffer)my_entries[j] );
+	  					
+	  				}else{
+	  					
+	  					buffer_pools[index-SLICE_ENTRY_SIZES.length].add((ByteBuffer)my_entries[j] );
+	  				}
+	  				
+	  				my_entries[j] = null;
+	  				
+	  				removed( index );
+	  			}
+	  			
+	  			counts[index] = 0;
+	  			
+	  			return( count > 0 );
+  			}
+  		}
+  		
+  		private void
+  		removed(
+  			int		index )
+  		{
+  			int	size = thread_cache_entry_sizes[index];
+  			
+  			bytes -= size;
+  			
+  			thread_cached_bytes.addAndGet( -size );
+  		}
+  		
+  		protected boolean
+  		isDead()
+  		{
+  			Thread	t = thread.get();
+  			
+  			return( t == null || !t.isAlive());
+  		}
+  	}
+
   	private static class
 	myInteger
   	{
@@ -2304,7 +2304,26 @@ public class FileUtil {
 			comp = comp.getParentFile();
 		}
 		
-		InternedFile res = new InternedFile(comps.toArray( new String[comps.size()]));
+			// build down from the root interning each directory on the way, files in the same
+			// directory then share all of the nodes for its path. the file itself is rarely
+			// shared so isn't worth an entry of its own
+		
+		InternedFile res = null;
+		
+		for (int i=comps.size()-1;i>=0;i--){
+			
+			res = new InternedFile( res, comps.get(i));
+			
+			if ( i > 0 ){
+			
+				res = (InternedFile)StringInterner.internObject( res );
+			}
+		}
+		
+		if ( res == null ){
+			
+			res = new InternedFile( null, "" );
+		}
 		
 		if ( !res.getFile().equals( file )){
 			
@@ -2317,67 +2336,70 @@ public class FileUtil {
 	public static class
 	InternedFile
 	{
-		private final String[]	comps;
+		private final InternedFile	parent;
+		private final String		name;
+		private final int			hash;
 		
 		private 
 		InternedFile(
-			String[]	_comps )
+			InternedFile	_parent,
+			String			_name )
 		{
-			comps	= _comps;
+			parent	= _parent;
+			name	= _name;
+			hash	= ( parent==null?0:parent.hash*31 ) + name.hashCode();
 		}
 		
 		public File
 		getFile()
 		{
-			if ( comps.length == 0 ){
-				
-				return( new File( "" ));
+			if ( parent == null ){
 				
-			}else if ( comps.length == 1 ){
-				
-				return( new File( comps[0] ));
+				return( new File( name ));
 				
 			}else{
 				
-				StringBuffer b = new StringBuffer(256);
+				StringBuilder b = new StringBuilder(256);
 			
-				for (int i=comps.length-1;i>=0;i--){
-
-					if ( b.length() > 0 ){
-						
-						b.append( File.separatorChar );
-					}
-					
-					b.append( comps[i] );
-				}
+				append( b );
 								
 				return( new File( b.toString()));
 			}
 		}
 		
+		private void
+		append(
+			StringBuilder	b )
+		{
+			if ( parent != null ){
+				
+				parent.append( b );
+				
+				b.append( File.separatorChar );
+			}
+			
+			b.append( name );
+		}
+		
 		@Override
 		public boolean
 		equals(
 			Object	other )
 		{
-			if ( other instanceof InternedFile ){
+			if ( other == this ){
+				
+				return( true );
+				
+			}else if ( other instanceof InternedFile ){
 				
 				InternedFile o = (InternedFile)other;
 				
-				if ( comps.length != o.comps.length ){
+				if ( hash != o.hash || !name.equals( o.name )){
 					
 					return( false );
 				}
-						
-				for ( int i=comps.length-1;i>= 0; i-- ){
 				
-					if ( !comps[i].equals( o.comps[i] )){
-						
-						return( false );
-					}
-				}
-				
-				return( true );
+				return( parent==null?o.parent==null:parent.equals( o.parent ));
 				
 			}else if ( other instanceof File ){
 				
@@ -2393,14 +2415,14 @@ public class FileUtil {
 		public int
 		hashCode()
 		{
-			int	h = 0;
-			
-			for ( String s: comps ){
-				
-				h += s.hashCode();
-			}
-			
-			return( h );
+			return( hash );
+		}
+		
+		@Override
+		public String
+		toString()
+		{
+			return( getFile().toString());
 		}
 	}
 }
@@ -45,6 +45,11 @@ StringInterner
 	private static final boolean TRACE_CLEANUP = false;
 	private static final boolean TRACE_MULTIHITS = false;
 	
+		// the interning sets are striped by hash so that lookups of unrelated values don't contend,
+		// each stripe has its own lock, reference queue and the cleanup limits below
+	
+	private static final int SHARD_BITS	= 4;
+	private static final int SHARDS		= 1 << SHARD_BITS;
 	
 	private static final int IMMEDIATE_CLEANUP_TRIGGER = 2000;
 	private static final int IMMEDIATE_CLEANUP_GOAL = 1500;
@@ -52,12 +57,15 @@ StringInterner
 	private static final int SCHEDULED_CLEANUP_GOAL = 1000;	
 	private static final int SCHEDULED_AGING_THRESHOLD = 750;
 	
-	private static LightHashSet managedInterningSet = new LightHashSet(800);
-	private static LightHashSet unmanagedInterningSet = new LightHashSet();
-	private static ReadWriteLock managedSetLock = new ReentrantReadWriteLock();
+	private static final int TYPE_OBJECT	= 0;
+	private static final int TYPE_STRING	= 1;
+	private static final int TYPE_CHARS		= 2;
+	private static final int TYPE_BYTES		= 3;
+	private static final int TYPE_FILE		= 4;
+	private static final int TYPE_URL		= 5;
 	
-	private final static ReferenceQueue managedRefQueue = new ReferenceQueue();
-	private final static ReferenceQueue unmanagedRefQueue = new ReferenceQueue();
+	private static final ManagedShard[]		managedShards	= new ManagedShard[SHARDS];
+	private static final UnmanagedShard[]	unmanagedShards	= new UnmanagedShard[SHARDS];
 	
 	private static final String[] COMMON_KEYS = {
 		"src","port","prot","ip","udpport","azver","httpport","downloaded",
@@ -78,11 +86,22 @@ StringInterner
 	private static final ByteArrayHashMap	byte_map = new ByteArrayHashMap( COMMON_KEYS.length );
 	
 	static{
+		for (int i=0;i<SHARDS;i++){
+			
+			managedShards[i]	= new ManagedShard( 800/SHARDS );
+			unmanagedShards[i]	= new UnmanagedShard();
+		}
+		
 		try{
 			for (int i=0;i<COMMON_KEYS.length;i++){
 				
 				byte_map.put( COMMON_KEYS[i].getBytes(Constants.BYTE_ENCODING), COMMON_KEYS[i] );
-				managedInterningSet.add(new WeakStringEntry(COMMON_KEYS[i]));
+				
+				String key = COMMON_KEYS[i];
+				
+				ManagedShard shard = managedShards[shardFor(key.hashCode())];
+				
+				shard.set.add(new WeakWeightedEntry(key, TYPE_STRING, key.hashCode(), 16 + 8 + key.length() * 2, shard.queue));
 			}
 		}catch( Throwable e ){
 			
@@ -99,24 +118,25 @@ StringInterner
 			{
 				SimpleTimer.addPeriodicEvent("StringInterner:cleaner", SCHEDULED_CLEANUP_INTERVAL, new TimerEventPerformer() {
 					public void perform(TimerEvent event) {
-						managedSetLock.writeLock().lock();
-						try {
-							sanitize(true);
-						} finally {
-							managedSetLock.writeLock().unlock();
+						for (int i=0;i<SHARDS;i++){
+							ManagedShard shard = managedShards[i];
+							shard.lock.writeLock().lock();
+							try {
+								shard.sanitize(true);
+							} finally {
+								shard.lock.writeLock().unlock();
+							}
 						}
 						
-						
-						sanitizeLight();
+						for (int i=0;i<SHARDS;i++){
+							unmanagedShards[i].sanitize(true);
+						}
 					}
 				});
 			}
 		}.start();
 	}
 		
-	// private final static ReferenceQueue queue = new ReferenceQueue();
-
-	
 	public static String
 	intern(
 		byte[]	bytes )
@@ -146,29 +166,28 @@ StringInterner
 		if(toIntern == null)
 			return null;
 		
-		Object internedItem;
+		int hash = toIntern.hashCode();
 		
-		WeakEntry checkEntry = new WeakEntry(toIntern,unmanagedRefQueue);
-	
-		synchronized( unmanagedInterningSet ){
+		UnmanagedShard shard = unmanagedShards[shardFor(hash)];
+		
+		LookupKey key = new LookupKey(toIntern, TYPE_OBJECT, hash);
+		
+		synchronized( shard ){
+			
+			shard.sanitize(false);
 			
-			WeakEntry internedEntry = (WeakEntry) unmanagedInterningSet.get(checkEntry);
+			WeakEntry internedEntry = (WeakEntry) shard.set.get(key);
 			
-			if (internedEntry == null || (internedItem = (internedEntry.get())) == null)
+			Object internedItem = internedEntry == null ? null : internedEntry.get();
+			
+			if (internedItem == null)
 			{
 				internedItem = toIntern;
-				if(!unmanagedInterningSet.add(checkEntry))
-					System.out.println("unexpected modification"); // should not happen
+				shard.set.add(new WeakEntry(toIntern, TYPE_OBJECT, hash, shard.queue));
 			}
 			
-			sanitizeLight();
+			return internedItem;
 		}
-		
-		// should not happen
-		if(!toIntern.equals(internedItem))
-			System.err.println("mismatch");
-		
-		return internedItem;
 	}
 
 	public static String intern(String toIntern) {
@@ -180,56 +199,7 @@ StringInterner
 		if(toIntern == null)
 			return null;
 		
-		String internedString;
-		
-		WeakStringEntry checkEntry = new WeakStringEntry(toIntern);
-
-		WeakStringEntry internedEntry = null;
-		boolean hit = false;
-		
-		managedSetLock.readLock().lock();
-		try {
-			
-			internedEntry = (WeakStringEntry) managedInterningSet.get(checkEntry);
-			
-			if (internedEntry != null && (internedString = internedEntry.getString()) != null)
-				hit = true;
-			else
-			{
-				managedSetLock.readLock().unlock();
-				managedSetLock.writeLock().lock();
-				try{
-					sanitize(false);
-					
-					// get again, weakrefs might have expired and been added by another thread concurrently
-					internedEntry = (WeakStringEntry) managedInterningSet.get(checkEntry);
-	
-					if (internedEntry != null && (internedString = internedEntry.getString()) != null)
-						hit = true;
-					else {
-						toIntern = new String( toIntern );	// this trims any baggage that might be included in the original string due to char[] sharing for substrings etc
-						checkEntry = new WeakStringEntry( toIntern );
-						managedInterningSet.add(checkEntry);
-						internedString = toIntern;
-					}
-				}finally{
-					managedSetLock.readLock().lock();
-					managedSetLock.writeLock().unlock();
-				}
-			}
-		} finally {
-			managedSetLock.readLock().unlock();
-		}
-		
-		if(hit) {
-			internedEntry.incHits();
-			checkEntry.destroy();
-			if(TRACE_MULTIHITS && internedEntry.hits % 10 == 0)
-				System.out.println("multihit "+internedEntry);
-		}
-
-		
-		return internedString;
+		return (String)internManaged(toIntern, TYPE_STRING, toIntern.hashCode(), 16 + 8 + toIntern.length() * 2);
 	}
 	
 	public static char[] intern(char[] toIntern) {
@@ -241,60 +211,9 @@ StringInterner
 		if(toIntern == null)
 			return null;
 		
-		char[] internedCharArray;
-		
-		WeakCharArrayEntry checkEntry = new WeakCharArrayEntry(toIntern);
-
-		WeakCharArrayEntry internedEntry = null;
-		boolean hit = false;
-		
-		managedSetLock.readLock().lock();
-		try {
-			
-			internedEntry = (WeakCharArrayEntry) managedInterningSet.get(checkEntry);
-			
-			if (internedEntry != null && (internedCharArray = internedEntry.getCharArray()) != null)
-				hit = true;
-			else
-			{
-				managedSetLock.readLock().unlock();
-				managedSetLock.writeLock().lock();
-				try{
-					sanitize(false);
-					
-					// get again, weakrefs might have expired and been added by another thread concurrently
-					internedEntry = (WeakCharArrayEntry) managedInterningSet.get(checkEntry);
-	
-					if (internedEntry != null && (internedCharArray = internedEntry.getCharArray()) != null)
-						hit = true;
-					else {
-						managedInterningSet.add(checkEntry);
-						internedCharArray = toIntern;
-					}
-				}finally{
-					managedSetLock.readLock().lock();
-					managedSetLock.writeLock().unlock();
-				}
-			}
-		} finally {
-			managedSetLock.readLock().unlock();
-		}
-		
-		if(hit) {
-			System.out.println( "hit for " + new String(toIntern ));
-			internedEntry.incHits();
-			checkEntry.destroy();
-			if(TRACE_MULTIHITS && internedEntry.hits % 10 == 0)
-				System.out.println("multihit "+internedEntry);
-		}
-
-		
-		return internedCharArray;
+		return (char[])internManaged(toIntern, TYPE_CHARS, HashCodeUtils.hashCode(toIntern), toIntern.length + 8);
 	}
 	
-	
-	
-	
 	public static byte[] internBytes(byte[] toIntern) {
 		
 		if ( DISABLE_INTERNING ){
@@ -304,55 +223,7 @@ StringInterner
 		if(toIntern == null)
 			return null;
 		
-		byte[] internedArray;
-		
-		WeakByteArrayEntry checkEntry = new WeakByteArrayEntry(toIntern);
-
-		WeakByteArrayEntry internedEntry = null;
-		boolean hit = false;
-		managedSetLock.readLock().lock();
-		try
-		{
-			internedEntry = (WeakByteArrayEntry) managedInterningSet.get(checkEntry);
-			if (internedEntry != null && (internedArray = internedEntry.getArray()) != null)
-				hit = true;
-			else
-			{
-				managedSetLock.readLock().unlock();
-				managedSetLock.writeLock().lock();
-				try{
-					sanitize(false);
-					// get again, weakrefs might have expired and been added by another thread concurrently
-					internedEntry = (WeakByteArrayEntry) managedInterningSet.get(checkEntry);
-					if (internedEntry != null && (internedArray = internedEntry.getArray()) != null)
-						hit = true;
-					else
-					{
-						managedInterningSet.add(checkEntry);
-						internedArray = toIntern;
-					}
-				}finally{
-					managedSetLock.readLock().lock();
-					managedSetLock.writeLock().unlock();
-				}
-			}
-		} finally
-		{
-			managedSetLock.readLock().unlock();
-		}
-		if (hit)
-		{
-			internedEntry.incHits();
-			checkEntry.destroy();
-			if (TRACE_MULTIHITS && internedEntry.hits % 10 == 0)
-				System.out.println("multihit " + internedEntry);
-		}		
-		
-		// should not happen
-		if(!Arrays.equals(toIntern, internedArray))
-			System.err.println("mismatch");
-		
-		return internedArray;
+		return (byte[])internManaged(toIntern, TYPE_BYTES, HashCodeUtils.hashCode(toIntern), toIntern.length + 8);
 	}
 	
 	/**
@@ -368,56 +239,8 @@ StringInterner
 		if(toIntern == null)
 			return null;
 		
-		File internedFile;
-		
-		WeakFileEntry checkEntry = new WeakFileEntry(toIntern);
-
-		WeakFileEntry internedEntry = null;
-		boolean hit = false;
-		managedSetLock.readLock().lock();
-		try
-		{
-			internedEntry = (WeakFileEntry) managedInterningSet.get(checkEntry);
-			if (internedEntry != null && (internedFile = internedEntry.getFile()) != null)
-				hit = true;
-			else
-			{
-				managedSetLock.readLock().unlock();
-				managedSetLock.writeLock().lock();
-				try{
-					sanitize(false);
-					// get again, weakrefs might have expired and been added by another thread concurrently
-					internedEntry = (WeakFileEntry) managedInterningSet.get(checkEntry);
-					if (internedEntry != null && (internedFile = internedEntry.getFile()) != null)
-						hit = true;
-					else
-					{
-						managedInterningSet.add(checkEntry);
-						internedFile = toIntern;
-					}
-				}finally{
-					managedSetLock.readLock().lock();
-					managedSetLock.writeLock().unlock();
-				}
-			}
-		} finally
-		{
-			managedSetLock.readLock().unlock();
-		}
-		
-		if (hit)
-		{
-			internedEntry.incHits();
-			checkEntry.destroy();
-			if (TRACE_MULTIHITS && internedEntry.hits % 10 == 0)
-				System.out.println("multihit " + internedEntry);
-		}
-		
-		// should not happen
-		if(!toIntern.equals(internedFile))
-			System.err.println("mismatch");
-		
-		return internedFile;
+		// file object with 2 fields, string object with 2 fields, char-array object
+		return (File)internManaged(toIntern, TYPE_FILE, toIntern.hashCode(), 16 + 16 + 8 + toIntern.getPath().length() * 2);
 	}
 	
 	public static URL internURL(URL toIntern) {
@@ -429,58 +252,83 @@ StringInterner
 		if(toIntern == null)
 			return null;
 		
-		URL internedURL;
+		// url object with 12 fields, ~4 string objects with 2 fields, 1 shared char-array object
+		// use URL.toExternalForm().hashCode since URL.hashCode tries to resolve hostnames :(
+		String external = toIntern.toExternalForm();
 		
-		WeakURLEntry checkEntry = new WeakURLEntry(toIntern);
-
-		WeakURLEntry internedEntry = null;
-		boolean hit = false;
-		managedSetLock.readLock().lock();
-		try
-		{
-			internedEntry = (WeakURLEntry) managedInterningSet.get(checkEntry);
-			if (internedEntry != null && (internedURL = internedEntry.getURL()) != null)
-				hit = true;
-			else
-			{
-				managedSetLock.readLock().unlock();
-				managedSetLock.writeLock().lock();
-				try{
-					sanitize(false);
-					// get again, weakrefs might have expired and been added by another thread concurrently
-					internedEntry = (WeakURLEntry) managedInterningSet.get(checkEntry);
-					if (internedEntry != null && (internedURL = internedEntry.getURL()) != null)
-						hit = true;
-					else
-					{
-						managedInterningSet.add(checkEntry);
-						internedURL = toIntern;
-					}
-				}finally{
-					managedSetLock.readLock().lock();
-					managedSetLock.writeLock().unlock();
-				}
-			}
-		} finally
-		{
-			managedSetLock.readLock().unlock();
-		}
+		return (URL)internManaged(toIntern, TYPE_URL, external.hashCode(), 13 * 8 + 4 * 16 + 8 + external.length() * 2);
+	}
+	
+	/**
+	 * A hit only takes the read lock of the value's shard and allocates nothing but the lookup
+	 * key, a weak reference is only created for a value that gets added
+	 */
+	private static Object internManaged(Object toIntern, int type, int hash, int size)
+	{
+		ManagedShard shard = managedShards[shardFor(hash)];
 		
-		if (hit)
-		{
-			internedEntry.incHits();
-			checkEntry.destroy();
-			if (TRACE_MULTIHITS && internedEntry.hits % 10 == 0)
-				System.out.println("multihit " + internedEntry);
-		}
+		LookupKey key = new LookupKey(toIntern, type, hash);
 		
-		// should not happen
-		if(!toIntern.toExternalForm().equals(internedURL.toExternalForm()))
-			System.err.println("mismatch");
+		shard.lock.readLock().lock();
+		try {
+			Object interned = shard.get(key);
+			if (interned != null)
+				return interned;
+		} finally {
+			shard.lock.readLock().unlock();
+		}
 		
-		return internedURL;
+		shard.lock.writeLock().lock();
+		try {
+			// cleanup on the way in only in case of emergency, the periodic one does the rest
+			if (shard.set.size() >= IMMEDIATE_CLEANUP_TRIGGER)
+				shard.sanitize(false);
+			
+			// get again, another thread might have added it concurrently
+			Object interned = shard.get(key);
+			if (interned != null)
+				return interned;
+			
+			if (type == TYPE_STRING)
+				toIntern = new String( (String)toIntern );	// this trims any baggage that might be included in the original string due to char[] sharing for substrings etc
+			
+			shard.set.add(new WeakWeightedEntry(toIntern, type, hash, size, shard.queue));
+			
+			return toIntern;
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Fibonacci hashing, spreads the top bits of the hash over the shards while the
+	 * shard sets index by the bottom ones
+	 */
+	private static int shardFor(int hash)
+	{
+		return (hash * 0x9E3779B9) >>> (32 - SHARD_BITS);
 	}
 	
+	private static boolean matches(int type, Object o1, Object o2)
+	{
+		if (o1 == o2)
+			return true;
+		if (o1 == null || o2 == null)
+			return false;
+		switch (type)
+		{
+			case TYPE_CHARS:
+				return Arrays.equals((char[]) o1, (char[]) o2);
+			case TYPE_BYTES:
+				// byte arrays need Arrays.equals
+				return Arrays.equals((byte[]) o1, (byte[]) o2);
+			case TYPE_URL:
+				// use string compare as URL.equals tries to resolve hostnames
+				return ((URL) o1).toExternalForm().equals(((URL) o2).toExternalForm());
+			default:
+				return o1.equals(o2);
+		}
+	}
 	
 	private final static Comparator	savingsComp	= new Comparator()
 												{
@@ -491,121 +339,181 @@ StringInterner
 													}
 												};
 	
-	private static void sanitizeLight()
+	private static class UnmanagedShard
 	{
-		synchronized (unmanagedInterningSet)
+		final LightHashSet		set		= new LightHashSet();
+		final ReferenceQueue	queue	= new ReferenceQueue();
+		
+		/**
+		 * dropping collected entries is cheap enough to do on every call, compacting is left to
+		 * the periodic cleanup
+		 */
+		synchronized void sanitize(boolean scheduled)
 		{
 			WeakEntry ref;
-			while((ref = (WeakEntry)(unmanagedRefQueue.poll())) != null)
-				unmanagedInterningSet.remove(ref);
+			while((ref = (WeakEntry)(queue.poll())) != null)
+				set.remove(ref);
 			
-			unmanagedInterningSet.compactify(-1f);
+			if (scheduled)
+				set.compactify(-1f);
 		}
 	}
-												
-	private static void sanitize(boolean scheduled)
+	
+	private static class ManagedShard
 	{
-		WeakWeightedEntry ref;
-		while ((ref = (WeakWeightedEntry) (managedRefQueue.poll())) != null)
+		final LightHashSet		set;
+		final ReadWriteLock		lock	= new ReentrantReadWriteLock();
+		final ReferenceQueue	queue	= new ReferenceQueue();
+		
+		ManagedShard(int capacity)
+		{
+			set = new LightHashSet(capacity);
+		}
+		
+		Object get(LookupKey key)
 		{
-			if (!ref.isDestroyed())
+			WeakWeightedEntry internedEntry = (WeakWeightedEntry) set.get(key);
+			if (internedEntry == null)
+				return null;
+			Object interned = internedEntry.get();
+			if (interned == null)
+				return null;
+			internedEntry.incHits();
+			if (TRACE_MULTIHITS && internedEntry.hits % 10 == 0)
+				System.out.println("multihit " + internedEntry);
+			return interned;
+		}
+		
+		void sanitize(boolean scheduled)
+		{
+			WeakWeightedEntry ref;
+			while ((ref = (WeakWeightedEntry) (queue.poll())) != null)
 			{
-				managedInterningSet.remove(ref);
+				set.remove(ref);
 				if (TRACE_CLEANUP && ref.hits > 30)
 					System.out.println("queue remove:" + ref);
-			} else
-			{// should not happen
-				System.err.println("double removal " + ref);
 			}
-		}
-		int currentSetSize = managedInterningSet.size();
-		aging:
-		{
-			cleanup:
+			int currentSetSize = set.size();
+			aging:
 			{
-				// unscheduled cleanup/aging only in case of emergency
-				if (currentSetSize < IMMEDIATE_CLEANUP_TRIGGER && !scheduled)
-					break aging;
-				if (TRACE_CLEANUP)
-					System.out.println("Doing cleanup " + currentSetSize);
-				ArrayList remaining = new ArrayList();
-				// remove objects that aren't shared by multiple holders first (interning is useless)
-				for (Iterator it = managedInterningSet.iterator(); it.hasNext();)
+				cleanup:
 				{
-					if (managedInterningSet.size() < IMMEDIATE_CLEANUP_GOAL && !scheduled)
+					// unscheduled cleanup/aging only in case of emergency
+					if (currentSetSize < IMMEDIATE_CLEANUP_TRIGGER && !scheduled)
+						break aging;
+					if (TRACE_CLEANUP)
+						System.out.println("Doing cleanup " + currentSetSize);
+					ArrayList remaining = new ArrayList();
+					// remove objects that aren't shared by multiple holders first (interning is useless)
+					for (Iterator it = set.iterator(); it.hasNext();)
+					{
+						if (set.size() < IMMEDIATE_CLEANUP_GOAL && !scheduled)
+							break aging;
+						WeakWeightedEntry entry = (WeakWeightedEntry) it.next();
+						if (entry.hits == 0)
+						{
+							if (TRACE_CLEANUP)
+								System.out.println("0-remove: " + entry);
+							it.remove();
+						} else
+							remaining.add(entry);
+					}
+					currentSetSize = set.size();
+					if (currentSetSize < SCHEDULED_CLEANUP_TRIGGER && scheduled)
+						break cleanup;
+					if (currentSetSize < IMMEDIATE_CLEANUP_GOAL && !scheduled)
 						break aging;
-					WeakWeightedEntry entry = (WeakWeightedEntry) it.next();
-					if (entry.hits == 0)
+					Collections.sort(remaining, savingsComp);
+					// remove those objects that saved the least amount first
+					weightedRemove: for (int i = 0; i < remaining.size(); i++)
 					{
+						currentSetSize = set.size();
+						if (currentSetSize < SCHEDULED_CLEANUP_GOAL && scheduled)
+							break weightedRemove;
+						if (currentSetSize < IMMEDIATE_CLEANUP_GOAL && !scheduled)
+							break aging;
+						WeakWeightedEntry entry = (WeakWeightedEntry) remaining.get(i);
 						if (TRACE_CLEANUP)
-							System.out.println("0-remove: " + entry);
-						it.remove();
-					} else
-						remaining.add(entry);
+							System.out.println("weighted remove: " + entry);
+						set.remove(entry);
+					}
 				}
-				currentSetSize = managedInterningSet.size();
-				if (currentSetSize < SCHEDULED_CLEANUP_TRIGGER && scheduled)
-					break cleanup;
+				currentSetSize = set.size();
+				if (currentSetSize < SCHEDULED_AGING_THRESHOLD && scheduled)
+					break aging;
 				if (currentSetSize < IMMEDIATE_CLEANUP_GOAL && !scheduled)
 					break aging;
-				Collections.sort(remaining, savingsComp);
-				// remove those objects that saved the least amount first
-				weightedRemove: for (int i = 0; i < remaining.size(); i++)
-				{
-					currentSetSize = managedInterningSet.size();
-					if (currentSetSize < SCHEDULED_CLEANUP_GOAL && scheduled)
-						break weightedRemove;
-					if (currentSetSize < IMMEDIATE_CLEANUP_GOAL && !scheduled)
-						break aging;
-					WeakWeightedEntry entry = (WeakWeightedEntry) remaining.get(i);
-					if (TRACE_CLEANUP)
-						System.out.println("weighted remove: " + entry);
-					managedInterningSet.remove(entry);
-				}
+				for (Iterator it = set.iterator(); it.hasNext();)
+					((WeakWeightedEntry) it.next()).decHits();
 			}
-			currentSetSize = managedInterningSet.size();
-			if (currentSetSize < SCHEDULED_AGING_THRESHOLD && scheduled)
-				break aging;
-			if (currentSetSize < IMMEDIATE_CLEANUP_GOAL && !scheduled)
-				break aging;
-			for (Iterator it = managedInterningSet.iterator(); it.hasNext();)
-				((WeakWeightedEntry) it.next()).decHits();
+			if (TRACE_CLEANUP && scheduled)
+			{
+				List weightTraceSorted = new ArrayList(set);
+				Collections.sort(weightTraceSorted, savingsComp);
+				System.out.println("Remaining elements after cleanup:");
+				for (Iterator it = weightTraceSorted.iterator(); it.hasNext();)
+					System.out.println("\t" + it.next());
+			}
+			if (scheduled)
+				set.compactify(-1f);				
 		}
-		if (TRACE_CLEANUP && scheduled)
+	}
+	
+	/**
+	 * What a value is looked up by, so that a hit doesn't have to create a weak reference
+	 * for the reference queue to process
+	 */
+	private static final class LookupKey {
+		private final Object	o;
+		private final int		type;
+		private final int		hash;
+
+		LookupKey(Object o, int type, int hash)
 		{
-			List weightTraceSorted = new ArrayList(managedInterningSet);
-			Collections.sort(weightTraceSorted, savingsComp);
-			System.out.println("Remaining elements after cleanup:");
-			for (Iterator it = weightTraceSorted.iterator(); it.hasNext();)
-				System.out.println("\t" + it.next());
+			this.o = o;
+			this.type = type;
+			this.hash = hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj instanceof WeakEntry)
+				return obj.equals(this);
+			return false;
+		}
+
+		public int hashCode() {
+			return hash;
 		}
-		if (scheduled)
-			managedInterningSet.compactify(-1f);				
 	}
 
 	private static class WeakEntry extends WeakReference {
+		private final int	type;
 		private final int	hash;
 
-		protected WeakEntry(Object o, ReferenceQueue q, int hash)
+		public WeakEntry(Object o, int type, int hash, ReferenceQueue q)
 		{
 			super(o, q);
+			this.type = type;
 			this.hash = hash;
 		}
 
-		public WeakEntry(Object o, ReferenceQueue q)
-		{
-			super(o, q);
-			this.hash = o.hashCode();
-		}
-
 		public boolean equals(Object obj) {
 			if (this == obj)
 				return true;
+			Object myObj = get();
+			if (myObj == null)
+				return false;
+			if (obj instanceof LookupKey)
+			{
+				LookupKey key = (LookupKey) obj;
+				return key.type == type && matches(type, myObj, key.o);
+			}
 			if (obj instanceof WeakEntry)
 			{
-				Object myObj = get();
-				Object otherObj = ((WeakEntry) obj).get();
-				return myObj == null ? false : myObj.equals(otherObj);
+				WeakEntry other = (WeakEntry) obj;
+				return other.type == type && matches(type, myObj, other.get());
 			}
 			return false;
 		}
@@ -615,13 +523,13 @@ StringInterner
 		}
 	}
 	
-	private static abstract class WeakWeightedEntry extends WeakEntry {
+	private static class WeakWeightedEntry extends WeakEntry {
 		final short	size;
 		short		hits;
 
-		public WeakWeightedEntry(Object o, int hash, int size)
+		public WeakWeightedEntry(Object o, int type, int hash, int size, ReferenceQueue q)
 		{
-			super(o, managedRefQueue,hash);
+			super(o, type, hash, q);
 			this.size = (short) (size & 0x7FFF);
 		}
 
@@ -636,149 +544,9 @@ StringInterner
 		}
 
 		public String toString() {
-			return this.getClass().getName().replaceAll("^.*\\..\\w+$", "") + " h=" + (int) hits + ";s=" + (int) size;
-		}
-
-		public void destroy() {
-			hits = -1;
-		}
-
-		public boolean isDestroyed() {
-			return hits == -1;
-		}
-	}
-	
-	private static class WeakByteArrayEntry extends WeakWeightedEntry {
-		public WeakByteArrayEntry(byte[] array)
-		{
-			// byte-array object
-			super(array, HashCodeUtils.hashCode(array), array.length + 8);
-		}
-
-		/**
-		 * override equals since byte arrays need Arrays.equals
-		 */
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj instanceof WeakByteArrayEntry)
-			{
-				byte[] myArray = getArray();
-				byte[] otherArray = ((WeakByteArrayEntry) obj).getArray();
-				return myArray == null ? false : Arrays.equals(myArray, otherArray);
-			}
-			return false;
-		}
-
-		public byte[] getArray() {
-			return (byte[]) get();
-		}
-
-		public String toString() {
-			return super.toString() + " " + (getArray() == null ? "null" : new String(getArray()));
-		}
-	}
-	
-	private static class WeakCharArrayEntry extends WeakWeightedEntry {
-		public WeakCharArrayEntry(char[] array)
-		{
-			// byte-array object
-			super(array, HashCodeUtils.hashCode(array), array.length + 8);
-		}
-
-		/**
-		 * override equals since byte arrays need Arrays.equals
-		 */
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj instanceof WeakCharArrayEntry)
-			{
-				char[] myArray = getCharArray();
-				char[] otherArray = ((WeakCharArrayEntry) obj).getCharArray();
-				return myArray == null ? false : Arrays.equals(myArray, otherArray);
-			}
-			return false;
-		}
-
-		public char[] getCharArray() {
-			return (char[]) get();
-		}
-
-		public String toString() {
-			return super.toString() + " " + (getCharArray() == null ? "null" : new String(getCharArray()));
-		}
-	}
-	
-	private static class WeakStringEntry extends WeakWeightedEntry {
-		public WeakStringEntry(String entry)
-		{
-			// string object with 2 fields, char-array object
-			super(entry, entry.hashCode(), 16 + 8 + entry.length() * 2);
-		}
-
-		public String getString() {
-			return (String) get();
-		}
-
-		public String toString() {
-			return super.toString() + " " + getString();
-		}
-	}
-	
-	private static class WeakFileEntry extends WeakWeightedEntry {
-		public WeakFileEntry(File entry)
-		{
-			// file object with 2 fields, string object with 2 fields, char-array object
-			super(entry, entry.hashCode(), 16 + 16 + 8 + entry.getPath().length() * 2);
-		}
-
-		public File getFile() {
-			return (File) get();
-		}
-
-		public String toString() {
-			return super.toString() + " " + getFile();
-		}
-	}
-	
-	private static class WeakURLEntry extends WeakWeightedEntry {
-		public WeakURLEntry(URL entry)
-		{
-			// url object with 12 fields, ~4 string objects with 2 fields, 1 shared char-array object
-			// use URL.toExternalForm().hashCode since URL.hashCode tries to resolve hostnames :(
-			super(entry, entry.toExternalForm().hashCode(), 13 * 8 + 4 * 16 + 8 + entry.toString().length() * 2);
-		}
-
-		public URL getURL() {
-			return (URL) get();
-		}
-		
-		/**
-		 * override equals since byte arrays need Arrays.equals
-		 */
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj instanceof WeakURLEntry)
-			{
-				URL my = getURL();
-				URL other = ((WeakURLEntry) obj).getURL();
-				
-				if ( my == other ){
-					return( true );
-				}
-				if ( my == null || other == null ){
-					return( false );
-				}
-				// use string compare as URL.equals tries to resolve hostnames
-				return my.toExternalForm().equals(other.toExternalForm());
-			}
-			return false;
-		}
-
-		public String toString() {
-			return super.toString() + " " + getURL();
+			Object o = get();
+			String value = o instanceof byte[] ? new String((byte[]) o) : o instanceof char[] ? new String((char[]) o) : String.valueOf(o);
+			return "WeakWeightedEntry h=" + (int) hits + ";s=" + (int) size + " " + value;
 		}
 	}
 }
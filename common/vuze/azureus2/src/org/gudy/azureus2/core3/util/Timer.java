@@ -28,6 +28,23 @@ package org.gudy.azureus2.core3.util;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Events are kept in a hierarchical hashed wheel: 256 slots of TICK_MILLIS followed by four
+ * levels of 64 slots, each slot of a level spanning a whole turn of the level below. Slots of
+ * an upper level are cascaded down as the lower level wraps, so adding and cancelling are
+ * constant time whatever the number of events. An event goes in the slot of the first tick
+ * starting at or after its time, so it never runs early and at most a tick late.
+ * 
+ * Adds and cancels are queued without locking and applied by the timer thread, an event
+ * cancelled before it has been applied is just dropped when it is. The wheel
+ * itself is only changed under the timer's lock, by the timer thread and by the rare clock
+ * change and adjustment operations, which rebuild it around the current time.
+ */
 
 public class Timer
 	extends 	AERunnable
@@ -37,13 +54,41 @@ public class Timer
 	private static ArrayList<WeakReference<Timer>> timers = null;
 	private static AEMonitor timers_mon = new AEMonitor("timers list");
 	
+	private static final long	TICK_MILLIS	= SystemTime.TIME_GRANULARITY_MILLIS;
+	
+	private static final int	ROOT_BITS	= 8;
+	private static final int	LEVEL_BITS	= 6;
+	private static final int	LEVELS		= 5;
+	
+	private static final int	ROOT_SIZE	= 1 << ROOT_BITS;
+	private static final int	LEVEL_SIZE	= 1 << LEVEL_BITS;
+	
+		// events further out than the wheel covers (about 3 years) wait in its last slot
+	
+	private static final long	MAX_TICKS	= ( 1L << ( ROOT_BITS + ( LEVELS - 1 )*LEVEL_BITS )) - 1;
+	
+		// queued adds and cancels that get the timer thread to apply them before it is due
+	
+	private static final int	PENDING_WAKE	= 1024;
+	
 	private ThreadPool	thread_pool;
+	
+	private final Thread	timer_thread;
 		
-	private Set<TimerEvent>	events = new TreeSet<TimerEvent>();
+	private final TimerEvent[][]	wheel = new TimerEvent[LEVELS][];
+	
+	private long	current_tick;
+	private int		event_count;
 		
-	private long	unique_id_next	= 0;
+	private final ConcurrentLinkedQueue<TimerEvent>	pending_adds	= new ConcurrentLinkedQueue<TimerEvent>();
+	private final ConcurrentLinkedQueue<TimerEvent>	pending_cancels	= new ConcurrentLinkedQueue<TimerEvent>();
+	private final AtomicInteger						pending_count	= new AtomicInteger();
 	
-	private long				current_when;
+	private final AtomicLong	unique_id_next	= new AtomicLong();
+	
+		// when the timer thread is next due to wake, Long.MAX_VALUE if it is waiting for an event
+	
+	private volatile long		next_wake;
 	private volatile boolean	destroyed;
 	private boolean				indestructable;
 	
@@ -86,15 +131,24 @@ public class Timer
 
 		thread_pool = new ThreadPool(name,thread_pool_size);
 	
+		for (int i=0;i<LEVELS;i++){
+			
+			wheel[i] = new TimerEvent[i==0?ROOT_SIZE:LEVEL_SIZE];
+		}
+		
+		current_tick = SystemTime.getCurrentTime() / TICK_MILLIS;
+		
+		next_wake	= Long.MAX_VALUE;
+		
 		SystemTime.registerClockChangeListener( this );
 
-		Thread t = new Thread(this, "Timer:" + name );
+		timer_thread = new Thread(this, "Timer:" + name );
 		
-		t.setDaemon( true );
+		timer_thread.setDaemon( true );
 		
-		t.setPriority(thread_priority);
+		timer_thread.setPriority(thread_priority);
 			
-		t.start();
+		timer_thread.start();
 	}
 	
 	public void
@@ -106,8 +160,32 @@ public class Timer
 	public synchronized List<TimerEvent>
 	getEvents()
 	{
-		return( new ArrayList<TimerEvent>( events ));
+		List<TimerEvent>	result = new ArrayList<TimerEvent>( event_count );
+		
+		for ( TimerEvent[] slots: wheel ){
+			
+			for ( TimerEvent head: slots ){
+				
+				for ( TimerEvent event = head; event != null; event = event.wheel_next ){
+					
+					result.add( event );
+				}
+			}
+		}
+		
+		for ( TimerEvent event: pending_adds ){
+			
+			if ( !event.isCancelled()){
+				
+				result.add( event );
+			}
+		}
+		
+		Collections.sort( result );
+		
+		return( result );
 	}
+	
 	public void
 	setLogging(
 		boolean	_log )
@@ -134,103 +212,101 @@ public class Timer
 	public void
 	runSupport()
 	{
+		List<TimerEvent>	to_run = new ArrayList<TimerEvent>();
+		
 		while( true ){
 			
 			try{
-				TimerEvent	event_to_run = null;
+				long	wake;
 				
-				synchronized(this){
+				synchronized( this ){
 					
 					if ( destroyed ){
 						
 						break;
 					}
 					
-					if ( events.isEmpty()){
-						
-						// System.out.println( "waiting forever" );
-						
-						try{
-							current_when = Integer.MAX_VALUE;
-						
-							this.wait();
-							
-						}finally{
-							
-							current_when = 0;
-						}
-					}else{
-						
-						long	now = SystemTime.getCurrentTime();
-						
-						TimerEvent	next_event = (TimerEvent)events.iterator().next();
+					long	now_tick = SystemTime.getCurrentTime() / TICK_MILLIS;
+					
+					if ( event_count == 0 ){
 						
-						long	when = next_event.getWhen();
+						current_tick = now_tick;
 						
-						long	delay = when - now;
+					}else if ( now_tick < current_tick - 1 || now_tick - current_tick > LEVEL_SIZE*ROOT_SIZE ){
 						
-						if ( delay > 0 ){
-							
-							// System.out.println( "waiting for " + delay );
-							
-							try{
-								current_when = when;
-							
-								this.wait(delay);
-								
-							}finally{
-								
-								current_when = 0;
-							}
-						}
-					}
-				
-					if ( destroyed ){
+							// clock went back or we were suspended for a while, rather than walk
+							// the ticks in between put everything where it now belongs
 						
-						break;
+						rebuild( now_tick );
 					}
 					
-					if ( events.isEmpty()){
+					applyPending();
+					
+					while( current_tick <= now_tick && event_count > 0 ){
 						
-						continue;
+						advance( to_run );
 					}
 					
-					long	now = SystemTime.getCurrentTime();
+					wake = event_count==0?Long.MAX_VALUE:( getNextTick() * TICK_MILLIS );
+					
+					next_wake = wake;
+				}
+				
+				if ( to_run.size() > 0 ){
 					
-					Iterator<TimerEvent>	it = events.iterator();
+						// slots aren't ordered, keep to the order events were due in
 					
-					TimerEvent	next_event = it.next();
+					if ( to_run.size() > 1 ){
+					
+						Collections.sort( to_run );
+					}
+					
+					for ( TimerEvent event: to_run ){
 						
-					long rem = next_event.getWhen() - now;
-																			
-					if ( rem <= SystemTime.TIME_GRANULARITY_MILLIS ){
-							
-						event_to_run = next_event;
+						if ( event.isCancelled()){
 							
-						it.remove();
+							continue;
+						}
 						
-						/*
-						if ( rem < -100 ){
-							
-							System.out.println( "Late scheduling [" + (-rem) + "] of " + event_to_run.getString());
+						event.setHasRun();
+						
+						if (log) {
+							System.out.println( "running: " + event.getString() );
 						}
-						*/
+						
+						thread_pool.run(event.getRunnable());
 					}
 					
-					// System.out.println( getName() +": events=" + events.size() + ", to_run=" +  (event_to_run==null?"null":event_to_run.getString()));
+					to_run.clear();
+					
+					continue;
 				}
 				
-				if ( event_to_run != null ){
+					// anything added after we looked saw the wake time we just published and will
+					// unpark us if it is due sooner
+				
+				if ( !pending_adds.isEmpty()){
 					
-					event_to_run.setHasRun();
+					continue;
+				}
+				
+				if ( wake == Long.MAX_VALUE ){
 					
-					if (log) {
-						System.out.println( "running: " + event_to_run.getString() );
-					}
+					// System.out.println( "waiting forever" );
 					
-					thread_pool.run(event_to_run.getRunnable());
-				}
+					LockSupport.park( this );
+					
+				}else{
 				
+					long	delay = wake - SystemTime.getCurrentTime();
+					
+					if ( delay > 0 ){
+						
+						// System.out.println( "waiting for " + delay );
+						
+						LockSupport.parkNanos( this, delay*1000000L );
+					}
+				}
 			}catch( Throwable e ){
 				
 				Debug.printStackTrace( e );
@@ -238,6 +314,303 @@ public class Timer
 		}
 	}
 	
+	private void
+	applyPending()
+	{
+		TimerEvent	event;
+		
+		int	applied = 0;
+		
+		while(( event = pending_adds.poll()) != null ){
+			
+			applied++;
+			
+			if ( event.addedToWheel()){
+				
+				insert( event );
+				
+				event_count++;
+			}
+		}
+		
+		while(( event = pending_cancels.poll()) != null ){
+			
+			applied++;
+			
+			if ( event.wheel_level >= 0 ){
+				
+				unlink( event );
+				
+				event_count--;
+			}
+		}
+		
+		if ( applied > 0 ){
+			
+			pending_count.addAndGet( -applied );
+		}
+		
+		if ( log ){
+			
+			if ( event_count > max_events_logged ){
+		
+				max_events_logged = event_count;
+				
+				System.out.println( "Timer '" + thread_pool.getName() + "' - events = " + max_events_logged );
+			}
+		}
+	}
+	
+	private void
+	insert(
+		TimerEvent	event )
+	{
+		long	tick	= getTick( event.getWhen());
+		long	delta	= tick - current_tick;
+		
+		int	level;
+		int	slot;
+		
+		if ( delta < 0 ){
+			
+				// overdue, runs on the next tick processed
+			
+			level	= 0;
+			slot	= (int)( current_tick & ( ROOT_SIZE - 1 ));
+			
+		}else if ( delta < ROOT_SIZE ){
+			
+			level	= 0;
+			slot	= (int)( tick & ( ROOT_SIZE - 1 ));
+			
+		}else{
+			
+			if ( delta > MAX_TICKS ){
+				
+				tick = current_tick + MAX_TICKS;
+			}
+			
+			level = 1;
+			
+			while( level < LEVELS - 1 && delta >= 1L << ( ROOT_BITS + level*LEVEL_BITS )){
+				
+				level++;
+			}
+			
+			slot = (int)(( tick >>> ( ROOT_BITS + ( level - 1 )*LEVEL_BITS )) & ( LEVEL_SIZE - 1 ));
+		}
+		
+		TimerEvent[]	slots	= wheel[level];
+		TimerEvent		head	= slots[slot];
+		
+		event.wheel_level	= level;
+		event.wheel_slot	= slot;
+		event.wheel_prev	= null;
+		event.wheel_next	= head;
+		
+		if ( head != null ){
+			
+			head.wheel_prev = event;
+		}
+		
+		slots[slot] = event;
+	}
+	
+	private void
+	unlink(
+		TimerEvent	event )
+	{
+		TimerEvent	prev = event.wheel_prev;
+		TimerEvent	next = event.wheel_next;
+		
+		if ( prev == null ){
+			
+			wheel[event.wheel_level][event.wheel_slot] = next;
+			
+		}else{
+			
+			prev.wheel_next = next;
+		}
+		
+		if ( next != null ){
+			
+			next.wheel_prev = prev;
+		}
+		
+		event.wheel_level	= -1;
+		event.wheel_prev	= null;
+		event.wheel_next	= null;
+	}
+	
+	private TimerEvent
+	removeSlot(
+		int		level,
+		int		slot )
+	{
+		TimerEvent	head = wheel[level][slot];
+		
+		wheel[level][slot] = null;
+		
+		for ( TimerEvent event = head; event != null; event = event.wheel_next ){
+			
+			event.wheel_level = -1;
+		}
+		
+		return( head );
+	}
+	
+		/**
+		 * processes current_tick: cascades the upper levels down when the root wraps and
+		 * collects the events of the tick's slot
+		 */
+	
+	private void
+	advance(
+		List<TimerEvent>	to_run )
+	{
+		int	index = (int)( current_tick & ( ROOT_SIZE - 1 ));
+		
+		if ( index == 0 ){
+			
+			for (int level=1;level<LEVELS;level++){
+				
+				int	slot = (int)(( current_tick >>> ( ROOT_BITS + ( level - 1 )*LEVEL_BITS )) & ( LEVEL_SIZE - 1 ));
+				
+				TimerEvent	event = removeSlot( level, slot );
+				
+				while( event != null ){
+					
+					TimerEvent	next = event.wheel_next;
+					
+					insert( event );
+					
+					event = next;
+				}
+				
+				if ( slot != 0 ){
+					
+					break;
+				}
+			}
+		}
+		
+		TimerEvent	event = removeSlot( 0, index );
+		
+		while( event != null ){
+			
+			TimerEvent	next = event.wheel_next;
+			
+			event.wheel_prev	= null;
+			event.wheel_next	= null;
+			
+			if ( getTick( event.getWhen()) <= current_tick ){
+				
+				to_run.add( event );
+				
+				event_count--;
+				
+			}else{
+				
+					// capped at the end of the wheel, goes round again
+				
+				insert( event );
+			}
+			
+			event = next;
+		}
+		
+		current_tick++;
+	}
+	
+		/**
+		 * @return the first tick starting at or after the time
+		 */
+	
+	private static long
+	getTick(
+		long	when )
+	{
+		long	tick = when / TICK_MILLIS;
+		
+		return( when % TICK_MILLIS > 0?tick + 1:tick );
+	}
+	
+		/**
+		 * @return the next tick with something to do, either events in the root or a cascade
+		 */
+	
+	private long
+	getNextTick()
+	{
+		TimerEvent[]	root = wheel[0];
+		
+		long	tick = current_tick;
+		
+		do{
+			if ( root[(int)( tick & ( ROOT_SIZE - 1 ))] != null ){
+				
+				return( tick );
+			}
+			
+			tick++;
+			
+		}while(( tick & ( ROOT_SIZE - 1 )) != 0 );
+		
+		return( tick );
+	}
+	
+	private List<TimerEvent>
+	removeAll()
+	{
+		List<TimerEvent>	result = new ArrayList<TimerEvent>( event_count );
+		
+		for (int level=0;level<LEVELS;level++){
+			
+			for (int slot=0;slot<wheel[level].length;slot++){
+				
+				TimerEvent	event = removeSlot( level, slot );
+				
+				while( event != null ){
+					
+					TimerEvent	next = event.wheel_next;
+					
+					event.wheel_prev	= null;
+					event.wheel_next	= null;
+					
+					result.add( event );
+					
+					event = next;
+				}
+			}
+		}
+		
+		event_count = 0;
+		
+		return( result );
+	}
+	
+	private void
+	rebuild(
+		long	now_tick )
+	{
+		List<TimerEvent>	events = removeAll();
+		
+		current_tick = now_tick;
+		
+		for ( TimerEvent event: events ){
+			
+			insert( event );
+		}
+		
+		event_count = events.size();
+	}
+	
+	private void
+	wakeUp()
+	{
+		LockSupport.unpark( timer_thread );
+	}
+	
 	public void
 	clockChangeDetected(
 		long	current_time,
@@ -248,14 +621,12 @@ public class Timer
 				// fix up the timers
 			
 			synchronized( this ){
-										
-				Iterator<TimerEvent>	it = events.iterator();
+					
+				applyPending();
 				
-				List<TimerEvent>	updated_events = new ArrayList<TimerEvent>( events.size());
+				List<TimerEvent>	events = removeAll();
 				
-				while (it.hasNext()){
-					
-					TimerEvent	event = (TimerEvent)it.next();
+				for ( TimerEvent event: events ){
 					
 						// absolute events don't have their timings fiddled with
 					
@@ -297,15 +668,18 @@ public class Timer
 							event.setWhen( new_when );
 						}
 					}
+				}
+				
+					// re-slot around the new time
+				
+				current_tick = current_time / TICK_MILLIS;
+				
+				for ( TimerEvent event: events ){
 					
-					updated_events.add( event );
+					insert( event );
 				}
-														
-					// resort - we have to use an alternative list of events as input because if we just throw the
-					// treeset in the constructor optimises things under the assumption that the original set
-					// was correctly sorted...
 				
-				events = new TreeSet<TimerEvent>( updated_events );
+				event_count = events.size();
 			}
 		}
 	}
@@ -324,13 +698,11 @@ public class Timer
 			
 			synchronized( this ){
 				
-				Iterator<TimerEvent>	it = events.iterator();
+				applyPending();
 				
-				boolean	updated = false;
+				List<TimerEvent>	events = removeAll();
 								
-				while ( it.hasNext()){
-					
-					TimerEvent	event = (TimerEvent)it.next();
+				for ( TimerEvent event: events ){
 					
 						// absolute events don't have their timings fiddled with
 					
@@ -355,23 +727,25 @@ public class Timer
 								//Debug.outNoStack( periodic_event.getName() + ": clock change sanity check. Reduced schedule time from " + old_when + " to " +  adjusted_when );
 
 								event.setWhen( adjusted_when );
-								
-								updated = true;
 							}
 						}
 					}
 				}
-														
-				if ( updated ){
+				
+				current_tick = current_time / TICK_MILLIS;
+				
+				for ( TimerEvent event: events ){
 					
-					events = new TreeSet<TimerEvent>( new ArrayList<TimerEvent>( events ));
+					insert( event );
 				}
 				
-				// must have this notify here as the scheduling code uses the current time to calculate
+				event_count = events.size();
+			}
+			
+				// must wake the timer thread here as the scheduling code uses the current time to calculate
 				// how long to sleep for and this needs to be guaranteed to be using the correct (new) time
 
-				notify();
-			}
+			wakeUp();
 		}
 	}
 	
@@ -383,15 +757,11 @@ public class Timer
 
 		synchronized (this) {
 			
-				// as we're adjusting all events by the same amount the ordering remains valid
-
-			Iterator<TimerEvent> it = events.iterator();
-
-			boolean resort = false;
+			applyPending();
 			
-			while (it.hasNext()) {
+			List<TimerEvent> events = removeAll();
 
-				TimerEvent event = it.next();
+			for ( TimerEvent event: events ){
 
 				long old_when = event.getWhen();
 				long new_when = old_when + offset;
@@ -402,8 +772,6 @@ public class Timer
 
 					// Debug.out( "Ignoring wrap around for " + event.getName());
 					
-					resort = true;
-					
 				}else{
 					
 					// System.out.println( "    adjusted: " + old_when + " -> " + new_when );
@@ -412,16 +780,20 @@ public class Timer
 				}
 			}
 			
-			if ( resort ){
-
-				events = new TreeSet<TimerEvent>( new ArrayList<TimerEvent>( events ));
+			current_tick = SystemTime.getCurrentTime() / TICK_MILLIS;
+			
+			for ( TimerEvent event: events ){
+				
+				insert( event );
 			}
-						
-			notify();
+			
+			event_count = events.size();
 		}
+		
+		wakeUp();
 	}
 
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		long				when,
 		TimerEventPerformer	performer )
@@ -429,7 +801,7 @@ public class Timer
 		return( addEvent( SystemTime.getCurrentTime(), when, performer ));
 	}
 	
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		String				name,
 		long				when,
@@ -438,7 +810,7 @@ public class Timer
 		return( addEvent( name, SystemTime.getCurrentTime(), when, performer ));
 	}
 	
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		String				name,
 		long				when,
@@ -448,7 +820,7 @@ public class Timer
 		return( addEvent( name, SystemTime.getCurrentTime(), when, absolute, performer ));
 	}
 	
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		long				creation_time,
 		long				when,
@@ -457,7 +829,7 @@ public class Timer
 		return( addEvent( null, creation_time, when, performer ));
 	}
 	
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		long				creation_time,
 		long				when,
@@ -467,7 +839,7 @@ public class Timer
 		return( addEvent( null, creation_time, when, absolute, performer ));
 	}
 	
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		String				name,
 		long				creation_time,
@@ -477,7 +849,7 @@ public class Timer
 		return( addEvent( name, creation_time, when, false, performer ));
 	}
 	
-	public synchronized TimerEvent
+	public TimerEvent
 	addEvent(
 		String				name,
 		long				creation_time,
@@ -485,36 +857,26 @@ public class Timer
 		boolean				absolute,
 		TimerEventPerformer	performer )
 	{
-		TimerEvent	event = new TimerEvent( this, unique_id_next++, creation_time, when, absolute, performer );
+		TimerEvent	event = new TimerEvent( this, unique_id_next.getAndIncrement(), creation_time, when, absolute, performer );
 		
 		if ( name != null ){
 			
 			event.setName( name );
 		}
 		
-		events.add( event );
-		
-		if ( log ){
-			
-			if ( events.size() > max_events_logged ){
-		
-				max_events_logged = events.size();
-				
-				System.out.println( "Timer '" + thread_pool.getName() + "' - events = " + max_events_logged );
-			}
-		}
+		pending_adds.add( event );
 		
-		// System.out.println( "event added (" + when + ") - queue = " + events.size());
+		// System.out.println( "event added (" + when + ")" );
 		
-		if ( current_when == Integer.MAX_VALUE || when < current_when ){
+		if ( pending_count.incrementAndGet() == PENDING_WAKE || when < next_wake ){
 		
-			notify();
+			wakeUp();
 		}
 		
 		return( event );
 	}
 	
-	public synchronized TimerEventPeriodic
+	public TimerEventPeriodic
 	addPeriodicEvent(
 		long				frequency,
 		TimerEventPerformer	performer )
@@ -522,7 +884,7 @@ public class Timer
 		return( addPeriodicEvent( null, frequency, performer ));
 	}
 	
-	public synchronized TimerEventPeriodic
+	public TimerEventPeriodic
 	addPeriodicEvent(
 		String				name,
 		long				frequency,
@@ -531,7 +893,7 @@ public class Timer
 		return( addPeriodicEvent( name, frequency, false, performer ));
 	}
 	
-	public synchronized TimerEventPeriodic
+	public TimerEventPeriodic
 	addPeriodicEvent(
 		String				name,
 		long				frequency,
@@ -553,18 +915,22 @@ public class Timer
 		return( periodic_performer );
 	}
 	
-	protected synchronized void
+	protected void
 	cancelEvent(
 		TimerEvent	event )
 	{
-		if ( events.contains( event )){
-			
-			events.remove( event );
+			// the event is already marked as cancelled so won't be run, this just gets it out of
+			// the wheel. Nothing gets due any sooner so the timer thread only needs waking if a
+			// lot are waiting
 		
-			// System.out.println( "event cancelled (" + event.getWhen() + ") - queue = " + events.size());
-	
-			notify();
+		pending_cancels.add( event );
+		
+		if ( pending_count.incrementAndGet() == PENDING_WAKE ){
+			
+			wakeUp();
 		}
+		
+		// System.out.println( "event cancelled (" + event.getWhen() + ")" );
 	}
 	
 	public synchronized void
@@ -578,7 +944,7 @@ public class Timer
 			
 			destroyed	= true;
 			
-			notify();
+			wakeUp();
 			
 			SystemTime.unregisterClockChangeListener( this );
 		}
@@ -606,12 +972,12 @@ public class Timer
 		return( thread_pool.getName());
 	}
 	
-	public synchronized void
+	public void
 	dump()
 	{
 		System.out.println( "Timer '" + thread_pool.getName() + "': dump" );
 
-		Iterator	it = events.iterator();
+		Iterator	it = getEvents().iterator();
 		
 		while(it.hasNext()){
 			
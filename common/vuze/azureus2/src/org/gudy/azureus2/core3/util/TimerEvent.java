@@ -41,9 +41,17 @@ TimerEvent
 	private boolean		absolute;
 	private boolean		cancelled;
 	private boolean		has_run;
+	private boolean		in_wheel;
 	
 	private long			unique_id	= 1;
 	
+		// position in the timer's wheel, only touched by the timer under its lock
+	
+	TimerEvent	wheel_prev;
+	TimerEvent	wheel_next;
+	int			wheel_level	= -1;
+	int			wheel_slot;
+	
 	protected
 	TimerEvent(
 		Timer					_timer,
@@ -137,7 +145,29 @@ TimerEvent
 	{
 		cancelled	= true;
 		
-		timer.cancelEvent( this );
+			// still queued to be added the timer drops it when it gets to it
+		
+		if ( in_wheel ){
+		
+			timer.cancelEvent( this );
+		}
+	}
+	
+		/**
+		 * @return false if the event was cancelled while queued and isn't to be added
+		 */
+	
+	protected synchronized boolean
+	addedToWheel()
+	{
+		if ( cancelled ){
+			
+			return( false );
+		}
+		
+		in_wheel = true;
+		
+		return( true );
 	}
 	
 	public synchronized boolean
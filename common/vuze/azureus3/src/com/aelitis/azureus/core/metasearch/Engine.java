@@ -110,6 +110,10 @@ Engine
 	public static final String	SC_FORCE_FULL		= "force_full";	// ignore if-modified stuff and force a full search
 	public static final String	SC_BATCH_PERIOD		= "batch_millis";
 	public static final String	SC_REMOVE_DUP_HASH	= "remove_dup_hash";
+	public static final String	SC_ENOUGH_RESULTS	= "enough_results";	// stop waiting for engines once this many results are in
+	public static final String	SC_ENGINE_TIMEOUT	= "engine_timeout";	// millis each engine gets to complete
+	public static final String	SC_ETAG				= "etag";			// validators for a subscription's conditional fetch, updated
+	public static final String	SC_LAST_MODIFIED	= "last_modified";	// in the context by the fetch and not sent to the engine
 
 	
 	public static final String	CT_VIDEO	= "video";
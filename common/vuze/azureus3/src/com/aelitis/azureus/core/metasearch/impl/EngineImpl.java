@@ -866,6 +866,10 @@ EngineImpl
 			context.put( Engine.SC_SOURCE, "search" );
 		}
 		
+			// results streamed to the listener are mapped as they go, don't map them again below
+		
+		final Set<Result>	mapped = Collections.newSetFromMap( new IdentityHashMap<Result,Boolean>());
+		
 		Result[] results = 
 			 searchSupport( 
 					params, 
@@ -902,6 +906,10 @@ EngineImpl
 						{
 							if ( listener != null ){
 								listener.resultsReceived(engine, mapResults( results ));
+								
+								synchronized( mapped ){
+									mapped.addAll( Arrays.asList( results ));
+								}
 							}
 						}
 						
@@ -939,7 +947,22 @@ EngineImpl
 						}
 					});
 		 
-		 return( mapResults( results ));
+		 List<Result>	unmapped = new ArrayList<Result>( results.length );
+		 
+		 synchronized( mapped ){
+			 
+			 for ( Result r: results ){
+				 
+				 if ( !mapped.contains( r )){
+					 
+					 unmapped.add( r );
+				 }
+			 }
+		 }
+		 
+		 mapResults( unmapped.toArray( new Result[ unmapped.size()]));
+		 
+		 return( results );
 	}
 	
 	protected Result[]
@@ -979,6 +1002,17 @@ EngineImpl
 	
 		throws SearchException;
 	
+		/**
+		 * Abandons the search being run by the given thread, if it is in a state where it can be
+		 * interrupted, such as waiting on a page
+		 */
+	
+	protected void
+	cancelSearch(
+		Thread		runner )
+	{
+	}
+	
 	public void
 	delete()
 	{
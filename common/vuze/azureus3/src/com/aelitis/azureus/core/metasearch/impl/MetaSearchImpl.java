@@ -856,6 +856,14 @@ MetaSearchImpl
 		
 		final boolean rem_dups = rem_dups_str==null?false:rem_dups_str.equalsIgnoreCase( "true" );
 
+		String enough_results_str = context.get( Engine.SC_ENOUGH_RESULTS );
+		
+		int enough_results = enough_results_str==null?-1:Integer.parseInt( enough_results_str );
+		
+		String engine_timeout_str = context.get( Engine.SC_ENGINE_TIMEOUT );
+		
+		long engine_timeout = engine_timeout_str==null?SearchExecuter.DEFAULT_ENGINE_TIMEOUT:Long.parseLong( engine_timeout_str );
+
 		ResultListener	listener = 
 			new ResultListener()
 			{
@@ -867,6 +875,8 @@ MetaSearchImpl
 				
 				final private Map<Engine,Set<String>>	result_hashes = new HashMap<Engine, Set<String>>();
 				
+				final private Map<Engine,Integer>	result_counts = new HashMap<Engine, Integer>();
+				
 				public void
 				contentReceived(
 					final Engine engine, 
@@ -1053,6 +1063,17 @@ MetaSearchImpl
 						}
 					}
 					
+						// engines can report their results in several goes, the max applies to the lot
+					
+					Integer	reported = result_counts.get( engine );
+					
+					if ( reported != null ){
+						
+						max = Math.max( 0, max - reported.intValue());
+					}
+					
+					result_counts.put( engine, ( reported==null?0:reported.intValue()) + Math.min( max, results.size()));
+					
              		if ( max < results.size() ){
              		
              			log( "Truncating search results for " + engine.getName() + " from " + results.size() + " to " + max );
@@ -1138,7 +1159,7 @@ MetaSearchImpl
 				}
 			};
 			
-		SearchExecuter se = new SearchExecuter( context, listener );
+		SearchExecuter se = new SearchExecuter( context, listener, enough_results, engine_timeout );
 		
 		if ( engines == null ){
 			
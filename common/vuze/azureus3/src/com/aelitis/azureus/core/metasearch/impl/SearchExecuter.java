@@ -20,50 +20,467 @@
 
 package com.aelitis.azureus.core.metasearch.impl;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-import org.gudy.azureus2.core3.util.AEThread2;
+import org.gudy.azureus2.core3.util.AERunnable;
+import org.gudy.azureus2.core3.util.SimpleTimer;
+import org.gudy.azureus2.core3.util.SystemTime;
+import org.gudy.azureus2.core3.util.ThreadPool;
+import org.gudy.azureus2.core3.util.TimerEvent;
+import org.gudy.azureus2.core3.util.TimerEventPerformer;
 
 import com.aelitis.azureus.core.metasearch.Engine;
+import com.aelitis.azureus.core.metasearch.Result;
 import com.aelitis.azureus.core.metasearch.ResultListener;
 import com.aelitis.azureus.core.metasearch.SearchException;
 import com.aelitis.azureus.core.metasearch.SearchParameter;
 
 
-public class 
-SearchExecuter 
+public class
+SearchExecuter
 {
+	public static final int		MAX_CONCURRENT_ENGINES	= 8;
+	public static final long	DEFAULT_ENGINE_TIMEOUT	= 30*1000;
+
+	private static final int	REPORT_NONE			= 0;
+	private static final int	REPORT_COMPLETE		= 1;
+	private static final int	REPORT_CANCELLED	= 2;
+	private static final int	REPORT_FAILED		= 3;
+	private static final int	REPORT_LOGIN		= 4;
+
+		// shared by all searches so that a search across many engines, or several searches
+		// at once, can't open an unbounded number of connections
+
+	private static final ThreadPool	thread_pool = new ThreadPool( "MetaSearch:runner", MAX_CONCURRENT_ENGINES, true );
+
 	private Map				context;
 	private ResultListener 	listener;
-	
-	public 
+	private int				enough_results;
+	private long			engine_timeout;
+
+	private List<engineRun>	runs = new ArrayList<engineRun>();
+	private int				total_results;
+	private boolean			enough;
+
+	public
 	SearchExecuter(
 		Map				_context,
-		ResultListener	_listener ) 
+		ResultListener	_listener )
 	{
-		context		= _context;
-		listener 	= _listener;
+		this( _context, _listener, -1, -1 );
 	}
-	
-	public void 
+
+		/**
+		 * The listener is never called with any of the executer's locks held
+		 * @param _enough_results	once this many results have been received across all engines
+		 * 							the ones still queued or running are reported complete and
+		 * 							their searches abandoned, -1 to wait for all of them
+		 * @param _engine_timeout	time an engine gets from when it starts running before it is
+		 * 							treated the same way, -1 for no limit
+		 */
+
+	public
+	SearchExecuter(
+		Map				_context,
+		ResultListener	_listener,
+		int				_enough_results,
+		long			_engine_timeout )
+	{
+		context			= _context;
+		listener 		= _listener;
+		enough_results	= _enough_results;
+		engine_timeout	= _engine_timeout;
+	}
+
+	public void
 	search(
-		final Engine 			engine,
-		final SearchParameter[] searchParameters, 
-		final String 			headers,
-		final int				desired_max_matches )
+		Engine 				engine,
+		SearchParameter[] 	searchParameters,
+		String 				headers,
+		int					desired_max_matches )
+	{
+		engineRun	run = new engineRun( engine, searchParameters, headers, desired_max_matches );
+
+		synchronized( this ){
+
+			runs.add( run );
+		}
+
+		thread_pool.run( run );
+	}
+
+	protected boolean
+	addResults(
+		int		num )
+	{
+		synchronized( this ){
+
+			total_results += num;
+
+			if ( enough || enough_results < 0 || total_results < enough_results ){
+
+				return( false );
+			}
+
+			enough = true;
+
+			return( true );
+		}
+	}
+
+	protected void
+	cancelAll()
 	{
-		new AEThread2( "MetaSearch: " + engine.getName() + " runner", true )
+		List<engineRun>	to_cancel;
+
+		synchronized( this ){
+
+			to_cancel = new ArrayList<engineRun>( runs );
+		}
+
+		for ( engineRun run: to_cancel ){
+
+			run.cancel( null );
+		}
+	}
+
+	protected class
+	engineRun
+		extends AERunnable
+		implements ResultListener
+	{
+		private Engine				engine;
+		private SearchParameter[] 	searchParameters;
+		private String 				headers;
+		private int					desired_max_matches;
+
+		private Thread				runner;
+		private TimerEvent			timeout_event;
+		private int					results_received;
+		private boolean				done;
+
+		private int					deliveries;
+		private int					final_report	= REPORT_NONE;
+		private Throwable			final_cause;
+
+		protected
+		engineRun(
+			Engine 				_engine,
+			SearchParameter[] 	_searchParameters,
+			String 				_headers,
+			int					_desired_max_matches )
+		{
+			engine				= _engine;
+			searchParameters	= _searchParameters;
+			headers				= _headers;
+			desired_max_matches	= _desired_max_matches;
+		}
+
+		public void
+		runSupport()
+		{
+			boolean	cancelled;
+
+			synchronized( this ){
+
+				cancelled = done;
+
+				if ( !cancelled ){
+
+					runner = Thread.currentThread();
+				}
+
+				if ( !cancelled && engine_timeout > 0 ){
+
+					timeout_event =
+						SimpleTimer.addEvent(
+							"MetaSearch:deadline",
+							SystemTime.getOffsetTime( engine_timeout ),
+							new TimerEventPerformer()
+							{
+								public void
+								perform(
+									TimerEvent event )
+								{
+									cancel( new SearchException( "Search timed out after " + engine_timeout + "ms" ));
+								}
+							});
+				}
+			}
+
+			if ( cancelled ){
+
+					// while queued
+
+				finished();
+
+				return;
+			}
+
+			try{
+				engine.search( searchParameters, context, desired_max_matches, -1, headers, this );
+
+			}catch( SearchException e ){
+
+			}finally{
+
+				synchronized( this ){
+
+					runner = null;
+
+					if ( timeout_event != null ){
+
+						timeout_event.cancel();
+					}
+				}
+
+				finished();
+			}
+		}
+
+		protected void
+		finished()
+		{
+			synchronized( SearchExecuter.this ){
+
+				runs.remove( this );
+			}
+		}
+
+			/**
+			 * Reports the engine as finished, complete if it had already returned something and
+			 * failed otherwise, and stops its search if it is still running. Anything it reports
+			 * afterwards is dropped
+			 * @param reason	null if the engine is no longer needed
+			 */
+
+		protected void
+		cancel(
+			SearchException		reason )
+		{
+			Thread	thread;
+
+			synchronized( this ){
+
+				if ( done ){
+
+					return;
+				}
+
+				thread = runner;
+			}
+
+			if ( reason == null ){
+
+				finish( REPORT_COMPLETE, null );
+
+			}else{
+
+				finish( REPORT_CANCELLED, reason );
+			}
+
+			if ( thread != null && engine instanceof EngineImpl ){
+
+				((EngineImpl)engine).cancelSearch( thread );
+			}
+		}
+
+		public void
+		contentReceived(
+			Engine 		engine,
+			String 		content )
 		{
-			public void 
-			run() 
-			{
+			if ( startDelivery( 0 )){
+
 				try{
-					engine.search( searchParameters, context, desired_max_matches, -1, headers, listener );
-					
-				}catch( SearchException e ){
+					listener.contentReceived( engine, content );
+
+				}finally{
+
+					endDelivery();
+				}
+			}
+		}
+
+		public void
+		matchFound(
+			Engine 		engine,
+			String[] 	fields )
+		{
+			if ( startDelivery( 0 )){
+
+				try{
+					listener.matchFound( engine, fields );
+
+				}finally{
+
+					endDelivery();
+				}
+			}
+		}
+
+		public void
+		resultsReceived(
+			Engine 		engine,
+			Result[] 	results )
+		{
+			if ( !startDelivery( results.length )){
+
+				return;
+			}
+
+			try{
+				listener.resultsReceived( engine, results );
+
+			}finally{
+
+				endDelivery();
+			}
+
+				// outside of our lock as this takes those of the other runs
+
+			if ( addResults( results.length )){
+
+				cancelAll();
+			}
+		}
+
+		public void
+		resultsComplete(
+			Engine 		engine )
+		{
+			finish( REPORT_COMPLETE, null );
+		}
+
+		public void
+		engineFailed(
+			Engine 		engine,
+			Throwable 	cause )
+		{
+			finish( REPORT_FAILED, cause );
+		}
+
+		public void
+		engineRequiresLogin(
+			Engine 		engine,
+			Throwable 	cause )
+		{
+			finish( REPORT_LOGIN, cause );
+		}
+
+			/**
+			 * The listener is called outside of our lock, a delivery in progress is counted so that
+			 * the final report can be left to it and still come last
+			 * @return false if the run has finished and the report is to be dropped
+			 */
+
+		private synchronized boolean
+		startDelivery(
+			int		results )
+		{
+			if ( done ){
+
+				return( false );
+			}
+
+			deliveries++;
+
+			results_received += results;
+
+			return( true );
+		}
+
+		private void
+		endDelivery()
+		{
+			synchronized( this ){
+
+				deliveries--;
+
+				if ( deliveries > 0 || final_report == REPORT_NONE ){
+
+					return;
+				}
+			}
+
+			report();
+		}
+
+			/**
+			 * Finishes the run, reporting it now unless a delivery is in progress, in which case
+			 * the last delivery to end reports it. Only the first call does anything
+			 */
+
+		private void
+		finish(
+			int			type,
+			Throwable	cause )
+		{
+			synchronized( this ){
+
+				if ( done ){
+
+					return;
+				}
+
+				done = true;
+
+				if ( type == REPORT_CANCELLED && results_received > 0 ){
+
+					type = REPORT_COMPLETE;
+				}
+
+				final_report	= type;
+				final_cause		= cause;
+
+				if ( deliveries > 0 ){
+
+					return;
+				}
+			}
+
+			report();
+		}
+
+		private void
+		report()
+		{
+			int			type;
+			Throwable	cause;
+
+			synchronized( this ){
+
+				type	= final_report;
+				cause	= final_cause;
+
+				final_report	= REPORT_NONE;
+				final_cause		= null;
+			}
+
+			switch( type ){
+
+				case REPORT_COMPLETE:{
+
+					listener.resultsComplete( engine );
+
+					break;
+				}
+				case REPORT_CANCELLED:
+				case REPORT_FAILED:{
+
+					listener.engineFailed( engine, cause );
+
+					break;
+				}
+				case REPORT_LOGIN:{
+
+					listener.engineRequiresLogin( engine, cause );
+
+					break;
 				}
 			}
-		}.start();
+		}
 	}
 }
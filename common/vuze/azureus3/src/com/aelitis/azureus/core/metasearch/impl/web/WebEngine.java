@@ -45,6 +45,8 @@ import org.gudy.azureus2.plugins.utils.resourcedownloader.ResourceDownloaderFact
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import com.aelitis.azureus.core.metasearch.Result;
+import com.aelitis.azureus.core.metasearch.ResultListener;
 import com.aelitis.azureus.core.metasearch.SearchException;
 import com.aelitis.azureus.core.metasearch.SearchLoginException;
 import com.aelitis.azureus.core.metasearch.SearchParameter;
@@ -68,6 +70,8 @@ WebEngine
 	private static final boolean NEEDS_AUTH_DEFAULT				= false;
 	private static final boolean AUTOMATIC_DATE_PARSER_DEFAULT 	= true;
 	
+	protected static final int	STREAM_BATCH_SIZE	= 10;
+	
 	static private final Pattern baseTagPattern = Pattern.compile("(?i)<base.*?href=\"([^\"]+)\".*?>");
 	static private final Pattern rootURLPattern = Pattern.compile("(https?://[^/]+)");
 	static private final Pattern baseURLPattern = Pattern.compile("(https?://.*/)");
@@ -94,6 +98,8 @@ WebEngine
 	
 	private String local_cookies;
 	
+	private Map<Thread,ResourceDownloader>	active_downloads = new HashMap<Thread,ResourceDownloader>();
+	
 
 		// manual test constructor
 	
@@ -634,7 +640,7 @@ WebEngine
 					
 					String	key 	= entry.getKey();
 						
-					if ( supportsContext( key )){
+					if ( supportsContext( key ) && !key.equals( SC_ETAG ) && !key.equals( SC_LAST_MODIFIED )){
 						
 						if ( searchURL.indexOf('?') == -1 ){
 							
@@ -654,6 +660,11 @@ WebEngine
 			
 			//System.out.println(searchURL);
 			
+				// the same template serves different subscriptions, each keeps the validators
+				// for its conditional fetches and passes them in the context
+			
+			boolean	context_validators = "subscription".equals( searchContext.get( SC_SOURCE ));
+			
 			
 				// hack to support POST by encoding into URL
 			
@@ -731,8 +742,8 @@ WebEngine
 				
 			if ( only_if_modified ){
 				
-				String last_modified 	= getLocalString( LD_LAST_MODIFIED );
-				String etag				= getLocalString( LD_ETAG );
+				String last_modified 	= context_validators?searchContext.get( SC_LAST_MODIFIED ):getLocalString( LD_LAST_MODIFIED );
+				String etag				= context_validators?searchContext.get( SC_ETAG ):getLocalString( LD_ETAG );
 
 				if ( last_modified != null ){
 					
@@ -779,12 +790,22 @@ WebEngine
 						initial_url_rd.setProperty( "URL_Connect_Timeout", 10*1000 );
 						
 						initial_url_rd.setProperty( "URL_Read_Timeout", 10*1000 ); 
+						
+							// let the JVM keep the connection open for the next search on this site
+						
+						initial_url_rd.setProperty( "URL_Connection", "Keep-Alive" );
 					}
 					
 					mr_rd = rdf.getMetaRefreshDownloader( initial_url_rd );
 	
-					try{
+					Thread	thread = Thread.currentThread();
 					
+					try{
+						synchronized( active_downloads ){
+							
+							active_downloads.put( thread, mr_rd );
+						}
+						
 						is = mr_rd.download();
 						
 					}catch( ResourceDownloaderException e ){
@@ -801,6 +822,12 @@ WebEngine
 							
 							throw( e );
 						}
+					}finally{
+						
+						synchronized( active_downloads ){
+							
+							active_downloads.remove( thread );
+						}
 					}
 	
 				
@@ -840,19 +867,41 @@ WebEngine
 							// Maybe use http://jcookie.sourceforge.net/ if needed
 					}
 					
-					if ( only_if_modified ){
+						// a subscription's full fetch records them for its next one
+					
+					if ( only_if_modified || context_validators ){
 						
 						String last_modified 	= extractProperty( mr_rd.getProperty( "URL_Last-Modified" ));
 						String etag				= extractProperty( mr_rd.getProperty( "URL_ETag" ));
 						
+						if ( context_validators ){
+							
+							searchContext.remove( SC_LAST_MODIFIED );
+							searchContext.remove( SC_ETAG );
+						}
+						
 						if ( last_modified != null ){
 							
-							setLocalString( LD_LAST_MODIFIED, last_modified );
+							if ( context_validators ){
+								
+								searchContext.put( SC_LAST_MODIFIED, last_modified );
+								
+							}else{
+								
+								setLocalString( LD_LAST_MODIFIED, last_modified );
+							}
 						}
 						
 						if ( etag != null ){
 							
-							setLocalString( LD_ETAG, etag );
+							if ( context_validators ){
+								
+								searchContext.put( SC_ETAG, etag );
+								
+							}else{
+								
+								setLocalString( LD_ETAG, etag );
+							}
 						}
 					}
 					
@@ -1210,6 +1259,59 @@ WebEngine
 		UrlUtils.setBrowserHeaders( rd, encoded_headers, rootPage );
 	}
 	
+		/**
+		 * Subscriptions repeat the same search on a schedule so they can let the site tell
+		 * them nothing has changed, anything else wants the results regardless
+		 */
+	
+	protected boolean
+	isConditionalFetch(
+		Map		searchContext )
+	{
+		return( "subscription".equals( searchContext.get( SC_SOURCE )) && !searchContext.containsKey( SC_FORCE_FULL ));
+	}
+	
+		/**
+		 * Passes on the results added since the last call once there are enough of them, so
+		 * that they show while the rest of the page is still being processed
+		 * @return number of results passed on so far
+		 */
+	
+	protected int
+	streamResults(
+		ResultListener		listener,
+		List				results,
+		int					streamed )
+	{
+		if ( listener != null && results.size() - streamed >= STREAM_BATCH_SIZE ){
+			
+			List	batch = results.subList( streamed, results.size());
+			
+			listener.resultsReceived( this, (Result[])batch.toArray( new Result[ batch.size()]));
+			
+			return( results.size());
+		}
+		
+		return( streamed );
+	}
+	
+	protected void
+	cancelSearch(
+		Thread		runner )
+	{
+		ResourceDownloader	rd;
+		
+		synchronized( active_downloads ){
+			
+			rd = active_downloads.get( runner );
+		}
+		
+		if ( rd != null ){
+			
+			rd.cancel();
+		}
+	}
+	
 	public String getIcon() {
 		if (iconUrl != null) {
 			return iconUrl;
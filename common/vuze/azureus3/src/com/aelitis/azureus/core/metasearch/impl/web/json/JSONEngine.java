@@ -214,7 +214,9 @@ JSONEngine
 	{	
 		debugStart();
 		
-		pageDetails page_details = super.getWebPageContent( searchParameters, searchContext, headers, false );
+		boolean	only_if_mod = isConditionalFetch( searchContext );
+		
+		pageDetails page_details = super.getWebPageContent( searchParameters, searchContext, headers, only_if_mod );
 		
 		String	page = page_details.getContent();
 		
@@ -222,6 +224,13 @@ JSONEngine
 			listener.contentReceived( this, page );
 		}
 		
+		if ( only_if_mod && ( page == null || page.length() == 0 )){
+			
+				// not modified
+			
+			return( new Result[0]);
+		}
+		
 		
 		String searchQuery = null;
 		
@@ -305,6 +314,8 @@ JSONEngine
 				
 				List results = new ArrayList();
 				
+				int	streamed = 0;
+				
 				Throwable	decode_failure 		= null;
 				
 				for(int i = 0 ; i < resultArray.size() ; i++) {
@@ -443,6 +454,8 @@ JSONEngine
 														
 							results.add(result);
 							
+							streamed = streamResults( listener, results, streamed );
+							
 						}catch( Throwable e ){
 							
 							decode_failure = e;
@@ -218,7 +218,9 @@ RegexEngine
 	{
 		debugStart();
 				
-		final pageDetails page_details = getWebPageContent( searchParameters, searchContext, headers, false );
+		boolean	only_if_mod = isConditionalFetch( searchContext );
+		
+		final pageDetails page_details = getWebPageContent( searchParameters, searchContext, headers, only_if_mod );
 		
 		final String	page = page_details.getContent();
 		
@@ -227,6 +229,13 @@ RegexEngine
 			listener.contentReceived( this, page );
 		}
 		
+		if ( only_if_mod && ( page == null || page.length() == 0 )){
+			
+				// not modified
+			
+			return( new Result[0]);
+		}
+		
 		debugLog( "pattern: " + pattern_str );
 		
 		/*
@@ -299,6 +308,8 @@ RegexEngine
 	
 						try{						
 							List results = new ArrayList();
+							
+							int	streamed = 0;
 								
 							for ( int pat_num=0;pat_num<patterns.length;pat_num++){
 								
@@ -441,6 +452,8 @@ RegexEngine
 									if ( fields_matched > 0 ){
 									
 										results.add(result);
+										
+										streamed = streamResults( listener, results, streamed );
 									}
 								}
 							}
@@ -95,7 +95,20 @@ SubscriptionDownloader
 			
 			context.put( Engine.SC_SOURCE, 	"subscription" );
 			
+			if ( history.getLastScanTime() == 0 ){
+				
+					// nothing to compare a 'not modified' reply with, e.g. after a reset
+				
+				context.put( Engine.SC_FORCE_FULL, "true" );
+				
+			}else{
+				
+				history.getValidators( context );
+			}
+			
 			Result[] results = engine.search( parameters, context, -1, -1, null, null );
+			
+			history.setValidators( context );
 		
 			log( "    Got " + results.length + " results" );
 			
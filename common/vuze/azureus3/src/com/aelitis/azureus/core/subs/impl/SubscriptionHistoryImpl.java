@@ -21,6 +21,7 @@
 
 package com.aelitis.azureus.core.subs.impl;
 
+import java.lang.ref.SoftReference;
 import java.util.*;
 
 import org.gudy.azureus2.core3.download.DownloadManager;
@@ -35,6 +36,7 @@ import com.aelitis.azureus.core.AzureusCoreFactory;
 import com.aelitis.azureus.core.metasearch.Engine;
 import com.aelitis.azureus.core.subs.SubscriptionHistory;
 import com.aelitis.azureus.core.subs.SubscriptionResult;
+import com.aelitis.azureus.util.ImportExportUtils;
 
 public class 
 SubscriptionHistoryImpl
@@ -59,6 +61,15 @@ SubscriptionHistoryImpl
 	
 	private boolean			dl_with_ref	= true;
 	
+		// validators of the last fetch, the engine can be shared with other subscriptions
+	
+	private String			etag;
+	private String			last_modified;
+	
+		// results as last loaded or saved, guarded by this
+	
+	private SoftReference<resultIndex>	result_index;
+	
 	protected
 	SubscriptionHistoryImpl(
 		SubscriptionManagerImpl		_manager,
@@ -76,9 +87,6 @@ SubscriptionHistoryImpl
 		SubscriptionResultImpl[]		latest_results )
 	{
 		auto_dl_supported	= engine.getAutoDownloadSupported() == Engine.AUTO_DL_SUPPORTED_YES;
-		
-		int	new_unread 	= 0;
-		int new_read	= 0;
 					
 		if ( last_scan == 0 ){
 				
@@ -125,80 +133,28 @@ SubscriptionHistoryImpl
 		
 		synchronized( this ){
 			
-			boolean	got_new_or_changed_result	= false;
+			resultIndex	index = getResultIndex();
 			
-			SubscriptionResultImpl[] existing_results = manager.loadResults( subs );
-					
-			ByteArrayHashMap	result_key_map 	= new ByteArrayHashMap();
-			ByteArrayHashMap	result_key2_map = new ByteArrayHashMap();
-			
-			List	new_results = new ArrayList();
+			int	new_unread 	= num_unread;
+			int new_read	= num_read;
 
-			for (int i=0;i<existing_results.length;i++){
-				
-				SubscriptionResultImpl r = existing_results[i];
-				
-				result_key_map.put( r.getKey1(), r );
-				
-				byte[]	key2 = r.getKey2();
-				
-				if ( key2 != null ){
-					
-					result_key2_map.put( key2, r );
-				}
-				
-				new_results.add( r );
-				
-				if ( !r.isDeleted()){
-					
-					if ( r.getRead()){
-						
-						new_read++;
-						
-					}else{
-						
-						new_unread++;
-					}
-				}
-			}
-						
+				// only the results that are new or have changed get written out
+			
+			Set<SubscriptionResultImpl>	changed = new LinkedHashSet<SubscriptionResultImpl>();
+			
 			for (int i=0;i<latest_results.length;i++){
 
 				SubscriptionResultImpl r = latest_results[i];
 				
-					// we first of all insist on names uniqueness
-				
-				SubscriptionResultImpl existing = (SubscriptionResultImpl)result_key_map.get( r.getKey1());
-				
-				if ( existing == null ){
-					
-						// only if non-unique name do we fall back and use UID to remove duplicate
-						// entries where the name has changed
-					
-					byte[]	key2 = r.getKey2();
-					
-					if ( key2 != null ){
-						
-						existing = (SubscriptionResultImpl)result_key2_map.get( key2 );
-					}
-				}
+				SubscriptionResultImpl existing = index.get( r );
 				
 				if ( existing == null ){
 					
 					last_new_result = now;
 					
-					new_results.add( r );
-					
-					result_key_map.put( r.getKey1(), r );
-					
-					byte[]	key2 = r.getKey2();
-					
-					if ( key2 != null ){
-						
-						result_key2_map.put( key2, r );
-					}
+					index.add( r );
 					
-					got_new_or_changed_result = true;
+					changed.add( r );
 				
 					if ( r.getRead()){
 						
@@ -210,9 +166,13 @@ SubscriptionHistoryImpl
 					}
 				}else{
 					
+					byte[]	old_key2 = existing.getKey2();
+					
 					if ( existing.updateFrom( r )){
 						
-						got_new_or_changed_result = true;
+						index.updateKey2( existing, old_key2 );
+						
+						changed.add( existing );
 					}
 				}
 			}
@@ -221,9 +181,11 @@ SubscriptionHistoryImpl
 			
 			if ( max_results > 0 && (new_unread + new_read ) > max_results ){
 				
-				for (int i=0;i<new_results.size();i++){
+				List<SubscriptionResultImpl>	results = index.results;
+				
+				for (int i=index.first_live;i<results.size();i++){
 					
-					SubscriptionResultImpl r = (SubscriptionResultImpl)new_results.get(i);
+					SubscriptionResultImpl r = results.get(i);
 					
 					if ( !r.isDeleted()){
 						
@@ -238,25 +200,23 @@ SubscriptionHistoryImpl
 						
 						r.deleteInternal();
 						
-						got_new_or_changed_result = true;
+						changed.add( r );
+					}
+					
+					index.first_live = i+1;
+					
+					if (( new_unread + new_read ) <= max_results ){
 						
-						if (( new_unread + new_read ) <= max_results ){
-							
-							break;
-						}
+						break;
 					}
 				}
 			}
 			
-			if ( got_new_or_changed_result ){
-				
-				result = (SubscriptionResultImpl[])new_results.toArray( new SubscriptionResultImpl[new_results.size()]);
-				
-				manager.saveResults( subs, result );
-				
-			}else{
+			result = index.toArray();
+			
+			if ( changed.size() > 0 ){
 				
-				result = existing_results;
+				manager.saveResults( subs, result, changed.toArray( new SubscriptionResultImpl[changed.size()]));
 			}
 		
 			last_scan 	= now;
@@ -439,7 +399,7 @@ SubscriptionHistoryImpl
 		
 		synchronized( this ){
 			
-			results = manager.loadResults( subs );
+			results = loadResults();
 		}
 		
 		if ( include_deleted ){
@@ -489,23 +449,24 @@ SubscriptionHistoryImpl
 
 		synchronized( this ){
 			
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
-						
-			for (int i=0;i<results.length;i++){
+			resultIndex	index = getResultIndex();
+			
+			SubscriptionResultImpl existing = index.key1_map.get( key );
+			
+			if ( existing != null ){
 				
-				if ( Arrays.equals( results[i].getKey1(), key )){
-					
-					results[i] = result;
+				if ( existing != result ){
 					
-					changed	= true;
+					index.replace( existing, result );
 				}
-			}
-			
-			if ( changed ){
+				
+				changed	= true;
+				
+				SubscriptionResultImpl[] results = index.toArray();
 				
 				updateReadUnread( results );
 				
-				manager.saveResults( subs, results );
+				manager.saveResults( subs, results, new SubscriptionResultImpl[]{ result });
 			}
 		}
 		
@@ -536,8 +497,10 @@ SubscriptionHistoryImpl
 
 		synchronized( this ){
 				
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			SubscriptionResultImpl[] results = loadResults();
 
+			List<SubscriptionResultImpl>	deleted = new ArrayList<SubscriptionResultImpl>();
+			
 			for (int i=0;i<results.length;i++){
 				
 				SubscriptionResultImpl result = results[i];
@@ -547,6 +510,8 @@ SubscriptionHistoryImpl
 					changed = true;
 					
 					result.deleteInternal();
+					
+					deleted.add( result );
 				}
 			}
 			
@@ -554,7 +519,7 @@ SubscriptionHistoryImpl
 				
 				updateReadUnread( results );
 				
-				manager.saveResults( subs, results );
+				manager.saveResults( subs, results, deleted.toArray( new SubscriptionResultImpl[deleted.size()]));
 			}
 		}
 		
@@ -571,7 +536,7 @@ SubscriptionHistoryImpl
 		
 		synchronized( this ){
 						
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			SubscriptionResultImpl[] results = loadResults();
 
 			for (int i=0;i<results.length;i++){
 				
@@ -589,7 +554,7 @@ SubscriptionHistoryImpl
 				
 				updateReadUnread( results );
 				
-				manager.saveResults( subs, results );
+				saveResults( results );
 			}
 		}
 		
@@ -606,7 +571,7 @@ SubscriptionHistoryImpl
 		
 		synchronized( this ){
 						
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			SubscriptionResultImpl[] results = loadResults();
 
 			for (int i=0;i<results.length;i++){
 				
@@ -624,7 +589,7 @@ SubscriptionHistoryImpl
 				
 				updateReadUnread( results );
 				
-				manager.saveResults( subs, results );
+				saveResults( results );
 			}
 		}
 		
@@ -641,7 +606,7 @@ SubscriptionHistoryImpl
 		
 		synchronized( this ){
 						
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			SubscriptionResultImpl[] results = loadResults();
 
 			for (int i=0;i<results.length;i++){
 				
@@ -659,7 +624,7 @@ SubscriptionHistoryImpl
 				
 				updateReadUnread( results );
 				
-				manager.saveResults( subs, results );
+				saveResults( results );
 			}
 		}
 		
@@ -687,8 +652,10 @@ SubscriptionHistoryImpl
 		
 		synchronized( this ){
 						
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			SubscriptionResultImpl[] results = loadResults();
 
+			List<SubscriptionResultImpl>	marked = new ArrayList<SubscriptionResultImpl>();
+			
 			for (int i=0;i<results.length;i++){
 				
 				SubscriptionResultImpl result = results[i];
@@ -710,6 +677,8 @@ SubscriptionHistoryImpl
 					
 						result.setReadInternal( read );
 						
+						marked.add( result );
+						
 						if ( !read ){
 							
 							newly_unread.add( result );
@@ -722,7 +691,7 @@ SubscriptionHistoryImpl
 				
 				updateReadUnread( results );
 				
-				manager.saveResults( subs, results );
+				manager.saveResults( subs, results, marked.toArray( new SubscriptionResultImpl[marked.size()]));
 			}
 		}
 		
@@ -745,13 +714,13 @@ SubscriptionHistoryImpl
 	{
 		synchronized( this ){
 			
-			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			SubscriptionResultImpl[] results = loadResults();
 			
 			if ( results.length > 0 ){
 				
 				results = new SubscriptionResultImpl[0];
 								
-				manager.saveResults( subs, results );
+				saveResults( results );
 			}
 			
 			updateReadUnread( results );
@@ -760,6 +729,8 @@ SubscriptionHistoryImpl
 		last_error		= null;
 		last_new_result	= 0;
 		last_scan		= 0;
+		etag			= null;
+		last_modified	= null;
 					
 		saveConfig();
 	}
@@ -779,7 +750,7 @@ SubscriptionHistoryImpl
 
 			if ((num_unread + num_read ) > max_results ){
 
-				SubscriptionResultImpl[] results = manager.loadResults( subs );
+				SubscriptionResultImpl[] results = loadResults();
 				
 				for (int i=0;i<results.length;i++){
 					
@@ -809,7 +780,7 @@ SubscriptionHistoryImpl
 				
 				if ( changed ){
 					
-					manager.saveResults( subs, results );
+					saveResults( results );
 				}
 			}
 		}
@@ -848,6 +819,46 @@ SubscriptionHistoryImpl
 		num_unread	= new_unread;
 	}
 	
+		/**
+		 * Must be called with this held
+		 */
+	
+	protected resultIndex
+	getResultIndex()
+	{
+		resultIndex	index = result_index==null?null:result_index.get();
+		
+		if ( index == null ){
+			
+			SubscriptionResultImpl[] results = manager.loadResults( subs );
+			
+			index = new resultIndex( results );
+			
+			result_index = new SoftReference<resultIndex>( index );
+			
+				// the counts saved in the config can be behind the results if we died in between
+			
+			updateReadUnread( results );
+		}
+		
+		return( index );
+	}
+	
+	protected SubscriptionResultImpl[]
+	loadResults()
+	{
+		return( getResultIndex().toArray());
+	}
+	
+	protected void
+	saveResults(
+		SubscriptionResultImpl[]	results )
+	{
+		manager.saveResults( subs, results );
+		
+		result_index = new SoftReference<resultIndex>( new resultIndex( results ));
+	}
+	
 	protected boolean
 	isAutoDownloadSupported()
 	{
@@ -900,6 +911,33 @@ SubscriptionHistoryImpl
 		return( consec_fails );
 	}
 	
+	protected void
+	getValidators(
+		Map		context )
+	{
+		if ( etag != null ){
+			
+			context.put( Engine.SC_ETAG, etag );
+		}
+		
+		if ( last_modified != null ){
+			
+			context.put( Engine.SC_LAST_MODIFIED, last_modified );
+		}
+	}
+	
+		/**
+		 * Saved with the next scan time
+		 */
+	
+	protected void
+	setValidators(
+		Map		context )
+	{
+		etag			= (String)context.get( Engine.SC_ETAG );
+		last_modified	= (String)context.get( Engine.SC_LAST_MODIFIED );
+	}
+	
 	public boolean
 	getDownloadWithReferer()
 	{
@@ -950,6 +988,14 @@ SubscriptionHistoryImpl
 		Long	l_dl_with_ref	= (Long)map.get( "dl_with_ref" );		
 		dl_with_ref	= l_dl_with_ref==null?true:l_dl_with_ref.longValue()==1;
 
+		try{
+			etag			= ImportExportUtils.importString( map, "etag" );
+			last_modified	= ImportExportUtils.importString( map, "last_mod" );
+			
+		}catch( Throwable e ){
+			
+			Debug.out( e );
+		}
 	}
 	
 	protected void
@@ -966,6 +1012,15 @@ SubscriptionHistoryImpl
 		map.put( "num_read", new Long( num_read ));
 		map.put( "dl_with_ref", new Long( dl_with_ref?1:0 ));
 
+		try{
+			ImportExportUtils.exportString( map, "etag", etag );
+			ImportExportUtils.exportString( map, "last_mod", last_modified );
+			
+		}catch( Throwable e ){
+			
+			Debug.out( e );
+		}
+		
 		subs.updateHistoryConfig( map );
 	}
 	
@@ -989,4 +1044,120 @@ SubscriptionHistoryImpl
 	{
 		return( "unread=" + num_unread + ",read=" + num_read+ ",last_err=" + last_error );
 	}
+	
+	protected static class
+	resultIndex
+	{
+		private List<SubscriptionResultImpl>				results;
+		private ByteArrayHashMap<SubscriptionResultImpl>	key1_map;
+		private ByteArrayHashMap<SubscriptionResultImpl>	key2_map;
+		
+			// everything before this is deleted so there's nothing left to trim there
+		
+		private int											first_live;
+		
+		private
+		resultIndex(
+			SubscriptionResultImpl[]	_results )
+		{
+			results		= new ArrayList<SubscriptionResultImpl>( _results.length + 32 );
+			key1_map	= new ByteArrayHashMap<SubscriptionResultImpl>( _results.length*2 + 16 );
+			key2_map	= new ByteArrayHashMap<SubscriptionResultImpl>( _results.length*2 + 16 );
+			
+			for (int i=0;i<_results.length;i++){
+				
+				add( _results[i] );
+			}
+		}
+		
+		private void
+		add(
+			SubscriptionResultImpl		result )
+		{
+			results.add( result );
+			
+			key1_map.put( result.getKey1(), result );
+			
+			byte[]	key2 = result.getKey2();
+			
+			if ( key2 != null ){
+				
+				key2_map.put( key2, result );
+			}
+		}
+		
+			/**
+			 * we first of all insist on names uniqueness and only if non-unique name do we fall back
+			 * and use UID to remove duplicate entries where the name has changed
+			 */
+		
+		private SubscriptionResultImpl
+		get(
+			SubscriptionResultImpl		result )
+		{
+			SubscriptionResultImpl existing = key1_map.get( result.getKey1());
+			
+			if ( existing == null ){
+				
+				byte[]	key2 = result.getKey2();
+				
+				if ( key2 != null ){
+					
+					existing = key2_map.get( key2 );
+				}
+			}
+			
+			return( existing );
+		}
+		
+		private void
+		updateKey2(
+			SubscriptionResultImpl		result,
+			byte[]						old_key2 )
+		{
+			if ( old_key2 != null && key2_map.get( old_key2 ) == result ){
+				
+				key2_map.remove( old_key2 );
+			}
+			
+			byte[]	key2 = result.getKey2();
+			
+			if ( key2 != null ){
+				
+				key2_map.put( key2, result );
+			}
+		}
+		
+		private void
+		replace(
+			SubscriptionResultImpl		existing,
+			SubscriptionResultImpl		result )
+		{
+			int	pos = results.indexOf( existing );
+			
+			results.set( pos, result );
+			
+			if ( pos < first_live ){
+				
+				first_live = pos;
+			}
+			
+			key1_map.put( result.getKey1(), result );
+			
+			byte[]	old_key2 = existing.getKey2();
+			
+			if ( old_key2 != null && key2_map.get( old_key2 ) == existing ){
+				
+				key2_map.remove( old_key2 );
+			}
+			
+			updateKey2( result, null );
+		}
+		
+		private SubscriptionResultImpl[]
+		toArray()
+		{
+			return( results.toArray( new SubscriptionResultImpl[results.size()]));
+		}
+	}
 }
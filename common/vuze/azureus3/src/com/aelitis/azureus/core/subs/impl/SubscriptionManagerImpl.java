@@ -98,6 +98,8 @@ SubscriptionManagerImpl
 	private static final String	LOGGER_NAME = "Subscriptions";
 
 	private static final String CONFIG_MAX_RESULTS 			= "subscriptions.max.non.deleted.results";
+	
+	private static final int	RESULTS_DELTA_MIN_SIZE		= 32*1024;
 	private static final String CONFIG_AUTO_START_DLS 		= "subscriptions.auto.start.downloads";
 	private static final String CONFIG_AUTO_START_MIN_MB 	= "subscriptions.auto.start.min.mb";
 	private static final String CONFIG_AUTO_START_MAX_MB 	= "subscriptions.auto.start.max.mb";
@@ -1777,6 +1779,8 @@ SubscriptionManagerImpl
 		try{
 			FileUtil.deleteResilientFile( getResultsFile( subs ));
 			
+			getResultsDeltaFile( subs ).delete();
+			
 			File vuze_file = getVuzeFile( subs );
 			
 			vuze_file.delete();
@@ -2377,6 +2381,17 @@ SubscriptionManagerImpl
  		return( new File( dir, ByteFormatter.encodeString( subs.getShortID()) + ".results" ));
 	}
 	
+	protected File
+	getResultsDeltaFile(
+		SubscriptionImpl 		subs )
+	
+		throws IOException
+	{
+ 		File dir = getSubsDir();
+ 		
+ 		return( new File( dir, ByteFormatter.encodeString( subs.getShortID()) + ".results.delta" ));
+	}
+	
 	public int
 	getKnownSubscriptionCount()
 	{
@@ -5756,9 +5771,118 @@ SubscriptionManagerImpl
 			log( "Failed to load results for '" + subs.getName() + "' - continuing with empty result set", e );
 		}
 		
+		loadResultsDelta( subs, results );
+		
 		return((SubscriptionResultImpl[])results.toArray( new SubscriptionResultImpl[results.size()] ));
 	}
 	
+		/**
+		 * Applies the results saved since the full set was last written, each replacing the
+		 * one with the same key or else added at the end
+		 */
+	
+	private void
+	loadResultsDelta(
+		SubscriptionImpl			subs,
+		List						results )
+	{
+		try{
+			File	f = getResultsDeltaFile( subs );
+			
+			if ( !f.exists()){
+				
+				return;
+			}
+			
+			SubscriptionHistoryImpl	history = (SubscriptionHistoryImpl)subs.getHistory();
+
+			ByteArrayHashMap<Integer>	positions = new ByteArrayHashMap<Integer>();
+			
+			for (int i=0;i<results.size();i++){
+				
+				positions.put(((SubscriptionResultImpl)results.get(i)).getKey1(), i );
+			}
+			
+				// length of the complete records read
+			
+			long	good 	= 0;
+			boolean	torn	= false;
+			
+			DataInputStream	dis = new DataInputStream( new BufferedInputStream( new FileInputStream( f )));
+			
+			try{
+				while( true ){
+					
+					int	len;
+					
+					try{
+						len = dis.readInt();
+						
+					}catch( EOFException e ){
+						
+						break;
+					}
+					
+					if ( len <= 0 || len > 1024*1024 ){
+						
+						throw( new IOException( "Invalid record length " + len ));
+					}
+					
+					byte[]	data = new byte[len];
+					
+					dis.readFully( data );
+					
+					SubscriptionResultImpl result = new SubscriptionResultImpl( history, BDecoder.decode( data ));
+					
+					Integer	pos = positions.get( result.getKey1());
+					
+					if ( pos == null ){
+						
+						positions.put( result.getKey1(), results.size());
+						
+						results.add( result );
+						
+					}else{
+						
+						results.set( pos, result );
+					}
+					
+					good += 4 + len;
+				}
+			}catch( Throwable e ){
+				
+					// a write that was cut short leaves a partial record at the end, the ones
+					// before it still apply
+				
+				log( "Failed to load result changes for '" + subs.getName() + "', dropping those after " + good + " bytes", e );
+				
+				torn = true;
+				
+			}finally{
+				
+				dis.close();
+			}
+			
+			if ( torn ){
+				
+					// later changes are appended, they mustn't end up behind the partial record
+				
+				RandomAccessFile	raf = new RandomAccessFile( f, "rw" );
+				
+				try{
+					raf.setLength( good );
+					
+				}finally{
+					
+					raf.close();
+				}
+			}
+		}catch( Throwable e ){
+			
+			log( "Failed to load result changes for '" + subs.getName() + "'", e );
+		}
+	}
+	
 	protected void
   	setCategoryOnExisting(
   		SubscriptionImpl	subscription,
@@ -5900,14 +6024,72 @@ SubscriptionManagerImpl
 				list.add( results[i].toBEncodedMap());
 			}
 			
-			FileUtil.writeResilientFile( f, map );
+			if ( FileUtil.writeResilientFileWithResult( f.getParentFile(), f.getName(), map )){
 			
+					// everything is in there now
+				
+				getResultsDeltaFile( subs ).delete();
+			}
 		}catch( Throwable e ){
 			
 			log( "Failed to save results for '" + subs.getName(), e );
 		}
  	}
 	
+		/**
+		 * Saves the results when only some of them have changed by appending those to the
+		 * delta file rather than writing them all out again. Once the delta has grown to a
+		 * quarter of the full file they are all written out and the delta dropped
+		 */
+	
+	protected void
+ 	saveResults(
+ 		SubscriptionImpl			subs,
+ 		SubscriptionResultImpl[]	results,
+ 		SubscriptionResultImpl[]	changed )
+ 	{
+		try{
+			File	f		= getResultsFile( subs );
+			File	delta	= getResultsDeltaFile( subs );
+			
+			if ( f.exists()){
+				
+				ByteArrayOutputStream	baos = new ByteArrayOutputStream( changed.length*512 );
+				
+				DataOutputStream	dos = new DataOutputStream( baos );
+				
+				for (int i=0;i<changed.length;i++){
+					
+					byte[]	data = BEncoder.encode( changed[i].toBEncodedMap());
+					
+					dos.writeInt( data.length );
+					
+					dos.write( data );
+				}
+				
+				if ( delta.length() + baos.size() <= Math.max( RESULTS_DELTA_MIN_SIZE, f.length()/4 )){
+					
+					FileOutputStream	fos = new FileOutputStream( delta, true );
+					
+					try{
+						baos.writeTo( fos );
+						
+					}finally{
+						
+						fos.close();
+					}
+					
+					return;
+				}
+			}
+		}catch( Throwable e ){
+			
+			log( "Failed to save result changes for '" + subs.getName() + "', saving all", e );
+		}
+		
+		saveResults( subs, results );
+ 	}
+	
 	private void
 	loadConfig()
 	{
@@ -142,21 +142,11 @@ UTPConnection
 	
 		throws IOException
 	{
-			// packets reach us using 8K space regardless of content - trim this back for small protocol
-			// messages to save memory
+			// the manager hands us buffers of our own, sized to the data
 		
 		int	rem = data.remaining();
 	
 		total_received += rem;
-		
-		if ( rem < 256 ){
-			
-			byte[]	temp = new byte[rem];
-			
-			data.get( temp );
-			
-			data = ByteBuffer.wrap( temp );
-		}
 				
 		if ( !connected ){
 			
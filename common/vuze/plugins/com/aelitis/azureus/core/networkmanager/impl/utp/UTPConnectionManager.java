@@ -22,6 +22,7 @@
 package com.aelitis.azureus.core.networkmanager.impl.utp;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -83,9 +84,12 @@ UTPConnectionManager
 	
 	private UTPSelector		selector;
 	
+		// the maps are updated under the manager's lock and read without it, address entries are
+		// replaced rather than modified
+	
 	private List<UTPConnection>							connections 			= new ArrayList<UTPConnection>();
-	private Map<InetAddress,List<UTPConnection>>		address_connection_map 	= new HashMap<InetAddress, List<UTPConnection>>();
-	private Map<Long,UTPConnection>						socket_connection_map 	= new HashMap<Long, UTPConnection>();
+	private Map<InetAddress,UTPConnection[]>			address_connection_map 	= new ConcurrentHashMap<InetAddress, UTPConnection[]>();
+	private Map<Long,UTPConnection>						socket_connection_map 	= new ConcurrentHashMap<Long, UTPConnection>();
 	
 	private Set<UTPConnection>							closing_connections		= new HashSet<UTPConnection>();
 	
@@ -105,6 +109,17 @@ UTPConnectionManager
 	private long				total_incoming_queued;
 	private int					total_incoming_queued_log_state;
 	
+		// received packets are copied into pooled buffers and handed to the provider in batches,
+		// one dispatch per batch rather than per packet
+	
+	private static final int	PACKET_BUFFER_SIZE	= 2048;
+	private static final int	MAX_POOLED_PACKETS	= 256;
+	
+	private List<IncomingPacket>		incoming_packets	= new ArrayList<IncomingPacket>();
+	private List<IncomingPacket>		draining_packets	= new ArrayList<IncomingPacket>();
+	private LinkedList<IncomingPacket>	packet_pool			= new LinkedList<IncomingPacket>();
+	private boolean						incoming_dispatch_pending;
+	
 	private boolean	available;
 	
 	private boolean	hack_worked;
@@ -252,12 +267,7 @@ UTPConnectionManager
 							long		utp_socket,
 							byte[]		data )
 						{
-							UTPConnection connection;
-							
-							synchronized( UTPConnectionManager.this ){
-								
-								connection = socket_connection_map.get( utp_socket );
-							}
+							UTPConnection connection = socket_connection_map.get( utp_socket );
 							
 							if ( connection == null ){
 								
@@ -280,12 +290,7 @@ UTPConnectionManager
 							long			utp_socket,
 							ByteBuffer		bb )
 						{
-							UTPConnection connection;
-							
-							synchronized( UTPConnectionManager.this ){
-								
-								connection = socket_connection_map.get( utp_socket );
-							}
+							UTPConnection connection = socket_connection_map.get( utp_socket );
 							
 							if ( connection == null ){
 								
@@ -294,7 +299,13 @@ UTPConnectionManager
 							}else{
 								
 								try{
-									connection.receive( bb );
+										// bb wraps the packet buffer, which is reused
+									
+									byte[]	data = new byte[bb.remaining()];
+									
+									bb.get( data );
+									
+									connection.receive( ByteBuffer.wrap( data ));
 									
 								}catch( Throwable e ){
 																	
@@ -310,12 +321,7 @@ UTPConnectionManager
 							int			offset,
 							int			length )
 						{
-							UTPConnection connection;
-							
-							synchronized( UTPConnectionManager.this ){
-								
-								connection = socket_connection_map.get( utp_socket );
-							}
+							UTPConnection connection = socket_connection_map.get( utp_socket );
 							
 							if ( connection == null ){
 								
@@ -369,12 +375,7 @@ UTPConnectionManager
 						getReadBufferSize(
 							long		utp_socket )
 						{
-							UTPConnection connection;
-							
-							synchronized( UTPConnectionManager.this ){
-								
-								connection = socket_connection_map.get( utp_socket );
-							}
+							UTPConnection connection = socket_connection_map.get( utp_socket );
 							
 							if ( connection == null ){
 								
@@ -407,12 +408,7 @@ UTPConnectionManager
 							long		utp_socket,
 							int			state )
 						{
-							UTPConnection connection;
-							
-							synchronized( UTPConnectionManager.this ){
-								
-								connection = socket_connection_map.get( utp_socket );
-							}
+							UTPConnection connection = socket_connection_map.get( utp_socket );
 							
 							if ( connection == null ){
 								
@@ -452,12 +448,7 @@ UTPConnectionManager
 							long		utp_socket,
 							int			error )
 						{		
-							UTPConnection connection;
-							
-							synchronized( UTPConnectionManager.this ){
-								
-								connection = socket_connection_map.get( utp_socket );
-							}
+							UTPConnection connection = socket_connection_map.get( utp_socket );
 							
 							if ( connection == null ){
 								
@@ -607,7 +598,7 @@ UTPConnectionManager
 									
 					// System.out.println( "Looks like uTP incoming connection from " + from );
 	
-					return( doReceive( address.getHostAddress(), from.getPort(), data, length ));
+					return( doReceive( from, data, length ));
 											
 				}else if ( (first_byte&0x0f)==0x01 ){
 					
@@ -632,50 +623,47 @@ UTPConnectionManager
 					
 						UTPConnection connection = null;
 						
-						synchronized( this ){
-							
-							List<UTPConnection> l = address_connection_map.get( address );
+						UTPConnection[] cons = address_connection_map.get( address );
+						
+						if ( cons != null ){
 							
-							if ( l != null ){
+							for ( UTPConnection c: cons ){
 								
-								for ( UTPConnection c:l ){
+								if ( c.getConnectionID() == con_id ){
 									
-									if ( c.getConnectionID() == con_id ){
-										
-										connection = c;
-										
-										break;
-									}
+									connection = c;
+									
+									break;
 								}
 							}
+						}
+						
+						/*
+						if ( connection == null ){
 							
-							/*
-							if ( connection == null ){
+							String existing = "";
+							
+							for ( Map.Entry<InetAddress, UTPConnection[]> entry: address_connection_map.entrySet()){
 								
-								String existing = "";
+								String str = entry.getKey() + "->";
 								
-								for ( Map.Entry<InetAddress, List<UTPConnection>> entry: address_connection_map.entrySet()){
+								for (UTPConnection u: entry.getValue()){
 									
-									String str = entry.getKey() + "->";
-									
-									for (UTPConnection u: entry.getValue()){
-										
-										str += u.getConnectionID() + ",";
-									}
-									
-									existing += str + " ";
+									str += u.getConnectionID() + ",";
 								}
 								
-								System.out.println( "Connection not found for " + from + "/" + con_id + ": " + existing );
+								existing += str + " ";
 							}
-							*/
+							
+							System.out.println( "Connection not found for " + from + "/" + con_id + ": " + existing );
 						}
+						*/
 						
 						if ( connection != null ){
 							
 							// System.out.println( "Looks like uTP incoming data from " + from );
 								
-							return( doReceive( address.getHostAddress(), from.getPort(), data, length ));
+							return( doReceive( from, data, length ));
 								
 						}else{
 							
@@ -691,10 +679,9 @@ UTPConnectionManager
 	
 	private boolean
 	doReceive(
-		final String		from_address,
-		final int			from_port,
-		final byte[]		data,
-		final int			length )
+		InetSocketAddress	from,
+		byte[]				data,
+		int					length )
 	{
 		if ( !utp_provider.isValidPacket( data, length )){
 			
@@ -726,27 +713,74 @@ UTPConnectionManager
 			}
 			
 			total_incoming_queued += length;
+			
+			IncomingPacket packet;
+			
+			if ( length > PACKET_BUFFER_SIZE ){
+				
+				packet = new IncomingPacket( length );
+				
+			}else{
+				
+				packet = packet_pool.poll();
+				
+				if ( packet == null ){
+					
+					packet = new IncomingPacket( PACKET_BUFFER_SIZE );
+				}
+			}
+			
+			packet.from		= from;
+			packet.length	= length;
+			
+			System.arraycopy( data, 0, packet.data, 0, length );
+			
+			incoming_packets.add( packet );
+			
+			if ( incoming_dispatch_pending ){
+				
+				return( true );
+			}
+			
+			incoming_dispatch_pending = true;
 		}
 		
-		dispatcher.dispatch(
-			new AERunnable()
+		dispatcher.dispatch( incomingDispatcher );
+		
+		return( true );
+	}
+	
+	private AERunnable incomingDispatcher =
+		new AERunnable()
+		{
+			public void
+			runSupport()
 			{
-				public void
-				runSupport()
-			  	{
-					synchronized( UTPConnectionManager.this ){
+				List<IncomingPacket>	packets;
+				
+				synchronized( UTPConnectionManager.this ){
+					
+					packets = incoming_packets;
+					
+					incoming_packets	= draining_packets;
+					draining_packets	= packets;
+					
+					for ( IncomingPacket packet: packets ){
 						
-						total_incoming_queued -= length;
+						total_incoming_queued -= packet.length;
 					}
+				}
+				
+				for ( IncomingPacket packet: packets ){
 					
-					//System.out.println( "recv " + from_address + ":" + from_port + " - " + ByteFormatter.encodeString( data, 0, length ));
-					
+					//System.out.println( "recv " + packet.from + " - " + ByteFormatter.encodeString( packet.data, 0, packet.length ));
+
 					try{
-						if ( !utp_provider.receive( from_address, from_port, data, length )){
+						if ( !utp_provider.receive( packet.from, packet.data, packet.length )){
 							
 							if ( Constants.IS_CVS_VERSION ){
 							
-								Debug.out( "Failed to process uTP packet: " + ByteFormatter.encodeString( data, 0, length ) + " from " + from_address);
+								Debug.out( "Failed to process uTP packet: " + ByteFormatter.encodeString( packet.data, 0, packet.length ) + " from " + packet.from );
 							}
 						}
 					}catch( Throwable e ){
@@ -754,10 +788,40 @@ UTPConnectionManager
 						Debug.out( e );
 					}
 				}
-			});
-		
-		return( true );
-	}
+				
+				boolean	more;
+				
+				synchronized( UTPConnectionManager.this ){
+					
+					for ( IncomingPacket packet: packets ){
+						
+						packet.from = null;
+						
+						if ( packet.data.length == PACKET_BUFFER_SIZE && packet_pool.size() < MAX_POOLED_PACKETS ){
+							
+							packet_pool.add( packet );
+						}
+					}
+					
+					packets.clear();
+					
+						// anything that arrived meanwhile goes to the back of the queue so that
+						// writes and timeouts get their turn
+					
+					more = incoming_packets.size() > 0;
+					
+					if ( !more ){
+						
+						incoming_dispatch_pending = false;
+					}
+				}
+				
+				if ( more ){
+					
+					dispatcher.dispatch( this );
+				}
+			}
+		};
 	
 	private void
 	accept(
@@ -881,11 +945,13 @@ UTPConnectionManager
 		  
 		synchronized( this ){
 		
-			List<UTPConnection> l = address_connection_map.get( remote_address.getAddress());
+			UTPConnection[] cons = address_connection_map.get( remote_address.getAddress());
+			
+			List<UTPConnection> l = new ArrayList<UTPConnection>();
 			
-			if ( l != null ){
+			if ( cons != null ){
 				
-				for ( UTPConnection c: l ){
+				for ( UTPConnection c: cons ){
 					
 					if ( c.getConnectionID() == con_id ){
 						
@@ -896,22 +962,19 @@ UTPConnectionManager
 						
 						to_destroy.add( c );
 						
-						l.remove( c );
-						
 						connections.remove( c );
 						
-						break;
+					}else{
+						
+						l.add( c );
 					}
 				}
-			}else{
-				
-				l = new ArrayList<UTPConnection>();
-				
-				address_connection_map.put( remote_address.getAddress(), l );
 			}
 			
 			l.add( new_connection );
 			
+			address_connection_map.put( remote_address.getAddress(), l.toArray( new UTPConnection[l.size()]));
+			
 			connections.add( new_connection );
 			
 			UTPConnection existing = socket_connection_map.put( utp_socket, new_connection );
@@ -959,15 +1022,21 @@ UTPConnectionManager
 			
 			connections.remove( c );
 	
-			List<UTPConnection> l = address_connection_map.get( c.getRemoteAddress().getAddress());
+			UTPConnection[] cons = address_connection_map.get( c.getRemoteAddress().getAddress());
 			
-			if ( l != null ){
+			if ( cons != null ){
+				
+				List<UTPConnection> l = new ArrayList<UTPConnection>( Arrays.asList( cons ));
 				
 				l.remove( c );
 				
 				if ( l.size() == 0 ){
 					
 					address_connection_map.remove( c.getRemoteAddress().getAddress());
+					
+				}else{
+					
+					address_connection_map.put( c.getRemoteAddress().getAddress(), l.toArray( new UTPConnection[l.size()]));
 				}
 			}
 			
@@ -1397,4 +1466,19 @@ UTPConnectionManager
 			log( "Failed to set socket options: " + Debug.getNestedExceptionMessage(e));
 		}
 	}
+	
+	private static class
+	IncomingPacket
+	{
+		private InetSocketAddress	from;
+		private final byte[]		data;
+		private int					length;
+		
+		private
+		IncomingPacket(
+			int		size )
+		{
+			data = new byte[size];
+		}
+	}
 }
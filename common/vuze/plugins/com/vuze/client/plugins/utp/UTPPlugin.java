@@ -284,25 +284,22 @@ UTPPlugin
 		return( manager.receive((InetSocketAddress)packet.getSocketAddress(), packet.getData(), packet.getLength()));
 	}
 	
+	public boolean
+	copiesData()
+	{
+			// the connection manager queues a copy of anything it accepts
+		
+		return( true );
+	}
+	
 	public boolean
 	send(
 		InetSocketAddress	to,
 		byte[]				buffer,
 		int					length )
 	{
-		if ( length != buffer.length ){
-			
-			Debug.out( "optimise this" );
-			
-			byte[] temp = new byte[length];
-			
-			System.arraycopy(buffer, 0, temp, 0, length );
-			
-			buffer = temp;
-		}
-		
 		try{
-			handler.primordialSend( buffer, to );
+			handler.primordialSend( buffer, length, to );
 			
 		}catch( Throwable e ){
 			
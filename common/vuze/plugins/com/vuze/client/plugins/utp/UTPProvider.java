@@ -21,6 +21,7 @@
 
 package com.vuze.client.plugins.utp;
 
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 
 public interface 
@@ -59,10 +60,9 @@ UTPProvider
 	
 	public boolean
 	receive(
-		String		from_address,
-		int			from_port,
-		byte[]		data,
-		int			length )
+		InetSocketAddress	from,
+		byte[]				data,
+		int					length )
 	
 		throws UTPProviderException;
 	
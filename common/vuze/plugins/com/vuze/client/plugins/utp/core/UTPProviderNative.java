@@ -22,6 +22,7 @@
 package com.vuze.client.plugins.utp.core;
 
 import java.io.File;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 
 import org.gudy.azureus2.core3.util.Debug;
@@ -201,14 +202,13 @@ UTPProviderNative
 	
 	public boolean
 	receive(
-		String		from_address,
-		int			from_port,
-		byte[]		data,
-		int			length )
+		InetSocketAddress	from,
+		byte[]				data,
+		int					length )
 	
 		throws UTPProviderException
 	{
-		return( UTPInterface.receive(from_address, from_port, data, length));
+		return( UTPInterface.receive(from.getAddress().getHostAddress(), from.getPort(), data, length));
 	}
 	
 	public boolean
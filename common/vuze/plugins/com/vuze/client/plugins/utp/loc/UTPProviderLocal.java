@@ -126,9 +126,10 @@ UTPProviderLocal
 	send_to_proc(
 		Object				user_data,
 		byte[]				data,
+		int					length,
 		InetSocketAddress	addr )
 	{
-		callback.send( addr, data, data.length );
+		callback.send( addr, data, length );
 	}
 	
 	public void
@@ -337,15 +338,14 @@ UTPProviderLocal
 	
 	public boolean
 	receive(
-		String		from_address,
-		int			from_port,
-		byte[]		data,
-		int			length )
+		InetSocketAddress	from,
+		byte[]				data,
+		int					length )
 	
 		throws UTPProviderException
 	{
 		try{
-			return( impl.UTP_IsIncomingUTP(this, this, "", data, length, new InetSocketAddress( HostNameToIPResolver.syncResolve( from_address), from_port )));
+			return( impl.UTP_IsIncomingUTP(this, this, "", data, length, from ));
 			
 		}catch( Throwable e ){
 			
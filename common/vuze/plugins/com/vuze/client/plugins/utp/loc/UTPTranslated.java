@@ -149,6 +149,7 @@ UTPTranslated
 		send_to_proc(
 			Object				user_data,
 			byte[]				data,
+			int					length,
 			InetSocketAddress	addr );
 	}
 
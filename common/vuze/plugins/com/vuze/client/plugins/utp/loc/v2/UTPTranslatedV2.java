@@ -610,7 +610,7 @@ UTPTranslatedV2
 						return( fn_table.get_rb_size( args.socket.userdata ));
 					}
 					case UTP_SENDTO:{
-						send_to_proc.send_to_proc( null, args.buf, args.address );
+						send_to_proc.send_to_proc( null, args.buf, args.len, args.address );
 						break;
 					}
 					
@@ -912,6 +912,8 @@ UTPTranslatedV2
 		LinkedHashSet<UTPSocketImpl> 		ack_sockets;
 		LinkedList<RST_Info> 				rst_info;
 		Map<UTPSocketKey,UTPSocketKeyData>	utp_sockets;
+		UTPSocketKey						lookup_key;
+		byte[]								send_buffer;
 		int									target_delay;
 		int									opt_sndbuf;
 		int									opt_rcvbuf;
@@ -945,6 +947,12 @@ UTPTranslatedV2
 			ack_sockets		= new LinkedHashSet<UTPSocketImpl>();
 			rst_info		= new LinkedList<RST_Info>();
 			utp_sockets 	= new HashMap<UTPSocketKey,UTPSocketKeyData>();
+			
+				// the context is only ever used by one thread at a time, packets are serialised
+				// into the send buffer and sent before it is reused
+			
+			lookup_key		= new UTPSocketKey( null, 0 );
+			send_buffer		= new byte[UDP_IPV4_MTU];
 	
 			
 			callbacks[UTP_ON_ACCEPT]       			= utp_default_callbacks;
@@ -1131,6 +1139,10 @@ UTPTranslatedV2
 	static abstract class PacketFormatBase 
 	{ 
 		public abstract byte[] serialise();
+		
+		public abstract byte[] serialise( byte[] buffer );
+		
+		public abstract int serialisedLength();
 	};
 	
 	static abstract class PacketFormatBaseV1 extends PacketFormatBase{};
@@ -1209,6 +1221,12 @@ UTPTranslatedV2
 			return( serialise( new byte[sizeof_PacketFormatV1] ));
 		}
 		
+		public int
+		serialisedLength()
+		{
+			return( sizeof_PacketFormatV1 );
+		}
+		
 		public byte[] 
 		serialise(
 			byte[]	buffer )
@@ -1279,6 +1297,19 @@ UTPTranslatedV2
 			}
 		}
 		
+		public int
+		serialisedLength()
+		{
+			if ( ext == 0 ){
+				
+				return( super.serialisedLength());
+				
+			}else{
+				
+				return( ext==1?sizeof_PacketFormatAckV1:sizeof_PacketFormatExtensionsV1 );
+			}
+		}
+		
 		public byte[] 
 		serialise(
 			byte[]	buffer )
@@ -2245,10 +2276,10 @@ UTPTranslatedV2
 
 	void send_data(PacketFormatBase packet_header, byte[] packet_payload, int type)
 	{
-		send_data( packet_header, packet_payload, type, 0 );
+		send_data( packet_header, packet_payload, packet_payload==null?0:packet_payload.length, type, 0 );
 	}
 
-	void send_data(PacketFormatBase packet_header, byte[] packet_payload, int type, int flags)
+	void send_data(PacketFormatBase packet_header, byte[] packet_payload, int payload_length, int type, int flags)
 	{		
 		// time stamp this packet with local time, the stamp goes into
 		// the header of every packet at the 8th byte for 8 bytes :
@@ -2261,21 +2292,24 @@ UTPTranslatedV2
 
 		last_sent_packet = ctx.current_ms;
 
-		byte[] serialised_data;
+		int header_length = packet_header.serialisedLength();
 		
-		byte[]	 header_data = packet_header.serialise();
-		if ( packet_payload == null ){
-			serialised_data = header_data;
-		}else{
-			byte[] temp = new byte[header_data.length + packet_payload.length];
-				
-			System.arraycopy( header_data, 0, temp, 0, header_data.length );
-			System.arraycopy( packet_payload, 0, temp, header_data.length, packet_payload.length );
-				
-			serialised_data = temp;
+		int length = header_length + payload_length;
+		
+		byte[] serialised_data = ctx.send_buffer;
+		
+		if ( serialised_data.length < length ){
+			
+			serialised_data = ctx.send_buffer = new byte[length];
+		}
+		
+		packet_header.serialise( serialised_data );
+		
+		if ( payload_length > 0 ){
+			
+			System.arraycopy( packet_payload, 0, serialised_data, header_length, payload_length );
 		}
 		
-		int length = serialised_data.length;
 		/*
 		#ifdef _DEBUG
 		_stats.nbytes_xmit += length;
@@ -2305,7 +2339,7 @@ UTPTranslatedV2
 			seq_nr, ack_nr);
 	#endif
 	*/
-		send_to_addr(ctx, serialised_data, addr, flags);
+		send_to_addr(ctx, serialised_data, length, addr, flags);
 		removeSocketFromAckList(this);
 	}
 
@@ -2448,7 +2482,7 @@ UTPTranslatedV2
 	 	}
 
 		pkt.transmissions++;
-		send_data(pkt.packet_header, pkt.packet_payload,
+		send_data(pkt.packet_header, pkt.packet_payload, pkt.payload,
 			(state == CS_SYN_SENT) ? connect_overhead
 			: (pkt.transmissions == 1) ? payload_bandwidth
 			: retransmit_overhead, use_as_mtu_probe ? UTP_UDP_DONTFRAG : 0);
@@ -2555,11 +2589,14 @@ UTPTranslatedV2
 				//							   (sizeof(OutgoingPacket) - 1) +
 				//							   header_size +
 				//							   pkt->payload + added);
+				// new packets have room for a full one so this only grows if the packet size did
 				byte[] old_payload = pkt.packet_payload;
-				byte[] new_payload = new byte[old_payload.length + added];
+				if (old_payload.length < pkt.payload + added) {
+					byte[] new_payload = new byte[pkt.payload + added];
 				
-				System.arraycopy( old_payload, 0, new_payload, 0, old_payload.length );
-				pkt.packet_payload = new_payload;
+					System.arraycopy( old_payload, 0, new_payload, 0, pkt.payload );
+					pkt.packet_payload = new_payload;
+				}
 				
 				outbuf.put(seq_nr.i - 1, pkt);
 				append = false;
@@ -2574,7 +2611,8 @@ UTPTranslatedV2
 				pkt = new OutgoingPacket();
 				pkt.packet_header = new PacketFormatV1();
 				
-				pkt.packet_payload = new byte[added];
+				// the payload array is the packet's capacity, pkt.payload what is used of it
+				pkt.packet_payload = new byte[Math.max(added, packet_size)];
 				pkt.payload = 0;
 				pkt.transmissions = 0;
 				pkt.need_resend = false;
@@ -2586,7 +2624,7 @@ UTPTranslatedV2
 				byte[] packet_payload = pkt.packet_payload;
 				// Fill it with data from the upper layer.
 				//unsigned char *p = pkt->data + header_size + pkt->payload;
-				int	p		= 0;
+				int	p		= pkt.payload;
 				int needed 	= added;
 
 				/*
@@ -3334,13 +3372,12 @@ UTPTranslatedV2
 	
 	void send_to_addr(utp_context ctx, byte[] p, InetSocketAddress addr )
 	{
-		send_to_addr( ctx, p, addr, 0 );
+		send_to_addr( ctx, p, p.length, addr, 0 );
 	}
-	void send_to_addr(utp_context ctx, byte[] p, InetSocketAddress addr, int flags )
+	void send_to_addr(utp_context ctx, byte[] p, int len, InetSocketAddress addr, int flags )
 	{
 		//socklen_t tolen;
 		//SOCKADDR_STORAGE to = addr.get_sockaddr_storage(&tolen);
-		int len = p.length;
 		utp_register_sent_packet(ctx, len);
 		utp_call_sendto(ctx, null, p, len, addr, flags);
 	}
@@ -4101,7 +4138,11 @@ UTPTranslatedV2
 			// point (which is conn->ack_nr + 1).
 			if (ASSERTS)_assert(conn.inbuf.get(pk_seq_nr) == null);
 			if (ASSERTS)_assert((pk_seq_nr & conn.inbuf.mask) != ((conn.ack_nr.i+1) & conn.inbuf.mask));
-			conn.inbuf.put(pk_seq_nr, packet_payload);
+			// the payload wraps the caller's packet buffer which is reused once we return
+			ByteBuffer copy = ByteBuffer.allocate(packet_payload.remaining());
+			copy.put(packet_payload.duplicate());
+			copy.flip();
+			conn.inbuf.put(pk_seq_nr, copy);
 			conn.reorder_count.inc();
 
 			//#if UTP_DEBUG_LOGGING
@@ -4509,7 +4550,11 @@ UTPTranslatedV2
 			//if (ctx->last_utp_socket && ctx->last_utp_socket->addr == addr && ctx->last_utp_socket->conn_id_recv == id) {
 			//	conn = ctx->last_utp_socket;
 			//} else {
-				UTPSocketKeyData keyData = ctx.utp_sockets.get(new UTPSocketKey(addr, id));
+				UTPSocketKey key = ctx.lookup_key;
+				key.address	= addr;
+				key.recv_id	= id;
+				UTPSocketKeyData keyData = ctx.utp_sockets.get(key);
+				key.address	= null;
 				if (keyData != null ) {
 					conn = keyData.socket;
 					//ctx->last_utp_socket = conn;
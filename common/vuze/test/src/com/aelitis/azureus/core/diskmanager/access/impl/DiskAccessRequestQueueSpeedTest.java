@@ -0,0 +1,196 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.diskmanager.access.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.gudy.azureus2.core3.util.DirectByteBuffer;
+
+import com.aelitis.azureus.core.diskmanager.access.DiskAccessRequest;
+import com.aelitis.azureus.core.diskmanager.access.DiskAccessRequestListener;
+
+/**
+ * Serves a volume's request queue against a simulated disk, where a seek costs more
+ * the further the head moves, with a fixed number of requests outstanding: as each
+ * is served another arrives. Requests arrive a piece (16 contiguous blocks) at a time
+ * at random places in the files and contiguous blocks are served together, as the
+ * dispatcher does.
+ * <p>
+ * Reports for each backlog the simulated throughput, queue wait and how many requests
+ * were served for being past the latency window.
+ *
+ * usage: DiskAccessRequestQueueSpeedTest [simulated seconds]
+ */
+
+public class
+DiskAccessRequestQueueSpeedTest
+{
+	private static final int		NUM_FILES		= 20;
+	private static final long		FILE_SIZE		= 1024*1024*1024L;
+	private static final int		BLOCK_SIZE		= 16*1024;
+	private static final int		PIECE_BLOCKS	= 16;
+
+	private static final long		LATENCY_WINDOW	= 500;
+
+	private static final double		SEEK_MIN_MS		= 0.5;
+	private static final double		SEEK_FULL_MS	= 8.0;
+	private static final double		MB_PER_SEC		= 100.0;
+
+	public static void
+	main(
+		String[]	args )
+	{
+		int	seconds = args.length > 0?Integer.parseInt( args[0] ):60;
+
+		for ( int backlog: new int[]{ 256, 1024, 4096 }){
+
+			run( backlog, seconds );
+		}
+	}
+
+	private static void
+	run(
+		int		backlog,
+		int		seconds )
+	{
+		DiskAccessRequestQueue	queue = new DiskAccessRequestQueue( LATENCY_WINDOW );
+
+		Random	random = new Random( backlog );
+
+		DiskAccessRequestListener	listener = new listener();
+
+		double	now			= 0;
+		double	head		= 0;
+
+		long	served		= 0;
+		long	ios			= 0;
+		double	total_wait	= 0;
+		long	max_wait	= 0;
+
+		int		queued		= 0;
+
+		while( now < seconds*1000 ){
+
+			while( queued + PIECE_BLOCKS <= backlog ){
+
+				int		file	= random.nextInt( NUM_FILES );
+				long	offset	= ( random.nextLong() & Long.MAX_VALUE ) % ( FILE_SIZE/BLOCK_SIZE/PIECE_BLOCKS ) * BLOCK_SIZE * PIECE_BLOCKS;
+
+				for (int i=0;i<PIECE_BLOCKS;i++){
+
+					DiskAccessRequestImpl	request =
+						new DiskAccessRequestImpl(
+							null, offset + i*BLOCK_SIZE,
+							new DirectByteBuffer( ByteBuffer.allocate( BLOCK_SIZE )),
+							listener, DiskAccessRequestImpl.OP_READ, (short)0 );
+
+					queue.add( request, "file" + ( file<10?"0":"" ) + file, (long)now );
+
+					queued++;
+				}
+			}
+
+			DiskAccessRequestImpl	request = queue.next((long)now );
+
+			int		blocks	= 1;
+			long	wait	= (long)now - request.getQueueTime();
+
+			total_wait	+= wait;
+			max_wait	= Math.max( max_wait, wait );
+
+			DiskAccessRequestImpl	current = request;
+
+			while( blocks < PIECE_BLOCKS ){
+
+				DiskAccessRequestImpl	next = queue.getContiguous( current );
+
+				if ( next == null ){
+
+					break;
+				}
+
+				queue.remove( next );
+
+				wait = (long)now - next.getQueueTime();
+
+				total_wait	+= wait;
+				max_wait	= Math.max( max_wait, wait );
+
+				blocks++;
+
+				current = next;
+			}
+
+			double	position	= Integer.parseInt( request.getQueuePath().substring( 4 ))*(double)FILE_SIZE + request.getOffset();
+			double	distance	= Math.abs( position - head )/( NUM_FILES*(double)FILE_SIZE );
+
+			now += distance==0?0:( SEEK_MIN_MS + SEEK_FULL_MS*Math.sqrt( distance ));
+			now += blocks*BLOCK_SIZE/( MB_PER_SEC*1024*1024 )*1000;
+
+			head = position + blocks*BLOCK_SIZE;
+
+			served	+= blocks;
+			queued	-= blocks;
+			ios++;
+		}
+
+		System.out.println(
+			"backlog " + backlog + ": " + ( served*1000/(long)now ) + " requests/s, " +
+			( ios*1000/(long)now ) + " ios/s, " +
+			String.format( "%.1f", served*BLOCK_SIZE/( now/1000 )/( 1024*1024 )) + " MB/s, wait avg " +
+			(long)( total_wait/served ) + "ms max " + max_wait + "ms, " +
+			queue.getTotalExpired() + " served past the latency window" );
+	}
+
+	private static class
+	listener
+		implements DiskAccessRequestListener
+	{
+		public void
+		requestComplete(
+			DiskAccessRequest	request )
+		{
+		}
+
+		public void
+		requestCancelled(
+			DiskAccessRequest	request )
+		{
+		}
+
+		public void
+		requestFailed(
+			DiskAccessRequest	request,
+			Throwable			cause )
+		{
+		}
+
+		public int
+		getPriority()
+		{
+			return( -1 );
+		}
+
+		public void
+		requestExecuted(
+			long	bytes )
+		{
+		}
+	}
+}
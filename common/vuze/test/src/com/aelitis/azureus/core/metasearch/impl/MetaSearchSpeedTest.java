@@ -0,0 +1,443 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.metasearch.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aelitis.azureus.core.metasearch.Engine;
+import com.aelitis.azureus.core.metasearch.Result;
+import com.aelitis.azureus.core.metasearch.ResultListener;
+import com.aelitis.azureus.core.metasearch.SearchParameter;
+import com.aelitis.azureus.core.metasearch.impl.web.FieldMapping;
+import com.aelitis.azureus.core.metasearch.impl.web.WebEngine;
+import com.aelitis.azureus.core.metasearch.impl.web.json.JSONEngine;
+import com.aelitis.azureus.core.metasearch.impl.web.regex.RegexEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs a search across regex and JSON engines whose templates point at a local HTTP stub,
+ * most of them answering within a couple of hundred ms and a few of them slow, and reports
+ * when the first results arrived, when every engine had been reported complete or failed and
+ * how many connections the stub saw for its requests. It runs with an engine timeout, with
+ * that and a number of results that is enough, and waiting for every engine as searches did
+ * before they had budgets.
+ * <p>
+ * Checks that nothing is reported for an engine after it has been reported complete or failed.
+ *
+ * usage: MetaSearchSpeedTest [engines] [slow engines] [slow engine latency ms]
+ */
+
+public class
+MetaSearchSpeedTest
+{
+	private static final int	RESULTS_PER_PAGE	= 50;
+
+	private static final String	ROW =
+		"<tr><td class=\"name\">(.*?)</td><td class=\"size\">(.*?)</td><td class=\"seeds\">(\\d+)</td><td class=\"hash\">([0-9a-f]{40})</td></tr>";
+
+	private static final Set<Integer>	ports		= new HashSet<Integer>();
+	private static final AtomicInteger	requests	= new AtomicInteger();
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int		num_engines		= args.length > 0?Integer.parseInt( args[0] ):12;
+		int		num_slow		= args.length > 1?Integer.parseInt( args[1] ):2;
+		int		slow_latency	= args.length > 2?Integer.parseInt( args[2] ):15*1000;
+
+		HttpServer	server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 64 );
+
+		server.createContext( "/regex", new stubHandler( false ));
+		server.createContext( "/json", new stubHandler( true ));
+
+		server.setExecutor( Executors.newCachedThreadPool());
+
+		server.start();
+
+		try{
+			int	port = server.getAddress().getPort();
+
+			Engine[]	engines = new Engine[num_engines];
+
+			for (int i=0;i<num_engines;i++){
+
+				int	latency = i < num_slow?slow_latency:( 20 + ( i*37 )%180 );
+
+				engines[i] = createEngine( i, port, latency );
+			}
+
+			run( "timeout ", engines, -1, 2*1000 );
+
+			run( "budgeted", engines, 2*RESULTS_PER_PAGE, 2*1000 );
+
+			run( "wait all", engines, -1, slow_latency + 10*1000 );
+
+		}finally{
+
+			server.stop( 0 );
+		}
+	}
+
+	private static Engine
+	createEngine(
+		int		id,
+		int		port,
+		int		latency )
+	{
+		String	url = "http://127.0.0.1:" + port;
+
+		if ( id % 2 == 0 ){
+
+			return(
+				new RegexEngine(
+					null, id, 0, 0, "regex " + id,
+					url + "/regex?q=%s&delay=" + latency,
+					ROW, "GMT", true, null,
+					new FieldMapping[]{
+						new FieldMapping( "1", Engine.FIELD_NAME ),
+						new FieldMapping( "2", Engine.FIELD_SIZE ),
+						new FieldMapping( "3", Engine.FIELD_SEEDS ),
+						new FieldMapping( "4", Engine.FIELD_HASH ),
+					},
+					false, WebEngine.AM_TRANSPARENT, null, new String[0] ));
+		}else{
+
+			return(
+				new JSONEngine(
+					null, id, 0, 0, "json " + id,
+					url + "/json?q=%s&delay=" + latency,
+					"GMT", true, null, "results",
+					new FieldMapping[]{
+						new FieldMapping( "name", Engine.FIELD_NAME ),
+						new FieldMapping( "size", Engine.FIELD_SIZE ),
+						new FieldMapping( "seeds", Engine.FIELD_SEEDS ),
+						new FieldMapping( "hash", Engine.FIELD_HASH ),
+					},
+					false, WebEngine.AM_TRANSPARENT, null, new String[0] ));
+		}
+	}
+
+	private static void
+	run(
+		String			name,
+		Engine[]		engines,
+		int				enough_results,
+		long			engine_timeout )
+
+		throws Exception
+	{
+		synchronized( ports ){
+
+			ports.clear();
+		}
+
+		requests.set( 0 );
+
+		recordingListener	listener = new recordingListener( engines.length );
+
+		SearchExecuter	executer = new SearchExecuter( new HashMap<String,String>(), listener, enough_results, engine_timeout );
+
+		SearchParameter[]	params = { new SearchParameter( "s", "ubuntu" )};
+
+		for ( Engine engine: engines ){
+
+			executer.search( engine, params, null, RESULTS_PER_PAGE );
+		}
+
+		if ( !listener.reported.await( 120, TimeUnit.SECONDS )){
+
+			throw( new IllegalStateException( name + ": not every engine was reported" ));
+		}
+
+		long	all_reported = System.currentTimeMillis() - listener.start;
+
+			// give cancelled and timed out engines the chance to report anything late
+
+		Thread.sleep( 500 );
+
+		if ( listener.late.get() > 0 ){
+
+			throw( new IllegalStateException( name + ": " + listener.late.get() + " reports for engines already complete" ));
+		}
+
+		int	connections;
+
+		synchronized( ports ){
+
+			connections = ports.size();
+		}
+
+		System.out.println(
+			name + ": first results after " + listener.first_results + "ms, " +
+			listener.results.get() + " results, all " + engines.length + " engines reported after " + all_reported + "ms (" +
+			listener.complete.get() + " complete, " + listener.failed.get() + " failed), " +
+			requests.get() + " requests over " + connections + " connections" );
+	}
+
+	private static class
+	recordingListener
+		implements ResultListener
+	{
+		private long				start	= System.currentTimeMillis();
+		private volatile long		first_results	= -1;
+
+		private Set<Engine>			finished	= new HashSet<Engine>();
+
+		private CountDownLatch		reported;
+		private AtomicInteger		results		= new AtomicInteger();
+		private AtomicInteger		complete	= new AtomicInteger();
+		private AtomicInteger		failed		= new AtomicInteger();
+		private AtomicInteger		late		= new AtomicInteger();
+
+		private
+		recordingListener(
+			int		engines )
+		{
+			reported = new CountDownLatch( engines );
+		}
+
+		private boolean
+		isFinished(
+			Engine		engine )
+		{
+			synchronized( finished ){
+
+				if ( finished.contains( engine )){
+
+					late.incrementAndGet();
+
+					return( true );
+				}
+
+				return( false );
+			}
+		}
+
+		private boolean
+		finish(
+			Engine		engine )
+		{
+			synchronized( finished ){
+
+				if ( !finished.add( engine )){
+
+					late.incrementAndGet();
+
+					return( false );
+				}
+			}
+
+			reported.countDown();
+
+			return( true );
+		}
+
+		public void
+		contentReceived(
+			Engine 		engine,
+			String 		content )
+		{
+			isFinished( engine );
+		}
+
+		public void
+		matchFound(
+			Engine 		engine,
+			String[] 	fields )
+		{
+			isFinished( engine );
+		}
+
+		public void
+		resultsReceived(
+			Engine 		engine,
+			Result[] 	r )
+		{
+			if ( !isFinished( engine )){
+
+				if ( first_results < 0 ){
+
+					first_results = System.currentTimeMillis() - start;
+				}
+
+				results.addAndGet( r.length );
+			}
+		}
+
+		public void
+		resultsComplete(
+			Engine 		engine )
+		{
+			if ( finish( engine )){
+
+				complete.incrementAndGet();
+			}
+		}
+
+		public void
+		engineFailed(
+			Engine 		engine,
+			Throwable 	cause )
+		{
+			if ( finish( engine )){
+
+				failed.incrementAndGet();
+			}
+		}
+
+		public void
+		engineRequiresLogin(
+			Engine 		engine,
+			Throwable 	cause )
+		{
+			engineFailed( engine, cause );
+		}
+	}
+
+	private static class
+	stubHandler
+		implements HttpHandler
+	{
+		private boolean		json;
+
+		private
+		stubHandler(
+			boolean		_json )
+		{
+			json	= _json;
+		}
+
+		public void
+		handle(
+			HttpExchange	exchange )
+
+			throws IOException
+		{
+			requests.incrementAndGet();
+
+			synchronized( ports ){
+
+				ports.add( exchange.getRemoteAddress().getPort());
+			}
+
+			String	query = exchange.getRequestURI().getQuery();
+
+			int	delay = 0;
+
+			for ( String param: query.split( "&" )){
+
+				if ( param.startsWith( "delay=" )){
+
+					delay = Integer.parseInt( param.substring( 6 ));
+				}
+			}
+
+			try{
+				Thread.sleep( delay );
+
+			}catch( InterruptedException e ){
+			}
+
+			byte[]	page = ( json?jsonPage( query.hashCode()):regexPage( query.hashCode())).getBytes( "UTF-8" );
+
+			exchange.getResponseHeaders().set( "Content-Type", json?"application/json; charset=UTF-8":"text/html; charset=UTF-8" );
+
+			try{
+				exchange.sendResponseHeaders( 200, page.length );
+
+				OutputStream	os = exchange.getResponseBody();
+
+				os.write( page );
+
+				os.close();
+
+			}catch( IOException e ){
+
+					// the search gave up on us
+			}
+		}
+
+		private static String
+		regexPage(
+			int		seed )
+		{
+			StringBuilder	sb = new StringBuilder( "<html><body><table>" );
+
+			for (int i=0;i<RESULTS_PER_PAGE;i++){
+
+				sb.append( "<tr><td class=\"name\">ubuntu " ).append( seed ).append( " " ).append( i ).append( "</td>" );
+				sb.append( "<td class=\"size\">" ).append( 100 + i ).append( " MB</td>" );
+				sb.append( "<td class=\"seeds\">" ).append( i*3 ).append( "</td>" );
+				sb.append( "<td class=\"hash\">" ).append( hash( seed, i )).append( "</td></tr>" );
+			}
+
+			return( sb.append( "</table></body></html>" ).toString());
+		}
+
+		private static String
+		jsonPage(
+			int		seed )
+		{
+			StringBuilder	sb = new StringBuilder( "{\"results\":[" );
+
+			for (int i=0;i<RESULTS_PER_PAGE;i++){
+
+				sb.append( i==0?"":"," );
+				sb.append( "{\"name\":\"ubuntu " ).append( seed ).append( " " ).append( i ).append( "\"," );
+				sb.append( "\"size\":\"" ).append( 100 + i ).append( " MB\"," );
+				sb.append( "\"seeds\":\"" ).append( i*3 ).append( "\"," );
+				sb.append( "\"hash\":\"" ).append( hash( seed, i )).append( "\"}" );
+			}
+
+			return( sb.append( "]}" ).toString());
+		}
+
+		private static String
+		hash(
+			int		seed,
+			int		i )
+		{
+			String	s = Integer.toHexString( seed ) + Integer.toHexString( i );
+
+			StringBuilder	sb = new StringBuilder( 40 );
+
+			while( sb.length() < 40 ){
+
+				sb.append( s );
+			}
+
+			sb.setLength( 40 );
+
+			return( sb.toString().replaceAll( "[^0-9a-f]", "0" ));
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.networkmanager.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gudy.azureus2.core3.util.DirectByteBuffer;
+import org.gudy.azureus2.core3.util.DirectByteBufferPool;
+
+import com.aelitis.azureus.core.networkmanager.EventWaiter;
+import com.aelitis.azureus.core.networkmanager.NetworkConnection;
+import com.aelitis.azureus.core.networkmanager.OutgoingMessageQueue;
+import com.aelitis.azureus.core.networkmanager.Transport;
+import com.aelitis.azureus.core.networkmanager.TransportEndpoint;
+import com.aelitis.azureus.core.networkmanager.TransportStartpoint;
+import com.aelitis.azureus.core.peermanager.messaging.Message;
+import com.aelitis.azureus.core.peermanager.messaging.bittorrent.BTHave;
+import com.aelitis.azureus.core.peermanager.messaging.bittorrent.BTMessageEncoder;
+import com.aelitis.azureus.core.peermanager.messaging.bittorrent.BTPiece;
+import com.aelitis.azureus.core.peermanager.messaging.bittorrent.BTRequest;
+
+/**
+ * Feeds one connection's OutgoingMessageQueueImpl with a stream of small messages - haves and
+ * requests with the odd 16K piece and cancellation - while another thread delivers it a packet
+ * at a time to a loopback transport as the upload scheduler does, and reports messages per
+ * second and transport writes per message, with one and with several threads adding.
+ *
+ * usage: OutgoingMessageQueueSpeedTest [seconds per run]
+ */
+
+public class
+OutgoingMessageQueueSpeedTest
+{
+	private static final int	MSS			= 1460;
+	private static final int	MAX_QUEUED	= 64*1024;
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	seconds = args.length > 0?Integer.parseInt( args[0] ):3;
+
+		run( 1, 1 );		// warmup
+
+		for (int i=0;i<2;i++){
+
+			run( 1, seconds );
+
+			run( 4, seconds );
+		}
+	}
+
+	private static void
+	run(
+		int				producers,
+		final int		seconds )
+
+		throws Exception
+	{
+		final OutgoingMessageQueueImpl	queue = new OutgoingMessageQueueImpl( new BTMessageEncoder());
+
+		loopbackTransport	transport = new loopbackTransport();
+
+		queue.setTransport( transport );
+
+		final AtomicLong	sent = new AtomicLong();
+
+		queue.registerQueueListener(
+			new OutgoingMessageQueue.MessageQueueListener()
+			{
+				public boolean messageAdded( Message message ){ return( true ); }
+				public void messageQueued( Message message ){}
+				public void messageRemoved( Message message ){}
+				public void messageSent( Message message ){ sent.incrementAndGet(); }
+				public void protocolBytesSent( int byte_count ){}
+				public void dataBytesSent( int byte_count ){}
+				public void flush(){}
+			});
+
+		final long				end		= System.currentTimeMillis() + seconds*1000;
+		final CountDownLatch	done	= new CountDownLatch( producers );
+
+		for (int i=0;i<producers;i++){
+
+			final int	seed = i;
+
+			new Thread()
+			{
+				public void
+				run()
+				{
+					Random	random = new Random( seed );
+
+					while( System.currentTimeMillis() < end ){
+
+						if ( queue.getTotalSize() > MAX_QUEUED ){
+
+							Thread.yield();
+
+							continue;
+						}
+
+						for (int j=0;j<100;j++){
+
+							int	type = random.nextInt( 100 );
+
+							if ( type < 60 ){
+
+								queue.addMessage( new BTHave( random.nextInt( 2000 ), (byte)1 ), false );
+
+							}else if ( type < 98 ){
+
+								queue.addMessage( new BTRequest( random.nextInt( 2000 ), random.nextInt( 16 )*16384, 16384, (byte)1 ), false );
+
+							}else if ( type < 99 ){
+
+								DirectByteBuffer	data = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_READ, 16384 );
+
+								queue.addMessage( new BTPiece( random.nextInt( 2000 ), 0, data, (byte)1 ), false );
+
+							}else{
+
+								BTRequest	cancel = new BTRequest( random.nextInt( 2000 ), random.nextInt( 16 )*16384, 16384, (byte)1 );
+
+								queue.removeMessage( cancel, false );
+
+								cancel.destroy();
+							}
+						}
+					}
+
+					done.countDown();
+				}
+			}.start();
+		}
+
+			// the upload scheduler writes at most a packet per connection per turn
+
+		long	start = System.currentTimeMillis();
+
+		while( done.getCount() > 0 || queue.getTotalSize() > 0 ){
+
+			int	total = queue.getTotalSize();
+
+			if ( total == 0 ){
+
+				Thread.yield();
+
+				continue;
+			}
+
+			queue.deliverToTransport( Math.min( total, MSS ), true );
+
+			queue.doListenerNotifications();
+		}
+
+		long	elapsed	= Math.max( 1, System.currentTimeMillis() - start );
+		long	count	= sent.get();
+
+		System.out.println(
+			"producers=" + producers + ": " + count + " messages in " + elapsed + "ms, " +
+			( count*1000/elapsed ) + " messages/s, " +
+			( transport.writes*1000/Math.max( 1, count ))/1000.0 + " writes/message, " +
+			( transport.bytes/Math.max( 1, transport.writes )) + " bytes/write" );
+
+		queue.destroy();
+	}
+
+	private static class
+	loopbackTransport
+		implements Transport
+	{
+		private long		writes;
+		private long		bytes;
+
+		public long
+		read(
+			ByteBuffer[]	buffers,
+			int				array_offset,
+			int				length )
+		{
+			return( 0 );
+		}
+
+			/**
+			 * Takes everything offered, as a socket with room in its send buffer does
+			 */
+
+		public long
+		write(
+			ByteBuffer[]	buffers,
+			int				array_offset,
+			int				length )
+		{
+			long	total = 0;
+
+			for (int i=array_offset;i<array_offset+length;i++){
+
+				ByteBuffer	buffer = buffers[i];
+
+				total += buffer.remaining();
+
+				buffer.position( buffer.limit());
+			}
+
+			writes++;
+			bytes	+= total;
+
+			return( total );
+		}
+
+		public boolean
+		isReadyForWrite(
+			EventWaiter		waiter )
+		{
+			return( true );
+		}
+
+		public long
+		isReadyForRead(
+			EventWaiter		waiter )
+		{
+			return( 0 );
+		}
+
+		public boolean
+		isTCP()
+		{
+			return( true );
+		}
+
+		public String
+		getDescription()
+		{
+			return( "loopback" );
+		}
+
+		public int
+		getMssSize()
+		{
+			return( MSS );
+		}
+
+		public void
+		setAlreadyRead(
+			ByteBuffer	bytes_already_read )
+		{
+		}
+
+		public TransportStartpoint
+		getTransportStartpoint()
+		{
+			return( null );
+		}
+
+		public TransportEndpoint
+		getTransportEndpoint()
+		{
+			return( null );
+		}
+
+		public boolean
+		isEncrypted()
+		{
+			return( false );
+		}
+
+		public String
+		getEncryption(
+			boolean	verbose )
+		{
+			return( "" );
+		}
+
+		public String
+		getProtocol()
+		{
+			return( "TCP" );
+		}
+
+		public boolean
+		isSOCKS()
+		{
+			return( false );
+		}
+
+		public void
+		setReadyForRead()
+		{
+		}
+
+		public void
+		connectedInbound()
+		{
+		}
+
+		public void
+		connectOutbound(
+			ByteBuffer			initial_data,
+			ConnectListener		listener,
+			int					priority )
+		{
+		}
+
+		public void
+		setTransportMode(
+			int		mode )
+		{
+		}
+
+		public int
+		getTransportMode()
+		{
+			return( TRANSPORT_MODE_NORMAL );
+		}
+
+		public void
+		close(
+			String	reason )
+		{
+		}
+
+		public void
+		bindConnection(
+			NetworkConnection	connection )
+		{
+		}
+
+		public void
+		unbindConnection(
+			NetworkConnection	connection )
+		{
+		}
+
+		public void
+		setTrace(
+			boolean	on )
+		{
+		}
+	}
+}
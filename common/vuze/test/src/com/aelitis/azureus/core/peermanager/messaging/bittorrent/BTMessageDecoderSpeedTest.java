@@ -0,0 +1,410 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.peermanager.messaging.bittorrent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.gudy.azureus2.core3.util.FileUtil;
+
+import com.aelitis.azureus.core.networkmanager.EventWaiter;
+import com.aelitis.azureus.core.networkmanager.NetworkConnection;
+import com.aelitis.azureus.core.networkmanager.Transport;
+import com.aelitis.azureus.core.networkmanager.TransportEndpoint;
+import com.aelitis.azureus.core.networkmanager.TransportStartpoint;
+import com.aelitis.azureus.core.peermanager.messaging.Message;
+import com.aelitis.azureus.core.peermanager.messaging.MessageManager;
+
+/**
+ * Replays the incoming side of a peer connection through a BTMessageDecoder, handing the
+ * data over in reads of random size as the network would, and reports messages per second
+ * and bytes allocated per message on the decoding thread. Decoded messages are destroyed
+ * straight away, which returns their buffers to the pool.
+ * <p>
+ * The stream is a recorded one if a file is given, raw bytes as received starting with the
+ * BT handshake, otherwise a generated session of a peer downloading from us: mostly haves
+ * and requests, with the odd piece, cancel, keep-alive and change of interest.
+ *
+ * usage: BTMessageDecoderSpeedTest [recorded stream]
+ */
+
+public class
+BTMessageDecoderSpeedTest
+{
+	private static final int	STREAM_SIZE		= 16*1024*1024;
+	private static final int	MAX_READ		= 64*1024;
+	private static final int	PASSES			= 10;
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		MessageManager.getSingleton().initialize();
+
+		byte[]	stream;
+
+		if ( args.length > 0 ){
+
+			stream = FileUtil.readFileAsByteArray( new File( args[0] ));
+
+		}else{
+
+			stream = generateSession( STREAM_SIZE );
+		}
+
+		run( "warmup  ", stream );
+
+		for (int i=0;i<3;i++){
+
+			run( "replay  ", stream );
+		}
+	}
+
+	private static void
+	run(
+		String		name,
+		byte[]		stream )
+
+		throws IOException
+	{
+		long	messages		= 0;
+		long	start_allocated	= allocatedBytes();
+		long	start			= System.currentTimeMillis();
+
+		for (int i=0;i<PASSES;i++){
+
+			replayTransport	transport = new replayTransport( stream );
+
+			BTMessageDecoder	decoder = new BTMessageDecoder();
+
+			while( transport.available() > 0 ){
+
+				decoder.performStreamDecode( transport, MAX_READ );
+
+				Message[]	decoded = decoder.removeDecodedMessages();
+
+				if ( decoded != null ){
+
+					for ( Message message: decoded ){
+
+						if ( message.getID().equals( BTMessage.ID_BT_HANDSHAKE )){
+
+							decoder.resumeDecoding();
+						}
+
+						message.destroy();
+					}
+
+					messages += decoded.length;
+				}
+			}
+
+			decoder.destroy();
+		}
+
+		long	elapsed		= Math.max( 1, System.currentTimeMillis() - start );
+		long	allocated	= allocatedBytes() - start_allocated;
+
+		System.out.println(
+			name + ": " + messages + " messages, " + ( PASSES*stream.length/1024/1024 ) + "MB in " + elapsed + "ms, " +
+			( messages*1000/elapsed ) + " messages/s, " +
+			( allocated/Math.max( 1, messages )) + " bytes allocated/message" );
+	}
+
+	private static byte[]
+	generateSession(
+		int		size )
+	{
+		Random	random = new Random( 1 );
+
+		ByteArrayOutputStream	os = new ByteArrayOutputStream( size + 32*1024 );
+
+		ByteBuffer	bb = ByteBuffer.allocate( 32*1024 );
+
+		bb.put((byte)19 ).put( "BitTorrent protocol".getBytes()).put( new byte[8] ).put( new byte[20] ).put( new byte[20] );
+
+		int		pieces		= 2000;
+		byte[]	bitfield	= new byte[( pieces + 7 )/8];
+
+		random.nextBytes( bitfield );
+
+		bb.putInt( 1 + bitfield.length ).put((byte)5 ).put( bitfield );
+
+		bb.putInt( 1 ).put((byte)2 );				// interested
+
+		while( os.size() < size ){
+
+			flush( os, bb );
+
+			int	type = random.nextInt( 100 );
+
+			if ( type < 55 ){
+
+				bb.putInt( 5 ).put((byte)4 ).putInt( random.nextInt( pieces ));
+
+			}else if ( type < 90 ){
+
+				bb.putInt( 13 ).put((byte)6 ).putInt( random.nextInt( pieces )).putInt( random.nextInt( 16 )*16384 ).putInt( 16384 );
+
+			}else if ( type < 95 ){
+
+				byte[]	block = new byte[16384];
+
+				random.nextBytes( block );
+
+				bb.putInt( 9 + block.length ).put((byte)7 ).putInt( random.nextInt( pieces )).putInt( random.nextInt( 16 )*16384 ).put( block );
+
+			}else if ( type < 98 ){
+
+				bb.putInt( 13 ).put((byte)8 ).putInt( random.nextInt( pieces )).putInt( random.nextInt( 16 )*16384 ).putInt( 16384 );
+
+			}else if ( type < 99 ){
+
+				bb.putInt( 0 );						// keep-alive
+
+			}else{
+
+				bb.putInt( 1 ).put((byte)( random.nextBoolean()?2:3 ));
+			}
+		}
+
+		flush( os, bb );
+
+		return( os.toByteArray());
+	}
+
+	private static void
+	flush(
+		ByteArrayOutputStream	os,
+		ByteBuffer				bb )
+	{
+		os.write( bb.array(), 0, bb.position());
+
+		bb.clear();
+	}
+
+	private static long
+	allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if ( bean instanceof com.sun.management.ThreadMXBean ){
+
+			return(((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes( Thread.currentThread().getId()));
+		}
+
+		return( 0 );
+	}
+
+	private static class
+	replayTransport
+		implements Transport
+	{
+		private final byte[]	stream;
+		private final Random	random = new Random( 2 );
+
+		private int				position;
+
+		private
+		replayTransport(
+			byte[]		_stream )
+		{
+			stream	= _stream;
+		}
+
+		private int
+		available()
+		{
+			return( stream.length - position );
+		}
+
+			/**
+			 * Hands over up to the next segment of the stream, a read of somewhere between a
+			 * small packet and a full socket buffer
+			 */
+
+		public long
+		read(
+			ByteBuffer[]	buffers,
+			int				array_offset,
+			int				length )
+		{
+			int	segment = Math.min( available(), 1 + random.nextInt( 32*1024 ));
+
+			int	total = 0;
+
+			for (int i=array_offset;i<array_offset+length && total < segment;i++){
+
+				ByteBuffer	buffer = buffers[i];
+
+				int	chunk = Math.min( buffer.remaining(), segment - total );
+
+				buffer.put( stream, position, chunk );
+
+				position	+= chunk;
+				total		+= chunk;
+			}
+
+			return( total );
+		}
+
+		public long
+		write(
+			ByteBuffer[]	buffers,
+			int				array_offset,
+			int				length )
+		{
+			return( 0 );
+		}
+
+		public boolean
+		isReadyForWrite(
+			EventWaiter		waiter )
+		{
+			return( false );
+		}
+
+		public long
+		isReadyForRead(
+			EventWaiter		waiter )
+		{
+			return( 0 );
+		}
+
+		public boolean
+		isTCP()
+		{
+			return( true );
+		}
+
+		public String
+		getDescription()
+		{
+			return( "replay" );
+		}
+
+		public int
+		getMssSize()
+		{
+			return( 1460 );
+		}
+
+		public void
+		setAlreadyRead(
+			ByteBuffer	bytes_already_read )
+		{
+		}
+
+		public TransportStartpoint
+		getTransportStartpoint()
+		{
+			return( null );
+		}
+
+		public TransportEndpoint
+		getTransportEndpoint()
+		{
+			return( null );
+		}
+
+		public boolean
+		isEncrypted()
+		{
+			return( false );
+		}
+
+		public String
+		getEncryption(
+			boolean	verbose )
+		{
+			return( "" );
+		}
+
+		public String
+		getProtocol()
+		{
+			return( "TCP" );
+		}
+
+		public boolean
+		isSOCKS()
+		{
+			return( false );
+		}
+
+		public void
+		setReadyForRead()
+		{
+		}
+
+		public void
+		connectedInbound()
+		{
+		}
+
+		public void
+		connectOutbound(
+			ByteBuffer			initial_data,
+			ConnectListener		listener,
+			int					priority )
+		{
+		}
+
+		public void
+		setTransportMode(
+			int		mode )
+		{
+		}
+
+		public int
+		getTransportMode()
+		{
+			return( TRANSPORT_MODE_NORMAL );
+		}
+
+		public void
+		close(
+			String	reason )
+		{
+		}
+
+		public void
+		bindConnection(
+			NetworkConnection	connection )
+		{
+		}
+
+		public void
+		unbindConnection(
+			NetworkConnection	connection )
+		{
+		}
+
+		public void
+		setTrace(
+			boolean	on )
+		{
+		}
+	}
+}
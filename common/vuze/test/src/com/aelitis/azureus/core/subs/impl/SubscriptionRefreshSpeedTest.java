@@ -0,0 +1,352 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.aelitis.azureus.core.subs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gudy.azureus2.core3.config.COConfigurationManager;
+import org.gudy.azureus2.core3.util.FileUtil;
+import org.gudy.azureus2.core3.util.SystemProperties;
+
+import com.aelitis.azureus.core.metasearch.Engine;
+import com.aelitis.azureus.core.metasearch.Result;
+import com.aelitis.azureus.core.metasearch.SearchParameter;
+import com.aelitis.azureus.core.metasearch.impl.web.FieldMapping;
+import com.aelitis.azureus.core.metasearch.impl.web.WebEngine;
+import com.aelitis.azureus.core.metasearch.impl.web.regex.RegexEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Refreshes a subscription that already holds a long history of results from a local feed
+ * server, as the scheduler does on each tick, and reports per tick the time taken fetching and
+ * parsing the feed, the time taken merging what came back into the history and the bytes of
+ * results written out. The feed shows its latest items and gains a few new ones every other
+ * tick, answering 'not modified' to a request carrying the ETag of what it would send.
+ * <p>
+ * Checks that reading the results back from disk gives as many as the subscription holds.
+ *
+ * usage: SubscriptionRefreshSpeedTest [historical results] [ticks] [new items per change]
+ */
+
+public class
+SubscriptionRefreshSpeedTest
+{
+	private static final int	FEED_ITEMS	= 50;
+	private static final int	SEED_ITEMS	= 1000;
+
+	private static final String	ROW =
+		"<tr><td class=\"name\">(.*?)</td><td class=\"size\">(.*?)</td><td class=\"seeds\">(\\d+)</td><td class=\"hash\">([0-9a-f]{40})</td></tr>";
+
+	private static final AtomicInteger	feed_size		= new AtomicInteger();
+	private static final AtomicInteger	not_modified	= new AtomicInteger();
+	private static final AtomicLong		bytes_served	= new AtomicLong();
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int		historical	= args.length > 0?Integer.parseInt( args[0] ):10000;
+		int		ticks		= args.length > 1?Integer.parseInt( args[1] ):40;
+		int		per_change	= args.length > 2?Integer.parseInt( args[2] ):5;
+
+		File	config_dir = new File( System.getProperty( "java.io.tmpdir" ), "subsrefresh" + new Random().nextInt( 1000000 ));
+
+		config_dir.mkdirs();
+
+		System.setProperty( SystemProperties.SYS_PROP_CONFIG_OVERRIDE, config_dir.getAbsolutePath());
+
+			// keep the whole history live, the worst case for a merge
+
+		COConfigurationManager.setParameter( "subscriptions.max.non.deleted.results", 0 );
+
+		HttpServer	server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 16 );
+
+		server.createContext( "/feed", new feedHandler( historical ));
+
+		server.start();
+
+		try{
+			SubscriptionManagerImpl	manager = (SubscriptionManagerImpl)SubscriptionManagerImpl.getSingleton( true );
+
+			SubscriptionImpl	subs = new SubscriptionImpl( manager, subscriptionMap());
+
+			SubscriptionHistoryImpl	history = (SubscriptionHistoryImpl)subs.getHistory();
+
+			Engine	engine =
+				new RegexEngine(
+					null, 1, 0, 0, "feed",
+					"http://127.0.0.1:" + server.getAddress().getPort() + "/feed?q=%s",
+					ROW, "GMT", true, null,
+					new FieldMapping[]{
+						new FieldMapping( "1", Engine.FIELD_NAME ),
+						new FieldMapping( "2", Engine.FIELD_SIZE ),
+						new FieldMapping( "3", Engine.FIELD_SEEDS ),
+						new FieldMapping( "4", Engine.FIELD_HASH ),
+					},
+					false, WebEngine.AM_TRANSPARENT, null, new String[0] );
+
+			long	start = System.currentTimeMillis();
+
+				// a search only takes so many results from a page, so build the history a page at a time
+
+			for (int i=0;i*SEED_ITEMS<historical;i++){
+
+				refresh( engine, history, "history" + i, true );
+			}
+
+			System.out.println(
+				"seeded " + history.getNumUnread() + " results in " + ( System.currentTimeMillis() - start ) + "ms, " +
+				manager.getResultsFile( subs ).length() + " bytes" );
+
+			File	results_file	= manager.getResultsFile( subs );
+			File	delta_file		= new File( results_file.getPath() + ".delta" );
+
+			long	fetch_time		= 0;
+			long	merge_time		= 0;
+			long	bytes_written	= 0;
+
+			bytes_served.set( 0 );
+			not_modified.set( 0 );
+
+			for (int tick=0;tick<ticks;tick++){
+
+				if ( tick % 2 == 0 ){
+
+					feed_size.addAndGet( per_change );
+				}
+
+				long	results_length		= results_file.length();
+				long	results_modified	= results_file.lastModified();
+				long	delta_length		= delta_file.length();
+
+				long[]	times = refresh( engine, history, "ubuntu", false );
+
+				fetch_time	+= times[0];
+				merge_time	+= times[1];
+
+				if ( results_file.length() != results_length || results_file.lastModified() != results_modified ){
+
+					bytes_written += results_file.length();
+				}
+
+				if ( delta_file.length() > delta_length ){
+
+					bytes_written += delta_file.length() - delta_length;
+				}
+			}
+
+			System.out.println(
+				ticks + " ticks: fetch " + ( fetch_time/ticks ) + "ms/tick, merge " + ( merge_time/ticks ) + "ms/tick, " +
+				( bytes_written/ticks ) + " bytes written/tick, " + ( bytes_served.get()/ticks ) + " bytes served/tick, " +
+				not_modified.get() + " not modified, " + ( history.getNumRead() + history.getNumUnread()) + " results" );
+
+			int	saved	= manager.loadResults( subs ).length;
+			int	held	= history.getResults( true ).length;
+
+			if ( saved != held ){
+
+				throw( new IllegalStateException( saved + " results read back, " + held + " held" ));
+			}
+
+		}finally{
+
+			server.stop( 0 );
+
+			FileUtil.recursiveDeleteNoCheck( config_dir );
+		}
+	}
+
+	private static long[]
+	refresh(
+		Engine						engine,
+		SubscriptionHistoryImpl		history,
+		String						term,
+		boolean						force_full )
+
+		throws Exception
+	{
+		Map	context = new HashMap();
+
+		context.put( Engine.SC_SOURCE, "subscription" );
+
+		if ( force_full ){
+
+			context.put( Engine.SC_FORCE_FULL, "true" );
+
+		}else{
+
+			history.getValidators( context );
+		}
+
+		long	start = System.currentTimeMillis();
+
+		Result[]	results = engine.search( new SearchParameter[]{ new SearchParameter( "s", term )}, context, -1, -1, null, null );
+
+		long	fetched = System.currentTimeMillis();
+
+		history.setValidators( context );
+
+		SubscriptionResultImpl[]	s_results = new SubscriptionResultImpl[results.length];
+
+		for (int i=0;i<results.length;i++){
+
+			s_results[i] = new SubscriptionResultImpl( history, results[i] );
+		}
+
+		history.reconcileResults( engine, s_results );
+
+		return( new long[]{ fetched - start, System.currentTimeMillis() - fetched });
+	}
+
+	private static Map
+	subscriptionMap()
+
+		throws IOException
+	{
+		Map	map = new HashMap();
+
+		byte[]	public_key = new byte[32];
+
+		new Random().nextBytes( public_key );
+
+		map.put( "name", "refresh test".getBytes( "UTF-8" ));
+		map.put( "public_key", public_key );
+		map.put( "version", new Long( 1 ));
+		map.put( "is_public", new Long( 0 ));
+		map.put( "hash", new byte[20] );
+		map.put( "sig", new byte[0] );
+		map.put( "sig_data_size", new Long( 0 ));
+		map.put( "rand", new Long( 0 ));
+		map.put( "add_type", new Long( 0 ));
+		map.put( "add_time", new Long( System.currentTimeMillis()));
+		map.put( "subscribed", new Long( 1 ));
+		map.put( "pop", new Long( -1 ));
+		map.put( "hupv", new Long( -1 ));
+		map.put( "sp", new Long( 0 ));
+		map.put( "spo", new Long( 0 ));
+
+			// as if it had been scanned before, a first scan goes looking for downloads to associate
+
+		Map	history = new HashMap();
+
+		history.put( "last_scan", new Long( 1 ));
+
+		map.put( "history", history );
+
+		return( map );
+	}
+
+	private static class
+	feedHandler
+		implements HttpHandler
+	{
+		private int		historical;
+
+		private
+		feedHandler(
+			int		_historical )
+		{
+			historical	= _historical;
+		}
+
+		public void
+		handle(
+			HttpExchange	exchange )
+
+			throws IOException
+		{
+			String	query = exchange.getRequestURI().getQuery().split( "&" )[0];
+
+			boolean	seed = query.startsWith( "q=history" );
+
+			int		page	= seed?Integer.parseInt( query.substring( 9 )):0;
+			int		size	= seed?Math.min( historical, ( page + 1 )*SEED_ITEMS ):feed_size.get();
+
+			String	etag = "\"" + ( seed?"h":"f" ) + size + "\"";
+
+			exchange.getResponseHeaders().set( "ETag", etag );
+
+			if ( etag.equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ))){
+
+				not_modified.incrementAndGet();
+
+				exchange.sendResponseHeaders( 304, -1 );
+
+				exchange.close();
+
+				return;
+			}
+
+			StringBuilder	sb = new StringBuilder( "<html><body><table>" );
+
+			for (int i=seed?page*SEED_ITEMS:Math.max( 0, size - FEED_ITEMS );i<size;i++){
+
+				String	name = ( seed?"history ":"ubuntu " ) + i;
+
+				sb.append( "<tr><td class=\"name\">" ).append( name ).append( "</td>" );
+				sb.append( "<td class=\"size\">" ).append( 100 + i%900 ).append( " MB</td>" );
+				sb.append( "<td class=\"seeds\">" ).append( i%97 ).append( "</td>" );
+				sb.append( "<td class=\"hash\">" ).append( hash( name )).append( "</td></tr>" );
+			}
+
+			byte[]	content = sb.append( "</table></body></html>" ).toString().getBytes( "UTF-8" );
+
+			bytes_served.addAndGet( content.length );
+
+			exchange.getResponseHeaders().set( "Content-Type", "text/html; charset=UTF-8" );
+
+			exchange.sendResponseHeaders( 200, content.length );
+
+			OutputStream	os = exchange.getResponseBody();
+
+			os.write( content );
+
+			os.close();
+		}
+
+		private static String
+		hash(
+			String		name )
+		{
+			String	s = Integer.toHexString( name.hashCode());
+
+			StringBuilder	sb = new StringBuilder( 40 );
+
+			while( sb.length() < 40 ){
+
+				sb.append( s );
+			}
+
+			sb.setLength( 40 );
+
+			return( sb.toString());
+		}
+	}
+}
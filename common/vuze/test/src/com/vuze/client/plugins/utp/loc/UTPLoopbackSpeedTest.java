@@ -0,0 +1,355 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package com.vuze.client.plugins.utp.loc;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import com.vuze.client.plugins.utp.UTPProviderCallback;
+
+/**
+ * Pushes data through a pair of local uTP providers wired back to back in memory, so the
+ * numbers are those of the uTP packet path alone: packets per second and bytes allocated per
+ * packet on the one thread that runs both ends, as the connection manager's dispatcher does.
+ *
+ * usage: UTPLoopbackSpeedTest [MB]
+ */
+
+public class
+UTPLoopbackSpeedTest
+{
+	private static final int	PACKET_BUFFER_SIZE	= 2048;
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		long	transfer = ( args.length > 0?Long.parseLong( args[0] ):256 )*1024*1024;
+
+		endpoint	a = new endpoint( 16881 );
+		endpoint	b = new endpoint( 16882 );
+
+		a.peer	= b;
+		b.peer	= a;
+
+		long[]	res = a.provider.connect( "127.0.0.1", b.address.getPort());
+
+		a.socket	= res[0];
+
+		ByteBuffer[]	buffers = { ByteBuffer.allocate( 64*1024 ) };
+
+			// the first quarter warms up the jit and opens the windows
+
+		run( "warmup ", a, b, buffers, transfer/4 );
+
+		for (int i=0;i<3;i++){
+
+			run( "transfer", a, b, buffers, transfer );
+		}
+	}
+
+	private static void
+	run(
+		String			name,
+		endpoint		a,
+		endpoint		b,
+		ByteBuffer[]	buffers,
+		long			transfer )
+
+		throws Exception
+	{
+		long	start_received	= b.received;
+		long	start_packets	= a.packets + b.packets;
+		long	start_allocated	= allocatedBytes();
+		long	start			= System.currentTimeMillis();
+		long	last_timeouts	= start;
+
+		while( b.received - start_received < transfer ){
+
+			if ( a.writable ){
+
+				buffers[0].clear();
+
+				a.writable = a.provider.write( a.socket, buffers, 0, 1 );
+			}
+
+			boolean	progress = a.pump() | b.pump();
+
+			long	now = System.currentTimeMillis();
+
+			if ( !progress || now - last_timeouts >= 50 ){
+
+				a.provider.checkTimeouts();
+				b.provider.checkTimeouts();
+
+				last_timeouts = now;
+			}
+		}
+
+		long	elapsed		= Math.max( 1, System.currentTimeMillis() - start );
+		long	packets		= a.packets + b.packets - start_packets;
+		long	allocated	= allocatedBytes() - start_allocated;
+		long	bytes		= b.received - start_received;
+
+		System.out.println(
+			name + ": " + ( bytes/1024/1024 ) + "MB in " + elapsed + "ms, " +
+			( bytes*1000/elapsed/1024/1024 ) + " MB/s, " +
+			( packets*1000/elapsed ) + " packets/s, " +
+			( allocated/Math.max( 1, packets )) + " bytes allocated/packet" );
+	}
+
+	private static long
+	allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if ( bean instanceof com.sun.management.ThreadMXBean ){
+
+			return(((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes( Thread.currentThread().getId()));
+		}
+
+		return( 0 );
+	}
+
+	private static class
+	packet
+	{
+		private final byte[]	data = new byte[PACKET_BUFFER_SIZE];
+
+		private int				length;
+	}
+
+	private static class
+	endpoint
+		implements UTPProviderCallback
+	{
+		private final UTPProviderLocal		provider	= new UTPProviderLocal();
+		private final InetSocketAddress		address;
+
+		private final ArrayDeque<packet>	inbound		= new ArrayDeque<packet>();
+		private final ArrayDeque<packet>	pool		= new ArrayDeque<packet>();
+
+		private final Random				random		= new Random( 1 );
+
+		private endpoint			peer;
+		private long				socket;
+		private boolean				writable;
+
+		private long				received;
+		private long				packets;
+
+		private
+		endpoint(
+			int		port )
+		{
+			address = new InetSocketAddress( "127.0.0.1", port );
+
+			provider.load( this );
+		}
+
+		private boolean
+		pump()
+
+			throws Exception
+		{
+			if ( inbound.isEmpty()){
+
+				return( false );
+			}
+
+			packet	p;
+
+			while(( p = inbound.poll()) != null ){
+
+				provider.receive( peer.address, p.data, p.length );
+
+				pool.add( p );
+			}
+
+			provider.incomingIdle();
+
+			return( true );
+		}
+
+		public boolean
+		send(
+			InetSocketAddress	to,
+			byte[]				buffer,
+			int					length )
+		{
+				// the network, its copy isn't counted against the provider
+
+			packet	p = peer.pool.poll();
+
+			if ( p == null ){
+
+				p = new packet();
+			}
+
+			System.arraycopy( buffer, 0, p.data, 0, length );
+
+			p.length = length;
+
+			peer.inbound.add( p );
+
+			packets++;
+
+			return( true );
+		}
+
+		public boolean
+		send(
+			String		address,
+			int			port,
+			byte[]		buffer,
+			int			length )
+		{
+			return( send( new InetSocketAddress( address, port ), buffer, length ));
+		}
+
+		public void
+		incomingConnection(
+			InetSocketAddress	address,
+			long				utp_socket,
+			long				con_id )
+		{
+			socket = utp_socket;
+		}
+
+		public void
+		incomingConnection(
+			String		address,
+			int			port,
+			long		utp_socket,
+			long		con_id )
+		{
+			socket = utp_socket;
+		}
+
+		public void
+		read(
+			long		utp_socket,
+			ByteBuffer	data )
+		{
+			received += data.remaining();
+
+			data.position( data.limit());
+		}
+
+		public void
+		read(
+			long		utp_socket,
+			byte[]		data )
+		{
+			received += data.length;
+		}
+
+		public void
+		write(
+			long		utp_socket,
+			byte[]		data,
+			int			offset,
+			int			length )
+		{
+		}
+
+		public int
+		getReadBufferSize(
+			long		utp_socket )
+		{
+			return( 0 );
+		}
+
+		public void
+		setState(
+			long		utp_socket,
+			int			state )
+		{
+			if ( state == STATE_CONNECT || state == STATE_WRITABLE ){
+
+				writable = true;
+			}
+		}
+
+		public void
+		error(
+			long		utp_socket,
+			int			error )
+		{
+			System.out.println( "error " + error );
+		}
+
+		public void
+		overhead(
+			long		utp_socket,
+			boolean		send,
+			int			size,
+			int			type )
+		{
+		}
+
+		public File
+		getPluginUserDir()
+		{
+			return( null );
+		}
+
+		public File
+		getPluginInstallDir()
+		{
+			return( null );
+		}
+
+		public void
+		log(
+			String		str,
+			Throwable	error )
+		{
+			if ( error != null ){
+
+				System.out.println( str );
+
+				error.printStackTrace();
+			}
+		}
+
+		public int
+		getRandom()
+		{
+			return( random.nextInt());
+		}
+
+		public long
+		getMilliseconds()
+		{
+			return( System.currentTimeMillis());
+		}
+
+		public long
+		getMicroseconds()
+		{
+			return( System.nanoTime()/1000 );
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.disk.impl.access.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.gudy.azureus2.core3.util.AESemaphore;
+import org.gudy.azureus2.core3.util.ConcurrentHasher;
+import org.gudy.azureus2.core3.util.ConcurrentHasherRequest;
+import org.gudy.azureus2.core3.util.ConcurrentHasherRequestListener;
+import org.gudy.azureus2.core3.util.DirectByteBuffer;
+import org.gudy.azureus2.core3.util.DirectByteBufferPool;
+
+/**
+ * Hashes a generated multi-file data set piece by piece, once with a positional read per
+ * piece and two pieces in flight as a complete recheck did, once through the sequential
+ * reader with a piece per hasher in flight.
+ *
+ * usage: SequentialRecheckSpeedTest [total MB] [piece KB]
+ */
+
+public class
+SequentialRecheckSpeedTest
+{
+	private static final int	FILES	= 12;
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		long	total_size	= ( args.length > 0?Long.parseLong( args[0] ):256 )*1024*1024;
+		int		piece_size	= ( args.length > 1?Integer.parseInt( args[1] ):256 )*1024;
+
+		File	dir = File.createTempFile( "recheck", "" );
+
+		dir.delete();
+		dir.mkdirs();
+
+		try{
+			List<File>	files = generate( dir, total_size );
+
+			List<Object[][]>	pieces = layout( files, piece_size );
+
+			System.out.println( "files=" + files.size() + ", pieces=" + pieces.size() + ", piece=" + piece_size/1024 + "KB" );
+
+				// the first pass warms the page cache for both
+
+			run( "warmup", pieces, piece_size, null, 2 );
+
+			for (int i=0;i<3;i++){
+
+				run( "per piece ", pieces, piece_size, null, 2 );
+
+				DMCheckerSequentialReader	reader = new DMCheckerSequentialReader();
+
+				run( "sequential", pieces, piece_size, reader, Runtime.getRuntime().availableProcessors() + 1 );
+
+				reader.close();
+			}
+		}finally{
+
+			File[]	files = dir.listFiles();
+
+			for ( File f: files ){
+
+				f.delete();
+			}
+
+			dir.delete();
+		}
+	}
+
+	private static List<File>
+	generate(
+		File		dir,
+		long		total_size )
+
+		throws Exception
+	{
+		Random	random = new Random( 1 );
+
+		byte[]	block = new byte[64*1024];
+
+		List<File>	files = new ArrayList<File>();
+
+		long	remaining = total_size;
+
+		for (int i=0;i<FILES && remaining > 0;i++){
+
+				// uneven sizes so pieces straddle files
+
+			long	size = i==FILES-1?remaining:Math.min( remaining, total_size/FILES + random.nextInt( 1024*1024 ) - 512*1024 );
+
+			File	file = new File( dir, "file" + i );
+
+			FileOutputStream	os = new FileOutputStream( file );
+
+			try{
+				long	written = 0;
+
+				while( written < size ){
+
+					random.nextBytes( block );
+
+					int	len = (int)Math.min( block.length, size - written );
+
+					os.write( block, 0, len );
+
+					written += len;
+				}
+			}finally{
+
+				os.close();
+			}
+
+			files.add( file );
+
+			remaining -= size;
+		}
+
+		return( files );
+	}
+
+		/**
+		 * @return per piece the {file, offset, length} entries it covers
+		 */
+
+	private static List<Object[][]>
+	layout(
+		List<File>	files,
+		int			piece_size )
+	{
+		List<Object[][]>	pieces	= new ArrayList<Object[][]>();
+		List<Object[]>		current	= new ArrayList<Object[]>();
+
+		int	current_size = 0;
+
+		for ( File file: files ){
+
+			long	offset	= 0;
+			long	length	= file.length();
+
+			while( offset < length ){
+
+				int	chunk = (int)Math.min( piece_size - current_size, length - offset );
+
+				current.add( new Object[]{ file, offset, chunk });
+
+				offset			+= chunk;
+				current_size	+= chunk;
+
+				if ( current_size == piece_size ){
+
+					pieces.add( current.toArray( new Object[current.size()][] ));
+
+					current.clear();
+
+					current_size = 0;
+				}
+			}
+		}
+
+		if ( current_size > 0 ){
+
+			pieces.add( current.toArray( new Object[current.size()][] ));
+		}
+
+		return( pieces );
+	}
+
+	private static void
+	run(
+		String						name,
+		List<Object[][]>			pieces,
+		int							piece_size,
+		DMCheckerSequentialReader	reader,
+		int							in_flight )
+
+		throws Exception
+	{
+		final AESemaphore	run_sem = new AESemaphore( "test", in_flight );
+
+		long	start	= System.currentTimeMillis();
+		long	bytes	= 0;
+
+		RandomAccessFile	raf			= null;
+		File				raf_file	= null;
+
+		for ( Object[][] piece: pieces ){
+
+			run_sem.reserve();
+
+			int	length = 0;
+
+			for ( Object[] entry: piece ){
+
+				length += (Integer)entry[2];
+			}
+
+			final DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_CHECK, length );
+
+			ByteBuffer	bb = buffer.getBuffer( DirectByteBuffer.SS_DR );
+
+			for ( Object[] entry: piece ){
+
+				File	file	= (File)entry[0];
+				long	offset	= (Long)entry[1];
+				int		len		= (Integer)entry[2];
+
+				if ( reader != null ){
+
+					reader.read( file, offset, len, bb );
+
+				}else{
+
+					if ( !file.equals( raf_file )){
+
+						if ( raf != null ){
+
+							raf.close();
+						}
+
+						raf			= new RandomAccessFile( file, "r" );
+						raf_file	= file;
+					}
+
+					bb.limit( bb.position() + len );
+
+					while( bb.hasRemaining()){
+
+						raf.getChannel().read( bb, offset + len - bb.remaining());
+					}
+				}
+			}
+
+			bb.flip();
+
+			bytes += length;
+
+			ConcurrentHasher.getSingleton().addRequest(
+				bb,
+				new ConcurrentHasherRequestListener()
+				{
+					public void
+					complete(
+						ConcurrentHasherRequest	request )
+					{
+						buffer.returnToPool();
+
+						run_sem.release();
+					}
+				},
+				true );
+		}
+
+		for (int i=0;i<in_flight;i++){
+
+			run_sem.reserve();
+		}
+
+		if ( raf != null ){
+
+			raf.close();
+		}
+
+		long	elapsed = Math.max( 1, System.currentTimeMillis() - start );
+
+		System.out.println( name + ": " + ( bytes/1024/1024 ) + "MB in " + elapsed + "ms, " + ( bytes*1000/elapsed/1024/1024 ) + " MB/s" );
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.peer.impl.control;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.gudy.azureus2.core3.disk.DiskManager;
+import org.gudy.azureus2.core3.disk.DiskManagerPiece;
+import org.gudy.azureus2.core3.disk.impl.DiskManagerHelper;
+import org.gudy.azureus2.core3.disk.impl.DiskManagerPieceImpl;
+import org.gudy.azureus2.core3.peer.PEPeerManagerAdapter;
+import org.gudy.azureus2.core3.torrent.TOTorrent;
+
+import com.aelitis.azureus.core.AzureusCore;
+import com.aelitis.azureus.core.nat.NATTraverser;
+import com.aelitis.azureus.core.peermanager.control.PeerControlSchedulerFactory;
+import com.aelitis.azureus.core.peermanager.nat.PeerNATTraverser;
+
+/**
+ * Loads 100, 500 and 1000 torrents into peer managers with no peers, as a client with a large
+ * library sits most of the time, and drives their schedule() ticks directly rather than from
+ * the scheduler. Reports the scheduler CPU time per torrent per tick. Three quarters of the
+ * torrents are seeding, the rest are half done with a few pieces partly written.
+ *
+ * usage: PeerControlScheduleSpeedTest [pieces per torrent] [ticks]
+ */
+
+public class
+PeerControlScheduleSpeedTest
+{
+	private static final int	PIECE_LENGTH	= 256*1024;
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int		num_pieces	= args.length > 0?Integer.parseInt( args[0] ):2000;
+		int		ticks		= args.length > 1?Integer.parseInt( args[1] ):600;
+
+		PeerNATTraverser.initialise( (AzureusCore)stub( AzureusCore.class, new coreHandler()));
+
+		run( 100, num_pieces, ticks );		// warmup
+
+		for ( int torrents: new int[]{ 100, 500, 1000 }){
+
+			run( torrents, num_pieces, ticks );
+		}
+
+		System.exit( 0 );
+	}
+
+	private static void
+	run(
+		int		torrents,
+		int		num_pieces,
+		int		ticks )
+	{
+		Random	random = new Random( torrents );
+
+		List<PEPeerControlImpl>	managers = new ArrayList<PEPeerControlImpl>( torrents );
+
+		for (int i=0;i<torrents;i++){
+
+			PEPeerControlImpl	manager =
+				new PEPeerControlImpl(
+					new byte[20],
+					(PEPeerManagerAdapter)stub( PEPeerManagerAdapter.class, new adapterHandler( "torrent " + i )),
+					createDiskManager( random, num_pieces, i%4 != 0 ),
+					0 );
+
+			manager.start();
+
+				// we drive the ticks ourselves
+
+			PeerControlSchedulerFactory.getSingleton( 0 ).unregister( manager );
+
+			managers.add( manager );
+		}
+
+		ThreadMXBean	bean = ManagementFactory.getThreadMXBean();
+
+		long	start = bean.getCurrentThreadCpuTime();
+
+		for (int tick=0;tick<ticks;tick++){
+
+			for ( PEPeerControlImpl manager: managers ){
+
+				manager.schedule();
+			}
+		}
+
+		long	elapsed = bean.getCurrentThreadCpuTime() - start;
+
+		for ( PEPeerControlImpl manager: managers ){
+
+			manager.stopAll();
+		}
+
+		System.out.println(
+			torrents + " torrents, " + num_pieces + " pieces, " + ticks + " ticks: " +
+			( elapsed/1000000 ) + "ms cpu, " + ( elapsed/torrents/ticks ) + "ns/torrent/tick" );
+	}
+
+	private static DiskManager
+	createDiskManager(
+		Random		random,
+		int			num_pieces,
+		boolean		seeding )
+	{
+		diskHandler	handler = new diskHandler( num_pieces );
+
+		DiskManagerHelper	disk_manager = (DiskManagerHelper)stub( DiskManagerHelper.class, handler );
+
+		for (int i=0;i<num_pieces;i++){
+
+			DiskManagerPieceImpl	piece = new DiskManagerPieceImpl( disk_manager, i, PIECE_LENGTH );
+
+			if ( seeding || random.nextBoolean()){
+
+				piece.setDoneSupport( true );
+
+			}else{
+
+				handler.remaining += PIECE_LENGTH;
+
+					// a few recovered partial pieces
+
+				if ( random.nextInt( 100 ) == 0 ){
+
+					piece.setWritten( 0 );
+				}
+			}
+
+			handler.pieces[i] = piece;
+		}
+
+		return( disk_manager );
+	}
+
+		/**
+		 * Answers anything not handled with an interface stub or the default for the type
+		 */
+
+	private static Object
+	stub(
+		Class				type,
+		InvocationHandler	handler )
+	{
+		return( Proxy.newProxyInstance( type.getClassLoader(), new Class[]{ type }, handler ));
+	}
+
+	private static Object
+	defaultResult(
+		Method		method )
+	{
+		Class	type = method.getReturnType();
+
+		if ( type == boolean.class ){
+
+			return( Boolean.FALSE );
+
+		}else if ( type == int.class ){
+
+			return( 0 );
+
+		}else if ( type == long.class ){
+
+			return( 0L );
+
+		}else if ( type == float.class ){
+
+			return( 0F );
+
+		}else if ( type == String.class ){
+
+			return( "" );
+
+		}else if ( type.isArray()){
+
+			return( java.lang.reflect.Array.newInstance( type.getComponentType(), 0 ));
+
+		}else if ( type.isInterface() && type.getName().startsWith( "org.gudy" )){
+
+			return( stub( type, new defaultHandler()));
+		}
+
+		return( null );
+	}
+
+	private static class
+	defaultHandler
+		implements InvocationHandler
+	{
+		public Object
+		invoke(
+			Object		proxy,
+			Method		method,
+			Object[]	args )
+		{
+			String	name = method.getName();
+
+			if ( name.equals( "hashCode" )){
+
+				return( System.identityHashCode( proxy ));
+
+			}else if ( name.equals( "equals" )){
+
+				return( proxy == args[0] );
+			}
+
+			return( defaultResult( method ));
+		}
+	}
+
+	private static class
+	coreHandler
+		extends defaultHandler
+	{
+		public Object
+		invoke(
+			Object		proxy,
+			Method		method,
+			Object[]	args )
+		{
+			if ( method.getName().equals( "getNATTraverser" )){
+
+				return( new NATTraverser((AzureusCore)proxy ));
+			}
+
+			return( super.invoke( proxy, method, args ));
+		}
+	}
+
+	private static class
+	adapterHandler
+		extends defaultHandler
+	{
+		private String		name;
+
+		private
+		adapterHandler(
+			String		_name )
+		{
+			name	= _name;
+		}
+
+		public Object
+		invoke(
+			Object		proxy,
+			Method		method,
+			Object[]	args )
+		{
+			String	method_name = method.getName();
+
+			if ( method_name.equals( "getDisplayName" )){
+
+				return( name );
+
+			}else if ( method_name.equals( "getPeerManagerRegistration" )){
+
+				return( null );
+
+			}else if ( method_name.equals( "getMaxUploads" ) || method_name.equals( "getMaxConnections" )){
+
+				return( 4 );
+			}
+
+			return( super.invoke( proxy, method, args ));
+		}
+	}
+
+	private static class
+	diskHandler
+		extends defaultHandler
+	{
+		private DiskManagerPiece[]	pieces;
+		private long				remaining;
+
+		private TOTorrent			torrent = (TOTorrent)stub( TOTorrent.class, new torrentHandler());
+
+		private
+		diskHandler(
+			int		num_pieces )
+		{
+			pieces	= new DiskManagerPiece[num_pieces];
+		}
+
+		public Object
+		invoke(
+			Object		proxy,
+			Method		method,
+			Object[]	args )
+		{
+			String	name = method.getName();
+
+			if ( name.equals( "getNbPieces" )){
+
+				return( pieces.length );
+
+			}else if ( name.equals( "getPieces" )){
+
+				return( pieces );
+
+			}else if ( name.equals( "getPiece" )){
+
+				return( pieces[(Integer)args[0]] );
+
+			}else if ( name.equals( "getPieceLength" )){
+
+				return( PIECE_LENGTH );
+
+			}else if ( name.equals( "getRemaining" ) || name.equals( "getRemainingExcludingDND" )){
+
+				return( remaining );
+
+			}else if ( name.equals( "getTotalLength" ) || name.equals( "getSizeExcludingDND" )){
+
+				return((long)pieces.length*PIECE_LENGTH );
+
+			}else if ( name.equals( "getTorrent" )){
+
+				return( torrent );
+
+			}else if ( name.equals( "getState" )){
+
+				return( DiskManager.READY );
+
+			}else if ( name.equals( "setPieceDone" )){
+
+				((DiskManagerPieceImpl)args[0]).setDoneSupport((Boolean)args[1] );
+
+				return( null );
+			}
+
+			return( super.invoke( proxy, method, args ));
+		}
+	}
+
+	private static class
+	torrentHandler
+		extends defaultHandler
+	{
+		private byte[]	hash = new byte[20];
+
+		private
+		torrentHandler()
+		{
+			new Random().nextBytes( hash );
+		}
+
+		public Object
+		invoke(
+			Object		proxy,
+			Method		method,
+			Object[]	args )
+		{
+			if ( method.getName().equals( "getHash" )){
+
+				return( hash );
+			}
+
+			return( super.invoke( proxy, method, args ));
+		}
+	}
+}
@@ -0,0 +1,545 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.tracker.client.impl.bt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.gudy.azureus2.core3.config.COConfigurationManager;
+import org.gudy.azureus2.core3.torrent.TOTorrent;
+import org.gudy.azureus2.core3.tracker.client.TRTrackerScraperClientResolver;
+import org.gudy.azureus2.core3.tracker.client.TRTrackerScraperResponse;
+import org.gudy.azureus2.core3.tracker.client.impl.TRTrackerScraperImpl;
+import org.gudy.azureus2.core3.util.BEncoder;
+import org.gudy.azureus2.core3.util.ByteEncodedKeyHashMap;
+import org.gudy.azureus2.core3.util.Constants;
+import org.gudy.azureus2.core3.util.HashWrapper;
+import org.gudy.azureus2.plugins.clientid.ClientIDGenerator;
+import org.gudy.azureus2.pluginsimpl.local.clientid.ClientIDManagerImpl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Adds a library's worth of torrents to the scraper against local HTTP trackers and a local
+ * UDP tracker, as happens at startup, and lets the tracker checker scrape them all. Reports per
+ * tracker the time from its first request to its last, the number of requests, hashes per request,
+ * UDP connects and the most requests seen in any one second.
+ * <p>
+ * Besides a plain HTTP tracker there is one that answers at most 40 hashes per request and
+ * one that doesn't know one hash in eight. Checks that every hash a tracker knows got the seed
+ * count it gave for it, and that the others were reported as unknown.
+ *
+ * usage: TrackerScrapeSpeedTest [hashes per tracker]
+ */
+
+public class
+TrackerScrapeSpeedTest
+{
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int		num_hashes	= args.length > 0?Integer.parseInt( args[0] ):500;
+
+			// for the udp: url handler
+
+		COConfigurationManager.preInitialise();
+
+			// keep the http tracker on http
+
+		COConfigurationManager.setParameter( "Tracker UDP Probe Enable", false );
+
+		ClientIDManagerImpl.getSingleton().setGenerator((ClientIDGenerator)stub( ClientIDGenerator.class ), false );
+
+		TRTrackerScraperImpl	scraper = TRTrackerScraperImpl.create();
+
+		scraper.setClientResolver((TRTrackerScraperClientResolver)stub( TRTrackerScraperClientResolver.class ));
+
+		TRTrackerBTScraperImpl	bt_scraper = TRTrackerBTScraperImpl.create( scraper );
+
+		HttpServer	server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 16 );
+
+		tracker	http_tracker	= new tracker( "http", 0, false );
+		tracker	capped_tracker	= new tracker( "http capped at 40", 40, false );
+		tracker	missing_tracker	= new tracker( "http missing 1 in 8", 0, true );
+
+		server.createContext( "/scrape", new httpHandler( http_tracker ));
+		server.createContext( "/capped/scrape", new httpHandler( capped_tracker ));
+		server.createContext( "/missing/scrape", new httpHandler( missing_tracker ));
+
+		server.start();
+
+		udpTracker	udp_tracker = new udpTracker();
+
+		udp_tracker.start();
+
+		try{
+			String	http_base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+			tracker[]	trackers	= { http_tracker, capped_tracker, missing_tracker, udp_tracker };
+
+			URL[]		urls		= {
+				new URL( http_base + "/announce" ),
+				new URL( http_base + "/capped/announce" ),
+				new URL( http_base + "/missing/announce" ),
+				new URL( "udp://127.0.0.1:" + udp_tracker.socket.getLocalPort() + "/announce" ) };
+
+			List<TOTorrent>[]	torrents = new List[trackers.length];
+
+			for (int i=0;i<trackers.length;i++){
+
+				torrents[i] = new ArrayList<TOTorrent>();
+			}
+
+			Random	random = new Random( num_hashes );
+
+			long	start = System.currentTimeMillis();
+
+			for (int i=0;i<num_hashes;i++){
+
+				for (int j=0;j<trackers.length;j++){
+
+					byte[]	hash = new byte[20];
+
+					random.nextBytes( hash );
+
+					TOTorrent	torrent = (TOTorrent)stub( TOTorrent.class, new HashWrapper( hash ));
+
+					bt_scraper.scrape( torrent, urls[j], false );
+
+					torrents[j].add( torrent );
+				}
+			}
+
+			for (int i=0;i<trackers.length;i++){
+
+				report( bt_scraper, trackers[i], urls[i], torrents[i], start );
+			}
+
+		}finally{
+
+			server.stop( 0 );
+
+			udp_tracker.socket.close();
+		}
+
+		System.exit( 0 );
+	}
+
+	private static void
+	report(
+		TRTrackerBTScraperImpl	bt_scraper,
+		tracker					tracker,
+		URL						url,
+		List<TOTorrent>			torrents,
+		long					start )
+
+		throws Exception
+	{
+		boolean	done = false;
+
+		while( System.currentTimeMillis() - start < 10*60*1000 ){
+
+			int	settled = 0;
+
+			for ( TOTorrent torrent: torrents ){
+
+				TRTrackerScraperResponse	response = bt_scraper.peekScrape( torrent, url );
+
+				byte[]	hash = torrent.getHashWrapper().getBytes();
+
+				if ( response.getStatus() == TRTrackerScraperResponse.ST_ONLINE ){
+
+					if ( !tracker.knows( hash )){
+
+						throw( new IllegalStateException( tracker.name + ": unknown hash online " + torrent.getHashWrapper()));
+					}
+
+					if ( response.getSeeds() != seeds( hash )){
+
+						throw( new IllegalStateException( tracker.name + ": wrong seeds for " + torrent.getHashWrapper()));
+					}
+
+					settled++;
+
+				}else if ( response.getStatus() == TRTrackerScraperResponse.ST_ERROR && !tracker.knows( hash )){
+
+					settled++;
+				}
+			}
+
+			if ( settled == torrents.size()){
+
+				done = true;
+
+				break;
+			}
+
+			Thread.sleep( 100 );
+		}
+
+		if ( !done ){
+
+			throw( new IllegalStateException( tracker.name + ": not every hash was scraped" ));
+		}
+
+		synchronized( tracker ){
+
+			int	peak = 0;
+
+			for ( int count: tracker.per_second.values()){
+
+				peak = Math.max( peak, count );
+			}
+
+			System.out.println(
+				tracker.name + ": " + torrents.size() + " hashes scraped " + ( tracker.last - tracker.first ) + "ms from first to last request, " +
+				tracker.requests + " requests, " + ( tracker.hashes/Math.max( 1, tracker.requests )) + " hashes/request, " +
+				tracker.connects + " connects, peak " + peak + " requests/sec" );
+		}
+	}
+
+	private static int
+	seeds(
+		byte[]		hash )
+	{
+		return( hash[0]&0xff );
+	}
+
+	private static Object
+	stub(
+		Class			type )
+	{
+		return( stub( type, null ));
+	}
+
+		/**
+		 * Answers anything not handled with the default for the type, a torrent stub answers
+		 * its hash
+		 */
+
+	private static Object
+	stub(
+		Class					type,
+		final HashWrapper		hash )
+	{
+		return(
+			Proxy.newProxyInstance(
+				type.getClassLoader(),
+				new Class[]{ type },
+				new InvocationHandler()
+				{
+					public Object
+					invoke(
+						Object		proxy,
+						Method		method,
+						Object[]	args )
+					{
+						String	name 	= method.getName();
+						Class	type	= method.getReturnType();
+
+						if ( name.equals( "getHashWrapper" )){
+
+							return( hash );
+
+						}else if ( name.equals( "getStatus" )){
+
+							return( TRTrackerScraperClientResolver.ST_RUNNING );
+
+						}else if ( name.equals( "isNetworkEnabled" )){
+
+							return( true );
+
+						}else if ( name.equals( "hashCode" )){
+
+							return( System.identityHashCode( proxy ));
+
+						}else if ( name.equals( "equals" )){
+
+							return( proxy == args[0] );
+
+						}else if ( type == boolean.class ){
+
+							return( false );
+
+						}else if ( type == int.class ){
+
+							return( 0 );
+
+						}else if ( type == long.class ){
+
+							return( 0L );
+						}
+
+						return( null );
+					}
+				}));
+	}
+
+	private static class
+	tracker
+	{
+		private String					name;
+		private int						max_reply;
+		private boolean					misses;
+
+		protected long					first;
+		protected long					last;
+		protected int					requests;
+		protected int					hashes;
+		protected int					connects;
+
+		private Map<Long,Integer>		per_second = new HashMap<Long,Integer>();
+
+		private
+		tracker(
+			String		_name,
+			int			_max_reply,
+			boolean		_misses )
+		{
+			name		= _name;
+			max_reply	= _max_reply;
+			misses		= _misses;
+		}
+
+		protected boolean
+		knows(
+			byte[]		hash )
+		{
+			return( !misses || ( hash[3]&7 ) != 0 );
+		}
+
+		protected synchronized void
+		request(
+			int		num_hashes )
+		{
+			long	now = System.currentTimeMillis();
+
+			if ( requests++ == 0 ){
+
+				first = now;
+			}
+
+			last	= now;
+			hashes += num_hashes;
+
+			Long	second = now/1000;
+
+			Integer	count = per_second.get( second );
+
+			per_second.put( second, count==null?1:count+1 );
+		}
+	}
+
+	private static class
+	httpHandler
+		implements HttpHandler
+	{
+		private tracker		tracker;
+
+		private
+		httpHandler(
+			tracker		_tracker )
+		{
+			tracker	= _tracker;
+		}
+
+		public void
+		handle(
+			HttpExchange	exchange )
+
+			throws IOException
+		{
+			Map	files = new ByteEncodedKeyHashMap();
+
+			for ( String param: exchange.getRequestURI().getRawQuery().split( "&" )){
+
+				if ( param.startsWith( "info_hash=" )){
+
+					byte[]	hash = URLDecoder.decode( param.substring( 10 ), Constants.BYTE_ENCODING ).getBytes( Constants.BYTE_ENCODING );
+
+					if ( !tracker.knows( hash )){
+
+						continue;
+					}
+
+					if ( tracker.max_reply > 0 && files.size() == tracker.max_reply ){
+
+						break;
+					}
+
+					Map	file = new HashMap();
+
+					file.put( "complete", new Long( seeds( hash )));
+					file.put( "incomplete", new Long( hash[1]&0xff ));
+					file.put( "downloaded", new Long( hash[2]&0xff ));
+
+					files.put( new String( hash, Constants.BYTE_ENCODING ), file );
+				}
+			}
+
+			tracker.request( files.size());
+
+			Map	map = new HashMap();
+
+			map.put( "files", files );
+
+			byte[]	content = BEncoder.encode( map );
+
+			exchange.sendResponseHeaders( 200, content.length );
+
+			OutputStream	os = exchange.getResponseBody();
+
+			os.write( content );
+
+			os.close();
+		}
+	}
+
+		/**
+		 * Answers BEP 15 connect and scrape requests, refusing scrapes with a connection id
+		 * it didn't hand out
+		 */
+
+	private static class
+	udpTracker
+		extends tracker
+		implements Runnable
+	{
+		private DatagramSocket	socket;
+
+		private Set<Long>		connection_ids	= new HashSet<Long>();
+		private Random			random			= new Random();
+
+		private
+		udpTracker()
+
+			throws IOException
+		{
+			super( "udp", 0, false );
+
+			socket = new DatagramSocket( 0, InetAddress.getByName( "127.0.0.1" ));
+		}
+
+		private void
+		start()
+		{
+			Thread	thread = new Thread( this, "TrackerScrapeSpeedTest:udp" );
+
+			thread.setDaemon( true );
+
+			thread.start();
+		}
+
+		public void
+		run()
+		{
+			byte[]	buffer = new byte[2048];
+
+			try{
+				while( true ){
+
+					DatagramPacket	packet = new DatagramPacket( buffer, buffer.length );
+
+					socket.receive( packet );
+
+					ByteBuffer	request = ByteBuffer.wrap( buffer, 0, packet.getLength());
+
+					long	connection_id	= request.getLong();
+					int		action			= request.getInt();
+					int		transaction_id	= request.getInt();
+
+					ByteBuffer	reply = ByteBuffer.allocate( 2048 );
+
+					if ( action == 0 ){
+
+						long	id = random.nextLong();
+
+						synchronized( this ){
+
+							connects++;
+
+							connection_ids.add( id );
+						}
+
+						reply.putInt( 0 ).putInt( transaction_id ).putLong( id );
+
+					}else if ( action == 2 ){
+
+						boolean	known;
+
+						synchronized( this ){
+
+							known = connection_ids.contains( connection_id );
+						}
+
+						if ( known ){
+
+							int	num_hashes = request.remaining()/20;
+
+							request( num_hashes );
+
+							reply.putInt( 2 ).putInt( transaction_id );
+
+							for (int i=0;i<num_hashes;i++){
+
+								byte[]	hash = new byte[20];
+
+								request.get( hash );
+
+								reply.putInt( seeds( hash )).putInt( hash[2]&0xff ).putInt( hash[1]&0xff );
+							}
+						}else{
+
+							reply.putInt( 3 ).putInt( transaction_id ).put( "unknown connection id".getBytes());
+						}
+					}else{
+
+						continue;
+					}
+
+					socket.send( new DatagramPacket( reply.array(), reply.position(), packet.getSocketAddress()));
+				}
+			}catch( IOException e ){
+
+					// closed
+			}
+		}
+	}
+}
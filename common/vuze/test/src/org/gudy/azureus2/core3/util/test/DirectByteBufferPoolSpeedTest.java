@@ -0,0 +1,122 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.util.test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gudy.azureus2.core3.disk.DiskManager;
+import org.gudy.azureus2.core3.util.DirectByteBuffer;
+import org.gudy.azureus2.core3.util.DirectByteBufferPool;
+
+/**
+ * Get/return throughput of the direct buffer pool from 1 to 16 threads at once. Each thread
+ * keeps a few buffers outstanding, freeing the oldest for each new one, with the mix of sizes
+ * the network and disk code asks for: message headers and small messages in slices, and
+ * 4K disk reads and block sized pieces from the pools.
+ *
+ * usage: DirectByteBufferPoolSpeedTest [seconds per run]
+ */
+
+public class
+DirectByteBufferPoolSpeedTest
+{
+	private static final int	OUTSTANDING	= 16;
+
+	private static final int[]	SIZES = { 4, 13, 17, 68, 1024, 4096, DiskManager.BLOCK_SIZE + 13 };
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	seconds = args.length > 0?Integer.parseInt( args[0] ):3;
+
+		run( 1, 1 );		// warmup
+
+		for ( int threads: new int[]{ 1, 2, 4, 8, 16 }){
+
+			run( threads, seconds );
+		}
+	}
+
+	private static void
+	run(
+		int				threads,
+		final int		seconds )
+
+		throws Exception
+	{
+		final AtomicLong		ops		= new AtomicLong();
+		final CountDownLatch	done	= new CountDownLatch( threads );
+
+		for (int i=0;i<threads;i++){
+
+			final int	seed = i;
+
+			new Thread()
+			{
+				public void
+				run()
+				{
+					Random	random = new Random( seed );
+
+					DirectByteBuffer[]	buffers = new DirectByteBuffer[OUTSTANDING];
+
+					long	end 	= System.currentTimeMillis() + seconds*1000;
+					long	count	= 0;
+
+					while( System.currentTimeMillis() < end ){
+
+						for (int j=0;j<1000;j++){
+
+							int	slot = j%OUTSTANDING;
+
+							if ( buffers[slot] != null ){
+
+								buffers[slot].returnToPool();
+							}
+
+							buffers[slot] = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, SIZES[random.nextInt( SIZES.length )]);
+						}
+
+						count += 1000;
+					}
+
+					for ( DirectByteBuffer buffer: buffers ){
+
+						if ( buffer != null ){
+
+							buffer.returnToPool();
+						}
+					}
+
+					ops.addAndGet( count );
+
+					done.countDown();
+				}
+			}.start();
+		}
+
+		done.await();
+
+		System.out.println( "threads=" + threads + ": " + ( ops.get()/seconds ) + " get+return/s" );
+	}
+}
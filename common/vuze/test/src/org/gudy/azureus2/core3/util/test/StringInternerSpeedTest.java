@@ -0,0 +1,291 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.util.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gudy.azureus2.core3.torrent.TOTorrent;
+import org.gudy.azureus2.core3.torrent.TOTorrentFactory;
+import org.gudy.azureus2.core3.torrent.TOTorrentFile;
+import org.gudy.azureus2.core3.util.BEncoder;
+import org.gudy.azureus2.core3.util.FileUtil;
+import org.gudy.azureus2.core3.util.StringInterner;
+
+/**
+ * Loads a corpus of torrents as a client with that many in its library does at startup,
+ * keeping each torrent and the relative path of each of its files as the disk manager does,
+ * and reports the time taken and the heap retained with interning on and off. Loading is
+ * done by 1 and by 4 threads at once.
+ * <p>
+ * The corpus is the .torrent files in a directory if one is given, otherwise torrents generated
+ * with the sort of layout and trackers a music and video library has: files a few directories
+ * down, the same directory names in many torrents and a few dozen trackers between them all.
+ *
+ * usage: StringInternerSpeedTest [torrent directory | number of torrents]
+ */
+
+public class
+StringInternerSpeedTest
+{
+	private static final String[]	DIRS = {
+		"CD1", "CD2", "Disc 1", "Disc 2", "Sample", "Samples", "Subs", "Extras", "Artwork", "Scans",
+		"Season 01", "Season 02", "Season 03", "Featurettes", "Covers", "Bonus", "Video_TS", "Audio_TS",
+	};
+
+	private static final String[]	EXTENSIONS = { ".mp3", ".flac", ".mkv", ".avi", ".srt", ".jpg", ".nfo", ".txt" };
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		List<byte[]>	corpus;
+
+		if ( args.length > 0 && new File( args[0] ).isDirectory()){
+
+			corpus = readCorpus( new File( args[0] ));
+
+		}else{
+
+			corpus = generateCorpus( args.length > 0?Integer.parseInt( args[0] ):3000 );
+		}
+
+		load( corpus, 1 );		// warmup
+
+		for ( boolean disable: new boolean[]{ true, false }){
+
+			StringInterner.DISABLE_INTERNING = disable;
+
+			for ( int threads: new int[]{ 1, 4 }){
+
+				long	before = usedHeap();
+
+				long	start = System.currentTimeMillis();
+
+				List<Object>	loaded = load( corpus, threads );
+
+				long	elapsed = System.currentTimeMillis() - start;
+
+				long	retained = usedHeap() - before;
+
+				System.out.println(
+					"interning " + ( disable?"off":"on " ) + ", threads=" + threads + ": " +
+					corpus.size() + " torrents in " + elapsed + "ms, " +
+					( retained/1024 ) + "KB retained, " + ( retained/corpus.size()) + " bytes/torrent (" + loaded.size() + ")" );
+
+				loaded = null;
+			}
+		}
+	}
+
+	private static List<Object>
+	load(
+		final List<byte[]>	corpus,
+		int					threads )
+
+		throws Exception
+	{
+		final List<Object>		loaded	= new ArrayList<Object>( corpus.size()*2 );
+		final AtomicInteger		next	= new AtomicInteger();
+		final Throwable[]		error	= { null };
+
+		Thread[]	runners = new Thread[threads];
+
+		for (int i=0;i<threads;i++){
+
+			runners[i] =
+				new Thread()
+				{
+					public void
+					run()
+					{
+						List<Object>	mine = new ArrayList<Object>();
+
+						try{
+							int	index;
+
+							while(( index = next.getAndIncrement()) < corpus.size()){
+
+								TOTorrent	torrent = TOTorrentFactory.deserialiseFromBEncodedByteArray( corpus.get( index ));
+
+								mine.add( torrent );
+
+								for ( TOTorrentFile file: torrent.getFiles()){
+
+									File	relative = new File( file.getRelativePath());
+
+									mine.add( StringInterner.DISABLE_INTERNING?relative:FileUtil.internFileComponents( relative ));
+								}
+							}
+						}catch( Throwable e ){
+
+							error[0] = e;
+						}
+
+						synchronized( loaded ){
+
+							loaded.addAll( mine );
+						}
+					}
+				};
+
+			runners[i].start();
+		}
+
+		for ( Thread runner: runners ){
+
+			runner.join();
+		}
+
+		if ( error[0] != null ){
+
+			throw( new Exception( "Load failed", error[0] ));
+		}
+
+		return( loaded );
+	}
+
+	private static long
+	usedHeap()
+
+		throws InterruptedException
+	{
+		for (int i=0;i<4;i++){
+
+			System.gc();
+
+			Thread.sleep( 100 );
+		}
+
+		return( ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+	}
+
+	private static List<byte[]>
+	readCorpus(
+		File		dir )
+
+		throws Exception
+	{
+		List<byte[]>	corpus = new ArrayList<byte[]>();
+
+		for ( File file: dir.listFiles()){
+
+			if ( file.getName().toLowerCase().endsWith( ".torrent" )){
+
+				corpus.add( FileUtil.readFileAsByteArray( file ));
+			}
+		}
+
+		return( corpus );
+	}
+
+	private static List<byte[]>
+	generateCorpus(
+		int		num )
+
+		throws Exception
+	{
+		Random	random = new Random( 1 );
+
+		String[]	trackers = new String[40];
+
+		for (int i=0;i<trackers.length;i++){
+
+			trackers[i] = "http://tracker" + i + ".example.org:" + ( 6969 + i ) + "/announce";
+		}
+
+		List<byte[]>	corpus = new ArrayList<byte[]>( num );
+
+		for (int t=0;t<num;t++){
+
+			Map	info = new HashMap();
+
+			String	name = "Torrent " + t + " (" + ( 1990 + random.nextInt( 25 )) + ")";
+
+			info.put( "name", name );
+			info.put( "piece length", new Long( 4*1024*1024 ));
+
+			List	files 		= new ArrayList();
+			long	total		= 0;
+			int		num_files	= 10 + random.nextInt( 90 );
+
+			for (int f=0;f<num_files;f++){
+
+				List	path = new ArrayList();
+
+				int	depth = random.nextInt( 3 );
+
+				for (int d=0;d<depth;d++){
+
+					path.add( DIRS[ random.nextInt( DIRS.length )]);
+				}
+
+				path.add( String.format( "%02d - Track %d%s", f + 1, random.nextInt( 1000 ), EXTENSIONS[ random.nextInt( EXTENSIONS.length )]));
+
+				long	length = 1 + random.nextInt( 8*1024*1024 );
+
+				Map	file = new HashMap();
+
+				file.put( "path", path );
+				file.put( "length", new Long( length ));
+
+				files.add( file );
+
+				total += length;
+			}
+
+			info.put( "files", files );
+
+			byte[]	pieces = new byte[(int)(( total + 4*1024*1024 - 1 )/( 4*1024*1024 ))*20];
+
+			random.nextBytes( pieces );
+
+			info.put( "pieces", pieces );
+
+			Map	torrent = new HashMap();
+
+			torrent.put( "info", info );
+			torrent.put( "announce", trackers[ random.nextInt( trackers.length )]);
+
+			List	tiers = new ArrayList();
+
+			for (int i=0;i<3;i++){
+
+				List	tier = new ArrayList();
+
+				tier.add( trackers[ random.nextInt( trackers.length )]);
+
+				tiers.add( tier );
+			}
+
+			torrent.put( "announce-list", tiers );
+
+			corpus.add( BEncoder.encode( torrent ));
+		}
+
+		return( corpus );
+	}
+}
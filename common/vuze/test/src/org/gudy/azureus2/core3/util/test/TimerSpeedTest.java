@@ -0,0 +1,219 @@
+/*
+ * Created on Oct 19, 2014
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package org.gudy.azureus2.core3.util.test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gudy.azureus2.core3.util.SystemTime;
+import org.gudy.azureus2.core3.util.Timer;
+import org.gudy.azureus2.core3.util.TimerEvent;
+import org.gudy.azureus2.core3.util.TimerEventPerformer;
+
+/**
+ * Schedule and cancel throughput of a Timer holding 10k pending events, the pattern of
+ * timeouts that are almost always cancelled, from one and from several threads at once.
+ * A run of short events checks that they still fire, and a trickle of events each due at the
+ * end of a tick that none runs before its time.
+ *
+ * usage: TimerSpeedTest [seconds per run]
+ */
+
+public class
+TimerSpeedTest
+{
+	private static final int	PENDING		= 10000;
+
+	private static final TimerEventPerformer	nop =
+		new TimerEventPerformer()
+		{
+			public void
+			perform(
+				TimerEvent event )
+			{
+			}
+		};
+
+	public static void
+	main(
+		String[]	args )
+
+		throws Exception
+	{
+		int	seconds = args.length > 0?Integer.parseInt( args[0] ):3;
+
+		Timer	timer = new Timer( "speed test" );
+
+		Random	random = new Random( 1 );
+
+		long	now = SystemTime.getCurrentTime();
+
+		for (int i=0;i<PENDING;i++){
+
+			timer.addEvent( now + 60*1000 + random.nextInt( 3600*1000 ), nop );
+		}
+
+		run( timer, 1, 1 );		// warmup
+
+		for (int i=0;i<2;i++){
+
+			run( timer, 1, seconds );
+
+			run( timer, Math.max( 4, Runtime.getRuntime().availableProcessors()), seconds );
+		}
+
+		fire( timer, 100000 );
+
+		timeliness( timer, 200 );
+	}
+
+	private static void
+	run(
+		final Timer		timer,
+		int				threads,
+		final int		seconds )
+
+		throws Exception
+	{
+		final AtomicLong		ops		= new AtomicLong();
+		final CountDownLatch	done	= new CountDownLatch( threads );
+
+		for (int i=0;i<threads;i++){
+
+			final int	seed = i;
+
+			new Thread()
+			{
+				public void
+				run()
+				{
+					Random	random = new Random( seed );
+
+					long	end 	= System.currentTimeMillis() + seconds*1000;
+					long	count	= 0;
+
+					while( System.currentTimeMillis() < end ){
+
+						for (int j=0;j<1000;j++){
+
+							TimerEvent	event = timer.addEvent( SystemTime.getCurrentTime() + 1000 + random.nextInt( 120*1000 ), nop );
+
+							event.cancel();
+						}
+
+						count += 1000;
+					}
+
+					ops.addAndGet( count );
+
+					done.countDown();
+				}
+			}.start();
+		}
+
+		done.await();
+
+		System.out.println( "threads=" + threads + ": " + ( ops.get()/seconds ) + " schedule+cancel/s" );
+	}
+
+	private static void
+	fire(
+		Timer	timer,
+		int		events )
+
+		throws Exception
+	{
+		final CountDownLatch	fired = new CountDownLatch( events );
+
+		TimerEventPerformer	performer =
+			new TimerEventPerformer()
+			{
+				public void
+				perform(
+					TimerEvent event )
+				{
+					fired.countDown();
+				}
+			};
+
+		Random	random = new Random( 2 );
+
+		long	start = System.currentTimeMillis();
+
+		for (int i=0;i<events;i++){
+
+			timer.addEvent( SystemTime.getCurrentTime() + random.nextInt( 1000 ), performer );
+		}
+
+		fired.await();
+
+		System.out.println( events + " events within 1s fired in " + ( System.currentTimeMillis() - start ) + "ms" );
+	}
+
+	private static void
+	timeliness(
+		Timer	timer,
+		int		events )
+
+		throws Exception
+	{
+		final CountDownLatch	fired		= new CountDownLatch( events );
+		final AtomicLong		early		= new AtomicLong();
+		final AtomicLong		max_late	= new AtomicLong();
+
+		TimerEventPerformer	performer =
+			new TimerEventPerformer()
+			{
+				public void
+				perform(
+					TimerEvent event )
+				{
+					long	late = SystemTime.getCurrentTime() - event.getWhen();
+
+					if ( late < 0 ){
+
+						early.incrementAndGet();
+
+					}else if ( late > max_late.get()){
+
+						max_late.set( late );
+					}
+
+					fired.countDown();
+				}
+			};
+
+		long	granularity = SystemTime.TIME_GRANULARITY_MILLIS;
+
+		for (int i=0;i<events;i++){
+
+				// the last millisecond of a tick a few ticks out
+
+			long	tick = SystemTime.getCurrentTime() / granularity + 2 + i%40;
+
+			timer.addEvent(( tick + 1 )*granularity - 1, performer );
+
+			Thread.sleep( 5 );
+		}
+
+		fired.await();
+
+		System.out.println( events + " events due at the end of a tick: " + early.get() + " ran early, at most " + max_late.get() + "ms late" );
+	}
+}
@@ -325,7 +325,18 @@ public class HttpFetcher {
 
     public void post(FileEntity fileEntity) throws IOException {
         HttpClient httpClient = setupHttpClient(false);
-        
+        try {
+            post(httpClient, fileEntity);
+        } finally {
+            httpClient.getConnectionManager().shutdown();
+        }
+    }
+
+    /**
+     * Posts with a client the caller keeps for a series of requests (see {@link #newHttpClient()}),
+     * the connection goes back to the client's pool for the next one.
+     */
+    public void post(HttpClient httpClient, FileEntity fileEntity) throws IOException {
         HttpHost httpHost = new HttpHost(_uri.getHost(), _uri.getPort());
         HttpPost httpPost = new HttpPost(_uri);
         httpPost.setEntity(fileEntity);
@@ -343,15 +354,20 @@ public class HttpFetcher {
 
             HttpResponse response = httpClient.execute(httpHost, httpPost);
 
+            // the connection is only reusable once the response is read
+            if (response.getEntity() != null) {
+                response.getEntity().consumeContent();
+            }
+
             if (response.getStatusLine().getStatusCode() < 200 || response.getStatusLine().getStatusCode() >= 300)
                 throw new IOException("bad status code, upload file " + response.getStatusLine().getStatusCode());
 
         } catch (IOException e) {
+            httpPost.abort();
             throw e;
         } catch (Exception e) {
-            new IOException("Http error: " + e.getMessage(), e);
-        } finally {
-            httpClient.getConnectionManager().shutdown();
+            httpPost.abort();
+            throw new IOException("Http error: " + e.getMessage(), e);
         }
     }
 
@@ -400,6 +416,13 @@ public class HttpFetcher {
         thread.start();
     }
 
+    /**
+     * A client with its own pool of keep-alive connections, to be shut down by the caller.
+     */
+    public static HttpClient newHttpClient() {
+        return setupHttpClient(false);
+    }
+
     private static void setupHttpClients() {
         DEFAULT_HTTP_CLIENT = setupHttpClient(false);
         DEFAULT_HTTP_CLIENT_GZIP = setupHttpClient(true);
@@ -35,10 +35,20 @@ public class Cursor {
 
     private final Statement statement;
     private final ResultSet rs;
+    private final Runnable onClose;
 
     public Cursor(Statement statement, ResultSet rs) {
+        this(statement, rs, null);
+    }
+
+    /**
+     * @param onClose if not null, it's run on {@link #close()} instead of closing the
+     *            statement, which is then owned by the caller
+     */
+    public Cursor(Statement statement, ResultSet rs, Runnable onClose) {
         this.statement = statement;
         this.rs = rs;
+        this.onClose = onClose;
     }
 
     /**
@@ -121,10 +131,25 @@ public class Cursor {
 
     /**
      * Returns the numbers of rows in the cursor.
+     * 
+     * Only scrollable cursors know their count without consuming the rows.
+     * Queries return forward only cursors unless asked for a scrollable one,
+     * see {@link com.frostwire.database.sqlite.SQLiteQueryBuilder#setScrollable(boolean)}.
      *
      * @return the number of rows in the cursor.
+     * @throws IllegalStateException if the cursor is forward only, rather than
+     *             report an empty result.
      */
     public int getCount() {
+        boolean forwardOnly = false;
+        try {
+            forwardOnly = rs.getType() == ResultSet.TYPE_FORWARD_ONLY;
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "Error getting result set type", e);
+        }
+        if (forwardOnly) {
+            throw new IllegalStateException("Count requested on a forward only cursor, query it as scrollable");
+        }
         try {
             rs.last();
             int rows = rs.getRow();
@@ -147,6 +172,10 @@ public class Cursor {
         } catch (SQLException e) {
             LOG.log(Level.WARNING, "Error closing cursor result set", e);
         }
+        if (onClose != null) {
+            onClose.run();
+            return;
+        }
         try {
             statement.close();
         } catch (SQLException e) {
@@ -166,6 +195,13 @@ public class Cursor {
      */
     public boolean moveToPosition(int offset) {
         try {
+            if (rs.getType() == ResultSet.TYPE_FORWARD_ONLY && offset >= 0) {
+                boolean moved = true;
+                for (int i = 0; moved && i < offset; i++) {
+                    moved = rs.next();
+                }
+                return moved;
+            }
             return rs.relative(offset);
         } catch (SQLException e) {
             LOG.log(Level.WARNING, "Error moving inside the result set, offset: " + offset, e);
@@ -0,0 +1,172 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One writer connection, guarded by a reentrant lock so it can hold a
+ * transaction across calls, and a few reader connections handed out one
+ * query at a time. Every connection keeps its own prepared statements by SQL.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SQLiteConnectionPool {
+
+    private static final Logger LOG = Logger.getLogger(SQLiteConnectionPool.class.getName());
+
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final long READER_WAIT_MILLIS = 200;
+
+    private final PooledConnection writer;
+    private final ReentrantLock writerLock;
+    private final BlockingQueue<PooledConnection> readers;
+    private final List<PooledConnection> connections;
+
+    public SQLiteConnectionPool(Connection writer, List<Connection> readers) {
+        this.writer = new PooledConnection(writer);
+        this.writerLock = new ReentrantLock();
+        this.readers = new LinkedBlockingQueue<PooledConnection>();
+        this.connections = new ArrayList<PooledConnection>();
+
+        connections.add(this.writer);
+        for (Connection c : readers) {
+            PooledConnection pc = new PooledConnection(c);
+            this.readers.add(pc);
+            connections.add(pc);
+        }
+    }
+
+    public PooledConnection acquireWriter() {
+        writerLock.lock();
+        return writer;
+    }
+
+    public void releaseWriter() {
+        writerLock.unlock();
+    }
+
+    public boolean isWriterHeldByCurrentThread() {
+        return writerLock.isHeldByCurrentThread();
+    }
+
+    /**
+     * A reader connection, null if none gets free in a short time (or there are
+     * none), in that case the caller goes through the writer.
+     */
+    public PooledConnection acquireReader() {
+        try {
+            return readers.poll(READER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public void releaseReader(PooledConnection connection) {
+        readers.offer(connection);
+    }
+
+    public Connection getWriterConnection() {
+        return writer.connection;
+    }
+
+    public void close() {
+        for (PooledConnection c : connections) {
+            c.close();
+        }
+    }
+
+    static final class PooledConnection {
+
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 3217485218154213349L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * A cached forward only statement, only one user of this connection at a time can use it.
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * A statement not in the cache, the caller must close it.
+         */
+        PreparedStatement prepareUncached(String sql, boolean scrollable) throws SQLException {
+            return connection.prepareStatement(sql, scrollable ? ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        }
+
+        void close() {
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (Throwable e) {
+                LOG.log(Level.FINE, "Error closing pooled connection", e);
+            }
+        }
+    }
+
+    static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (Throwable e) {
+            LOG.log(Level.FINE, "Error closing prepared statement", e);
+        }
+    }
+}
@@ -22,6 +22,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +37,7 @@ import java.util.logging.Logger;
 import com.frostwire.content.ContentValues;
 import com.frostwire.database.Cursor;
 import com.frostwire.database.SQLException;
+import com.frostwire.database.sqlite.SQLiteConnectionPool.PooledConnection;
 import com.frostwire.text.TextUtils;
 
 /**
@@ -40,11 +49,25 @@ public class SQLiteDatabase {
 
     private static final Logger LOG = Logger.getLogger(SQLiteDatabase.class.getName());
 
+    /**
+     * Max number of distinct SQL strings tracked for stats, beyond that only the shapes
+     * already known are kept up to date.
+     */
+    private static final int MAX_TRACKED_SQL = 1024;
+
     private String path;
-    private Connection connection;
+    private final SQLiteConnectionPool pool;
 
     private final AtomicBoolean open = new AtomicBoolean(false);
 
+    private final ConcurrentMap<String, SQLiteStatementStats> statsBySql = new ConcurrentHashMap<String, SQLiteStatementStats>();
+    private final ConcurrentMap<String, SQLiteStatementStats> statsByShape = new ConcurrentHashMap<String, SQLiteStatementStats>();
+
+    // only accessed by the thread holding the writer
+    private int transactionDepth;
+    private boolean transactionSuccessful;
+    private boolean transactionFailed;
+
     static {
         try {
             Class.forName("org.h2.Driver");
@@ -54,8 +77,16 @@ public class SQLiteDatabase {
     }
 
     public SQLiteDatabase(String path, Connection connection) {
+        this(path, connection, Collections.<Connection> emptyList());
+    }
+
+    /**
+     * @param connection the connection used for every write
+     * @param readers connections to the same database used for queries, in parallel
+     */
+    public SQLiteDatabase(String path, Connection connection, List<Connection> readers) {
         this.path = path;
-        this.connection = connection;
+        this.pool = new SQLiteConnectionPool(connection, readers);
 
         open.set(true);
     }
@@ -82,23 +113,53 @@ public class SQLiteDatabase {
      * {@link Cursor}s are not synchronized, see the documentation for more details.
      */
     public Cursor rawQueryWithFactory(CursorFactory cursorFactory, String sql, String[] selectionArgs, String editTable) {
+        return rawQueryWithFactory(cursorFactory, sql, selectionArgs, editTable, false);
+    }
+
+    /**
+     * Same as {@link #rawQueryWithFactory(CursorFactory, String, String[], String)}, but
+     * the cursor can be asked for a scrollable result.
+     * <p>
+     * By default cursors are forward only, which lets the database stream the rows and
+     * reuse the prepared statement. Only ask for a scrollable cursor if you need
+     * {@link Cursor#getCount()} or to move backwards.
+     * </p>
+     */
+    public Cursor rawQueryWithFactory(CursorFactory cursorFactory, String sql, String[] selectionArgs, String editTable, boolean scrollable) {
         verifyDbIsOpen();
 
         Cursor cursor = null;
 
+        // inside a transaction the queries must see its writes
+        PooledConnection reader = pool.isWriterHeldByCurrentThread() ? null : pool.acquireReader();
+        PooledConnection connection = reader != null ? reader : pool.acquireWriter();
+
+        // the writer is shared while the cursor is open, it can't lend it a cached statement
+        boolean cached = reader != null && !scrollable;
+
         PreparedStatement statement = null;
-        ResultSet resultSet = null;
 
         try {
-            synchronized (connection) {
-                statement = prepareStatement(connection, sql, (Object[]) selectionArgs);
+            statement = cached ? connection.prepare(sql) : connection.prepareUncached(sql, scrollable);
+            bindArguments(statement, (Object[]) selectionArgs);
 
-                resultSet = statement.executeQuery();
+            long start = System.nanoTime();
+            ResultSet resultSet = statement.executeQuery();
+            record(sql, System.nanoTime() - start);
 
-                return new Cursor(statement, resultSet);
-            }
+            cursor = new Cursor(statement, resultSet, new CursorRelease(reader, cached ? null : statement));
         } catch (Throwable e) {
             LOG.log(Level.WARNING, "Error performing SQL statement: " + sql, e);
+            if (statement != null && !cached) {
+                SQLiteConnectionPool.closeQuietly(statement);
+            }
+            if (reader != null) {
+                pool.releaseReader(reader);
+            }
+        } finally {
+            if (reader == null) {
+                pool.releaseWriter();
+            }
         }
 
         return cursor;
@@ -196,16 +257,46 @@ public class SQLiteDatabase {
     public long insert(String table, String nullColumnHack, ContentValues values) {
         verifyDbIsOpen();
 
+        int size = (values != null && values.size() > 0) ? values.size() : 0;
+        Object[] bindArgs = size > 0 ? new Object[size] : null;
+
+        return executeSql(insertSql(table, nullColumnHack, values, bindArgs), bindArgs);
+    }
+
+    /**
+     * Inserts all the rows in a single transaction, rows with the same columns
+     * are sent to the database as one JDBC batch.
+     *
+     * @param table the table to insert the rows into
+     * @param valuesList the column values of each row, none can be empty
+     * @return the number of rows inserted, or -1 if an error occurred, in which case
+     *         no row was inserted
+     */
+    public int insertBatch(String table, List<ContentValues> valuesList) {
+        verifyDbIsOpen();
+
+        Map<String, List<Object[]>> batches = new LinkedHashMap<String, List<Object[]>>();
+
+        for (ContentValues values : valuesList) {
+            if (values == null || values.size() == 0) {
+                throw new IllegalArgumentException("Empty values");
+            }
+            Object[] bindArgs = new Object[values.size()];
+            addToBatch(batches, insertSql(table, null, values, bindArgs), bindArgs);
+        }
+
+        return executeBatches(batches);
+    }
+
+    private static String insertSql(String table, String nullColumnHack, ContentValues values, Object[] bindArgs) {
         StringBuilder sql = new StringBuilder();
         sql.append("INSERT");
         sql.append(" INTO ");
         sql.append(table);
         sql.append(" (");
 
-        Object[] bindArgs = null;
-        int size = (values != null && values.size() > 0) ? values.size() : 0;
+        int size = bindArgs != null ? bindArgs.length : 0;
         if (size > 0) {
-            bindArgs = new Object[size];
             int i = 0;
             for (String colName : values.keySet()) {
                 sql.append((i > 0) ? "," : "");
@@ -222,7 +313,7 @@ public class SQLiteDatabase {
         }
         sql.append(')');
 
-        return executeSql(sql.toString(), bindArgs);
+        return sql.toString();
     }
 
     /**
@@ -259,6 +350,49 @@ public class SQLiteDatabase {
             throw new IllegalArgumentException("Empty values");
         }
 
+        int bindArgsSize = (whereArgs == null) ? values.size() : (values.size() + whereArgs.length);
+        Object[] bindArgs = new Object[bindArgsSize];
+
+        return executeSql(updateSql(table, values, whereClause, whereArgs, bindArgs), bindArgs);
+    }
+
+    /**
+     * Runs the same update for every element of the lists in a single transaction,
+     * as JDBC batches.
+     *
+     * @param table the table to update in
+     * @param valuesList the new column values of each update
+     * @param whereClause the WHERE clause shared by all the updates
+     * @param whereArgsList the WHERE arguments of each update, or null if there are none
+     * @return the number of rows affected, or -1 if an error occurred, in which case
+     *         no update was applied
+     */
+    public int updateBatch(String table, List<ContentValues> valuesList, String whereClause, List<String[]> whereArgsList) {
+        verifyDbIsOpen();
+
+        if (whereArgsList != null && whereArgsList.size() != valuesList.size()) {
+            throw new IllegalArgumentException("Values and where arguments lists differ in size");
+        }
+
+        Map<String, List<Object[]>> batches = new LinkedHashMap<String, List<Object[]>>();
+
+        for (int n = 0; n < valuesList.size(); n++) {
+            ContentValues values = valuesList.get(n);
+            String[] whereArgs = whereArgsList != null ? whereArgsList.get(n) : null;
+
+            if (values == null || values.size() == 0) {
+                throw new IllegalArgumentException("Empty values");
+            }
+
+            int bindArgsSize = (whereArgs == null) ? values.size() : (values.size() + whereArgs.length);
+            Object[] bindArgs = new Object[bindArgsSize];
+            addToBatch(batches, updateSql(table, values, whereClause, whereArgs, bindArgs), bindArgs);
+        }
+
+        return executeBatches(batches);
+    }
+
+    private static String updateSql(String table, ContentValues values, String whereClause, String[] whereArgs, Object[] bindArgs) {
         StringBuilder sql = new StringBuilder(120);
         sql.append("UPDATE ");
         sql.append(table);
@@ -266,8 +400,7 @@ public class SQLiteDatabase {
 
         // move all bind args to one array
         int setValuesSize = values.size();
-        int bindArgsSize = (whereArgs == null) ? setValuesSize : (setValuesSize + whereArgs.length);
-        Object[] bindArgs = new Object[bindArgsSize];
+        int bindArgsSize = bindArgs.length;
         int i = 0;
         for (String colName : values.keySet()) {
             sql.append((i > 0) ? "," : "");
@@ -285,7 +418,105 @@ public class SQLiteDatabase {
             sql.append(whereClause);
         }
 
-        return executeSql(sql.toString(), bindArgs);
+        return sql.toString();
+    }
+
+    /**
+     * Begins a transaction, on the writer connection, which is held by the calling thread
+     * until {@link #endTransaction()}. Transactions can be nested, the outer one commits
+     * only if all of them were marked successful.
+     * <pre>
+     *   db.beginTransaction();
+     *   try {
+     *     ...
+     *     db.setTransactionSuccessful();
+     *   } finally {
+     *     db.endTransaction();
+     *   }
+     * </pre>
+     */
+    public void beginTransaction() {
+        verifyDbIsOpen();
+
+        PooledConnection writer = pool.acquireWriter();
+
+        if (transactionDepth == 0) {
+            try {
+                writer.connection.setAutoCommit(false);
+            } catch (Throwable e) {
+                pool.releaseWriter();
+                LOG.log(Level.WARNING, "Error beginning transaction", e);
+                throw new SQLiteException("Unable to begin transaction: " + e.getMessage());
+            }
+            transactionFailed = false;
+        }
+
+        transactionDepth++;
+        transactionSuccessful = false;
+    }
+
+    /**
+     * Marks the current transaction as successful. Do not do any more database work
+     * between calling this and calling {@link #endTransaction()}.
+     */
+    public void setTransactionSuccessful() {
+        if (!inTransaction()) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        transactionSuccessful = true;
+    }
+
+    /**
+     * Ends a transaction, commits if this is the outer transaction and all of them were
+     * marked successful, rolls back otherwise.
+     */
+    public void endTransaction() {
+        if (!inTransaction()) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+
+        try {
+            if (!transactionSuccessful) {
+                transactionFailed = true;
+            }
+            transactionSuccessful = false;
+
+            if (--transactionDepth == 0) {
+                Connection connection = pool.getWriterConnection();
+                try {
+                    if (transactionFailed) {
+                        connection.rollback();
+                    } else {
+                        connection.commit();
+                    }
+                } catch (Throwable e) {
+                    LOG.log(Level.WARNING, "Error ending transaction", e);
+                } finally {
+                    try {
+                        connection.setAutoCommit(true);
+                    } catch (Throwable e) {
+                        LOG.log(Level.WARNING, "Error restoring auto commit", e);
+                    }
+                }
+            }
+        } finally {
+            pool.releaseWriter();
+        }
+    }
+
+    /**
+     * @return true if the current thread is in a transaction.
+     */
+    public boolean inTransaction() {
+        return pool.isWriterHeldByCurrentThread() && transactionDepth > 0;
+    }
+
+    /**
+     * Execution latency histograms, one per SQL shape (the SQL with its literals
+     * replaced by ?).
+     */
+    public Collection<SQLiteStatementStats> getStatementStats() {
+        return Collections.unmodifiableCollection(statsByShape.values());
     }
 
     /**
@@ -297,35 +528,114 @@ public class SQLiteDatabase {
 
     public void close() {
         if (open.compareAndSet(true, false)) {
+            Connection connection = pool.acquireWriter().connection;
             try {
+                if (LOG.isLoggable(Level.FINE)) {
+                    for (SQLiteStatementStats stats : statsByShape.values()) {
+                        LOG.fine(path + ": " + stats);
+                    }
+                }
                 Statement statement = connection.createStatement();
                 statement.execute("SHUTDOWN");
                 connection.close();
             } catch (Throwable e) {
                 LOG.log(Level.WARNING, "Error closing the smart search database", e);
+            } finally {
+                pool.close();
+                pool.releaseWriter();
             }
         }
     }
 
     private int executeSql(String sql, Object[] bindArgs) throws SQLException {
-        PreparedStatement statement = null;
+        PooledConnection writer = pool.acquireWriter();
         try {
-            synchronized (connection) {
-                statement = prepareStatement(connection, sql.toString(), bindArgs);
+            PreparedStatement statement = writer.prepare(sql);
+            bindArguments(statement, bindArgs);
 
-                return statement.executeUpdate();
-            }
+            long start = System.nanoTime();
+            int n = statement.executeUpdate();
+            record(sql, System.nanoTime() - start);
+
+            return n;
         } catch (Throwable e) {
             LOG.log(Level.WARNING, "Error performing SQL statement: " + sql, e);
+            if (transactionDepth > 0) {
+                transactionFailed = true;
+            }
             return -1;
         } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (Throwable e) {
+            pool.releaseWriter();
+        }
+    }
+
+    private static void addToBatch(Map<String, List<Object[]>> batches, String sql, Object[] bindArgs) {
+        List<Object[]> batch = batches.get(sql);
+        if (batch == null) {
+            batch = new ArrayList<Object[]>();
+            batches.put(sql, batch);
+        }
+        batch.add(bindArgs);
+    }
+
+    private int executeBatches(Map<String, List<Object[]>> batches) {
+        int count = 0;
+
+        beginTransaction();
+        try {
+            PooledConnection writer = pool.acquireWriter();
+            try {
+                for (Map.Entry<String, List<Object[]>> e : batches.entrySet()) {
+                    String sql = e.getKey();
+                    PreparedStatement statement = writer.prepare(sql);
+
+                    for (Object[] bindArgs : e.getValue()) {
+                        bindArguments(statement, bindArgs);
+                        statement.addBatch();
+                    }
+
+                    long start = System.nanoTime();
+                    int[] results = statement.executeBatch();
+                    record(sql, System.nanoTime() - start);
+
+                    for (int n : results) {
+                        count += n > 0 ? n : 0;
+                    }
+                }
+            } finally {
+                pool.releaseWriter();
+            }
+
+            setTransactionSuccessful();
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Error performing SQL batch", e);
+            count = -1;
+        } finally {
+            endTransaction();
+        }
+
+        return count;
+    }
+
+    private void record(String sql, long nanos) {
+        SQLiteStatementStats stats = statsBySql.get(sql);
+
+        if (stats == null) {
+            String shape = SQLiteStatementStats.shapeOf(sql);
+            stats = statsByShape.get(shape);
+            if (stats == null) {
+                SQLiteStatementStats newStats = new SQLiteStatementStats(shape);
+                stats = statsByShape.putIfAbsent(shape, newStats);
+                if (stats == null) {
+                    stats = newStats;
                 }
             }
+            if (statsBySql.size() < MAX_TRACKED_SQL) {
+                statsBySql.put(sql, stats);
+            }
         }
+
+        stats.record(nanos);
     }
 
     /**
@@ -357,16 +667,36 @@ public class SQLiteDatabase {
         }
     }
 
-    private PreparedStatement prepareStatement(Connection connection, String sql, Object... arguments) throws Exception {
-
-        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
-
+    private static void bindArguments(PreparedStatement statement, Object[] arguments) throws java.sql.SQLException {
         if (arguments != null) {
             for (int i = 0; i < arguments.length; i++) {
                 statement.setObject(i + 1, arguments[i]);
             }
         }
-        return statement;
+    }
+
+    /**
+     * Gives the connection (and the statement, if not cached) back when the cursor is closed.
+     */
+    private final class CursorRelease implements Runnable {
+
+        private final PooledConnection reader;
+        private final PreparedStatement uncached;
+
+        public CursorRelease(PooledConnection reader, PreparedStatement uncached) {
+            this.reader = reader;
+            this.uncached = uncached;
+        }
+
+        @Override
+        public void run() {
+            if (uncached != null) {
+                SQLiteConnectionPool.closeQuietly(uncached);
+            }
+            if (reader != null) {
+                pool.releaseReader(reader);
+            }
+        }
     }
 
     /**
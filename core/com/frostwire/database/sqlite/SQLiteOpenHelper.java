@@ -21,6 +21,8 @@ package com.frostwire.database.sqlite;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +38,11 @@ public abstract class SQLiteOpenHelper {
 
     private static final Logger LOG = Logger.getLogger(SQLiteOpenHelper.class.getName());
 
+    /**
+     * Connections opened for queries, besides the one used for writes.
+     */
+    private static final int NUM_READERS = 2;
+
     private final String dbpath;
     private final SQLiteDatabase db;
 
@@ -115,6 +122,9 @@ public abstract class SQLiteOpenHelper {
             String fullpath = folderpath + File.separator + name;
             sb.append(fullpath);
 
+            // without it H2 locks whole tables, a reader would wait out an open transaction of the writer
+            sb.append(";MVCC=TRUE");
+
             if (extraArgs != null) {
                 sb.append(";" + extraArgs);
             }
@@ -122,7 +132,13 @@ public abstract class SQLiteOpenHelper {
             boolean create = !(new File(folderpath).exists());
 
             Connection connection = DriverManager.getConnection(sb.toString(), "SA", "");
-            SQLiteDatabase db = new SQLiteDatabase(fullpath, connection);
+
+            List<Connection> readers = new ArrayList<Connection>(NUM_READERS);
+            for (int i = 0; i < NUM_READERS; i++) {
+                readers.add(DriverManager.getConnection(sb.toString(), "SA", ""));
+            }
+
+            SQLiteDatabase db = new SQLiteDatabase(fullpath, connection, readers);
 
             if (create) {
                 onCreate(db);
@@ -40,6 +40,7 @@ public class SQLiteQueryBuilder
     private boolean mDistinct;
     private SQLiteDatabase.CursorFactory mFactory;
     private boolean mStrict;
+    private boolean mScrollable;
 
     public SQLiteQueryBuilder() {
         mDistinct = false;
@@ -165,6 +166,17 @@ public class SQLiteQueryBuilder
         mStrict = flag;
     }
 
+    /**
+     * When set, the query returns a scrollable cursor, needed for
+     * {@link Cursor#getCount()} and to move backwards. Cursors are
+     * forward only by default.
+     *
+     * @param flag if the cursor should be scrollable
+     */
+    public void setScrollable(boolean flag) {
+        mScrollable = flag;
+    }
+
     /**
      * Build an SQL query string from the given clauses.
      *
@@ -349,7 +361,7 @@ public class SQLiteQueryBuilder
 //        }
         return db.rawQueryWithFactory(
                 mFactory, sql, selectionArgs,
-                SQLiteDatabase.findEditTable(mTables)); // will throw if query is invalid
+                SQLiteDatabase.findEditTable(mTables), mScrollable); // will throw if query is invalid
     }
 
     /**
@@ -0,0 +1,130 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.database.sqlite;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram of one SQL shape, the SQL with its literals replaced by ?.
+ *
+ * Bucket i counts the executions that took less than 2^i microseconds, the
+ * last bucket takes everything slower.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class SQLiteStatementStats {
+
+    public static final int NUM_BUCKETS = 24;
+
+    private final String shape;
+    private final AtomicLongArray buckets;
+    private final AtomicLongArray totals; // count, nanos
+
+    SQLiteStatementStats(String shape) {
+        this.shape = shape;
+        this.buckets = new AtomicLongArray(NUM_BUCKETS);
+        this.totals = new AtomicLongArray(2);
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    public long getCount() {
+        return totals.get(0);
+    }
+
+    public long getTotalNanos() {
+        return totals.get(1);
+    }
+
+    public long getBucket(int index) {
+        return buckets.get(index);
+    }
+
+    /**
+     * Upper bound, in microseconds, of the latency of the given percentile (0-100).
+     */
+    public long getPercentileMicros(int percentile) {
+        long count = getCount();
+        long target = (count * percentile + 99) / 100;
+        long n = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            n += buckets.get(i);
+            if (n >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << NUM_BUCKETS;
+    }
+
+    void record(long nanos) {
+        long micros = nanos / 1000;
+        int index = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        buckets.incrementAndGet(Math.min(index, NUM_BUCKETS - 1));
+        totals.incrementAndGet(0);
+        totals.addAndGet(1, nanos);
+    }
+
+    @Override
+    public String toString() {
+        long count = getCount();
+        long avg = count > 0 ? getTotalNanos() / count / 1000 : 0;
+        return String.format("%d execs, avg %d us, p50 < %d us, p99 < %d us: %s", count, avg, getPercentileMicros(50), getPercentileMicros(99), shape);
+    }
+
+    /**
+     * Replaces numeric and quoted string literals by ?, so the same statement with
+     * different inlined values lands in the same histogram.
+     */
+    static String shapeOf(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                sb.append('?');
+                i++;
+            } else if (Character.isDigit(c) && (i == 0 || !Character.isLetterOrDigit(sql.charAt(i - 1)) && sql.charAt(i - 1) != '_')) {
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.frostwire.database.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+import com.frostwire.content.ContentValues;
+import com.frostwire.content.Context;
+import com.frostwire.database.Cursor;
+import com.frostwire.database.sqlite.SQLiteDatabase;
+import com.frostwire.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Runs lookups from 4 threads while another thread holds a write transaction open
+ * over the same table. The lookups must neither fail nor wait for the transaction,
+ * and must not see its uncommitted writes.
+ * 
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public class SQLiteDatabaseConcurrencyTest {
+
+    static {
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final int NUM_ROWS = 10000;
+    private static final int NUM_READERS = 4;
+    private static final long TRANSACTION_MILLIS = 3000;
+
+    public static void testLookupsDuringWriteTransaction() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "sqliteconcurrency" + System.nanoTime());
+
+        Context context = new Context() {
+            @Override
+            public File getDatabasePath(String name) {
+                return new File(dir, name);
+            }
+        };
+
+        SQLiteOpenHelper helper = new SQLiteOpenHelper(context, "test", null, 1) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE items (id INTEGER PRIMARY KEY, data VARCHAR)");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+        };
+
+        final SQLiteDatabase db = helper.getWritableDatabase();
+
+        try {
+            List<ContentValues> rows = new ArrayList<ContentValues>(NUM_ROWS);
+            for (int i = 0; i < NUM_ROWS; i++) {
+                ContentValues values = new ContentValues();
+                values.put("id", i);
+                values.put("data", "committed");
+                rows.add(values);
+            }
+            db.insertBatch("items", rows);
+
+            final CountDownLatch transactionOpen = new CountDownLatch(1);
+            final CountDownLatch readersDone = new CountDownLatch(NUM_READERS);
+            final long end = System.currentTimeMillis() + TRANSACTION_MILLIS;
+
+            Thread writer = new Thread(new Runnable() {
+                public void run() {
+                    db.beginTransaction();
+                    try {
+                        db.execSQL("UPDATE items SET data = 'uncommitted'");
+                        transactionOpen.countDown();
+                        Thread.sleep(Math.max(0, end - System.currentTimeMillis()));
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                    } finally {
+                        db.endTransaction(); // rolled back
+                    }
+                }
+            });
+            writer.start();
+            transactionOpen.await();
+
+            final AtomicInteger lookups = new AtomicInteger();
+            final AtomicInteger failures = new AtomicInteger();
+            final AtomicInteger dirty = new AtomicInteger();
+            final AtomicLong maxNanos = new AtomicLong();
+
+            for (int t = 0; t < NUM_READERS; t++) {
+                final int seed = t;
+                new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            int i = seed;
+                            while (System.currentTimeMillis() < end) {
+                                long start = System.nanoTime();
+                                Cursor c = db.rawQueryWithFactory(null, "SELECT data FROM items WHERE id = ?", new String[] { String.valueOf(i % NUM_ROWS) }, null);
+                                if (c == null) {
+                                    failures.incrementAndGet();
+                                } else {
+                                    try {
+                                        if (!c.moveToNext() || !"committed".equals(c.getString(1))) {
+                                            dirty.incrementAndGet();
+                                        }
+                                    } finally {
+                                        c.close();
+                                    }
+                                }
+                                long nanos = System.nanoTime() - start;
+                                long max;
+                                while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                                }
+                                lookups.incrementAndGet();
+                                i += 7919;
+                            }
+                        } finally {
+                            readersDone.countDown();
+                        }
+                    }
+                }).start();
+            }
+
+            writer.join();
+            readersDone.await();
+
+            System.out.println(String.format("%d lookups in %d ms from %d threads during a write transaction, %d failed, %d saw uncommitted data, slowest %d ms", lookups.get(), TRANSACTION_MILLIS, NUM_READERS, failures.get(), dirty.get(), maxNanos.get() / 1000000));
+
+            if (failures.get() > 0 || dirty.get() > 0) {
+                throw new IllegalStateException("lookups failed or saw uncommitted data during a write transaction");
+            }
+            if (maxNanos.get() / 1000000 >= 500) {
+                throw new IllegalStateException("lookups waited for the write transaction");
+            }
+        } finally {
+            db.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        testLookupsDuringWriteTransaction();
+    }
+}
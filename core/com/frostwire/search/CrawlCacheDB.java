@@ -92,6 +92,23 @@ public final class CrawlCacheDB {
         return c;
     }
 
+    /**
+     * Same as {@link #query(String[], String, String[], String)}, with a
+     * scrollable cursor, needed to get the count of rows.
+     */
+    public Cursor queryScrollable(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+
+        qb.setTables(TABLE_NAME);
+        qb.setScrollable(true);
+
+        String orderBy = TextUtils.isEmpty(sortOrder) ? DEFAULT_SORT_ORDER : sortOrder;
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        return qb.query(db, projection, selection, selectionArgs, null, null, orderBy);
+    }
+
     public long insert(ContentValues initialValues) {
         ContentValues values;
 
@@ -118,7 +118,7 @@ public class DatabaseCrawlCache implements CrawlCache {
             String where = "";
             String[] whereArgs = new String[] {};
 
-            c = db.query(columns, where, whereArgs, null);
+            c = db.queryScrollable(columns, where, whereArgs, null);
 
             size = c.getCount();
 
@@ -23,6 +23,7 @@ import java.io.File;
 import org.limewire.setting.BooleanSetting;
 import org.limewire.setting.FileSetSetting;
 import org.limewire.setting.FileSetting;
+import org.limewire.setting.IntSetting;
 import org.limewire.util.CommonUtils;
 
 import com.frostwire.AzureusStarter;
@@ -61,6 +62,11 @@ public class LibrarySettings extends LimeProps {
 
     public static final BooleanSetting LIBRARY_WIFI_SHARING_ENABLED = FACTORY.createBooleanSetting("LIBRARY_WIFI_SHARING_ENABLED", true);
 
+    /**
+     * How many files are sent at the same time when uploading to a device, 1 sends them one after the other.
+     */
+    public static final IntSetting DEVICE_UPLOAD_WINDOW = FACTORY.createIntSetting("DEVICE_UPLOAD_WINDOW", 3);
+
     
     public static void setupInitialLibraryFolders() {
         SharingSettings.initTorrentDataDirSetting();
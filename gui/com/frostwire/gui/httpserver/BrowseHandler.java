@@ -19,6 +19,7 @@
 package com.frostwire.gui.httpserver;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.zip.GZIPOutputStream;
@@ -47,6 +48,7 @@ class BrowseHandler extends AbstractHandler {
         GZIPOutputStream os = null;
 
         byte type = -1;
+        long since = -1;
 
         try {
 
@@ -56,6 +58,9 @@ class BrowseHandler extends AbstractHandler {
                 if (item.getName().equals("type")) {
                     type = Byte.parseByte(item.getValue());
                 }
+                if (item.getName().equals("since")) {
+                    since = Long.parseLong(item.getValue());
+                }
             }
 
             if (type == -1) {
@@ -63,8 +68,18 @@ class BrowseHandler extends AbstractHandler {
                 return;
             }
 
-            String response = getResponse(exchange, type);
+            List<FileDescriptor> fileDescriptors = Librarian.instance().getSharedFiles(type);
+
+            String version = getVersion(fileDescriptors);
+
+            if (version.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(Code.HTTP_NOT_MODIFIED, -1);
+                return;
+            }
 
+            String response = getResponse(fileDescriptors, version, since);
+
+            exchange.getResponseHeaders().set("ETag", version);
             exchange.getResponseHeaders().set("Content-Encoding", "gzip");
             exchange.getResponseHeaders().set("Content-Type", "text/json; charset=UTF-8");
             exchange.sendResponseHeaders(Code.HTTP_OK, 0);
@@ -85,16 +100,66 @@ class BrowseHandler extends AbstractHandler {
         }
     }
 
-    private String getResponse(HttpExchange exchange, byte fileType) {
-        List<FileDescriptor> fileDescriptors = Librarian.instance().getSharedFiles(fileType);
-
+    /**
+     * The full listing, or with a since time only the files added or changed from it on plus
+     * the ids of all of them so the client can drop the removed ones. Sharing a file or
+     * rescanning it inserts its row again, so the time it was added covers those changes.
+     */
+    private String getResponse(List<FileDescriptor> fileDescriptors, String version, long since) {
         FileDescriptorList list = new FileDescriptorList();
-        list.files = fileDescriptors;
+        list.version = version;
+        list.lastModified = getLastModified(fileDescriptors);
+
+        if (since < 0) {
+            list.files = fileDescriptors;
+        } else {
+            list.files = new ArrayList<FileDescriptor>();
+            list.ids = new ArrayList<Integer>(fileDescriptors.size());
+            for (FileDescriptor fd : fileDescriptors) {
+                long modified = getModified(fd);
+                // the time added is only to the second, send anything from the same second again.
+                // no dates, can't tell if it changed
+                if (modified >= since || modified == 0) {
+                    list.files.add(fd);
+                }
+                list.ids.add(fd.id);
+            }
+        }
 
         return JsonUtils.toJson(list);
     }
 
+    private static String getVersion(List<FileDescriptor> fileDescriptors) {
+        long hash = 17;
+        for (FileDescriptor fd : fileDescriptors) {
+            hash = 31 * hash + fd.id;
+            hash = 31 * hash + fd.fileSize;
+            hash = 31 * hash + fd.dateModified;
+            hash = 31 * hash + (fd.filePath != null ? fd.filePath.hashCode() : 0);
+            hash = 31 * hash + (fd.title != null ? fd.title.hashCode() : 0);
+        }
+        return Long.toHexString(hash) + "-" + fileDescriptors.size();
+    }
+
+    private static long getLastModified(List<FileDescriptor> fileDescriptors) {
+        long lastModified = 0;
+        for (FileDescriptor fd : fileDescriptors) {
+            lastModified = Math.max(lastModified, getModified(fd));
+        }
+        return lastModified;
+    }
+
+    /**
+     * In ms, the scanner stores the time added in seconds and the file's own modified time in ms.
+     */
+    private static long getModified(FileDescriptor fd) {
+        return Math.max(fd.dateAdded * 1000, fd.dateModified);
+    }
+
     static final class FileDescriptorList {
+        public String version;
+        public long lastModified;
         public List<FileDescriptor> files;
+        public List<Integer> ids;
     }
 }
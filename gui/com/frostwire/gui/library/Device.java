@@ -19,12 +19,15 @@
 package com.frostwire.gui.library;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
@@ -43,7 +46,10 @@ import com.frostwire.gui.library.ProgressFileEntity.ProgressFileEntityListener;
 import com.frostwire.localpeer.Finger;
 import com.frostwire.localpeer.LocalPeer;
 import com.frostwire.util.HttpClient;
+import com.frostwire.util.HttpClient.HttpClientListener;
+import com.frostwire.util.HttpClient.ResponseCodeNotSupportedException;
 import com.frostwire.util.HttpClientFactory;
+import com.frostwire.util.UserAgentGenerator;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
 import com.limegroup.gnutella.util.EncodingUtils;
@@ -81,8 +87,6 @@ public class Device {
     private LocalPeer pingInfo;
 
     private boolean local;
-    
-    private final HttpClient httpClient;
 
     public Device(String udn, InetAddress address, int port, Finger finger, LocalPeer pinfo) {
         this.udn = udn;
@@ -91,8 +95,6 @@ public class Device {
         this.finger = finger;
         this.pingInfo = pinfo;
         this.local = pinfo.local;
-        
-        this.httpClient = HttpClientFactory.newInstance();
     }
     
     /**
@@ -163,31 +165,131 @@ public class Device {
     }
 
     public List<FileDescriptor> browse(byte fileType) {
+        return browse(fileType, null);
+    }
+
+    /**
+     * Browses the files of a type, asking the device only for the changes since the cached
+     * listing when there is one. The listener gets every file of the result, as they are parsed
+     * when the device sends a full listing.
+     */
+    public List<FileDescriptor> browse(byte fileType, FileDescriptorStreamParser.Listener listener) {
+
+        String cacheKey = getCacheKey();
+        DeviceBrowseCache.Listing cached = DeviceBrowseCache.instance().get(cacheKey, fileType);
 
         try {
 
             String url = "http://" + _address.getHostAddress() + ":" + _port + "/browse?type=" + fileType;
 
-            String json = httpClient.get(url, 10000);
-            
-            if (json == null) {
-                notifyOnActionFailed(ACTION_BROWSE, null);
-                return new ArrayList<FileDescriptor>();
+            Map<String, String> headers = null;
+            if (cached != null) {
+                // devices that don't know these answer with the full listing
+                url += "&since=" + cached.lastModified;
+                headers = new HashMap<String, String>();
+                headers.put("If-None-Match", cached.version);
+            }
+
+            FileDescriptorStreamParser parser = new FileDescriptorStreamParser(cached == null ? listener : null);
+
+            final Exception[] error = new Exception[1];
+            HttpClient client = HttpClientFactory.newInstance();
+            client.setListener(new HttpClientListener() {
+                public void onError(HttpClient client, Exception e) {
+                    error[0] = e;
+                }
+
+                public void onData(HttpClient client, byte[] buffer, int offset, int length) {
+                }
+
+                public void onComplete(HttpClient client) {
+                }
+
+                public void onCancel(HttpClient client) {
+                }
+
+                public void onHeaders(HttpClient httpClient, Map<String, List<String>> headerFields) {
+                }
+            });
+
+            try {
+                client.get(url, parser, 10000, UserAgentGenerator.getUserAgent(), headers);
+            } catch (ResponseCodeNotSupportedException e) {
+                if (cached != null && e.getResponseCode() == 304) {
+                    setTimestamp(System.currentTimeMillis());
+                    return deliver(cached.getFiles(), listener);
+                }
+                throw e;
+            }
+
+            if (error[0] != null) {
+                throw error[0];
             }
 
             setTimestamp(System.currentTimeMillis());
 
-            FileDescriptorList list = JSON_ENGINE.toObject(json, FileDescriptorList.class);
+            String version = parser.getField("version");
+            String lastModified = parser.getField("lastModified");
+            String ids = parser.getField("ids");
+
+            if (version == null || lastModified == null) {
+                // device without versioned listings
+                DeviceBrowseCache.instance().remove(cacheKey, fileType);
+                return cached == null ? parser.getFiles() : deliver(parser.getFiles(), listener);
+            }
+
+            version = JSON_ENGINE.toObject(version, String.class);
 
-            return list.files;
+            DeviceBrowseCache.Listing listing;
+            if (cached != null && ids != null) {
+                listing = cached.update(version, Long.parseLong(lastModified), parser.getFiles(), parseIds(ids));
+                if (listing == null) {
+                    // files the cache never got, start over with a full listing
+                    DeviceBrowseCache.instance().remove(cacheKey, fileType);
+                    return browse(fileType, listener);
+                }
+            } else {
+                listing = DeviceBrowseCache.Listing.full(version, Long.parseLong(lastModified), parser.getFiles());
+            }
+            DeviceBrowseCache.instance().put(cacheKey, fileType, listing);
+
+            return cached == null ? parser.getFiles() : deliver(listing.getFiles(), listener);
 
         } catch (Exception e) {
+            DeviceBrowseCache.instance().remove(cacheKey, fileType);
             notifyOnActionFailed(ACTION_BROWSE, e);
         }
 
         return new ArrayList<FileDescriptor>();
     }
 
+    private String getCacheKey() {
+        return finger != null && finger.uuid != null ? finger.uuid : udn;
+    }
+
+    private static List<FileDescriptor> deliver(List<FileDescriptor> fds, FileDescriptorStreamParser.Listener listener) {
+        if (listener != null) {
+            for (FileDescriptor fd : fds) {
+                listener.onFileDescriptor(fd);
+            }
+        }
+        return fds;
+    }
+
+    private static List<Integer> parseIds(String json) {
+        List<Integer> ids = new ArrayList<Integer>();
+        String s = json.trim();
+        if (s.startsWith("[") && s.endsWith("]")) {
+            s = s.substring(1, s.length() - 1).trim();
+        }
+        if (s.length() > 0) {
+            for (String id : s.split(",")) {
+                ids.add(Integer.valueOf(id.trim()));
+            }
+        }
+        return ids;
+    }
+
     public URL getDownloadURL(int type, int id) {
         try {
 
@@ -308,6 +410,21 @@ public class Device {
     }
 
     public void upload(File file, String token, ProgressFileEntityListener listener) {
+        try {
+            upload(null, file, token, listener);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Uploads with the client of an upload session so the files of the session share its connections,
+     * a null client uses a connection for this file only.
+     * 
+     * @throws IOException if the file was not uploaded, after the failure listener is notified, so that
+     *             the session can stop
+     */
+    public void upload(org.apache.http.client.HttpClient sessionClient, File file, String token, ProgressFileEntityListener listener) throws IOException {
 
         URI uri = null;
 
@@ -319,11 +436,18 @@ public class Device {
             ProgressFileEntity fileEntity = new ProgressFileEntity(file);
             fileEntity.setProgressFileEntityListener(listener);
 
-            fetcher.post(fileEntity);
+            if (sessionClient != null) {
+                fetcher.post(sessionClient, fileEntity);
+            } else {
+                fetcher.post(fileEntity);
+            }
 
+        } catch (IOException e) {
+            notifyOnActionFailed(ACTION_UPLOAD, e);
+            throw e;
         } catch (Exception e) {
             notifyOnActionFailed(ACTION_UPLOAD, e);
-            throw new RuntimeException(e);
+            throw new IOException(e);
         }
     }
 
@@ -0,0 +1,124 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.frostwire.core.FileDescriptor;
+
+/**
+ * Last browse listing of every device and file type, keyed by the device uuid so it survives
+ * the device changing address, with the version the device gave it. The next browse asks
+ * the device only for what changed since.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class DeviceBrowseCache {
+
+    private static final int MAX_LISTINGS = 32;
+
+    private static final DeviceBrowseCache instance = new DeviceBrowseCache();
+
+    public static DeviceBrowseCache instance() {
+        return instance;
+    }
+
+    private final Map<String, Listing> listings;
+
+    private DeviceBrowseCache() {
+        this.listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -6043715290135867416L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > MAX_LISTINGS;
+            }
+        };
+    }
+
+    public synchronized Listing get(String deviceKey, byte fileType) {
+        return listings.get(key(deviceKey, fileType));
+    }
+
+    public synchronized void put(String deviceKey, byte fileType, Listing listing) {
+        listings.put(key(deviceKey, fileType), listing);
+    }
+
+    public synchronized void remove(String deviceKey, byte fileType) {
+        listings.remove(key(deviceKey, fileType));
+    }
+
+    private static String key(String deviceKey, byte fileType) {
+        return deviceKey + ":" + fileType;
+    }
+
+    static final class Listing {
+
+        public final String version;
+        public final long lastModified;
+
+        // by id, in the order the device listed them
+        private final Map<Integer, FileDescriptor> files;
+
+        private Listing(String version, long lastModified, Map<Integer, FileDescriptor> files) {
+            this.version = version;
+            this.lastModified = lastModified;
+            this.files = files;
+        }
+
+        public static Listing full(String version, long lastModified, List<FileDescriptor> fds) {
+            Map<Integer, FileDescriptor> files = new LinkedHashMap<Integer, FileDescriptor>();
+            for (FileDescriptor fd : fds) {
+                files.put(fd.id, fd);
+            }
+            return new Listing(version, lastModified, files);
+        }
+
+        /**
+         * A new listing with the changed files of an incremental response, without the files
+         * no longer in the device's list of ids. Null if the device lists an id that is neither
+         * cached nor among the changed files, the listing can't be completed without a full one.
+         */
+        public Listing update(String version, long lastModified, List<FileDescriptor> changed, Collection<Integer> ids) {
+            Map<Integer, FileDescriptor> updated = new LinkedHashMap<Integer, FileDescriptor>(files);
+            for (FileDescriptor fd : changed) {
+                updated.put(fd.id, fd);
+            }
+            Set<Integer> current = new HashSet<Integer>(ids);
+            if (!updated.keySet().containsAll(current)) {
+                return null;
+            }
+            updated.keySet().retainAll(current);
+            return new Listing(version, lastModified, updated);
+        }
+
+        public List<FileDescriptor> getFiles() {
+            return new ArrayList<FileDescriptor>(files.values());
+        }
+    }
+}
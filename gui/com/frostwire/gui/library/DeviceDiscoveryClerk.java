@@ -27,11 +27,13 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.swing.SwingUtilities;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.limewire.concurrent.ExecutorsHelper;
 
 import com.frostwire.HttpFetcher;
 import com.frostwire.JsonEngine;
@@ -57,11 +59,22 @@ public class DeviceDiscoveryClerk {
 
     private static final Log LOG = LogFactory.getLog(DeviceDiscoveryClerk.class);
 
+    /**
+     * A device announcing itself again this soon after its finger was fetched is only marked alive.
+     */
+    private static final long FINGER_REFRESH_MILLIS = 10000;
+
+    // start, stop and finger fetches, shared so a burst of discovery events doesn't start a thread each
+    private static final ExecutorService executor = ExecutorsHelper.newFixedSizeThreadPool(4, "DeviceDiscoveryExecutor");
+
     private final HttpServerManager httpServerManager;
     private final LocalPeerManager peerManager;
 
     private Map<String, Device> deviceCache;
 
+    private final Set<String> pendingFingers;
+    private final Map<String, Long> fingerTimes;
+
     private JsonEngine jsonEngine;
 
     public DeviceDiscoveryClerk() {
@@ -93,6 +106,8 @@ public class DeviceDiscoveryClerk {
             }
         });
         deviceCache = Collections.synchronizedMap(new HashMap<String, Device>());
+        pendingFingers = Collections.synchronizedSet(new HashSet<String>());
+        fingerTimes = Collections.synchronizedMap(new HashMap<String, Long>());
         jsonEngine = new JsonEngine();
 
         if (LibrarySettings.LIBRARY_WIFI_SHARING_ENABLED.getValue()) {
@@ -105,17 +120,17 @@ public class DeviceDiscoveryClerk {
     }
 
     public void start() {
-        new Thread(new Runnable() {
+        executor.execute(new Runnable() {
             @Override
             public void run() {
                 httpServerManager.start(Constants.EXTERNAL_CONTROL_LISTENING_PORT);
                 peerManager.start(createLocalPeer());
             }
-        }).start();
+        });
     }
 
     public void stop() {
-        new Thread(new Runnable() {
+        executor.execute(new Runnable() {
             @Override
             public void run() {
                 httpServerManager.stop();
@@ -126,12 +141,33 @@ public class DeviceDiscoveryClerk {
                     handleDeviceStale(e.getKey(), device.getAddress(), device);
                 }
             }
-        }).start();
+        });
     }
 
-    public void handleDeviceState(String key, InetAddress address, int listeningPort, boolean bye, LocalPeer pinfo) {
+    public void handleDeviceState(final String key, final InetAddress address, final int listeningPort, boolean bye, final LocalPeer pinfo) {
         if (!bye) {
-            retrieveFinger(key, address, listeningPort, pinfo);
+            Device device = deviceCache.get(key);
+            Long fingerTime = fingerTimes.get(key);
+            if (device != null && fingerTime != null && System.currentTimeMillis() - fingerTime < FINGER_REFRESH_MILLIS) {
+                handleDeviceAlive(address, device);
+                return;
+            }
+
+            // one fetch per device at a time
+            if (!pendingFingers.add(key)) {
+                return;
+            }
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        retrieveFinger(key, address, listeningPort, pinfo);
+                    } finally {
+                        pendingFingers.remove(key);
+                    }
+                }
+            });
         } else {
             if (deviceCache.containsKey(key)) {
                 Device device = deviceCache.get(key);
@@ -168,6 +204,8 @@ public class DeviceDiscoveryClerk {
 
             Finger finger = jsonEngine.toObject(json, Finger.class);
 
+            fingerTimes.put(key, System.currentTimeMillis());
+
             synchronized (deviceCache) {
                 if (deviceCache.containsKey(key)) {
                     Device device = deviceCache.get(key);
@@ -219,6 +257,7 @@ public class DeviceDiscoveryClerk {
 
     private void handleDeviceStale(String key, InetAddress address, final Device device) {
         deviceCache.remove(key);
+        fingerTimes.remove(key);
 
         LOG.info("Device Slate: " + device);
 
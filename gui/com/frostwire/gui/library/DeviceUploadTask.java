@@ -17,86 +17,136 @@
  */
 package com.frostwire.gui.library;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.swing.Timer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.HttpClient;
+import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.FilenameUtils;
 
+import com.frostwire.HttpFetcher;
 import com.frostwire.core.FileDescriptor;
 import com.frostwire.gui.library.ProgressFileEntity.ProgressFileEntityListener;
 import com.limegroup.gnutella.gui.GUIMediator;
+import com.limegroup.gnutella.gui.GUIUtils;
 import com.limegroup.gnutella.gui.I18n;
-
+import com.limegroup.gnutella.settings.LibrarySettings;
+
+/**
+ * Upload session to a device, the files are sent a few at a time (see {@link LibrarySettings#DEVICE_UPLOAD_WINDOW})
+ * over the keep-alive connections of one http client, and the status bar is refreshed at a fixed rate
+ * instead of on every write.
+ * 
+ * @author gubatron
+ * @author aldenml
+ *
+ */
 public class DeviceUploadTask extends DeviceTask {
 
+    private static final Log LOG = LogFactory.getLog(DeviceUploadTask.class);
+
+    private static final int STATUS_UPDATE_INTERVAL_MILLIS = 250;
+
     private final Device device;
     private final FileDescriptor[] fds;
     private final String token;
 
-    private FileDescriptor currentFD;
+    private volatile FileDescriptor currentFD;
     private long totalBytes;
-    private long totalWritten;
+    private final AtomicLong totalWritten;
+    private final AtomicInteger nextIndex;
+    private volatile Throwable error;
+    private long startTime;
 
     public DeviceUploadTask(Device device, FileDescriptor[] fds, String token) {
         this.device = device;
         this.fds = fds;
         this.token = token;
+        this.totalWritten = new AtomicLong();
+        this.nextIndex = new AtomicInteger();
     }
 
     public FileDescriptor getCurrentFD() {
         return currentFD;
     }
 
+    /**
+     * Bytes per second sent so far, over all the files of the session.
+     */
+    public long getAverageSpeed() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? totalWritten.get() * 1000 / elapsed : 0;
+    }
+
     @Override
     public void run() {
         if (!isRunning()) {
             return;
         }
 
+        HttpClient httpClient = null;
+        ExecutorService workers = null;
+        Timer statusTimer = null;
+
         try {
             setProgress(0);
 
             totalBytes = getTotalBytes();
-            totalWritten = 0;
+            totalWritten.set(0);
+            nextIndex.set(0);
+            startTime = System.currentTimeMillis();
+
+            int window = Math.max(1, Math.min(LibrarySettings.DEVICE_UPLOAD_WINDOW.getValue(), fds.length));
+
+            httpClient = HttpFetcher.newHttpClient();
+            workers = ExecutorsHelper.newFixedSizeThreadPool(window, "DeviceUploadSession");
 
-            for (int i = 0; i < fds.length; i++) {
-                if (!isRunning()) {
-                    return;
+            statusTimer = new Timer(STATUS_UPDATE_INTERVAL_MILLIS, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    pushStatus();
                 }
+            });
+            statusTimer.start();
 
-                currentFD = fds[i];
-                final String name = FilenameUtils.getName(currentFD.filePath);
-
-                GUIMediator.safeInvokeLater(new Runnable() {
-                    public void run() {
-                        LibraryMediator.instance().getLibrarySearch().pushStatus(String.format("%s to %s - %s", I18n.tr("Uploading"), device.getName(), name));
-                    }
-                });
-
-                device.upload(new File(currentFD.filePath), token, new ProgressFileEntityListener() {
-                    public void onWrite(ProgressFileEntity progressFileEntity, int written) {
-                        totalWritten += written;
-                        setProgress((int) ((totalWritten * 100) / totalBytes));
-
-                        if (getProgress() % 5 == 0) {
-                            GUIMediator.safeInvokeLater(new Runnable() {
-                                public void run() {
-                                    String status = String.format("%d%% %s to %s - %s", getProgress(), I18n.tr("Uploading"), device.getName(), name);
-                                    LibraryMediator.instance().getLibrarySearch().pushStatus(status);
-                                }
-                            });
-                        }
-                    }
+            CountDownLatch done = new CountDownLatch(window);
+
+            for (int i = 0; i < window; i++) {
+                workers.execute(new UploadWorker(httpClient, done));
+            }
+
+            done.await();
 
-                    public boolean isRunning() {
-                        return DeviceUploadTask.this.isRunning();
-                    }
-                });
+            if (error != null) {
+                throw error;
             }
 
-            setProgress(100);
+            if (isRunning()) {
+                setProgress(100);
+
+                long elapsed = System.currentTimeMillis() - startTime;
+                LOG.info(String.format("Uploaded %d files (%d bytes) to %s in %d ms, %d bytes/s", fds.length, totalWritten.get(), device.getName(), elapsed, getAverageSpeed()));
+            }
         } catch (Throwable e) {
             onError(e);
         } finally {
+            if (statusTimer != null) {
+                statusTimer.stop();
+            }
+            if (workers != null) {
+                workers.shutdown();
+            }
+            if (httpClient != null) {
+                httpClient.getConnectionManager().shutdown();
+            }
             GUIMediator.safeInvokeLater(new Runnable() {
                 public void run() {
                     LibraryMediator.instance().getLibrarySearch().revertStatus();
@@ -107,6 +157,23 @@ public class DeviceUploadTask extends DeviceTask {
         stop();
     }
 
+    /**
+     * Called in the event dispatch thread by the status timer.
+     */
+    private void pushStatus() {
+        FileDescriptor fd = currentFD;
+        if (fd == null || !isRunning()) {
+            return;
+        }
+
+        setProgress(totalBytes > 0 ? (int) ((totalWritten.get() * 100) / totalBytes) : 0);
+
+        String name = FilenameUtils.getName(fd.filePath);
+        String speed = GUIUtils.rate2speed(getAverageSpeed() / 1024.0);
+        String status = String.format("%d%% %s to %s - %s (%s)", getProgress(), I18n.tr("Uploading"), device.getName(), name, speed);
+        LibraryMediator.instance().getLibrarySearch().pushStatus(status);
+    }
+
     private long getTotalBytes() {
         long total = 0;
         for (FileDescriptor fd : fds) {
@@ -114,4 +181,41 @@ public class DeviceUploadTask extends DeviceTask {
         }
         return total;
     }
+
+    private final class UploadWorker implements Runnable {
+
+        private final HttpClient httpClient;
+        private final CountDownLatch done;
+
+        public UploadWorker(HttpClient httpClient, CountDownLatch done) {
+            this.httpClient = httpClient;
+            this.done = done;
+        }
+
+        public void run() {
+            try {
+                int i;
+                while (isRunning() && error == null && (i = nextIndex.getAndIncrement()) < fds.length) {
+                    FileDescriptor fd = fds[i];
+                    currentFD = fd;
+
+                    device.upload(httpClient, new File(fd.filePath), token, new ProgressFileEntityListener() {
+                        public void onWrite(ProgressFileEntity progressFileEntity, int written) {
+                            totalWritten.addAndGet(written);
+                        }
+
+                        public boolean isRunning() {
+                            return DeviceUploadTask.this.isRunning() && error == null;
+                        }
+                    });
+                }
+            } catch (Throwable e) {
+                if (error == null) {
+                    error = e;
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.frostwire.core.FileDescriptor;
+import com.frostwire.util.JsonUtils;
+
+/**
+ * Parses a browse response as it is written, {"files":[{...},{...}], ...}, handing every
+ * file descriptor to the listener as soon as its object is complete instead of waiting for
+ * the whole listing. The other top level values are kept as raw json.
+ *
+ * Works on the bytes, the json structure is all ascii and UTF-8 multibyte sequences never
+ * contain ascii bytes.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class FileDescriptorStreamParser extends OutputStream {
+
+    private final Listener listener;
+    private final List<FileDescriptor> files;
+    private final Map<String, String> fields;
+
+    private final ByteArrayOutputStream key;
+    private ByteArrayOutputStream value;
+    private String currentKey;
+
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private boolean readingKey;
+    private boolean inFiles;
+
+    public FileDescriptorStreamParser(Listener listener) {
+        this.listener = listener;
+        this.files = new ArrayList<FileDescriptor>();
+        this.fields = new HashMap<String, String>();
+        this.key = new ByteArrayOutputStream();
+    }
+
+    public List<FileDescriptor> getFiles() {
+        return files;
+    }
+
+    /**
+     * The raw json of a top level value other than the files, null if not in the response.
+     */
+    public String getField(String name) {
+        return fields.get(name);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (value != null) {
+            value.write(b);
+        }
+
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                inString = false;
+                if (readingKey) {
+                    readingKey = false;
+                    currentKey = key.toString("UTF-8");
+                }
+                return;
+            }
+            if (readingKey) {
+                key.write(b);
+            }
+            return;
+        }
+
+        switch (b) {
+        case '"':
+            inString = true;
+            if (depth == 1 && currentKey == null) {
+                readingKey = true;
+                key.reset();
+            } else {
+                startValue(b);
+            }
+            break;
+        case '{':
+        case '[':
+            if (depth == 1 && currentKey != null && value == null && !inFiles) {
+                if (b == '[' && currentKey.equals("files")) {
+                    inFiles = true;
+                } else {
+                    startValue(b);
+                }
+            } else if (inFiles && depth == 2 && b == '{') {
+                value = new ByteArrayOutputStream(512);
+                value.write(b);
+            }
+            depth++;
+            break;
+        case '}':
+        case ']':
+            depth--;
+            if (inFiles && depth == 2 && value != null) {
+                onFileDescriptor(value.toByteArray());
+                value = null;
+            } else if (inFiles && depth == 1) {
+                inFiles = false;
+                currentKey = null;
+            } else if (depth == 0) {
+                endValue();
+            }
+            break;
+        case ',':
+            if (depth == 1) {
+                endValue();
+            }
+            break;
+        case ':':
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+            break;
+        default:
+            // numbers, true, false, null
+            startValue(b);
+            break;
+        }
+    }
+
+    private void startValue(int b) {
+        if (depth == 1 && currentKey != null && value == null && !inFiles) {
+            value = new ByteArrayOutputStream();
+            value.write(b);
+        }
+    }
+
+    private void endValue() throws UnsupportedEncodingException {
+        if (value != null && currentKey != null) {
+            // drop the , or } that ended it
+            byte[] raw = value.toByteArray();
+            fields.put(currentKey, new String(raw, 0, raw.length - 1, "UTF-8").trim());
+        }
+        value = null;
+        currentKey = null;
+    }
+
+    private void onFileDescriptor(byte[] json) throws UnsupportedEncodingException {
+        FileDescriptor fd = JsonUtils.toObject(new String(json, "UTF-8"), FileDescriptor.class);
+        if (fd != null) {
+            files.add(fd);
+            if (listener != null) {
+                listener.onFileDescriptor(fd);
+            }
+        }
+    }
+
+    public interface Listener {
+
+        public void onFileDescriptor(FileDescriptor fd);
+    }
+}
@@ -77,6 +77,8 @@ public class LibraryDeviceTableMediator extends AbstractLibraryTableMediator<Lib
 
     private static final Logger LOG = LoggerFactory.getLogger(LibraryDeviceTableMediator.class);
 
+    private static final int BROWSE_BATCH_SIZE = 100;
+
     /**
      * Variables so the PopupMenu & ButtonRow can have the same listeners
      */
@@ -262,27 +264,55 @@ public class LibraryDeviceTableMediator extends AbstractLibraryTableMediator<Lib
 
         BackgroundExecutorService.schedule(new Runnable() {
 
+            private List<FileDescriptor> batch = new ArrayList<FileDescriptor>(BROWSE_BATCH_SIZE);
+
             @Override
             public void run() {
-                List<FileDescriptor> fds = device.browse(fileType);
+                device.browse(fileType, new FileDescriptorStreamParser.Listener() {
+                    public void onFileDescriptor(FileDescriptor fd) {
+                        batch.add(fd);
+                        if (batch.size() == BROWSE_BATCH_SIZE) {
+                            addBatch();
+                        }
+                    }
+                });
+                addBatch();
 
-                if (!LibraryDeviceTableMediator.this.device.equals(device) || LibraryDeviceTableMediator.this.fileType != fileType) {
-                    return; // selected another node in the tree
+                if (!isSelected()) {
+                    return;
                 }
 
-                for (int i = 0; i < fds.size(); i++) {
-                    final FileDescriptor fileDescriptor = fds.get(i);
-                    GUIMediator.safeInvokeLater(new Runnable() {
-                        @Override
-                        public void run() {
-                            addUnsorted(fileDescriptor);
-                        }
-                    });
-                }
                 forceResort();
 
                 LibraryMediator.instance().getLibraryExplorer().executePendingRunnables();
             }
+
+            /**
+             * Rows go to the table as they are parsed, one event per batch.
+             */
+            private void addBatch() {
+                if (batch.isEmpty() || !isSelected()) {
+                    batch.clear();
+                    return;
+                }
+                final List<FileDescriptor> fds = batch;
+                batch = new ArrayList<FileDescriptor>(BROWSE_BATCH_SIZE);
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isSelected()) {
+                            for (FileDescriptor fd : fds) {
+                                addUnsorted(fd);
+                            }
+                        }
+                    }
+                });
+            }
+
+            private boolean isSelected() {
+                // the user may have selected another node in the tree
+                return LibraryDeviceTableMediator.this.device.equals(device) && LibraryDeviceTableMediator.this.fileType == fileType;
+            }
         });
     }
 
@@ -0,0 +1,135 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.frostwire.gui.library.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.frostwire.core.FileDescriptor;
+import com.frostwire.gui.library.Device;
+import com.frostwire.gui.library.DeviceTask;
+import com.frostwire.gui.library.DeviceUploadTask;
+import com.frostwire.localpeer.Finger;
+import com.frostwire.localpeer.LocalPeer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Uploads a session of files to a stub device that fails the second one, the session
+ * has to stop and report the failure instead of going on with the other files.
+ * 
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public class DeviceUploadTaskTest {
+
+    private static final int NUM_FILES = 12;
+    private static final int FILE_SIZE = 256 * 1024;
+
+    public static void testSecondFileFails() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.createContext("/desktop-upload", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                int n = requests.incrementAndGet();
+
+                InputStream is = exchange.getRequestBody();
+                byte[] buffer = new byte[16 * 1024];
+                while (is.read(buffer) != -1) {
+                }
+
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+
+                exchange.sendResponseHeaders(n == 2 ? 500 : 200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        File dir = new File(System.getProperty("java.io.tmpdir"), "deviceupload" + System.nanoTime());
+        dir.mkdirs();
+
+        try {
+            FileDescriptor[] fds = new FileDescriptor[NUM_FILES];
+            for (int i = 0; i < fds.length; i++) {
+                File f = new File(dir, "file" + i);
+                FileOutputStream fos = new FileOutputStream(f);
+                fos.write(new byte[FILE_SIZE]);
+                fos.close();
+
+                fds[i] = new FileDescriptor();
+                fds[i].filePath = f.getAbsolutePath();
+                fds[i].fileSize = f.length();
+            }
+
+            Finger finger = new Finger();
+            finger.nickname = "stub";
+            LocalPeer peer = new LocalPeer("127.0.0.1", server.getAddress().getPort(), false, "stub", 0, 0, null);
+            Device device = new Device("stub", InetAddress.getByName("127.0.0.1"), server.getAddress().getPort(), finger, peer);
+
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+            DeviceUploadTask task = new DeviceUploadTask(device, fds, "token");
+            task.addOnChangedListener(new DeviceTask.OnChangedListener() {
+                public void onProgress(DeviceTask task, int progress) {
+                }
+
+                public void onError(DeviceTask task, Throwable e) {
+                    error.set(e);
+                }
+            });
+
+            task.run();
+
+            if (error.get() == null) {
+                throw new IllegalStateException("the failed upload was not reported");
+            }
+            if (task.getProgress() == 100) {
+                throw new IllegalStateException("the session reported completion after a failure");
+            }
+            if (requests.get() >= NUM_FILES) {
+                throw new IllegalStateException("the session went on uploading after a failure");
+            }
+
+            System.out.println("failure reported after " + requests.get() + " of " + NUM_FILES + " files: " + error.get().getMessage());
+        } finally {
+            server.stop(0);
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        testSecondFileFails();
+        System.exit(0);
+    }
+}
@@ -127,6 +127,10 @@ public class MPlayer extends BaseMediaPlayer {
 
 	private static final String ID_EXIT = "ID_EXIT=";
 	
+	// answers to the file query MPlayerInstance sends once position reports go quiet
+	private static final String ANS_PATH = "ANS_path=";
+	private static final String ANS_ERROR = "ANS_ERROR=";
+	
 	private static final String ICY_INFO = "ICY Info:";
 
 	private static final Pattern v_timeInfo = Pattern
@@ -392,6 +396,13 @@ public class MPlayer extends BaseMediaPlayer {
 		} else if (line.startsWith(ID_EXIT)) {
 
 			reportNewState(MediaPlaybackState.Closed);
+		} else if (line.startsWith(ANS_PATH) || line.startsWith(ANS_ERROR)) {
+
+			MPlayerInstance instance = getCurrentInstance();
+
+			if (instance != null && instance.trackEndQueryAnswered(line.startsWith(ANS_PATH))) {
+				reportNewState(MediaPlaybackState.Closed);
+			}
 		} else if (line.startsWith(ICY_INFO)) {
 		    String data = line.substring(ICY_INFO.length()).trim();
 		    reportIcyInfo(data);
@@ -480,12 +491,19 @@ public class MPlayer extends BaseMediaPlayer {
 	public void doOpen(String fileOrUrl, int initialVolume) {
 
 		MPlayerInstance instance;
+		boolean reuse;
 
 		synchronized (this) {
 
-			doStop(false);
+			reuse = current_instance != null && current_instance.canLoad(fileOrUrl);
 
-			instance = current_instance = new MPlayerInstance(preferences);
+			if (reuse) {
+				instance = current_instance;
+			} else {
+				doStop(false, true);
+
+				instance = current_instance = new MPlayerInstance(preferences);
+			}
 		}
 
 		reportNewState(MediaPlaybackState.Opening);
@@ -493,14 +511,27 @@ public class MPlayer extends BaseMediaPlayer {
 		firstLengthReceived = false;
 		firstVolumeReceived = false;
 
-		instance.doOpen(fileOrUrl, initialVolume, new MPlayerInstance.OutputConsumer() {
-			public void consume(String line) {
-				synchronized (output) {
-					output.add(line);
-					output.notifyAll();
+		if (reuse) {
+			instance.doLoadFile(fileOrUrl, initialVolume);
+		} else {
+			instance.doOpen(fileOrUrl, initialVolume, new MPlayerInstance.OutputConsumer() {
+				public void consume(String line) {
+					synchronized (output) {
+						output.add(line);
+						output.notifyAll();
+					}
 				}
-			}
-		});
+			});
+		}
+	}
+
+	/**
+	 * Time it took the current instance to start playing the last opened file, -1 if unknown.
+	 */
+	public long getTimeToFirstAudio() {
+		MPlayerInstance instance = getCurrentInstance();
+
+		return instance != null ? instance.getTimeToFirstAudio() : -1;
 	}
 
 	protected MPlayerInstance getCurrentInstance() {
@@ -594,6 +625,14 @@ public class MPlayer extends BaseMediaPlayer {
 	}
 
 	protected void doStop(boolean report_state) {
+		doStop(report_state, false);
+	}
+
+	/**
+	 * Stops the current playback, the mplayer process is kept idle for the next
+	 * file unless <code>shutdown</code> is requested.
+	 */
+	protected void doStop(boolean report_state, boolean shutdown) {
 		synchronized (this) {
 
 			if (current_instance != null) {
@@ -603,9 +642,13 @@ public class MPlayer extends BaseMediaPlayer {
 							getPositionInSecs());
 				}
 
-				current_instance.doStop();
+				if (shutdown) {
+					current_instance.doStop();
 
-				current_instance = null;
+					current_instance = null;
+				} else {
+					current_instance.doStopPlayback();
+				}
 			}
 
 			synchronized (output) {
@@ -693,7 +736,7 @@ public class MPlayer extends BaseMediaPlayer {
 	public void dispose() {
 		disposed = true;
 
-		doStop();
+		doStop(true, true);
 	}
 
 	@Override
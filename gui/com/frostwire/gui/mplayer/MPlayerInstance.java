@@ -42,6 +42,7 @@ import org.gudy.azureus2.core3.util.SimpleTimer;
 import org.gudy.azureus2.core3.util.SystemTime;
 import org.gudy.azureus2.core3.util.TimerEvent;
 import org.gudy.azureus2.core3.util.TimerEventPerformer;
+import org.gudy.azureus2.core3.util.TimerEventPeriodic;
 import org.limewire.util.FilenameUtils;
 import org.limewire.util.OSUtils;
 import org.limewire.util.SystemUtils;
@@ -113,6 +114,26 @@ MPlayerInstance
 	private int	pending_sleeps;
 	private int	mute_count;
 
+		// the process is started in idle mode so later files can be fed to it with
+		// 'loadfile' instead of paying for a new process (and threads) per track
+	
+	private List<String>	launch_options;
+	private volatile boolean	exited;
+	
+	private long	open_time		= -1;
+	private long	first_audio_time	= -1;
+	private boolean	reused;
+	
+		// the end of a track is spotted by position reports going quiet while playing, the
+		// idle process is then asked for its file and an error answer means nothing is loaded
+	
+	private static final int	TRACK_END_CHECK_PERIOD	= 500;
+	private static final int	TRACK_END_QUIET_TIME	= 1500;
+	
+	private TimerEventPeriodic	track_end_checker;
+	private long				last_position_time	= -1;
+	private boolean				track_end_query_pending;
+
 	//private String fileOpened;
 	
 	public void 
@@ -163,137 +184,32 @@ MPlayerInstance
 			
 			cmdList.add( BINARY_PATH.getAbsolutePath());
 			
-			cmdList.add("-slave");
+			List<String> options = getLaunchOptions( fileOrUrl );
 			
-			//cache tunning for http streaming, without this some
-			//songs might not play.
-            if (fileOrUrl.toLowerCase().startsWith("http")) {
-                //64Kb
-                cmdList.add("-cache");
-                cmdList.add("64");
-                
-                //the cache has to be filled at least 50% to start playback
-                cmdList.add("-cache-min");
-                cmdList.add("50");
-            }
-			
-			//cmdList.add("-quiet");
-			
-			cmdList.add("-identify");
+			cmdList.addAll( options );
 			
-			cmdList.add("-prefer-ipv4");
+				// stay alive once the file ends so the process can be reused for the next one
 			
-			cmdList.add("-osdlevel");
-			cmdList.add("0");
-			
-			cmdList.add("-noautosub");
-			
-			cmdList.add("-vo");
-            if (OSUtils.isMacOSX()) {
-                cmdList.add("corevideo:buffer_name=fwmplayer");
-            } else if (OSUtils.isWindows()) {
-            	cmdList.add("direct3d,gl,directx,sdl");
-            }else if (OSUtils.isLinux()) {
-            	cmdList.add("x11,gl,sdl");
-            }
-            
-            if(OSUtils.isWindows()) {
-                
-                // setting video output driver mode.
-                // NOTE:
-                //  this is now a prioritized list of drives that mplayer will try, in order of priority, 
-                //  until it finds one that works.  there is no need to parse output of mplayer unless we
-                //  decide we want to block video output for cases other than direct3d on windows.
-                //cmdList.add("-vo");
-                //cmdList.add("direct3d,gl,directx,sdl");
-                            	
-                cmdList.add("-double");
-                
-                cmdList.add("-priority");
-                cmdList.add("high");
-                
-                cmdList.add("-framedrop");
-                
-                cmdList.add("-wid");
-                cmdList.add( String.valueOf(MPlayerMediator.instance().getCanvasComponentHwnd()));
-                
-                //workaround for mplayer on windows not being able to decode wma correctly with the wma demuxer.
-                //by passing lavf it'll force mplayer to use ffmpeg's demuxer (libavformat).
-                if (FilenameUtils.hasExtension(fileOrUrl, "wma","wmv","asf")) {
-                    cmdList.add("-demuxer");
-                    cmdList.add("lavf");
-                }     
-            }
-            
-            if (OSUtils.isLinux()) {
-                
-            	cmdList.add("-double");
-            	cmdList.add("-framedrop");
-            
-				cmdList.add("-wid");
-            	cmdList.add( String.valueOf(MPlayerMediator.instance().getCanvasComponentHwnd()));
-            }
-            
-
-//			if(Utils.isWindows()) {
-//				
-//			} else {
-//				cmdList.add(0,ShellUtilityFinder.getNice());
-//				cmdList.add(1,"-n");
-//				cmdList.add(2,"0");
-//			}
-//			
-//			if(Utils.isWindows()) {
-//				
-//				cmdList.add("-ass");
-//				cmdList.add("-ass-color");
-//				cmdList.add("FFFFFF00");
-//				cmdList.add("-ass-border-color");
-//				cmdList.add("00000040");
-//			}
-			
-//			Font font = Font.getFont("LiberationSans-Bold.ttf");
-//			if(font != null) {			
-//				cmdList.add("-font");
-//				cmdList.add(font.getFontPath());
-//				cmdList.add("-subfont-text-scale");
-//				//cmdList.add(Utils.isWindows() ? "4" : "2.5");
-//				cmdList.add("-subfont-blur");
-//				cmdList.add("4");
-//				cmdList.add("-subfont-outline");
-//				cmdList.add("2");
-//			}
-//			
-//			cmdList.add("-framedrop");
+			cmdList.add("-idle");
 			
             //Set the initial volume.
             cmdList.add("-volume");
             cmdList.add(String.valueOf(initialVolume));
 
-            if (OSUtils.isLinux()) {
-                cmdList.add("-zoom"); // auto zooms video to fit canvas area
-            }
-
-            if (OSUtils.isMacOSX()) {
-                cmdList.add(fileOrUrl);
-            } else if (OSUtils.isWindows()) {
-
-                if (fileOrUrl.length() > 250 && !fileOrUrl.toLowerCase().startsWith("http://")) {
-                    String shortFileName = SystemUtils.getShortFileName(fileOrUrl);
-
-                    if (shortFileName == null) {
-                        shortFileName = fileOrUrl;
-                    }
-                    
-                    cmdList.add(String.format("\"%s\"", shortFileName));
-                } else {
-                    cmdList.add(String.format("\"%s\"", fileOrUrl));
-                }
-                
-            } else if (OSUtils.isLinux()) {
+            if (OSUtils.isWindows()) {
+                cmdList.add(String.format("\"%s\"", getFilePath(fileOrUrl)));
+            } else {
                 cmdList.add(fileOrUrl);
             }
 			
+            synchronized( this ){
+            	
+            	launch_options	= options;
+            	open_time		= SystemTime.getMonotonousTime();
+            	reused			= false;
+            	
+            	trackLoading();
+            }
             
 			String[] cmd = cmdList.toArray(new String[0]);
 			String cmdString = Arrays.toString(cmd).replace(", ", " ");
@@ -305,53 +221,40 @@ MPlayerInstance
 			
 			try {
 				ProcessBuilder pb = new ProcessBuilder(cmd);
+				
+					// stderr is merged into stdout so a single reader thread serves the process
+				
+				pb.redirectErrorStream( true );
+				
 				mPlayerProcess = pb.start();
 				
 				InputStream stdOut = mPlayerProcess.getInputStream();
-				InputStream stdErr = mPlayerProcess.getErrorStream();
 				OutputStream stdIn = mPlayerProcess.getOutputStream();
 				
 				final BufferedReader brStdOut = new BufferedReader(new InputStreamReader(stdOut));
-				final BufferedReader brStdErr = new BufferedReader(new InputStreamReader(stdErr));
 				final PrintWriter pwStdIn = new PrintWriter(new OutputStreamWriter(stdIn));
 				
-				Thread stdOutReader = new Thread("Player Console Out Reader") {
+				Thread stdOutReader = new Thread("Player Console Reader") {
 					public void run() {
 						try {
 							String line;
 							while( (line = brStdOut.readLine()) != null) {
 //								if ( LOG && !line.startsWith( "A:" )){
-//									System.out.println( "STDOUT<- " + line );
+//									System.out.println( "<- " + line );
 //								}
 								output_consumer.consume( line );
 							}
 						} catch (Exception e) {
 							//e.printStackTrace();
+						} finally {
+							exited = true;
+							
+							cancelTrackEndChecker();
 						}
 					};
 				};
 				stdOutReader.setDaemon(true);
 				stdOutReader.start();
-				
-				Thread stdErrReader = new Thread("Player Console Err Reader") {
-					public void run() {
-						try {
-							String line;
-							while( (line = brStdErr.readLine()) != null) {
-								
-//								if ( LOG && !line.startsWith( "A:" )){
-//									System.out.println( "STDERR<- " + line );
-//								}
-								
-								output_consumer.consume( line );
-							}
-						} catch (Exception e) {
-							//e.printStackTrace();
-						}
-					};
-				};
-				stdErrReader.setDaemon(true);
-				stdErrReader.start();
 								
 				Thread stdInWriter = new Thread("Player Console In Writer") {
 					public void 
@@ -418,6 +321,25 @@ MPlayerInstance
 				stdInWriter.setDaemon(true);
 				stdInWriter.start();
 				
+				synchronized( this ){
+					
+					if ( !exited ){
+						
+						track_end_checker = 
+							SimpleTimer.addPeriodicEvent(
+								"EMP:TrackEnd",
+								TRACK_END_CHECK_PERIOD,
+								new TimerEventPerformer()
+								{
+									public void 
+									perform(
+										TimerEvent event ) 
+									{
+										checkTrackEnd();
+									}
+								});
+					}
+				}
 				
 			}catch( Throwable e ){
 				
@@ -440,6 +362,276 @@ MPlayerInstance
 		}
 	}
 
+	private List<String>
+	getLaunchOptions(
+		String		fileOrUrl )
+	{
+		List<String> cmdList = new ArrayList<String>();
+		
+		cmdList.add("-slave");
+		
+		//cache tunning for http streaming, without this some
+		//songs might not play.
+        if (fileOrUrl.toLowerCase().startsWith("http")) {
+            //64Kb
+            cmdList.add("-cache");
+            cmdList.add("64");
+            
+            //the cache has to be filled at least 50% to start playback
+            cmdList.add("-cache-min");
+            cmdList.add("50");
+        }
+		
+		//cmdList.add("-quiet");
+		
+		cmdList.add("-identify");
+		
+		cmdList.add("-prefer-ipv4");
+		
+		cmdList.add("-osdlevel");
+		cmdList.add("0");
+		
+		cmdList.add("-noautosub");
+		
+		cmdList.add("-vo");
+        if (OSUtils.isMacOSX()) {
+            cmdList.add("corevideo:buffer_name=fwmplayer");
+        } else if (OSUtils.isWindows()) {
+        	cmdList.add("direct3d,gl,directx,sdl");
+        }else if (OSUtils.isLinux()) {
+        	cmdList.add("x11,gl,sdl");
+        }
+        
+        if(OSUtils.isWindows()) {
+            
+            // setting video output driver mode.
+            // NOTE:
+            //  this is now a prioritized list of drives that mplayer will try, in order of priority, 
+            //  until it finds one that works.  there is no need to parse output of mplayer unless we
+            //  decide we want to block video output for cases other than direct3d on windows.
+            //cmdList.add("-vo");
+            //cmdList.add("direct3d,gl,directx,sdl");
+                        	
+            cmdList.add("-double");
+            
+            cmdList.add("-priority");
+            cmdList.add("high");
+            
+            cmdList.add("-framedrop");
+            
+            cmdList.add("-wid");
+            cmdList.add( String.valueOf(MPlayerMediator.instance().getCanvasComponentHwnd()));
+            
+            //workaround for mplayer on windows not being able to decode wma correctly with the wma demuxer.
+            //by passing lavf it'll force mplayer to use ffmpeg's demuxer (libavformat).
+            if (FilenameUtils.hasExtension(fileOrUrl, "wma","wmv","asf")) {
+                cmdList.add("-demuxer");
+                cmdList.add("lavf");
+            }     
+        }
+        
+        if (OSUtils.isLinux()) {
+            
+        	cmdList.add("-double");
+        	cmdList.add("-framedrop");
+        
+			cmdList.add("-wid");
+        	cmdList.add( String.valueOf(MPlayerMediator.instance().getCanvasComponentHwnd()));
+        }
+
+        if (OSUtils.isLinux()) {
+            cmdList.add("-zoom"); // auto zooms video to fit canvas area
+        }
+        
+        return( cmdList );
+	}
+	
+	private static String
+	getFilePath(
+		String		fileOrUrl )
+	{
+        if (OSUtils.isWindows() && fileOrUrl.length() > 250 && !fileOrUrl.toLowerCase().startsWith("http://")) {
+            String shortFileName = SystemUtils.getShortFileName(fileOrUrl);
+
+            if (shortFileName != null) {
+                return( shortFileName );
+            }
+        }
+        
+        return( fileOrUrl );
+	}
+	
+		/**
+		 * true if the running process was launched with the same options the given file
+		 * needs (cache settings, demuxer, output window) and can therefore be reused
+		 */
+	
+	protected boolean
+	canLoad(
+		String		fileOrUrl )
+	{
+		synchronized( this ){
+			
+			if ( !started || stopped || stop_pending || exited || launch_options == null ){
+				
+				return( false );
+			}
+		}
+		
+		List<String> options = getLaunchOptions( fileOrUrl );
+		
+		synchronized( this ){
+			
+			return( options.equals( launch_options ));
+		}
+	}
+	
+	protected void
+	doLoadFile(
+		String		fileOrUrl,
+		int			initialVolume )
+	{
+		synchronized( this ){
+			
+			paused				= false;
+			pause_change_id_next++;
+			pause_reported_time	= -1;
+			
+			isSeeking			= false;
+			seekingSendTime		= -1;
+			nextSeek			= -1;
+			
+			redrawing			= false;
+			mute_count			= 0;
+			
+			open_time			= SystemTime.getMonotonousTime();
+			first_audio_time	= -1;
+			reused				= true;
+			
+			trackLoading();
+			
+			sendCommand( "loadfile \"" + getFilePath( fileOrUrl ) + "\" 0" );
+			
+			sendCommand( "volume " + initialVolume + " 1" );
+		}
+	}
+	
+		/**
+		 * stops playback but keeps the process idle for the next 'loadfile'
+		 */
+	
+	protected void
+	doStopPlayback()
+	{
+		synchronized( this ){
+			
+			if ( paused ){
+				
+				paused = false;
+				
+				pause_change_id_next++;
+			}
+			
+				// an explicit stop isn't the end of the track
+			
+			last_position_time		= -1;
+			track_end_query_pending	= false;
+			
+			sendCommand( "stop" );
+		}
+	}
+	
+	private void
+	trackLoading()
+	{
+		last_position_time		= SystemTime.getMonotonousTime();
+		track_end_query_pending	= false;
+	}
+	
+	private void
+	checkTrackEnd()
+	{
+		synchronized( this ){
+			
+			if ( 	!started || stopped || exited || paused || 
+					last_position_time < 0 || track_end_query_pending ){
+				
+				return;
+			}
+			
+			if ( SystemTime.getMonotonousTime() - last_position_time < TRACK_END_QUIET_TIME ){
+				
+				return;
+			}
+			
+			track_end_query_pending = true;
+			
+			sendCommand( "get_property path" );
+		}
+	}
+	
+		/**
+		 * called with the answer to the file query sent by the track end check
+		 * @param loaded	false if mplayer reported an error, i.e. no file is loaded
+		 * @return true if the answer shows the track has ended
+		 */
+	
+	protected boolean
+	trackEndQueryAnswered(
+		boolean		loaded )
+	{
+		synchronized( this ){
+			
+			if ( !track_end_query_pending ){
+				
+				return( false );
+			}
+			
+			track_end_query_pending = false;
+			
+			if ( loaded ){
+				
+					// still loaded (buffering or similar), wait for another quiet period
+				
+				last_position_time = SystemTime.getMonotonousTime();
+				
+				return( false );
+			}
+			
+			last_position_time = -1;
+			
+			return( true );
+		}
+	}
+	
+	private void
+	cancelTrackEndChecker()
+	{
+		synchronized( this ){
+			
+			if ( track_end_checker != null ){
+				
+				track_end_checker.cancel();
+				
+				track_end_checker = null;
+			}
+		}
+	}
+	
+		/**
+		 * milliseconds between the open/load request and mplayer starting playback of it,
+		 * -1 if playback hasn't started yet
+		 */
+	
+	public long
+	getTimeToFirstAudio()
+	{
+		synchronized( this ){
+			
+			return( first_audio_time );
+		}
+	}
+	
 	protected void 
 	sendCommand(
 		String 	cmd,
@@ -478,6 +670,15 @@ MPlayerInstance
 	{
 		synchronized( this ){
 		
+			if ( open_time >= 0 && first_audio_time < 0 ){
+				
+				first_audio_time = SystemTime.getMonotonousTime() - open_time;
+				
+				if ( LOG ){
+					System.out.println( "mplayer: time to first audio " + first_audio_time + "ms" + ( reused?" (reused process)":"" ));
+				}
+			}
+			
 			//sendCommand("pause");
 			
 			sendCommand("get_property LENGTH");
@@ -640,6 +841,11 @@ MPlayerInstance
 		
 		synchronized( this ){
 			
+			if ( last_position_time >= 0 ){
+				
+				last_position_time = now;
+			}
+			
 			if ( seekingSendTime == -1 ){
 				
 				return;
@@ -867,6 +1073,8 @@ MPlayerInstance
 			
 		}
 		
+		cancelTrackEndChecker();
+		
 		command_sem.release();
 		
 		if ( mPlayerProcess != null ){
@@ -34,6 +34,7 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JCheckBox;
 import javax.swing.JTable;
@@ -97,6 +98,20 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
 
     private final ExecutorService playExecutor;
 
+    /**
+     * Resolves the media that will follow the current one and reads its first bytes
+     * ahead of time, so the switch to the next track doesn't wait on the disk.
+     */
+    private final ExecutorService prefetchExecutor;
+
+    private static final int PREFETCH_BYTES = 512 * 1024;
+
+    /**
+     * The track resolved to follow a source; both are swapped together so a reader never
+     * pairs one source with another source's next track.
+     */
+    private final AtomicReference<PrefetchedMedia> prefetched = new AtomicReference<PrefetchedMedia>();
+
     private static MediaPlayer instance;
 
     private long durationInSeconds;
@@ -120,6 +135,7 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
     protected MediaPlayer() {
         lastRandomFiles = new LinkedList<MediaSource>();
         playExecutor = ExecutorsHelper.newProcessingQueue("AudioPlayer-PlayExecutor");
+        prefetchExecutor = ExecutorsHelper.newProcessingQueue("AudioPlayer-PrefetchExecutor");
 
         String playerPath;
         playerPath = getPlayerPath();
@@ -204,6 +220,7 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
 
     public void setRepeatMode(RepeatMode repeatMode) {
         this.repeatMode = repeatMode;
+        clearPrefetchedMedia();
         PlayerSettings.LOOP_PLAYLIST.setValue(repeatMode.getValue());
     }
 
@@ -213,6 +230,7 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
 
     public void setShuffle(boolean shuffle) {
         this.shuffle = shuffle;
+        clearPrefetchedMedia();
         PlayerSettings.SHUFFLE_PLAYLIST.setValue(shuffle);
     }
 
@@ -280,6 +298,7 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
                     playMedia(((DeviceMediaSource) currentMedia).showPlayerWindow());
                 }
                 notifyOpened(source);
+                prefetchNextMedia(source);
             }
         } catch (Throwable e) {
             // NPE from bug report
@@ -647,9 +666,12 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
         }
 
         MediaSource media = null;
+        PrefetchedMedia prefetchedMedia = prefetched.get();
 
         if (getRepeatMode() == RepeatMode.SONG) {
             media = currentMedia;
+        } else if (!isShuffle() && prefetchedMedia != null && prefetchedMedia.next != null && prefetchedMedia.source.equals(currentMedia)) {
+            media = prefetchedMedia.next;
         } else if (isShuffle()) {
             media = getNextRandomSong(currentMedia);
         } else if (getRepeatMode() == RepeatMode.ALL) {
@@ -726,6 +748,74 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
 
     public synchronized void setPlaylistFilesView(List<MediaSource> playlistFilesView) {
         this.playlistFilesView = playlistFilesView.toArray(new MediaSource[playlistFilesView.size()]);
+        clearPrefetchedMedia();
+    }
+
+    private void clearPrefetchedMedia() {
+        prefetched.set(null);
+    }
+
+    /**
+     * Shuffle picks are random and stateful, so only the deterministic orders are resolved ahead.
+     */
+    private void prefetchNextMedia(final MediaSource source) {
+        clearPrefetchedMedia();
+
+        if (!playNextMedia || isShuffle() || getRepeatMode() == RepeatMode.SONG || playlistFilesView == null) {
+            return;
+        }
+
+        // the pending entry is replaced only if nothing cleared or re-prefetched in the meantime
+        final PrefetchedMedia pending = new PrefetchedMedia(source, null);
+        prefetched.set(pending);
+
+        prefetchExecutor.execute(new Runnable() {
+            public void run() {
+                MediaSource next = getRepeatMode() == RepeatMode.ALL ? getNextContinuousMedia(source) : getNextMedia(source);
+
+                if (next == null || !source.equals(currentMedia)) {
+                    return;
+                }
+
+                if (!prefetched.compareAndSet(pending, new PrefetchedMedia(source, next))) {
+                    return;
+                }
+
+                File file = null;
+                if (next.getFile() != null) {
+                    file = next.getFile();
+                } else if (next.getPlaylistItem() != null && next.getPlaylistItem().getFilePath() != null) {
+                    file = new File(next.getPlaylistItem().getFilePath());
+                }
+
+                if (file != null) {
+                    readAhead(file);
+                }
+            }
+        });
+    }
+
+    private static void readAhead(File file) {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            byte[] buffer = new byte[64 * 1024];
+            int total = 0;
+            int n;
+            while (total < PREFETCH_BYTES && (n = fis.read(buffer)) != -1) {
+                total += n;
+            }
+        } catch (Throwable e) {
+            // best effort, the file will be read by mplayer anyway
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (Throwable e) {
+                    // ignore
+                }
+            }
+        }
     }
 
     public MediaSource getNextRandomSong(MediaSource currentMedia) {
@@ -978,4 +1068,14 @@ public abstract class MediaPlayer implements RefreshListener, MPlayerUIEventList
             GUIMediator.openURL(source.getURL());
         }
     }
-}
\ No newline at end of file
+
+    private static final class PrefetchedMedia {
+        private final MediaSource source;
+        private final MediaSource next;
+
+        private PrefetchedMedia(MediaSource source, MediaSource next) {
+            this.source = source;
+            this.next = next;
+        }
+    }
+}
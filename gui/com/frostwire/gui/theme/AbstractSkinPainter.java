@@ -19,6 +19,7 @@
 package com.frostwire.gui.theme;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.LinearGradientPaint;
 import java.awt.Paint;
@@ -27,6 +28,7 @@ import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
+import javax.swing.JComponent;
 import javax.swing.plaf.nimbus.AbstractRegionPainter;
 
 /**
@@ -45,11 +47,42 @@ public abstract class AbstractSkinPainter extends AbstractRegionPainter {
         this.shapeGenerator = new ShapeGenerator();
     }
 
+    /**
+     * Nimbus own image cache is not used, painters declare a {@link CacheMode} instead and
+     * are served from the {@link SkinImageCache}.
+     */
     @Override
     protected final PaintContext getPaintContext() {
         return null;
     }
 
+    @Override
+    protected final void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+        SkinImageCache.instance().paint(this, g, c, width, height, extendedCacheKeys);
+    }
+
+    /**
+     * Paints the skin at the given size, called only when the image cache can't serve it.
+     * The output must depend only on the painter state, the size and the extended cache keys.
+     */
+    protected abstract void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys);
+
+    /**
+     * How the output of this painter can be reused, the default is to paint it every time,
+     * right for solid fills, lines and images that cost less than copying a cached image.
+     */
+    protected CacheMode getCacheMode() {
+        return CacheMode.NONE;
+    }
+
+    /**
+     * The size of the caps kept as painted when a cached image is stretched, they must hold
+     * everything drawn relative to the edges, like borders and rounded corners.
+     */
+    protected int getStretchInset() {
+        return 4;
+    }
+
     /**
      * Creates a simple vertical gradient using the shape for bounds and the
      * colors for top and bottom colors.
@@ -121,4 +154,25 @@ public abstract class AbstractSkinPainter extends AbstractRegionPainter {
             throw new RuntimeException("Error loading skin image", e);
         }
     }
+
+    public static enum CacheMode {
+        /**
+         * Painted every time.
+         */
+        NONE,
+        /**
+         * Painted once per size.
+         */
+        FIXED_SIZE,
+        /**
+         * Painted once per height, the middle column is stretched to the width. For horizontal
+         * bars where only the vertical gradient and the caps matter.
+         */
+        HORIZONTAL_STRETCH,
+        /**
+         * Painted once, the middle column and row are stretched to the size. For boxes with
+         * borders and rounded corners over a flat fill.
+         */
+        NINE_PATCH
+    }
 }
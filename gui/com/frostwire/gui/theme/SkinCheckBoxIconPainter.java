@@ -38,7 +38,7 @@ public final class SkinCheckBoxIconPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         g.drawImage(image, 0, 0, null);
     }
 
@@ -0,0 +1,259 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.theme;
+
+import java.awt.Graphics2D;
+import java.awt.PrintGraphics;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.print.PrinterGraphics;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+
+import com.frostwire.gui.theme.AbstractSkinPainter.CacheMode;
+
+/**
+ * Pre-rendered images of the skin painters, keyed by painter (state and colors), size and
+ * extended cache keys. Stretched modes keep a single small image per painter that is drawn
+ * in slices, so a table full of progress bars of different widths costs a few image copies
+ * per bar instead of a gradient fill each.
+ *
+ * Bounded by the total of pixels, least recently used images are dropped first.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SkinImageCache {
+
+    private static final int MAX_PIXELS = 1024 * 1024;
+    private static final int MAX_IMAGE_PIXELS = 32 * 1024;
+
+    private static final int UNCACHEABLE_TRANSFORMS = AffineTransform.TYPE_GENERAL_SCALE | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_ROTATION | AffineTransform.TYPE_GENERAL_TRANSFORM;
+
+    private static final SkinImageCache instance = new SkinImageCache();
+
+    public static SkinImageCache instance() {
+        return instance;
+    }
+
+    private final Map<Key, BufferedImage> images;
+
+    private long pixels;
+
+    private long hits;
+    private long paints;
+
+    private SkinImageCache() {
+        this.images = new LinkedHashMap<Key, BufferedImage>(64, 0.75f, true);
+    }
+
+    public void paint(AbstractSkinPainter painter, Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+        CacheMode mode = painter.getCacheMode();
+
+        if (mode == CacheMode.NONE || width <= 0 || height <= 0 || !isCacheable(g)) {
+            paintFull(painter, g, c, width, height, extendedCacheKeys);
+            return;
+        }
+
+        int inset = painter.getStretchInset();
+        int imageWidth = width;
+        int imageHeight = height;
+
+        if ((mode == CacheMode.HORIZONTAL_STRETCH || mode == CacheMode.NINE_PATCH) && width > 2 * inset + 1) {
+            imageWidth = 2 * inset + 1;
+        }
+        if (mode == CacheMode.NINE_PATCH && height > 2 * inset + 1) {
+            imageHeight = 2 * inset + 1;
+        }
+
+        if (imageWidth * imageHeight > MAX_IMAGE_PIXELS) {
+            paintFull(painter, g, c, width, height, extendedCacheKeys);
+            return;
+        }
+
+        Key key = new Key(painter, imageWidth, imageHeight, g.getRenderingHint(RenderingHints.KEY_ANTIALIASING), extendedCacheKeys);
+
+        BufferedImage image = get(key);
+
+        if (image == null) {
+            image = g.getDeviceConfiguration().createCompatibleImage(imageWidth, imageHeight, Transparency.TRANSLUCENT);
+
+            Graphics2D ig = image.createGraphics();
+            try {
+                ig.setRenderingHints(g.getRenderingHints());
+                paintFull(painter, ig, c, imageWidth, imageHeight, extendedCacheKeys);
+            } finally {
+                ig.dispose();
+            }
+
+            put(key, image);
+        }
+
+        if (imageWidth == width && imageHeight == height) {
+            g.drawImage(image, 0, 0, null);
+        } else {
+            drawStretched(g, image, width, height, inset);
+        }
+    }
+
+    /**
+     * Number of paints served from a cached image.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of times a painter had to paint in full, for a cached image or because it can't
+     * be cached.
+     */
+    public synchronized long getPaints() {
+        return paints;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    public synchronized void clear() {
+        images.clear();
+        pixels = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SkinImageCache(images=" + images.size() + ", pixels=" + pixels + ", hits=" + hits + ", paints=" + paints + ")";
+    }
+
+    private void paintFull(AbstractSkinPainter painter, Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+        synchronized (this) {
+            paints++;
+        }
+        painter.paintSkin(g, c, width, height, extendedCacheKeys);
+    }
+
+    private synchronized BufferedImage get(Key key) {
+        BufferedImage image = images.get(key);
+        if (image != null) {
+            hits++;
+        }
+        return image;
+    }
+
+    private synchronized void put(Key key, BufferedImage image) {
+        BufferedImage old = images.put(key, image);
+        if (old != null) {
+            pixels -= old.getWidth() * old.getHeight();
+        }
+        pixels += image.getWidth() * image.getHeight();
+
+        while (pixels > MAX_PIXELS && !images.isEmpty()) {
+            Map.Entry<Key, BufferedImage> eldest = images.entrySet().iterator().next();
+            pixels -= eldest.getValue().getWidth() * eldest.getValue().getHeight();
+            images.remove(eldest.getKey());
+        }
+    }
+
+    private static boolean isCacheable(Graphics2D g) {
+        if (g instanceof PrinterGraphics || g instanceof PrintGraphics) {
+            return false;
+        }
+        // an image painted at device scale would be blurred by any scaling
+        return (g.getTransform().getType() & UNCACHEABLE_TRANSFORMS) == 0;
+    }
+
+    /**
+     * Draws the caps as they are and the middle column and row of the image scaled to fill
+     * the rest.
+     */
+    private static void drawStretched(Graphics2D g, BufferedImage image, int width, int height, int inset) {
+        int[] sx = slices(image.getWidth(), width, inset, true);
+        int[] dx = slices(image.getWidth(), width, inset, false);
+        int[] sy = slices(image.getHeight(), height, inset, true);
+        int[] dy = slices(image.getHeight(), height, inset, false);
+
+        Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        try {
+            for (int j = 0; j < sy.length - 1; j++) {
+                for (int i = 0; i < sx.length - 1; i++) {
+                    g.drawImage(image, dx[i], dy[j], dx[i + 1], dy[j + 1], sx[i], sy[j], sx[i + 1], sy[j + 1], null);
+                }
+            }
+        } finally {
+            if (interpolation != null) {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            }
+        }
+    }
+
+    private static int[] slices(int imageSize, int size, int inset, boolean source) {
+        if (imageSize == size) {
+            return new int[] { 0, size };
+        }
+        int end = source ? imageSize : size;
+        return new int[] { 0, inset, end - inset, end };
+    }
+
+    private static final class Key {
+
+        private final AbstractSkinPainter painter;
+        private final int width;
+        private final int height;
+        private final Object antialiasing;
+        private final Object[] extendedCacheKeys;
+
+        private final int hash;
+
+        public Key(AbstractSkinPainter painter, int width, int height, Object antialiasing, Object[] extendedCacheKeys) {
+            this.painter = painter;
+            this.width = width;
+            this.height = height;
+            this.antialiasing = antialiasing;
+            this.extendedCacheKeys = extendedCacheKeys;
+
+            int h = System.identityHashCode(painter);
+            h = 31 * h + width;
+            h = 31 * h + height;
+            h = 31 * h + (antialiasing != null ? antialiasing.hashCode() : 0);
+            h = 31 * h + Arrays.hashCode(extendedCacheKeys);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return painter == k.painter && width == k.width && height == k.height && (antialiasing == null ? k.antialiasing == null : antialiasing.equals(k.antialiasing)) && Arrays.equals(extendedCacheKeys, k.extendedCacheKeys);
+        }
+    }
+}
@@ -38,7 +38,7 @@ public final class SkinMenuItemBackgroundPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         switch (state) {
         default:
             paintBackground(g, width, height);
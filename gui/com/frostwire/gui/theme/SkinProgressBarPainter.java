@@ -42,7 +42,25 @@ public final class SkinProgressBarPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected CacheMode getCacheMode() {
+        switch (state) {
+        case Enabled:
+        case Disabled:
+            return CacheMode.HORIZONTAL_STRETCH;
+        default:
+            // the pattern moves along the bar
+            return CacheMode.FIXED_SIZE;
+        }
+    }
+
+    @Override
+    protected int getStretchInset() {
+        // the bar border is drawn inside the padding
+        return padding + 2;
+    }
+
+    @Override
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         switch (state) {
         case Enabled:
         case Disabled:
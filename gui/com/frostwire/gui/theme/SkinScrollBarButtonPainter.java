@@ -40,7 +40,12 @@ public final class SkinScrollBarButtonPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected CacheMode getCacheMode() {
+        return CacheMode.FIXED_SIZE;
+    }
+
+    @Override
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         paintBox(g, width, height);
         paintArrowButton(g, width / 2.0 - 4, height / 2.0 - 4);
     }
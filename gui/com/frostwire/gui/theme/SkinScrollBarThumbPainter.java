@@ -39,7 +39,12 @@ public final class SkinScrollBarThumbPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected CacheMode getCacheMode() {
+        return CacheMode.HORIZONTAL_STRETCH;
+    }
+
+    @Override
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         if (testValid(0, 0, width - 2, height - 2)) {
             Shape s1 = shapeGenerator.createRectangle(0, 0, width, height);
             g.setColor(SkinColors.SCROLL_THUMB_BORDER_COLOR);
@@ -37,7 +37,7 @@ public final class SkinSplitPaneDividerBackgroundPainter extends AbstractSkinPai
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         switch (state) {
         case Enabled:
         case Focused:
@@ -39,7 +39,7 @@ public final class SkinTabbedPaneTabBackgroundPainter extends AbstractSkinPainte
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         switch (state) {
         case FocusedMouseOverSelected:
         case FocusedPressedSelected:
@@ -41,7 +41,17 @@ public final class SkinTextFieldBorderPainter extends AbstractSkinPainter {
     }
 
     @Override
-    protected void doPaint(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
+    protected CacheMode getCacheMode() {
+        return CacheMode.NINE_PATCH;
+    }
+
+    @Override
+    protected int getStretchInset() {
+        return 6;
+    }
+
+    @Override
+    protected void paintSkin(Graphics2D g, JComponent c, int width, int height, Object[] extendedCacheKeys) {
         switch (state) {
         case Disabled:
         case Enabled:
@@ -0,0 +1,228 @@
+package com.limegroup.gnutella.gui.search.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.frostwire.util.UserAgentGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in that replays captured search engine responses.
+ *
+ * Performers are pointed at it with a DomainAliasManager whose domain is
+ * "127.0.0.1:port/prefix", so "http://" + getDomainNameToUse() + path becomes
+ * "/prefix/path" here; the prefix selects the real domain when recording.
+ * Hardcoded absolute http URLs (torrent caches, api hosts) reach it as a proxy
+ * (see {@link #installAsHttpProxy()}) and are keyed by the full URL.
+ *
+ * Fixtures live in a directory with an index.properties mapping request keys to
+ * files. In record mode, misses are fetched from the real site and saved.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class FixtureHttpServer {
+
+    private static final String INDEX = "index.properties";
+
+    private final File dir;
+    private final boolean record;
+    private final Properties index;
+    private final Map<String, String> prefixes;
+    private final Map<String, byte[]> loaded;
+    private final AtomicInteger hits;
+    private final AtomicInteger misses;
+
+    private HttpServer server;
+
+    public FixtureHttpServer(File dir, boolean record) throws IOException {
+        this.dir = dir;
+        this.record = record;
+        this.index = new Properties();
+        this.prefixes = new HashMap<String, String>();
+        this.loaded = new ConcurrentHashMap<String, byte[]>();
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+
+        File f = new File(dir, INDEX);
+        if (f.exists()) {
+            FileInputStream in = new FileInputStream(f);
+            try {
+                index.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Maps a path prefix to the real domain it stands for.
+     */
+    public void addPrefix(String prefix, String realDomain) {
+        prefixes.put(prefix, realDomain);
+    }
+
+    /**
+     * The value to use as default domain of a performer's DomainAliasManager.
+     */
+    public String getDomain(String prefix) {
+        return "127.0.0.1:" + server.getAddress().getPort() + "/" + prefix;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.createContext("/", new Handler());
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public void stop() throws IOException {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (record) {
+            FileOutputStream out = new FileOutputStream(new File(dir, INDEX));
+            try {
+                index.store(out, "recorded search fixtures");
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Routes absolute http:// URLs through this server. Loopback requests keep going
+     * direct since 127.0.0.1 is in the default http.nonProxyHosts.
+     */
+    public void installAsHttpProxy() {
+        System.setProperty("http.proxyHost", "127.0.0.1");
+        System.setProperty("http.proxyPort", String.valueOf(server.getAddress().getPort()));
+    }
+
+    /**
+     * Fixture bytes for the given url as a performer would request it, null if not captured.
+     */
+    public byte[] get(String url) throws IOException {
+        return load(key(URI.create(url)));
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private String key(URI uri) {
+        String path = uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        if (uri.getHost() == null || "127.0.0.1".equals(uri.getHost())) {
+            return path;
+        }
+        return "http://" + uri.getHost() + path;
+    }
+
+    private byte[] load(String key) throws IOException {
+        byte[] data = loaded.get(key);
+        if (data == null) {
+            String name = index.getProperty(key);
+            if (name != null) {
+                data = FileUtils.readFileToByteArray(new File(dir, name));
+                loaded.put(key, data);
+            }
+        }
+        return data;
+    }
+
+    private synchronized byte[] capture(String key) throws IOException {
+        String url = key;
+
+        if (key.startsWith("/")) {
+            int n = key.indexOf('/', 1);
+            String prefix = n > 0 ? key.substring(1, n) : key.substring(1);
+            String domain = prefixes.get(prefix);
+            if (domain == null) {
+                return null;
+            }
+            url = "http://" + domain + (n > 0 ? key.substring(n) : "/");
+        }
+
+        // direct connection, this server may be installed as the http proxy
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection(Proxy.NO_PROXY);
+        conn.setConnectTimeout(30000);
+        conn.setReadTimeout(30000);
+        conn.setRequestProperty("User-Agent", UserAgentGenerator.getUserAgent());
+
+        byte[] data = null;
+        if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
+            InputStream in = conn.getInputStream();
+            try {
+                data = IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        if (data != null) {
+            String name = String.format("%05d.dat", index.size() + 1);
+            FileUtils.writeByteArrayToFile(new File(dir, name), data);
+            index.setProperty(key, name);
+            loaded.put(key, data);
+        }
+
+        return data;
+    }
+
+    private final class Handler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String key = key(exchange.getRequestURI());
+                byte[] data = load(key);
+
+                if (data == null && record) {
+                    data = capture(key);
+                }
+
+                if (data == null) {
+                    misses.incrementAndGet();
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                hits.incrementAndGet();
+                exchange.sendResponseHeaders(200, data.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(data);
+                out.close();
+            } catch (Throwable e) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                IOUtils.closeQuietly(exchange.getRequestBody());
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.limegroup.gnutella.gui.search.tests;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+import com.frostwire.search.CrawlableSearchResult;
+import com.frostwire.search.RegexSearchPerformer;
+import com.frostwire.search.SearchManagerImpl;
+import com.frostwire.search.SearchManagerListener;
+import com.frostwire.search.SearchMatcher;
+import com.frostwire.search.SearchPerformer;
+import com.frostwire.search.SearchResult;
+import com.frostwire.search.WebSearchPerformer;
+import com.frostwire.search.archiveorg.ArchiveorgSearchPerformer;
+import com.frostwire.search.bitsnoop.BitSnoopSearchPerformer;
+import com.frostwire.search.domainalias.DomainAliasManager;
+import com.frostwire.search.extratorrent.ExtratorrentSearchPerformer;
+import com.frostwire.search.eztv.EztvSearchPerformer;
+import com.frostwire.search.frostclick.FrostClickSearchPerformer;
+import com.frostwire.search.frostclick.UserAgent;
+import com.frostwire.search.kat.KATSearchPerformer;
+import com.frostwire.search.monova.MonovaSearchPerformer;
+import com.frostwire.search.soundcloud.SoundcloudSearchPerformer;
+import com.frostwire.search.tbp.TPBSearchPerformer;
+import com.frostwire.search.torlock.TorLockSearchPerformer;
+import com.frostwire.search.torrentsfm.TorrentsfmSearchPerformer;
+import com.frostwire.search.youtube.YouTubeSearchPerformer;
+
+/**
+ * Offline benchmark of the search performers against recorded responses.
+ *
+ * Usage: SearchPerformersBenchmark fixtureDir [keywords] [--record]
+ *
+ * With --record, responses missing from fixtureDir are fetched from the real sites
+ * (plain http only) and stored, so the next runs don't touch the network. For every
+ * engine it measures:
+ * <ul>
+ * <li>searchPage(String): ms/page, KB allocated/page and results/s</li>
+ * <li>fromMatcher over the page for regex performers</li>
+ * <li>crawlResult (torrent listing or detail page fromHtmlMatcher) per crawled item</li>
+ * <li>end to end through SearchManagerImpl: time to first and to N results</li>
+ * </ul>
+ *
+ * Soundcloud and YouTube only use https and can't be recorded through the stand-in,
+ * their parse benchmarks run if fixtures for their search urls are dropped in manually.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public class SearchPerformersBenchmark {
+
+    private static final int ROUNDS = 50;
+    private static final int TIMEOUT = 10000;
+    private static final int END_TO_END_RESULTS = 50;
+
+    private static abstract class Engine {
+
+        final String name;
+        final String domain;
+
+        Engine(String name, String domain) {
+            this.name = name;
+            this.domain = domain;
+        }
+
+        abstract WebSearchPerformer create(DomainAliasManager m, long token, String keywords);
+    }
+
+    private static final Engine[] ENGINES = new Engine[] { new Engine("tpb", "thepiratebay.se") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new TPBSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("kat", "kickass.to") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new KATSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("extratorrent", "extratorrent.cc") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new ExtratorrentSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("eztv", "eztv.it") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new EztvSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("monova", "www.monova.org") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new MonovaSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("bitsnoop", "bitsnoop.com") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new BitSnoopSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("torlock", "www.torlock.com") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new TorLockSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("torrentsfm", "torrents.fm") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new TorrentsfmSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("soundcloud", "api.sndcdn.com") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new SoundcloudSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("archiveorg", "archive.org") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new ArchiveorgSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("youtube", "gdata.youtube.com") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new YouTubeSearchPerformer(m, token, keywords, TIMEOUT);
+        }
+    }, new Engine("frostclick", "api.frostclick.com") {
+        WebSearchPerformer create(DomainAliasManager m, long token, String keywords) {
+            return new FrostClickSearchPerformer(m, token, keywords, TIMEOUT, new UserAgent("benchmark", "0.0.0", "0"));
+        }
+    } };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: SearchPerformersBenchmark fixtureDir [keywords] [--record]");
+            return;
+        }
+
+        File dir = new File(args[0]);
+        String keywords = args.length > 1 && !args[1].startsWith("--") ? args[1] : "frostwire";
+        boolean record = args[args.length - 1].equals("--record");
+
+        dir.mkdirs();
+
+        FixtureHttpServer server = new FixtureHttpServer(dir, record);
+        for (Engine e : ENGINES) {
+            server.addPrefix(e.name, e.domain);
+        }
+        server.start();
+        server.installAsHttpProxy();
+
+        try {
+            long token = 1;
+            for (Engine e : ENGINES) {
+                System.out.println("== " + e.name);
+                DomainAliasManager m = new DomainAliasManager(server.getDomain(e.name));
+                endToEnd(e.create(m, token++, keywords));
+                parse(server, e.create(m, token++, keywords));
+            }
+        } finally {
+            server.stop();
+            System.out.println("stand-in served " + server.getHits() + " responses, " + server.getMisses() + " misses");
+        }
+
+        System.exit(0);
+    }
+
+    private static void endToEnd(final WebSearchPerformer performer) throws Exception {
+        SearchManagerImpl manager = new SearchManagerImpl();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicLong first = new AtomicLong(-1);
+        final AtomicLong nth = new AtomicLong(-1);
+        final long start = System.nanoTime();
+
+        manager.registerListener(new SearchManagerListener() {
+            @Override
+            public void onResults(SearchPerformer p, List<? extends SearchResult> results) {
+                long now = System.nanoTime() - start;
+                first.compareAndSet(-1, now);
+                if (count.addAndGet(results.size()) >= END_TO_END_RESULTS) {
+                    nth.compareAndSet(-1, now);
+                }
+            }
+
+            @Override
+            public void onFinished(long token) {
+                finished.countDown();
+            }
+        });
+
+        manager.perform(performer);
+        finished.await(2, TimeUnit.MINUTES);
+        long total = System.nanoTime() - start;
+        manager.shutdown(5, TimeUnit.SECONDS);
+
+        System.out.println(String.format("  end to end: %d results, first after %s, %d after %s, done in %.1f ms", count.get(), elapsed(first.get()), END_TO_END_RESULTS, elapsed(nth.get()), ms(total)));
+    }
+
+    private static void parse(FixtureHttpServer server, WebSearchPerformer performer) throws Exception {
+        Method getUrl = method(performer.getClass(), "getUrl", int.class, String.class);
+        Method searchPage = method(performer.getClass(), "searchPage", String.class);
+
+        if (getUrl == null || searchPage == null) {
+            System.out.println("  not a paged performer, skipped");
+            return;
+        }
+
+        String url = (String) getUrl.invoke(performer, 1, performer.getEncodedKeywords());
+        byte[] data = server.get(url);
+
+        if (data == null) {
+            System.out.println("  no fixture for " + url);
+            return;
+        }
+
+        final String page = new String(data, "UTF-8");
+
+        List<?> results = (List<?>) searchPage.invoke(performer, page);
+        long t = System.nanoTime();
+        long bytes = allocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            results = (List<?>) searchPage.invoke(performer, page);
+        }
+        bytes = allocatedBytes() - bytes;
+        t = System.nanoTime() - t;
+
+        System.out.println(String.format("  searchPage:  %8.3f ms/page %8d KB/page %10.0f results/s (%d results, %d KB page)", ms(t) / ROUNDS, bytes / 1024 / ROUNDS, results.size() * ROUNDS / (t / 1e9), results.size(), data.length / 1024));
+
+        if (performer instanceof RegexSearchPerformer) {
+            RegexSearchPerformer<?> rp = (RegexSearchPerformer<?>) performer;
+            int n = 0;
+            t = System.nanoTime();
+            bytes = allocatedBytes();
+            for (int i = 0; i < ROUNDS; i++) {
+                Matcher matcher = rp.getPattern().matcher(page);
+                while (matcher.find()) {
+                    if (rp.fromMatcher(new SearchMatcher(matcher)) != null) {
+                        n++;
+                    }
+                }
+            }
+            bytes = allocatedBytes() - bytes;
+            t = System.nanoTime() - t;
+            System.out.println(String.format("  fromMatcher: %8.3f ms/page %8d KB/page %10.0f results/s", ms(t) / ROUNDS, bytes / 1024 / ROUNDS, n / (t / 1e9)));
+        }
+
+        crawl(server, performer, results);
+    }
+
+    private static void crawl(FixtureHttpServer server, WebSearchPerformer performer, List<?> results) throws Exception {
+        Method getCrawlUrl = null;
+        Method crawlResult = null;
+
+        for (Object sr : results) {
+            if (sr instanceof CrawlableSearchResult) {
+                getCrawlUrl = method(performer.getClass(), "getCrawlUrl", sr.getClass());
+                crawlResult = method(performer.getClass(), "crawlResult", sr.getClass(), byte[].class);
+                break;
+            }
+        }
+
+        if (getCrawlUrl == null || crawlResult == null) {
+            return;
+        }
+
+        List<Object> items = new ArrayList<Object>();
+        List<byte[]> datas = new ArrayList<byte[]>();
+
+        for (Object sr : results) {
+            if (sr instanceof CrawlableSearchResult) {
+                String url = (String) getCrawlUrl.invoke(performer, sr);
+                byte[] data = url != null && url.startsWith("http") ? server.get(url) : null;
+                if (data != null) {
+                    items.add(sr);
+                    datas.add(data);
+                }
+            }
+        }
+
+        if (items.isEmpty()) {
+            System.out.println("  crawlResult: no crawl fixtures");
+            return;
+        }
+
+        int n = 0;
+        long t = System.nanoTime();
+        long bytes = allocatedBytes();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < items.size(); i++) {
+                try {
+                    List<?> l = (List<?>) crawlResult.invoke(performer, items.get(i), datas.get(i));
+                    n += l != null ? l.size() : 0;
+                } catch (Throwable e) {
+                    // a bad capture shouldn't stop the run
+                }
+            }
+        }
+        bytes = allocatedBytes() - bytes;
+        t = System.nanoTime() - t;
+
+        int ops = ROUNDS * items.size();
+        System.out.println(String.format("  crawlResult: %8.3f ms/item %8d KB/item %10.0f results/s (%d items)", ms(t) / ops, bytes / 1024 / ops, n / (t / 1e9), items.size()));
+    }
+
+    private static Method method(Class<?> clazz, String name, Class<?>... types) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (m.getName().equals(name) && m.getParameterTypes().length == types.length && !m.isBridge()) {
+                    boolean match = true;
+                    for (int i = 0; i < types.length; i++) {
+                        match &= m.getParameterTypes()[i].isAssignableFrom(types[i]);
+                    }
+                    if (match) {
+                        m.setAccessible(true);
+                        return m;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String elapsed(long nanos) {
+        return nanos < 0 ? "-" : String.format("%.1f ms", ms(nanos));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,211 @@
+package com.limegroup.gnutella.gui.search.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+import com.frostwire.torrent.TOTorrent;
+import com.frostwire.torrent.TOTorrentFile;
+import com.frostwire.torrent.TorrentScanner;
+import com.frostwire.torrent.TorrentUtils;
+
+/**
+ * Compares the full TOTorrent decode done by crawled searches before against the
+ * {@link TorrentScanner} file listing path, on large generated multi-file torrents.
+ *
+ * Pass .torrent files as arguments to benchmark those instead of the generated ones.
+ *
+ * Also reports the heap kept by a loaded TOTorrent, as decoded and once its files and pieces
+ * have been asked for.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public class TorrentScannerBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 100;
+    private static final int RETAINED = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            for (String arg : args) {
+                run(new File(arg).getName(), FileUtils.readFileToByteArray(new File(arg)));
+            }
+        } else {
+            run("500 files, 4MB pieces", generate(500, 4 * 1024 * 1024));
+            run("5000 files, 16MB pieces", generate(5000, 16 * 1024 * 1024));
+        }
+    }
+
+    private static void run(String label, byte[] data) throws Exception {
+        verify(data);
+
+        System.out.println(label + " (" + data.length / 1024 + " KB)");
+
+        for (int i = 0; i < WARMUP; i++) {
+            fullDecode(data);
+            scan(data);
+        }
+
+        measure("  TOTorrent  ", data, false);
+        measure("  Scanner    ", data, true);
+
+        retained("  TOTorrent retained        ", data, false);
+        retained("  TOTorrent retained, loaded", data, true);
+    }
+
+    private static void measure(String label, byte[] data, boolean scanner) throws Exception {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        long sink = 0;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += scanner ? scan(data) : fullDecode(data);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+
+        System.out.println(String.format("%s %8.3f ms/op %10d KB allocated/op (%d)", label, elapsed / 1e6 / ROUNDS, bytes / 1024 / ROUNDS, sink));
+    }
+
+    private static void retained(String label, byte[] data, boolean load) throws Exception {
+        TOTorrent[] torrents = new TOTorrent[RETAINED];
+
+        long before = usedHeap();
+
+        for (int i = 0; i < RETAINED; i++) {
+            torrents[i] = TorrentUtils.readFromBEncodedInputStream(new ByteArrayInputStream(data));
+            if (load) {
+                torrents[i].getFiles();
+                torrents[i].getPieces();
+            }
+        }
+
+        long after = usedHeap();
+
+        System.out.println(String.format("%s %8d KB/torrent (%d)", label, (after - before) / 1024 / RETAINED, torrents[RETAINED - 1].getFileCount()));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long fullDecode(byte[] data) throws Exception {
+        TOTorrent torrent = TorrentUtils.readFromBEncodedInputStream(new ByteArrayInputStream(data));
+        long n = 0;
+        for (TOTorrentFile f : torrent.getFiles()) {
+            n += f.getRelativePath().length() + f.getLength();
+        }
+        return n;
+    }
+
+    private static long scan(byte[] data) throws Exception {
+        TorrentScanner torrent = TorrentScanner.scan(data);
+        long n = 0;
+        for (int i = 0; i < torrent.getNumFiles(); i++) {
+            n += torrent.getRelativePath(i).length() + torrent.getLength(i);
+        }
+        return n;
+    }
+
+    private static void verify(byte[] data) throws Exception {
+        TOTorrent torrent = TorrentUtils.readFromBEncodedInputStream(new ByteArrayInputStream(data));
+        TorrentScanner scanner = TorrentScanner.scan(data);
+
+        TOTorrentFile[] files = torrent.getFiles();
+
+        if (files.length != scanner.getNumFiles() || !Arrays.equals(torrent.getHash(), scanner.getInfoHash())) {
+            throw new IllegalStateException("Scanner result differs from TOTorrent");
+        }
+
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].getRelativePath().equals(scanner.getRelativePath(i)) || files[i].getLength() != scanner.getLength(i)) {
+                throw new IllegalStateException("File " + i + " differs: " + files[i].getRelativePath() + " / " + scanner.getRelativePath(i));
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static byte[] generate(int numFiles, int pieceLength) throws IOException {
+        Random rnd = new Random(numFiles);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long total = 0;
+        long[] lengths = new long[numFiles];
+        for (int i = 0; i < numFiles; i++) {
+            lengths[i] = 1024 * 1024 + rnd.nextInt(64 * 1024 * 1024);
+            total += lengths[i];
+        }
+
+        out.write('d');
+        string(out, "announce");
+        string(out, "udp://tracker.example.com:80/announce");
+        string(out, "creation date");
+        integer(out, System.currentTimeMillis() / 1000);
+        string(out, "info");
+        out.write('d');
+
+        string(out, "files");
+        out.write('l');
+        for (int i = 0; i < numFiles; i++) {
+            out.write('d');
+            string(out, "length");
+            integer(out, lengths[i]);
+            string(out, "path");
+            out.write('l');
+            string(out, "Disc " + (i / 100 + 1));
+            string(out, String.format("%04d - Track with a reasonably long title %d.mp3", i, rnd.nextInt()));
+            out.write('e');
+            out.write('e');
+        }
+        out.write('e');
+
+        string(out, "name");
+        string(out, "Generated benchmark torrent " + numFiles);
+        string(out, "piece length");
+        integer(out, pieceLength);
+
+        byte[] pieces = new byte[(int) ((total + pieceLength - 1) / pieceLength) * 20];
+        rnd.nextBytes(pieces);
+        string(out, "pieces");
+        out.write(Integer.toString(pieces.length).getBytes("ISO-8859-1"));
+        out.write(':');
+        out.write(pieces);
+
+        out.write('e');
+        out.write('e');
+
+        return out.toByteArray();
+    }
+
+    private static void string(ByteArrayOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes("UTF-8");
+        out.write(Integer.toString(b.length).getBytes("ISO-8859-1"));
+        out.write(':');
+        out.write(b);
+    }
+
+    private static void integer(ByteArrayOutputStream out, long v) throws IOException {
+        out.write(("i" + v + "e").getBytes("ISO-8859-1"));
+    }
+}
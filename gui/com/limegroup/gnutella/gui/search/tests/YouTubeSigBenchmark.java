@@ -0,0 +1,117 @@
+package com.limegroup.gnutella.gui.search.tests;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+import com.frostwire.search.extractors.YouTubeSig;
+
+/**
+ * Benchmark of the YouTube signature decipher: time to build a YouTubeSig from a player
+ * script and decipher calls/s on it.
+ *
+ * Usage: YouTubeSigBenchmark [html5player.js]
+ *
+ * Without a stored player it uses the signature functions of a 2014 html5player padded to
+ * the size of a real one, and checks the results against the same steps done in plain Java.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public class YouTubeSigBenchmark {
+
+    private static final int PLAYERS = 20;
+    private static final int CALLS = 200000;
+
+    private static final String PLAYER_FUNCTIONS = "function Cq(a,b){var c=a[0];a[0]=a[b%a.length];a[b]=c;return a}" + //
+            "function Bq(a){a=a.split(\"\");a=Cq(a,7);a=a.reverse();a=a.slice(2);a=Cq(a,24);a=Cq(a,64);a=a.slice(3);a=a.reverse();a=Cq(a,15);return a.join(\"\")}" + //
+            "var Dq=function(a,b){b.s&&(a.signature=Bq(b.s))};";
+
+    public static void main(String[] args) throws Exception {
+        boolean stored = args.length > 0;
+        String jscode = stored ? FileUtils.readFileToString(new File(args[0])) : player();
+
+        String[] sigs = signatures(1000);
+
+        if (!stored) {
+            YouTubeSig sig = new YouTubeSig(jscode);
+            for (String s : sigs) {
+                if (!sig.calc(s).equals(decipher(s))) {
+                    throw new IllegalStateException("Wrong decipher of " + s + ": " + sig.calc(s) + ", expected " + decipher(s));
+                }
+            }
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            YouTubeSig sig = null;
+            for (int i = 0; i < PLAYERS; i++) {
+                sig = new YouTubeSig(jscode);
+                sig.calc(sigs[i]); // the first call is where lazy work would happen
+            }
+            long load = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int hash = 0;
+            for (int i = 0; i < CALLS; i++) {
+                hash += sig.calc(sigs[i % sigs.length]).length();
+            }
+            long calc = System.nanoTime() - start;
+
+            System.out.println(String.format("player %dKB: %.2f ms/player, %d decipher calls/s (%d)", jscode.length() / 1024, load / 1e6 / PLAYERS, CALLS * 1000000000L / calc, hash));
+        }
+    }
+
+    private static String player() {
+        StringBuilder sb = new StringBuilder();
+        Random r = new Random(1);
+
+        // the rest of a player is mostly minified functions the decipher never looks at
+        while (sb.length() < 300 * 1024) {
+            sb.append("function x").append(Integer.toString(sb.length(), 36)).append("(a,b){var c=a.length;");
+            sb.append("return c>").append(r.nextInt(100)).append("?a.slice(b):a.concat([b])};");
+        }
+        sb.append(PLAYER_FUNCTIONS);
+        while (sb.length() < 600 * 1024) {
+            sb.append("g.k(\"yt.player.").append(Integer.toString(sb.length(), 36)).append("\",function(a){return a.").append(r.nextInt(100)).append("});");
+        }
+
+        return sb.toString();
+    }
+
+    private static String[] signatures(int n) {
+        Random r = new Random(2);
+        String chars = "0123456789ABCDEF.";
+        String[] sigs = new String[n];
+        for (int i = 0; i < n; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 81 + r.nextInt(8);
+            for (int j = 0; j < len; j++) {
+                sb.append(chars.charAt(r.nextInt(chars.length())));
+            }
+            sigs[i] = sb.toString();
+        }
+        return sigs;
+    }
+
+    private static String decipher(String s) {
+        StringBuilder a = new StringBuilder(s);
+        swap(a, 7);
+        a.reverse();
+        a.delete(0, 2);
+        swap(a, 24);
+        swap(a, 64);
+        a.delete(0, 3);
+        a.reverse();
+        swap(a, 15);
+        return a.toString();
+    }
+
+    private static void swap(StringBuilder a, int b) {
+        char c = a.charAt(0);
+        a.setCharAt(0, a.charAt(b % a.length()));
+        a.setCharAt(b, c);
+    }
+}